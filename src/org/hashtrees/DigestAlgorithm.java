@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees;
+
+/**
+ * Defines the algorithm that is used for digesting the values, and for
+ * computing the hashes of the tree nodes. The built in algorithms are listed
+ * in {@link DigestAlgorithms}.
+ * 
+ * All the trees which are synched with each other should use the same
+ * algorithm. {@link HashTreesImpl} records the name of the algorithm on the
+ * {@link org.hashtrees.store.HashTreesStore}, and refuses to use a store which
+ * was built with a different algorithm.
+ * 
+ */
+public interface DigestAlgorithm {
+
+	/**
+	 * A unique name for the algorithm. This is the value that is recorded on
+	 * the store.
+	 * 
+	 * @return
+	 */
+	String getName();
+
+	/**
+	 * Returns the length of the digests in bytes.
+	 * 
+	 * @return
+	 */
+	int getDigestLength();
+
+	/**
+	 * Creates a new {@link Digester}. Callers are expected to reuse the
+	 * returned instance.
+	 * 
+	 * @return
+	 */
+	Digester newDigester();
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees;
+
+import java.security.MessageDigest;
+
+import org.hashtrees.util.ByteUtils;
+import org.hashtrees.util.XXHash64;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Built in {@link DigestAlgorithm}s. {@link #SHA1} is the default one.
+ * 
+ * {@link #XXHASH64}, {@link #XXHASH64X2} and {@link #MURMUR3_128} are non
+ * cryptographic, and are much cheaper to compute. They are good enough for
+ * detecting differences between replicas, as long as the values are not
+ * crafted by an adversary.
+ * 
+ */
+public enum DigestAlgorithms implements DigestAlgorithm {
+
+	SHA1("SHA-1", 20) {
+		@Override
+		public Digester newDigester() {
+			return new MessageDigestDigester(getName(), getDigestLength());
+		}
+	},
+	SHA256("SHA-256", 32) {
+		@Override
+		public Digester newDigester() {
+			return new MessageDigestDigester(getName(), getDigestLength());
+		}
+	},
+	XXHASH64("xxHash64", 8) {
+		@Override
+		public Digester newDigester() {
+			return new XXHashDigester(0L);
+		}
+	},
+	/**
+	 * Two xxHash64 digests of the same input with different seeds,
+	 * concatenated into 16 bytes. This is not the 128 bit variant of xxHash,
+	 * XXH128, and does not produce its values.
+	 */
+	XXHASH64X2("xxHash64x2", 16) {
+		@Override
+		public Digester newDigester() {
+			return new XXHashDigester(0L, XXHASH64X2_SECOND_SEED);
+		}
+	},
+	MURMUR3_128("murmur3_128", 16) {
+		@Override
+		public Digester newDigester() {
+			return new HashFunctionDigester(Hashing.murmur3_128(),
+					getDigestLength());
+		}
+	};
+
+	private static final long XXHASH64X2_SECOND_SEED = 0x9E3779B97F4A7C15L;
+
+	private final String name;
+	private final int digestLength;
+
+	private DigestAlgorithms(String name, int digestLength) {
+		this.name = name;
+		this.digestLength = digestLength;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getDigestLength() {
+		return digestLength;
+	}
+
+	private static class MessageDigestDigester extends Digester {
+
+		private final MessageDigest messageDigest;
+		private final int digestLength;
+
+		public MessageDigestDigester(String algorithm, int digestLength) {
+			this.messageDigest = ByteUtils.getDigest(algorithm);
+			this.digestLength = digestLength;
+		}
+
+		@Override
+		public void update(byte[] input, int offset, int length) {
+			messageDigest.update(input, offset, length);
+		}
+
+		@Override
+		public byte[] digest() {
+			return messageDigest.digest();
+		}
+
+		@Override
+		public byte[] digest(byte[] input) {
+			return messageDigest.digest(input);
+		}
+
+		@Override
+		public int getDigestLength() {
+			return digestLength;
+		}
+	}
+
+	private static class XXHashDigester extends Digester {
+
+		private final XXHash64[] lanes;
+
+		public XXHashDigester(long... seeds) {
+			lanes = new XXHash64[seeds.length];
+			for (int i = 0; i < seeds.length; i++)
+				lanes[i] = new XXHash64(seeds[i]);
+		}
+
+		@Override
+		public void update(byte[] input, int offset, int length) {
+			for (XXHash64 lane : lanes)
+				lane.update(input, offset, length);
+		}
+
+		@Override
+		public byte[] digest() {
+			byte[] result = new byte[getDigestLength()];
+			for (int i = 0; i < lanes.length; i++) {
+				ByteUtils.putLong(result, i * ByteUtils.SIZEOF_LONG,
+						lanes[i].getValue());
+				lanes[i].reset();
+			}
+			return result;
+		}
+
+		@Override
+		public int getDigestLength() {
+			return lanes.length * ByteUtils.SIZEOF_LONG;
+		}
+	}
+
+	private static class HashFunctionDigester extends Digester {
+
+		private final HashFunction hashFunction;
+		private final int digestLength;
+		private Hasher hasher;
+
+		public HashFunctionDigester(HashFunction hashFunction,
+				int digestLength) {
+			this.hashFunction = hashFunction;
+			this.digestLength = digestLength;
+			this.hasher = hashFunction.newHasher();
+		}
+
+		@Override
+		public void update(byte[] input, int offset, int length) {
+			hasher.putBytes(input, offset, length);
+		}
+
+		@Override
+		public byte[] digest() {
+			byte[] result = hasher.hash().asBytes();
+			hasher = hashFunction.newHasher();
+			return result;
+		}
+
+		@Override
+		public int getDigestLength() {
+			return digestLength;
+		}
+	}
+}
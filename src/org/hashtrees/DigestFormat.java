@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.hashtrees.thrift.generated.SegmentData;
+
+/**
+ * Defines how the contents of a segment, and the hashes of the children nodes
+ * are fed into the {@link Digester} to compute the hashes of the tree nodes.
+ * 
+ * All the trees which are synched with each other should use the same format.
+ * A tree built with a different format gets all its segments rehashed by
+ * {@link HashTreesImpl} on the next rebuild.
+ * 
+ */
+public enum DigestFormat {
+
+	/**
+	 * Converts keys, digests and children hashes into hex strings, and digests
+	 * the delimited strings. This is the default format.
+	 */
+	V1 {
+		@Override
+		public ByteBuffer digestSegment(Digester digester,
+				Iterator<SegmentData> segDataItr) {
+			List<String> hexStrings = new ArrayList<String>();
+			while (segDataItr.hasNext()) {
+				SegmentData sd = segDataItr.next();
+				hexStrings.add(HashTreesImpl.getHexString(sd.key, sd.digest));
+			}
+			return HashTreesImpl.digestHexStrings(digester, hexStrings);
+		}
+
+		@Override
+		public ByteBuffer digestNodes(Digester digester,
+				List<ByteBuffer> childHashes) {
+			List<ByteBuffer> presentChildHashes = new ArrayList<ByteBuffer>(
+					childHashes.size());
+			for (ByteBuffer childHash : childHashes)
+				if (childHash != null)
+					presentChildHashes.add(childHash);
+			return HashTreesImpl.digestByteBuffers(digester,
+					presentChildHashes);
+		}
+	},
+
+	/**
+	 * Feeds the bytes directly into the digester, without any intermediate
+	 * objects. Each key and digest is prefixed with its length. Each child
+	 * hash is prefixed with the position of the child and its length, so
+	 * missing children can not be confused with the present ones.
+	 */
+	V2 {
+		@Override
+		public ByteBuffer digestSegment(Digester digester,
+				Iterator<SegmentData> segDataItr) {
+			while (segDataItr.hasNext()) {
+				SegmentData sd = segDataItr.next();
+				update(digester, sd.key);
+				update(digester, sd.digest);
+			}
+			return ByteBuffer.wrap(digester.digest());
+		}
+
+		@Override
+		public ByteBuffer digestNodes(Digester digester,
+				List<ByteBuffer> childHashes) {
+			for (int i = 0; i < childHashes.size(); i++) {
+				ByteBuffer childHash = childHashes.get(i);
+				if (childHash != null) {
+					digester.updateInt(i);
+					update(digester, childHash);
+				}
+			}
+			return ByteBuffer.wrap(digester.digest());
+		}
+	};
+
+	/**
+	 * Computes the hash of a leaf node.
+	 * 
+	 * @param digester
+	 * @param segDataItr
+	 *            , segment data in sorted order.
+	 * @return
+	 */
+	public abstract ByteBuffer digestSegment(Digester digester,
+			Iterator<SegmentData> segDataItr);
+
+	/**
+	 * Computes the hash of an internal node.
+	 * 
+	 * @param digester
+	 * @param childHashes
+	 *            , hashes of the children in the order of their node ids. A
+	 *            missing child is passed as null.
+	 * @return
+	 */
+	public abstract ByteBuffer digestNodes(Digester digester,
+			List<ByteBuffer> childHashes);
+
+	private static void update(Digester digester, ByteBuffer value) {
+		byte[] bytes = value.array();
+		digester.updateInt(bytes.length);
+		digester.update(bytes, 0, bytes.length);
+	}
+}
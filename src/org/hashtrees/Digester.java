@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.hashtrees.util.ByteUtils;
+
+/**
+ * Computes a digest over a stream of bytes. {@link HashTreesImpl} uses this
+ * for computing the digests of the values, and the hashes of the tree nodes.
+ * 
+ * Instances are obtained through {@link DigestAlgorithm#newDigester()}, and
+ * are reused across multiple digest computations. After {@link #digest()} the
+ * instance is reset, and can be used for the next computation.
+ * 
+ */
+@NotThreadSafe
+public abstract class Digester {
+
+	private final byte[] intBuffer = new byte[ByteUtils.SIZEOF_INT];
+
+	/**
+	 * Feeds the given bytes into the digest computation.
+	 * 
+	 * @param input
+	 * @param offset
+	 * @param length
+	 */
+	public abstract void update(byte[] input, int offset, int length);
+
+	/**
+	 * Completes the digest computation, and resets this instance.
+	 * 
+	 * @return
+	 */
+	public abstract byte[] digest();
+
+	/**
+	 * Returns the length of the digest in bytes.
+	 * 
+	 * @return
+	 */
+	public abstract int getDigestLength();
+
+	public void update(byte[] input) {
+		update(input, 0, input.length);
+	}
+
+	/**
+	 * Feeds the given value as 4 bytes in big endian order.
+	 * 
+	 * @param value
+	 */
+	public void updateInt(int value) {
+		intBuffer[0] = (byte) (value >>> 24);
+		intBuffer[1] = (byte) (value >>> 16);
+		intBuffer[2] = (byte) (value >>> 8);
+		intBuffer[3] = (byte) value;
+		update(intBuffer, 0, intBuffer.length);
+	}
+
+	/**
+	 * Feeds the given input, and completes the digest computation.
+	 * 
+	 * @param input
+	 * @return
+	 */
+	public byte[] digest(byte[] input) {
+		update(input);
+		return digest();
+	}
+}
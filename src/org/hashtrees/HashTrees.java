@@ -21,6 +21,7 @@ package org.hashtrees;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 
 import org.hashtrees.thrift.generated.KeyValue;
 import org.hashtrees.thrift.generated.SegmentData;
@@ -79,6 +80,37 @@ public interface HashTrees {
 	 */
 	SegmentHash getSegmentHash(long treeId, int nodeId) throws IOException;
 
+	/**
+	 * Compares the given segment hashes with the hashes stored on the tree.
+	 * Used while synch operation, so that only the differing node ids have to
+	 * be sent back instead of all the hashes.
+	 * 
+	 * @param treeId
+	 * @param segmentHashes
+	 *            , hashes of the caller. A node which is missing on the caller
+	 *            is passed with an empty hash.
+	 * @return node ids whose hashes differ, or which are missing on either
+	 *         side.
+	 * @throws IOException
+	 */
+	List<Integer> compareSegmentHashes(long treeId,
+			List<SegmentHash> segmentHashes) throws IOException;
+
+	/**
+	 * Returns the hashes of the given nodes, and of their descendants up to
+	 * depth levels below them. Leaf nodes are not descended further. Allows
+	 * the synch operation to fetch several levels of the tree in one call.
+	 * 
+	 * @param treeId
+	 * @param nodeIds
+	 * @param depth
+	 *            , 0 returns only the hashes of the given nodes.
+	 * @return hashes sorted by node id.
+	 * @throws IOException
+	 */
+	List<SegmentHash> getSubtreeHashes(long treeId, List<Integer> nodeIds,
+			int depth) throws IOException;
+
 	/**
 	 * Hash tree data is stored on the leaf blocks. Given a segment id this
 	 * method is supposed to return (key,hash) pairs.
@@ -91,6 +123,53 @@ public interface HashTrees {
 	 */
 	List<SegmentData> getSegment(long treeId, int segId) throws IOException;
 
+	/**
+	 * Returns the (key,hash) pairs of all the given segments in one call.
+	 * Each {@link SegmentData} carries its segment id. The implementation can
+	 * cut the response to bound its size. In that case the last returned
+	 * segment can be incomplete, and the segments after it are not returned.
+	 * Callers continue such a segment through
+	 * {@link #getSegmentPage(long, int, ByteBuffer, int)}.
+	 * 
+	 * @param treeId
+	 * @param segIds
+	 *            , ids of the segment blocks.
+	 * @return (key,hash) pairs, sorted by the order of segIds and then by key.
+	 * @throws IOException
+	 */
+	List<SegmentData> getSegments(long treeId, List<Integer> segIds)
+			throws IOException;
+
+	/**
+	 * Returns a page of (key,hash) pairs of the given segment, in the key
+	 * order. Allows a huge segment to be read in pages, without holding the
+	 * complete segment in memory. The next page starts from the key
+	 * immediately after the last key of the previous page.
+	 * 
+	 * @param treeId
+	 * @param segId
+	 * @param fromKey
+	 *            , inclusive. An empty key starts from the beginning of the
+	 *            segment.
+	 * @param maxEntries
+	 *            , maximum no of pairs to return.
+	 * @return
+	 * @throws IOException
+	 */
+	List<SegmentData> getSegmentPage(long treeId, int segId,
+			ByteBuffer fromKey, int maxEntries) throws IOException;
+
+	/**
+	 * Returns the settings which the hashes of the trees depend on, like the
+	 * digest algorithm and the fan out, by their names. Trees built with
+	 * different settings never match, so {@link #synch(long, HashTrees)}
+	 * compares them with the remote tree first.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	Map<String, String> getSettings() throws IOException;
+
 	/**
 	 * Returns the (key,digest) for the given key in the given segment.
 	 * 
@@ -128,6 +207,24 @@ public interface HashTrees {
 	 */
 	void hRemove(ByteBuffer key) throws IOException;
 
+	/**
+	 * Same as calling {@link #hPut(ByteBuffer, ByteBuffer)} on each pair, but
+	 * allows the implementation to write them to the store in one batch.
+	 * 
+	 * @param keyValuePairs
+	 * @throws IOException
+	 */
+	void hPutAll(List<KeyValue> keyValuePairs) throws IOException;
+
+	/**
+	 * Same as calling {@link #hRemove(ByteBuffer)} on each key, but allows the
+	 * implementation to delete them from the store in one batch.
+	 * 
+	 * @param keys
+	 * @throws IOException
+	 */
+	void hRemoveAll(List<ByteBuffer> keys) throws IOException;
+
 	/**
 	 * Updates the other HTree based on the differences with local objects. This
 	 * function should be running on primary to synch with other replicas, and
@@ -137,6 +234,8 @@ public interface HashTrees {
 	 * @param syncType
 	 * @return, gives stats about total number of differences between local node
 	 *          and remote node.
+	 * @throws IllegalStateException
+	 *             if the remote tree has different {@link #getSettings()}.
 	 */
 	SyncDiffResult synch(long treeId, HashTrees remoteTree, SyncType syncType)
 			throws IOException;
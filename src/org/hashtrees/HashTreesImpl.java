@@ -25,27 +25,50 @@ import static org.hashtrees.TreeUtils.getParent;
 import static org.hashtrees.TreeUtils.getRightMostChildNode;
 import static org.hashtrees.TreeUtils.height;
 import static org.hashtrees.util.ByteUtils.roundUpToPowerOf2;
-import static org.hashtrees.util.ByteUtils.sha1;
 
+import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.annotation.concurrent.ThreadSafe;
 
 import org.apache.commons.codec.binary.Hex;
+import org.hashtrees.store.ExtendedHashTreesStore;
+import org.hashtrees.store.HashTreesBaseStore;
 import org.hashtrees.store.HashTreesMemStore;
 import org.hashtrees.store.HashTreesPersistentStore;
 import org.hashtrees.store.HashTreesStore;
+import org.hashtrees.store.PersistentStoreOptions;
+import org.hashtrees.store.SegmentOrderedStore;
+import org.hashtrees.store.SplittableStore;
 import org.hashtrees.store.Store;
 import org.hashtrees.thrift.generated.KeyValue;
 import org.hashtrees.thrift.generated.SegmentData;
@@ -53,13 +76,22 @@ import org.hashtrees.thrift.generated.SegmentHash;
 import org.hashtrees.util.ByteUtils;
 import org.hashtrees.util.LockedBy;
 import org.hashtrees.util.NonBlockingQueuingTask;
+import org.hashtrees.util.NonBlockingQueuingTask.QueueReachedMaxCapacityException;
+import org.hashtrees.util.OverflowLog;
 import org.hashtrees.util.Pair;
+import org.hashtrees.util.RingBufferQueuingTask;
 import org.hashtrees.util.Service;
+import org.hashtrees.util.Stoppable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
+import com.google.common.util.concurrent.Striped;
 
 /**
  * HashTrees has segment blocks and segment trees.
@@ -71,8 +103,8 @@ import com.google.common.collect.PeekingIterator;
  * 
  * 2) Segment trees, where the segments' hashes are updated and maintained. Tree
  * is not updated on every update on a segment. Rather, tree update is happening
- * at regular intervals. Binary tree is used currently. It should be easier to
- * extend to support higher no of children.
+ * at regular intervals. Binary tree is used by default, higher no of children
+ * can be configured through {@link Builder#setFanOut(int)}.
  * 
  */
 @ThreadSafe
@@ -95,6 +127,47 @@ public class HashTreesImpl implements HashTrees, Service {
 	private final static char NEW_LINE_DELIMETER = '\n';
 	private final static int ROOT_NODE = 0;
 	private final static int BINARY_TREE = 2;
+	private final static String FAN_OUT_META_DATA = "fanOut";
+	private final static String DIGEST_ALGORITHM_META_DATA = "digestAlgorithm";
+	private final static String DIGEST_FORMAT_META_DATA = "digestFormat.";
+	private final static String DIGEST_FORMAT_SETTING = "digestFormat";
+	private final static String NO_OF_SEGMENTS_SETTING = "noOfSegments";
+	private final static String UNAPPLIED_UPDATES_META_DATA = "unappliedUpdates.";
+	private final static byte[] UNAPPLIED_UPDATES = { 1 };
+	private final static byte[] NO_UNAPPLIED_UPDATES = { 0 };
+	private final static String INCREMENTAL_LEAF_HASHING_SUFFIX = "+incremental";
+	private final static int SEGMENT_LOCK_STRIPES = 1024;
+	private final static byte[] EMPTY_HASH = new byte[0];
+	private final static byte[] EMPTY_KEY = new byte[0];
+	// Marks a pending remove operation in the pending digests table.
+	private final static ByteBuffer REMOVED_DIGEST = ByteBuffer
+			.wrap(new byte[0]);
+	// Upper limit on no of hashes fetched from a tree in one call, while
+	// synching with FETCH_SUBTREE_HASHES mode.
+	private final static int SUBTREE_HASHES_FETCH_LIMIT = 1 << 10;
+	private final static int DEFAULT_MAX_SEGMENTS_BATCH_BYTES = 1 << 22;
+	private final static int DEFAULT_SEGMENT_PAGE_SIZE = 1 << 13;
+	// Size of the ring buffer when the non blocking queue size is unbounded.
+	private final static int DEFAULT_RING_BUFFER_SIZE = 1 << 16;
+	private final static int MAX_RING_BUFFER_SIZE = 1 << 30;
+	private final static int RING_BUFFER_MAX_BATCH_SIZE = 1 << 8;
+	private final static long DEFAULT_QUEUE_OVERFLOW_BLOCK_TIMEOUT_MS = 1000;
+	private final static long BLOCK_RETRY_INTERVAL_NANOS = TimeUnit.MICROSECONDS
+			.toNanos(100);
+	private final static String OVERFLOW_LOG_FILE_PREFIX = "overflow-";
+	private final static String OVERFLOW_LOG_FILE_SUFFIX = ".log";
+	// No of leaves which are rehashed by one task of a parallel rebuild, and
+	// whose hashes are written together.
+	private final static int LEAF_REBUILD_BATCH_SIZE = 1 << 8;
+	// No of segment ids which are rehashed together, when all the segments of
+	// a tree are rehashed for a new digest format.
+	private final static int FORMAT_MIGRATION_RANGE_SIZE = 1 << 16;
+	// Upper limit on no of child hashes read in one call, while rebuilding
+	// the internal nodes.
+	private final static int CHILD_HASHES_BATCH_SIZE = 1 << 14;
+	// No of changed keys, which are written together by a partition of a
+	// full rebuild.
+	private final static int FULL_REBUILD_BATCH_SIZE = 1 << 10;
 
 	private final int noOfChildren;
 	private final int internalNodesCount;
@@ -103,14 +176,66 @@ public class HashTreesImpl implements HashTrees, Service {
 
 	private final Store store;
 	private final HashTreesStore htStore;
+	// Null if htStore does not implement the optional operations.
+	private final ExtendedHashTreesStore extHtStore;
 	private final HashTreesIdProvider treeIdProvider;
 	private final SegmentIdProvider segIdProvider;
+	private final DigestAlgorithm digestAlgorithm;
+	private final DigestFormat digestFormat;
+	private final boolean incrementalLeafHashing;
+	private final String treeHashFormat;
+	private final Map<String, String> settings;
+	private final Striped<Lock> segmentLocks;
+	private final SyncMode syncMode;
+	private final int maxSegmentsBatchBytes;
+	private final int segmentPageSize;
+	private final Set<Long> treesWithCurrentDigestFormat = Collections
+			.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+	private final ThreadLocal<Digester> digesters = new ThreadLocal<Digester>() {
+
+		@Override
+		protected Digester initialValue() {
+			return digestAlgorithm.newDigester();
+		}
+	};
 
 	private final boolean enabledNonBlockingCalls;
 	private final int nonBlockingQueueSize;
+	private final NonBlockingQueueType nonBlockingQueueType;
+	private final int noOfNonBlockingWorkers;
+	private final boolean digestAtEnqueue;
+	// Latest digest of the keys which are queued while digesting at enqueue.
+	private final ConcurrentMap<ByteBuffer, ByteBuffer> pendingDigests;
+	private final Striped<Lock> pendingDigestLocks;
+	private final QueueOverflowPolicy queueOverflowPolicy;
+	private final long queueOverflowBlockTimeoutMs;
+	private final String overflowLogDir;
+	// No of queue overflows handled by each policy, indexed by the ordinal.
+	private final AtomicLongArray queueOverflowCounts = new AtomicLongArray(
+			QueueOverflowPolicy.values().length);
+	// Trees which are checked for the updates left unapplied by an earlier
+	// instance. With non blocking calls, their updates are being queued.
+	private final Set<Long> treesCheckedForUnappliedUpdates = Collections
+			.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+	// Trees whose dirty segments may miss updates, and have to be read back
+	// from the store.
+	private final Set<Long> treesToRecover = Collections
+			.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+	private final int rebuildParallelism;
+	private final int cachedTopLevels;
+	// No of nodes in the cached top levels of a tree.
+	private final int cachedNodesCount;
+	private final ConcurrentMap<Long, TopNodeHashes> topNodeHashes = new ConcurrentHashMap<>();
+	// No of keys scanned, changed and removed by the full rebuilds.
+	private final AtomicLong fullRebuildScannedKeys = new AtomicLong();
+	private final AtomicLong fullRebuildChangedKeys = new AtomicLong();
+	private final AtomicLong fullRebuildRemovedKeys = new AtomicLong();
+	private final Object rebuildPoolLock = new Object();
+	@LockedBy("rebuildPoolLock")
+	private volatile ForkJoinPool rebuildPool;
 	private final Object nonBlockingCallsLock = new Object();
 	@LockedBy("nonBlockingCallsLock")
-	private volatile NonBlockingHTDataUpdater bgDataUpdater;
+	private volatile HTDataUpdater[] bgDataUpdaters;
 	private final HashTreesObserverNotifier notifier = new HashTreesObserverNotifier();
 	private final LockProvider lockProvider;
 
@@ -119,17 +244,282 @@ public class HashTreesImpl implements HashTrees, Service {
 			final SegmentIdProvider segIdProvider,
 			final HashTreesStore htStore, final Store store,
 			final LockProvider lockProvider) {
-		this.noOfChildren = BINARY_TREE;
-		this.segmentsCount = getValidSegmentsCount(noOfSegments);
-		this.enabledNonBlockingCalls = enabledNonBlockingCalls;
-		this.nonBlockingQueueSize = nonBlockingQueueSize;
+		this(baseBuilder(noOfSegments, enabledNonBlockingCalls,
+				nonBlockingQueueSize, treeIdProvider, segIdProvider, htStore,
+				store, lockProvider));
+	}
+
+	private static Builder baseBuilder(int noOfSegments,
+			boolean enabledNonBlockingCalls, int nonBlockingQueueSize,
+			HashTreesIdProvider treeIdProvider,
+			SegmentIdProvider segIdProvider, HashTreesStore htStore,
+			Store store, LockProvider lockProvider) {
+		Builder builder = new Builder(store, treeIdProvider, htStore);
+		builder.noOfSegments = noOfSegments;
+		builder.enabledNonBlockingCalls = enabledNonBlockingCalls;
+		builder.nonBlockingQueueSize = nonBlockingQueueSize;
+		builder.segIdProvider = segIdProvider;
+		builder.lockProvider = lockProvider;
+		return builder;
+	}
+
+	/**
+	 * Every setting other than the ones of the public constructor is passed
+	 * through {@link Builder}.
+	 * 
+	 * @param builder
+	 */
+	private HashTreesImpl(Builder builder) {
+		if (builder.queueOverflowPolicy == QueueOverflowPolicy.SPILL_TO_DISK
+				&& builder.overflowLogDir == null)
+			throw new IllegalArgumentException(
+					"Overflow log dir is required for spilling the queue to disk.");
+		this.noOfChildren = builder.fanOut;
+		this.segmentsCount = getValidSegmentsCount(builder.noOfSegments,
+				noOfChildren);
+		this.enabledNonBlockingCalls = builder.enabledNonBlockingCalls;
+		this.nonBlockingQueueSize = builder.nonBlockingQueueSize;
+		this.nonBlockingQueueType = builder.nonBlockingQueueType;
+		this.noOfNonBlockingWorkers = builder.noOfNonBlockingWorkers;
+		this.digestAtEnqueue = builder.digestAtEnqueue;
+		this.pendingDigests = digestAtEnqueue ? new ConcurrentHashMap<ByteBuffer, ByteBuffer>()
+				: null;
+		this.pendingDigestLocks = digestAtEnqueue ? Striped
+				.lock(SEGMENT_LOCK_STRIPES) : null;
+		this.queueOverflowPolicy = builder.queueOverflowPolicy;
+		this.queueOverflowBlockTimeoutMs = builder.queueOverflowBlockTimeoutMs;
+		this.overflowLogDir = builder.overflowLogDir;
+		this.rebuildParallelism = builder.rebuildParallelism;
 		this.height = height(this.segmentsCount, noOfChildren);
 		this.internalNodesCount = getNoOfNodes((height - 1), noOfChildren);
-		this.treeIdProvider = treeIdProvider;
-		this.segIdProvider = segIdProvider;
-		this.htStore = htStore;
-		this.store = store;
-		this.lockProvider = lockProvider;
+		this.cachedTopLevels = Math.min(builder.cachedTopLevels, height);
+		this.cachedNodesCount = (this.cachedTopLevels == 0) ? 0
+				: getNoOfNodes(this.cachedTopLevels - 1, noOfChildren);
+		this.treeIdProvider = builder.treeIdProvider;
+		this.segIdProvider = builder.segIdProvider;
+		this.htStore = builder.htStore;
+		this.extHtStore = (htStore instanceof ExtendedHashTreesStore) ? (ExtendedHashTreesStore) htStore
+				: null;
+		this.store = builder.store;
+		this.lockProvider = builder.lockProvider;
+		this.digestAlgorithm = builder.digestAlgorithm;
+		this.digestFormat = builder.digestFormat;
+		this.incrementalLeafHashing = builder.incrementalLeafHashing;
+		this.treeHashFormat = incrementalLeafHashing ? digestFormat.name()
+				+ INCREMENTAL_LEAF_HASHING_SUFFIX : digestFormat.name();
+		this.segmentLocks = incrementalLeafHashing ? Striped
+				.lock(SEGMENT_LOCK_STRIPES) : null;
+		this.syncMode = builder.syncMode;
+		this.maxSegmentsBatchBytes = builder.maxSegmentsBatchBytes;
+		this.segmentPageSize = builder.segmentPageSize;
+		Map<String, String> settings = new HashMap<>();
+		settings.put(DIGEST_ALGORITHM_META_DATA, digestAlgorithm.getName());
+		settings.put(FAN_OUT_META_DATA, Integer.toString(noOfChildren));
+		settings.put(DIGEST_FORMAT_SETTING, treeHashFormat);
+		settings.put(NO_OF_SEGMENTS_SETTING, Integer.toString(segmentsCount));
+		this.settings = Collections.unmodifiableMap(settings);
+		validateStoreMetaData(DIGEST_ALGORITHM_META_DATA,
+				digestAlgorithm.getName());
+		validateStoreMetaData(FAN_OUT_META_DATA,
+				Integer.toString(noOfChildren));
+		if (htStore instanceof HashTreesBaseStore)
+			((HashTreesBaseStore) htStore).setNoOfSegments(segmentsCount);
+	}
+
+	/**
+	 * Records the given setting on {@link HashTreesStore}, if it is not
+	 * recorded already. If the store has been built with a different value,
+	 * the store contents can not be used with this instance.
+	 * 
+	 * @param name
+	 * @param expectedValue
+	 * @throws IllegalStateException
+	 *             if the store has a different value recorded.
+	 */
+	private void validateStoreMetaData(String name, String expectedValue) {
+		try {
+			byte[] actualValue = getStoreMetaData(name);
+			if (actualValue == null)
+				putStoreMetaData(name,
+						expectedValue.getBytes(Charsets.UTF_8));
+			else if (!expectedValue.equals(new String(actualValue,
+					Charsets.UTF_8)))
+				throw new IllegalStateException("HashTreesStore was built with "
+						+ name + " " + new String(actualValue, Charsets.UTF_8)
+						+ ", can not be used with " + expectedValue);
+		} catch (IOException e) {
+			throw new HashTreesCustomRuntimeException(
+					"Exception occurred while reading meta data from the store.",
+					e);
+		}
+	}
+
+	/**
+	 * Stores which do not implement {@link ExtendedHashTreesStore} do not
+	 * keep meta data. Then the settings are not validated, the queued updates
+	 * are not recovered after a crash, and the trees are not rehashed when the
+	 * digest format changes. Such a store has to be cleared, and the trees
+	 * rebuilt, after a change of the format.
+	 */
+	private byte[] getStoreMetaData(String name) throws IOException {
+		return (extHtStore == null) ? null : extHtStore.getMetaData(name);
+	}
+
+	private void putStoreMetaData(String name, byte[] value)
+			throws IOException {
+		if (extHtStore != null)
+			extHtStore.putMetaData(name, value);
+	}
+
+	public DigestAlgorithm getDigestAlgorithm() {
+		return digestAlgorithm;
+	}
+
+	/**
+	 * Returns the digest algorithm, the fan out, the digest format and the no
+	 * of segments.
+	 */
+	@Override
+	public Map<String, String> getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Fails before any hashes are exchanged, if the trees can never match.
+	 * Settings which the remote tree does not report are not compared.
+	 * 
+	 * @param remoteTree
+	 * @throws IOException
+	 */
+	private void validateRemoteSettings(HashTrees remoteTree)
+			throws IOException {
+		Map<String, String> remoteSettings = remoteTree.getSettings();
+		for (Map.Entry<String, String> setting : settings.entrySet()) {
+			String remoteValue = remoteSettings.get(setting.getKey());
+			if (remoteValue != null && !remoteValue.equals(setting.getValue()))
+				throw new IllegalStateException("Remote tree is built with "
+						+ setting.getKey() + " " + remoteValue
+						+ ", can not be synched with " + setting.getValue());
+		}
+	}
+
+	public DigestFormat getDigestFormat() {
+		return digestFormat;
+	}
+
+	public boolean isIncrementalLeafHashing() {
+		return incrementalLeafHashing;
+	}
+
+	public int getFanOut() {
+		return noOfChildren;
+	}
+
+	public SyncMode getSyncMode() {
+		return syncMode;
+	}
+
+	public int getMaxSegmentsBatchBytes() {
+		return maxSegmentsBatchBytes;
+	}
+
+	public int getSegmentPageSize() {
+		return segmentPageSize;
+	}
+
+	public NonBlockingQueueType getNonBlockingQueueType() {
+		return nonBlockingQueueType;
+	}
+
+	public int getNoOfNonBlockingWorkers() {
+		return noOfNonBlockingWorkers;
+	}
+
+	public boolean isDigestAtEnqueue() {
+		return digestAtEnqueue;
+	}
+
+	public QueueOverflowPolicy getQueueOverflowPolicy() {
+		return queueOverflowPolicy;
+	}
+
+	public long getQueueOverflowBlockTimeoutMs() {
+		return queueOverflowBlockTimeoutMs;
+	}
+
+	public String getOverflowLogDir() {
+		return overflowLogDir;
+	}
+
+	/**
+	 * Returns how many times the given policy has handled an operation which
+	 * did not fit in the non blocking queue. Operations which were rejected,
+	 * including the ones which timed out with {@link QueueOverflowPolicy#BLOCK}
+	 * , are counted under {@link QueueOverflowPolicy#FAIL}.
+	 * 
+	 * @param policy
+	 * @return
+	 */
+	public long getQueueOverflowCount(QueueOverflowPolicy policy) {
+		return queueOverflowCounts.get(policy.ordinal());
+	}
+
+	public int getRebuildParallelism() {
+		return rebuildParallelism;
+	}
+
+	public int getCachedTopLevels() {
+		return cachedTopLevels;
+	}
+
+	/**
+	 * Returns no of keys read from {@link Store} by the full rebuilds.
+	 * 
+	 * @return
+	 */
+	public long getFullRebuildScannedKeys() {
+		return fullRebuildScannedKeys.get();
+	}
+
+	/**
+	 * Returns no of keys whose digests are added or changed by the full
+	 * rebuilds.
+	 * 
+	 * @return
+	 */
+	public long getFullRebuildChangedKeys() {
+		return fullRebuildChangedKeys.get();
+	}
+
+	/**
+	 * Returns no of keys which are removed by the full rebuilds, as those are
+	 * missing on {@link Store}.
+	 * 
+	 * @return
+	 */
+	public long getFullRebuildRemovedKeys() {
+		return fullRebuildRemovedKeys.get();
+	}
+
+	/**
+	 * Returns the no of operations which are queued on each non blocking
+	 * worker, and are not yet applied. Returns an empty array if non blocking
+	 * calls are disabled or not started.
+	 * 
+	 * @return
+	 */
+	public int[] getNonBlockingQueueDepths() {
+		HTDataUpdater[] updaters = bgDataUpdaters;
+		if (updaters == null)
+			return new int[0];
+		int[] result = new int[updaters.length];
+		for (int i = 0; i < updaters.length; i++)
+			result[i] = updaters[i].size();
+		return result;
+	}
+
+	public int getNoOfSegments() {
+		return segmentsCount;
 	}
 
 	@Override
@@ -141,10 +531,14 @@ public class HashTreesImpl implements HashTrees, Service {
 	private void hPutInternal(HTOperation operation, final ByteBuffer key,
 			final ByteBuffer value) throws IOException {
 		if (enabledNonBlockingCalls) {
-			List<ByteBuffer> input = new ArrayList<ByteBuffer>();
-			input.add(key);
-			input.add(value);
-			bgDataUpdater.enque(Pair.create(operation, input));
+			setDirtySegmentBeforeEnque(key);
+			if (digestAtEnqueue) {
+				notifier.preHPut(key, value);
+				enquePendingDigest(operation, key, ByteBuffer.wrap(digesters
+						.get().digest(value.array())));
+				notifier.postHPut(key, value);
+			} else
+				enque(operation, key, value);
 		} else
 			hPutInternal(key, value);
 	}
@@ -152,12 +546,261 @@ public class HashTreesImpl implements HashTrees, Service {
 	private void hPutInternal(final ByteBuffer key, final ByteBuffer value)
 			throws IOException {
 		notifier.preHPut(key, value);
+		putDigest(key, ByteBuffer.wrap(digesters.get().digest(value.array())));
+		notifier.postHPut(key, value);
+	}
+
+	private void putDigest(final ByteBuffer key, final ByteBuffer digest)
+			throws IOException {
 		long treeId = treeIdProvider.getTreeId(key.array());
 		int segId = segIdProvider.getSegmentId(key.array());
-		ByteBuffer digest = ByteBuffer.wrap(sha1(value.array()));
 		htStore.setDirtySegment(treeId, segId);
-		htStore.putSegmentData(treeId, segId, key, digest);
-		notifier.postHPut(key, value);
+		if (incrementalLeafHashing) {
+			Lock segmentLock = getSegmentLock(treeId, segId);
+			segmentLock.lock();
+			try {
+				updateLeafHash(treeId, segId, key, digest);
+				htStore.putSegmentData(treeId, segId, key, digest);
+			} finally {
+				segmentLock.unlock();
+			}
+		} else
+			htStore.putSegmentData(treeId, segId, key, digest);
+	}
+
+	/**
+	 * Records the digest of the key, and queues the key only if it is not on
+	 * the queue already. So the repeated operations on a hot key are collapsed
+	 * into one store write, and the queue does not hold the values.
+	 * 
+	 * @param digest
+	 *            , {@link #REMOVED_DIGEST} for remove operations.
+	 */
+	private void enquePendingDigest(HTOperation operation,
+			final ByteBuffer key, final ByteBuffer digest) throws IOException {
+		ByteBuffer pendingDigest;
+		switch (operation) {
+		case PUT_IF_ABSENT:
+		case REMOVE_IF_ABSENT:
+			pendingDigest = pendingDigests.putIfAbsent(key, digest);
+			break;
+		default:
+			pendingDigest = pendingDigests.put(key, digest);
+			break;
+		}
+		if (pendingDigest == null) {
+			try {
+				enque(HTOperation.APPLY_PENDING, key, null);
+			} catch (RuntimeException e) {
+				// Otherwise the key would stay pending, and the later
+				// operations on the key would never be queued.
+				pendingDigests.remove(key);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * With {@link QueueOverflowPolicy#CALLER_RUNS}, a caller can apply a key
+	 * while the worker is applying it, so the digest is taken and applied
+	 * under a lock. Otherwise the older digest could be written last.
+	 */
+	private void applyPendingDigest(final ByteBuffer key) throws IOException {
+		Lock lock = pendingDigestLocks.get(key);
+		lock.lock();
+		try {
+			ByteBuffer digest = pendingDigests.remove(key);
+			if (digest == REMOVED_DIGEST)
+				removeDigest(key);
+			else if (digest != null)
+				putDigest(key, digest);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Applies a queued operation. Called by the non blocking workers, and by
+	 * the callers when the queue overflows.
+	 */
+	private void applyOperation(HTOperation operation, final ByteBuffer key,
+			final ByteBuffer value) throws IOException {
+		switch (operation) {
+		case PUT:
+		case PUT_IF_ABSENT:
+			hPutInternal(key, value);
+			break;
+		case REMOVE:
+		case REMOVE_IF_ABSENT:
+			hRemoveInternal(key);
+			break;
+		case APPLY_PENDING:
+			applyPendingDigest(key);
+			break;
+		}
+	}
+
+	/**
+	 * Queues the operation on the worker of the key. If the queue is full, the
+	 * operation is handled as per {@link #queueOverflowPolicy}.
+	 */
+	private void enque(HTOperation operation, final ByteBuffer key,
+			final ByteBuffer value) throws IOException {
+		HTDataUpdater updater = getDataUpdater(key);
+		try {
+			updater.enque(operation, key, value);
+		} catch (QueueReachedMaxCapacityException e) {
+			handleQueueOverflow(updater, operation, key, value, e);
+		}
+	}
+
+	private void handleQueueOverflow(HTDataUpdater updater,
+			HTOperation operation, final ByteBuffer key,
+			final ByteBuffer value, QueueReachedMaxCapacityException e)
+			throws IOException {
+		switch (queueOverflowPolicy) {
+		case BLOCK:
+			if (!enqueWithTimeout(updater, operation, key, value))
+				break;
+			countQueueOverflow(QueueOverflowPolicy.BLOCK);
+			return;
+		case CALLER_RUNS:
+			applyOperation(operation, key, value);
+			// Pending digests are always applied in order. Other operations
+			// may be overtaken by an earlier operation on the queue.
+			if (operation != HTOperation.APPLY_PENDING)
+				scheduleRecovery(treeIdProvider.getTreeId(key.array()));
+			countQueueOverflow(QueueOverflowPolicy.CALLER_RUNS);
+			return;
+		case MARK_SEGMENT_DIRTY:
+			if (operation == HTOperation.APPLY_PENDING)
+				pendingDigests.remove(key);
+			scheduleRecovery(treeIdProvider.getTreeId(key.array()));
+			countQueueOverflow(QueueOverflowPolicy.MARK_SEGMENT_DIRTY);
+			return;
+		default:
+			// Spilling updaters throw only when the overflow log fails.
+			break;
+		}
+		countQueueOverflow(QueueOverflowPolicy.FAIL);
+		throw e;
+	}
+
+	private boolean enqueWithTimeout(HTDataUpdater updater,
+			HTOperation operation, final ByteBuffer key, final ByteBuffer value) {
+		long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(queueOverflowBlockTimeoutMs);
+		while (System.nanoTime() - deadline < 0
+				&& !Thread.currentThread().isInterrupted()) {
+			LockSupport.parkNanos(BLOCK_RETRY_INTERVAL_NANOS);
+			try {
+				updater.enque(operation, key, value);
+				return true;
+			} catch (QueueReachedMaxCapacityException e) {
+				// Retries until the deadline.
+			}
+		}
+		return false;
+	}
+
+	private void countQueueOverflow(QueueOverflowPolicy policy) {
+		queueOverflowCounts.incrementAndGet(policy.ordinal());
+	}
+
+	/**
+	 * Marks the segment of the key as dirty before its update is queued, so
+	 * that an update which is lost with the queue on a crash is caught by
+	 * recovering the dirty segments, instead of a full rebuild.
+	 * {@link HashTreesStore} implementations write the dirty bit only when it
+	 * is not set already, so the updates on a segment cost one write until
+	 * the segment is rebuilt.
+	 * 
+	 * @param key
+	 * @throws IOException
+	 */
+	private void setDirtySegmentBeforeEnque(final ByteBuffer key)
+			throws IOException {
+		long treeId = treeIdProvider.getTreeId(key.array());
+		checkUnappliedUpdates(treeId);
+		htStore.setDirtySegment(treeId,
+				segIdProvider.getSegmentId(key.array()));
+	}
+
+	/**
+	 * On the first use of a tree, checks whether an earlier instance left
+	 * queued updates of the tree unapplied, by crashing before the queues are
+	 * drained. With non blocking calls, records that this instance queues the
+	 * updates of the tree, until {@link #stop()} drains the queues.
+	 * 
+	 * @param treeId
+	 * @throws IOException
+	 */
+	private void checkUnappliedUpdates(long treeId) throws IOException {
+		if (treesCheckedForUnappliedUpdates.contains(treeId))
+			return;
+		synchronized (treesCheckedForUnappliedUpdates) {
+			if (treesCheckedForUnappliedUpdates.contains(treeId))
+				return;
+			if (Arrays.equals(UNAPPLIED_UPDATES,
+					getStoreMetaData(UNAPPLIED_UPDATES_META_DATA + treeId)))
+				treesToRecover.add(treeId);
+			else if (enabledNonBlockingCalls)
+				putStoreMetaData(UNAPPLIED_UPDATES_META_DATA + treeId,
+						UNAPPLIED_UPDATES);
+			treesCheckedForUnappliedUpdates.add(treeId);
+		}
+	}
+
+	/**
+	 * Clears the records of {@link #checkUnappliedUpdates(long)} once the
+	 * queues are drained. Trees which still have to be recovered keep their
+	 * records, so that the next instance recovers them.
+	 * 
+	 * @throws IOException
+	 */
+	private void clearUnappliedUpdates() throws IOException {
+		synchronized (treesCheckedForUnappliedUpdates) {
+			for (long treeId : treesCheckedForUnappliedUpdates)
+				if (!treesToRecover.contains(treeId))
+					putStoreMetaData(UNAPPLIED_UPDATES_META_DATA + treeId,
+							NO_UNAPPLIED_UPDATES);
+			treesCheckedForUnappliedUpdates.clear();
+		}
+	}
+
+	/**
+	 * Makes the next rebuild of the tree recover its dirty segments from
+	 * {@link Store}. Used when an update could not be applied in order.
+	 * Rebuilding the dirty segment alone would not help, as the segment does
+	 * not have the update. The segment of the update is already marked dirty
+	 * by {@link #setDirtySegmentBeforeEnque(ByteBuffer)}, and the record of
+	 * {@link #checkUnappliedUpdates(long)} is kept until the recovery, so
+	 * that it survives restarts.
+	 * 
+	 * @param treeId
+	 */
+	private void scheduleRecovery(long treeId) {
+		treesToRecover.add(treeId);
+	}
+
+	private void recoveredUnappliedUpdates(long treeId) throws IOException {
+		if (!enabledNonBlockingCalls)
+			putStoreMetaData(UNAPPLIED_UPDATES_META_DATA + treeId,
+					NO_UNAPPLIED_UPDATES);
+	}
+
+	/**
+	 * Each non blocking worker owns a contiguous range of segment ids, so all
+	 * the operations on a key are applied by the same worker in order.
+	 * 
+	 */
+	private HTDataUpdater getDataUpdater(final ByteBuffer key) {
+		HTDataUpdater[] updaters = bgDataUpdaters;
+		if (updaters.length == 1)
+			return updaters[0];
+		long segId = (segIdProvider.getSegmentId(key.array()) & 0xffffffffL)
+				% segmentsCount;
+		return updaters[(int) (segId * updaters.length / segmentsCount)];
 	}
 
 	@Override
@@ -168,106 +811,582 @@ public class HashTreesImpl implements HashTrees, Service {
 	private void hRemoveInternal(HTOperation operation, final ByteBuffer key)
 			throws IOException {
 		if (enabledNonBlockingCalls) {
-			List<ByteBuffer> input = new ArrayList<ByteBuffer>();
-			input.add(key);
-			bgDataUpdater.enque(Pair.create(operation, input));
+			setDirtySegmentBeforeEnque(key);
+			if (digestAtEnqueue) {
+				notifier.preHRemove(key);
+				enquePendingDigest(operation, key, REMOVED_DIGEST);
+				notifier.postHRemove(key);
+			} else
+				enque(operation, key, null);
 		} else {
 			hRemoveInternal(key);
 		}
 	}
 
-	private void hRemoveInternal(final ByteBuffer key) throws IOException {
-		notifier.preHRemove(key);
-		long treeId = treeIdProvider.getTreeId(key.array());
-		int segId = segIdProvider.getSegmentId(key.array());
-		htStore.setDirtySegment(treeId, segId);
-		htStore.deleteSegmentData(treeId, segId, key);
-		notifier.postHRemove(key);
+	private void hRemoveInternal(final ByteBuffer key) throws IOException {
+		notifier.preHRemove(key);
+		removeDigest(key);
+		notifier.postHRemove(key);
+	}
+
+	private void removeDigest(final ByteBuffer key) throws IOException {
+		long treeId = treeIdProvider.getTreeId(key.array());
+		int segId = segIdProvider.getSegmentId(key.array());
+		htStore.setDirtySegment(treeId, segId);
+		if (incrementalLeafHashing) {
+			Lock segmentLock = getSegmentLock(treeId, segId);
+			segmentLock.lock();
+			try {
+				updateLeafHash(treeId, segId, key, null);
+				htStore.deleteSegmentData(treeId, segId, key);
+			} finally {
+				segmentLock.unlock();
+			}
+		} else
+			htStore.deleteSegmentData(treeId, segId, key);
+	}
+
+	/**
+	 * Writes the digests of all the pairs with one
+	 * {@link ExtendedHashTreesStore#applyBatch(long, List, List)} call per
+	 * tree. Non blocking calls, incremental leaf hashing which has to read the
+	 * old digest of each key under the segment lock, and stores which do not
+	 * support batches fall back to {@link #hPut(ByteBuffer, ByteBuffer)} on
+	 * each pair.
+	 */
+	@Override
+	public void hPutAll(final List<KeyValue> keyValuePairs)
+			throws IOException {
+		if (enabledNonBlockingCalls || incrementalLeafHashing
+				|| extHtStore == null) {
+			for (KeyValue keyValuePair : keyValuePairs)
+				hPut(ByteBuffer.wrap(keyValuePair.getKey()),
+						ByteBuffer.wrap(keyValuePair.getValue()));
+			return;
+		}
+		for (KeyValue keyValuePair : keyValuePairs)
+			notifier.preHPut(ByteBuffer.wrap(keyValuePair.getKey()),
+					ByteBuffer.wrap(keyValuePair.getValue()));
+		Digester digester = digesters.get();
+		Map<Long, List<SegmentData>> treeIdAndSegData = new HashMap<>();
+		for (KeyValue keyValuePair : keyValuePairs) {
+			ByteBuffer key = ByteBuffer.wrap(keyValuePair.getKey());
+			ByteBuffer digest = ByteBuffer.wrap(digester.digest(keyValuePair
+					.getValue()));
+			addSegmentData(treeIdAndSegData, key, digest);
+		}
+		for (Map.Entry<Long, List<SegmentData>> entry : treeIdAndSegData
+				.entrySet())
+			extHtStore.applyBatch(entry.getKey(),
+					sortBySegIdAndKey(entry.getValue()),
+					Collections.<SegmentData> emptyList());
+		for (KeyValue keyValuePair : keyValuePairs)
+			notifier.postHPut(ByteBuffer.wrap(keyValuePair.getKey()),
+					ByteBuffer.wrap(keyValuePair.getValue()));
+	}
+
+	/**
+	 * Deletes all the keys with one
+	 * {@link ExtendedHashTreesStore#applyBatch(long, List, List)} call per
+	 * tree. Falls
+	 * back to {@link #hRemove(ByteBuffer)} on each key in the same cases as
+	 * {@link #hPutAll(List)}.
+	 */
+	@Override
+	public void hRemoveAll(final List<ByteBuffer> keys) throws IOException {
+		if (enabledNonBlockingCalls || incrementalLeafHashing
+				|| extHtStore == null) {
+			for (ByteBuffer key : keys)
+				hRemove(key);
+			return;
+		}
+		for (ByteBuffer key : keys)
+			notifier.preHRemove(key);
+		Map<Long, List<SegmentData>> treeIdAndSegData = new HashMap<>();
+		for (ByteBuffer key : keys)
+			addSegmentData(treeIdAndSegData, key, null);
+		for (Map.Entry<Long, List<SegmentData>> entry : treeIdAndSegData
+				.entrySet())
+			extHtStore.applyBatch(entry.getKey(),
+					Collections.<SegmentData> emptyList(),
+					sortBySegIdAndKey(entry.getValue()));
+		for (ByteBuffer key : keys)
+			notifier.postHRemove(key);
+	}
+
+	private void addSegmentData(Map<Long, List<SegmentData>> treeIdAndSegData,
+			ByteBuffer key, ByteBuffer digest) {
+		long treeId = treeIdProvider.getTreeId(key.array());
+		int segId = segIdProvider.getSegmentId(key.array());
+		List<SegmentData> segData = treeIdAndSegData.get(treeId);
+		if (segData == null) {
+			segData = new ArrayList<>();
+			treeIdAndSegData.put(treeId, segData);
+		}
+		segData.add(new SegmentData(segId, key, digest));
+	}
+
+	/**
+	 * Sorting is stable, so if a key is repeated, its last entry is still
+	 * applied last.
+	 */
+	/**
+	 * Stores can return the hashes in any order, see
+	 * {@link HashTreesStore#getSegmentHashes(long, java.util.Collection)}.
+	 */
+	private static List<SegmentHash> sortByNodeId(
+			List<SegmentHash> segmentHashes) {
+		List<SegmentHash> result = new ArrayList<SegmentHash>(segmentHashes);
+		Collections.sort(result, new Comparator<SegmentHash>() {
+
+			@Override
+			public int compare(SegmentHash left, SegmentHash right) {
+				return compareSegNodeIds(left, right);
+			}
+		});
+		return result;
+	}
+
+	private static List<SegmentData> sortBySegIdAndKey(
+			List<SegmentData> segData) {
+		Collections.sort(segData, new Comparator<SegmentData>() {
+
+			@Override
+			public int compare(SegmentData left, SegmentData right) {
+				if (left.getSegId() != right.getSegId())
+					return left.getSegId() < right.getSegId() ? -1 : 1;
+				return compareSegmentKeys(left, right);
+			}
+		});
+		return segData;
+	}
+
+	private Lock getSegmentLock(long treeId, int segId) {
+		int hash = (int) (treeId ^ (treeId >>> 32)) * 31 + segId;
+		return segmentLocks.getAt((hash & Integer.MAX_VALUE)
+				% segmentLocks.size());
+	}
+
+	/**
+	 * Leaf hash is maintained as the sum of the hashes of its (key, digest)
+	 * pairs. So replacing the digest of a key needs only the old digest of the
+	 * key, and not the whole segment. Should be called while holding the
+	 * segment lock.
+	 * 
+	 * @param treeId
+	 * @param segId
+	 * @param key
+	 * @param newDigest
+	 *            , null if the key is removed.
+	 * @throws IOException
+	 */
+	private void updateLeafHash(long treeId, int segId, ByteBuffer key,
+			ByteBuffer newDigest) throws IOException {
+		Digester digester = digesters.get();
+		int leafId = getLeafIdFromSegmentId(segId);
+		SegmentHash leafHash = htStore.getSegmentHash(treeId, leafId);
+		byte[] sum = (leafHash == null) ? new byte[digestAlgorithm
+				.getDigestLength()] : leafHash.getHash().clone();
+		SegmentData oldData = htStore.getSegmentData(treeId, segId, key);
+		if (oldData != null)
+			ByteUtils.subtract(sum,
+					digestKeyAndDigest(digester, key, oldData.digest));
+		if (newDigest != null)
+			ByteUtils.add(sum, digestKeyAndDigest(digester, key, newDigest));
+		htStore.putSegmentHash(treeId, leafId, ByteBuffer.wrap(sum));
+	}
+
+	private static byte[] digestKeyAndDigest(Digester digester,
+			ByteBuffer key, ByteBuffer digest) {
+		byte[] keyBytes = key.array();
+		byte[] digestBytes = digest.array();
+		digester.updateInt(keyBytes.length);
+		digester.update(keyBytes);
+		digester.updateInt(digestBytes.length);
+		digester.update(digestBytes);
+		return digester.digest();
+	}
+
+	@Override
+	public SyncDiffResult synch(long treeId, final HashTrees remoteTree)
+			throws IOException {
+		return synch(treeId, remoteTree, SyncType.UPDATE);
+	}
+
+	@Override
+	public SyncDiffResult synch(long treeId, final HashTrees remoteTree,
+			SyncType syncType) throws IOException {
+		validateRemoteSettings(remoteTree);
+		if (lockProvider.acquireLock(treeId)) {
+			try {
+				boolean doUpdate = (syncType == SyncType.UPDATE) ? true : false;
+				if (syncMode == SyncMode.PUSH_HASHES)
+					return synchByPushingHashes(treeId, remoteTree, doUpdate);
+				if (syncMode == SyncMode.FETCH_SUBTREE_HASHES)
+					return synchByFetchingSubtreeHashes(treeId, remoteTree,
+							doUpdate);
+				return synchByPullingHashes(treeId, remoteTree, doUpdate);
+			} finally {
+				lockProvider.releaseLock(treeId);
+			}
+		}
+		return new SyncDiffResult(0, 0);
+	}
+
+	private SyncDiffResult synchByPullingHashes(long treeId,
+			HashTrees remoteTree, boolean doUpdate) throws IOException {
+		PeekingIterator<SegmentHash> localItr = null, remoteItr = null;
+		SegmentHash local, remote;
+
+		List<Integer> pQueue = new ArrayList<Integer>();
+		pQueue.add(ROOT_NODE);
+
+		int totKeyDifferences = 0, totExtrinsicSegments = 0;
+
+		while (!pQueue.isEmpty()) {
+
+			localItr = Iterators.peekingIterator(sortByNodeId(
+					getSegmentHashes(treeId, pQueue)).iterator());
+			remoteItr = Iterators.peekingIterator(sortByNodeId(
+					remoteTree.getSegmentHashes(treeId, pQueue)).iterator());
+			pQueue = new ArrayList<Integer>();
+			List<Integer> mismatchedSegIds = new ArrayList<Integer>();
+
+			while (localItr.hasNext() || remoteItr.hasNext()) {
+				local = localItr.hasNext() ? localItr.peek() : null;
+				remote = remoteItr.hasNext() ? remoteItr.peek() : null;
+
+				int compareRes = compareSegNodeIds(local, remote);
+
+				if (compareRes == 0) {
+					if (!Arrays.equals(local.getHash(), remote.getHash())) {
+						if (isLeafNode(local.getNodeId())) {
+							mismatchedSegIds.add(getSegmentIdFromLeafId(local
+									.getNodeId()));
+						} else
+							pQueue.addAll(getImmediateChildren(
+									local.getNodeId(), noOfChildren));
+
+					}
+					localItr.next();
+					remoteItr.next();
+				} else if (compareRes < 0) {
+					totKeyDifferences += updateRemoteTreeWithMissingSegment(
+							treeId, local.getNodeId(), remoteTree, doUpdate);
+					localItr.next();
+				} else {
+					if (doUpdate)
+						remoteTree.deleteTreeNode(treeId, remote.getNodeId());
+					remoteItr.next();
+					totExtrinsicSegments += 1;
+				}
+			}
+			totKeyDifferences += syncSegments(treeId, mismatchedSegIds,
+					remoteTree, doUpdate);
+		}
+		return new SyncDiffResult(totKeyDifferences, totExtrinsicSegments);
+	}
+
+	/**
+	 * Sends the local hashes of each level to the remote tree, and descends
+	 * only into the node ids returned by
+	 * {@link HashTrees#compareSegmentHashes(long, List)}. The remote tree does
+	 * not send its hashes back, so the response carries only the differences.
+	 * 
+	 */
+	private SyncDiffResult synchByPushingHashes(long treeId,
+			HashTrees remoteTree, boolean doUpdate) throws IOException {
+		List<Integer> pQueue = new ArrayList<Integer>();
+		pQueue.add(ROOT_NODE);
+
+		int totKeyDifferences = 0, totExtrinsicSegments = 0;
+
+		while (!pQueue.isEmpty()) {
+			List<SegmentHash> localHashes = new ArrayList<SegmentHash>(
+					pQueue.size());
+			Set<Integer> localNodeIds = new TreeSet<Integer>();
+			for (SegmentHash local : getSegmentHashes(treeId, pQueue)) {
+				localHashes.add(local);
+				localNodeIds.add(local.getNodeId());
+			}
+			for (int nodeId : pQueue) {
+				if (!localNodeIds.contains(nodeId))
+					localHashes.add(new SegmentHash(nodeId, ByteBuffer
+							.wrap(EMPTY_HASH)));
+			}
+
+			List<Integer> diffNodeIds = new ArrayList<Integer>(
+					remoteTree.compareSegmentHashes(treeId, localHashes));
+			Collections.sort(diffNodeIds);
+			pQueue = new ArrayList<Integer>();
+			List<Integer> mismatchedSegIds = new ArrayList<Integer>();
+
+			for (int nodeId : diffNodeIds) {
+				if (!localNodeIds.contains(nodeId)) {
+					if (doUpdate)
+						remoteTree.deleteTreeNode(treeId, nodeId);
+					totExtrinsicSegments += 1;
+				} else if (isLeafNode(nodeId)) {
+					mismatchedSegIds.add(getSegmentIdFromLeafId(nodeId));
+				} else
+					pQueue.addAll(getImmediateChildren(nodeId, noOfChildren));
+			}
+			totKeyDifferences += syncSegments(treeId, mismatchedSegIds,
+					remoteTree, doUpdate);
+		}
+		return new SyncDiffResult(totKeyDifferences, totExtrinsicSegments);
+	}
+
+	/**
+	 * Fetches the hashes of several levels below the mismatched nodes in one
+	 * call, and compares them level by level locally. Near the root only a few
+	 * nodes mismatch, so deep subtrees are fetched. As the no of mismatched
+	 * nodes grows, the depth is reduced to keep the no of hashes fetched in
+	 * one call under {@link #SUBTREE_HASHES_FETCH_LIMIT}.
+	 * 
+	 */
+	private SyncDiffResult synchByFetchingSubtreeHashes(long treeId,
+			HashTrees remoteTree, boolean doUpdate) throws IOException {
+		List<Integer> pQueue = new ArrayList<Integer>();
+		pQueue.add(ROOT_NODE);
+
+		int totKeyDifferences = 0, totExtrinsicSegments = 0;
+
+		while (!pQueue.isEmpty()) {
+			int depth = getSubtreeFetchDepth(pQueue.size());
+			Map<Integer, byte[]> localHashes = toHashesMap(getSubtreeHashes(
+					treeId, pQueue, depth));
+			Map<Integer, byte[]> remoteHashes = toHashesMap(remoteTree
+					.getSubtreeHashes(treeId, pQueue, depth));
+
+			List<Integer> levelNodeIds = pQueue;
+			pQueue = new ArrayList<Integer>();
+			List<Integer> mismatchedSegIds = new ArrayList<Integer>();
+			for (int level = 0; (level <= depth)
+					&& !levelNodeIds.isEmpty(); level++) {
+				List<Integer> nextLevelNodeIds = new ArrayList<Integer>();
+				for (int nodeId : levelNodeIds) {
+					byte[] local = localHashes.get(nodeId);
+					byte[] remote = remoteHashes.get(nodeId);
+					if (local != null && remote != null) {
+						if (Arrays.equals(local, remote))
+							continue;
+						if (isLeafNode(nodeId))
+							mismatchedSegIds
+									.add(getSegmentIdFromLeafId(nodeId));
+						else if (level < depth)
+							nextLevelNodeIds.addAll(getImmediateChildren(
+									nodeId, noOfChildren));
+						else
+							pQueue.addAll(getImmediateChildren(nodeId,
+									noOfChildren));
+					} else if (local != null) {
+						totKeyDifferences += updateRemoteTreeWithMissingSegment(
+								treeId, nodeId, remoteTree, doUpdate);
+					} else if (remote != null) {
+						if (doUpdate)
+							remoteTree.deleteTreeNode(treeId, nodeId);
+						totExtrinsicSegments += 1;
+					}
+				}
+				levelNodeIds = nextLevelNodeIds;
+			}
+			totKeyDifferences += syncSegments(treeId, mismatchedSegIds,
+					remoteTree, doUpdate);
+		}
+		return new SyncDiffResult(totKeyDifferences, totExtrinsicSegments);
+	}
+
+	/**
+	 * Returns the maximum depth, for which the subtrees of given no of nodes
+	 * have at most {@link #SUBTREE_HASHES_FETCH_LIMIT} nodes in total.
+	 * 
+	 * @param noOfNodes
+	 * @return
+	 */
+	private int getSubtreeFetchDepth(int noOfNodes) {
+		int depth = 0;
+		long subtreeNodesCount = 1, levelNodesCount = 1;
+		while (depth < height) {
+			levelNodesCount *= noOfChildren;
+			long fetchCount = (subtreeNodesCount + levelNodesCount) * noOfNodes;
+			if (fetchCount > SUBTREE_HASHES_FETCH_LIMIT)
+				break;
+			subtreeNodesCount += levelNodesCount;
+			depth++;
+		}
+		return depth;
+	}
+
+	private static Map<Integer, byte[]> toHashesMap(
+			List<SegmentHash> segmentHashes) {
+		Map<Integer, byte[]> result = new HashMap<Integer, byte[]>();
+		for (SegmentHash segmentHash : segmentHashes)
+			result.put(segmentHash.getNodeId(), segmentHash.getHash());
+		return result;
 	}
 
-	@Override
-	public SyncDiffResult synch(long treeId, final HashTrees remoteTree)
-			throws IOException {
-		return synch(treeId, remoteTree, SyncType.UPDATE);
+	/**
+	 * Synchs the given mismatched segments. Segments are fetched from the
+	 * remote tree in batches through
+	 * {@link HashTrees#getSegments(long, List)}. Size of the local segments is
+	 * used as an estimate of the remote segments, and a batch is closed once
+	 * the estimate exceeds maxSegmentsBatchBytes. A local segment which alone
+	 * exceeds maxSegmentsBatchBytes is not batched, but streamed through
+	 * {@link #syncSegment(long, int, HashTrees, boolean)}. The remote tree caps
+	 * its responses on its own, see
+	 * {@link #syncSegmentsBatch(long, Map, HashTrees, boolean)}.
+	 * 
+	 */
+	private int syncSegments(long treeId, List<Integer> segIds,
+			HashTrees remoteTree, boolean doUpdate) throws IOException {
+		int totKeyDifferences = 0;
+		long batchBytes = 0;
+		Map<Integer, List<SegmentData>> batch = new TreeMap<Integer, List<SegmentData>>();
+		for (int segId : segIds) {
+			List<SegmentData> localSegment = new ArrayList<SegmentData>();
+			long segmentBytes = 0;
+			Iterator<SegmentData> localSegmentItr = getSegmentIterator(treeId,
+					segId);
+			while (localSegmentItr.hasNext()
+					&& segmentBytes <= maxSegmentsBatchBytes) {
+				SegmentData sd = localSegmentItr.next();
+				localSegment.add(sd);
+				segmentBytes += getSizeInBytes(sd);
+			}
+			if (segmentBytes > maxSegmentsBatchBytes) {
+				totKeyDifferences += syncSegment(treeId, segId, remoteTree,
+						doUpdate);
+				continue;
+			}
+			if (!batch.isEmpty()
+					&& (batchBytes + segmentBytes) > maxSegmentsBatchBytes) {
+				totKeyDifferences += syncSegmentsBatch(treeId, batch,
+						remoteTree, doUpdate);
+				batch.clear();
+				batchBytes = 0;
+			}
+			batch.put(segId, localSegment);
+			batchBytes += segmentBytes;
+		}
+		if (!batch.isEmpty())
+			totKeyDifferences += syncSegmentsBatch(treeId, batch, remoteTree,
+					doUpdate);
+		return totKeyDifferences;
 	}
 
-	@Override
-	public SyncDiffResult synch(long treeId, final HashTrees remoteTree,
-			SyncType syncType) throws IOException {
-		if (lockProvider.acquireLock(treeId)) {
-			try {
-				boolean doUpdate = (syncType == SyncType.UPDATE) ? true : false;
+	/**
+	 * Synchs a batch of segments. The remote tree can cut its response to
+	 * {@link HashTrees#getSegments(long, List)}, so only the segments before
+	 * the last returned one are known to be complete. The last returned
+	 * segment is continued through
+	 * {@link HashTrees#getSegmentPage(long, int, ByteBuffer, int)}, and the
+	 * segments after it are requested again.
+	 * 
+	 */
+	private int syncSegmentsBatch(long treeId,
+			Map<Integer, List<SegmentData>> localSegments,
+			HashTrees remoteTree, boolean doUpdate) throws IOException {
+		SegmentUpdates updates = new SegmentUpdates(remoteTree, doUpdate,
+				segmentPageSize);
+		List<Integer> pendingSegIds = new ArrayList<Integer>(
+				localSegments.keySet());
+		while (!pendingSegIds.isEmpty()) {
+			List<SegmentData> response = remoteTree.getSegments(treeId,
+					pendingSegIds);
+			Map<Integer, List<SegmentData>> remoteSegments = new HashMap<Integer, List<SegmentData>>();
+			for (SegmentData sd : response) {
+				List<SegmentData> remoteSegment = remoteSegments.get(sd
+						.getSegId());
+				if (remoteSegment == null) {
+					remoteSegment = new ArrayList<SegmentData>();
+					remoteSegments.put(sd.getSegId(), remoteSegment);
+				}
+				remoteSegment.add(sd);
+			}
 
-				PeekingIterator<SegmentHash> localItr = null, remoteItr = null;
-				SegmentHash local, remote;
-
-				List<Integer> pQueue = new ArrayList<Integer>();
-				pQueue.add(ROOT_NODE);
-
-				int totKeyDifferences = 0, totExtrinsicSegments = 0;
-
-				while (!pQueue.isEmpty()) {
-
-					localItr = Iterators.peekingIterator(getSegmentHashes(
-							treeId, pQueue).iterator());
-					remoteItr = Iterators.peekingIterator(remoteTree
-							.getSegmentHashes(treeId, pQueue).iterator());
-					pQueue = new ArrayList<Integer>();
-
-					while (localItr.hasNext() || remoteItr.hasNext()) {
-						local = localItr.hasNext() ? localItr.peek() : null;
-						remote = remoteItr.hasNext() ? remoteItr.peek() : null;
-
-						int compareRes = compareSegNodeIds(local, remote);
-
-						if (compareRes == 0) {
-							if (!Arrays.equals(local.getHash(),
-									remote.getHash())) {
-								if (isLeafNode(local.getNodeId())) {
-									totKeyDifferences += syncSegment(treeId,
-											getSegmentIdFromLeafId(local
-													.getNodeId()), remoteTree,
-											doUpdate);
-								} else
-									pQueue.addAll(getImmediateChildren(
-											local.getNodeId(), noOfChildren));
-
-							}
-							localItr.next();
-							remoteItr.next();
-						} else if (compareRes < 0) {
-							totKeyDifferences += updateRemoteTreeWithMissingSegment(
-									treeId, local.getNodeId(), remoteTree,
-									doUpdate);
-							localItr.next();
-						} else {
-							if (doUpdate)
-								remoteTree.deleteTreeNode(treeId,
-										remote.getNodeId());
-							remoteItr.next();
-							totExtrinsicSegments += 1;
-						}
-					}
+			SegmentData lastSegData = response.isEmpty() ? null : response
+					.get(response.size() - 1);
+			int noOfServedSegments = (lastSegData == null) ? pendingSegIds
+					.size() : pendingSegIds.indexOf(lastSegData.getSegId()) + 1;
+			if (noOfServedSegments == 0)
+				throw new IOException("Remote tree returned segment "
+						+ lastSegData.getSegId() + " which was not requested.");
+			for (int i = 0; i < noOfServedSegments; i++) {
+				int segId = pendingSegIds.get(i);
+				List<SegmentData> remoteSegment = remoteSegments.get(segId);
+				Iterator<SegmentData> remoteSegmentItr = (remoteSegment == null) ? Collections
+						.<SegmentData> emptyIterator() : remoteSegment
+						.iterator();
+				if (lastSegData != null && segId == lastSegData.getSegId())
+					remoteSegmentItr = Iterators.concat(remoteSegmentItr,
+							new RemoteSegmentPageIterator(remoteTree, treeId,
+									segId, segmentPageSize,
+									getKeyAfter(lastSegData.getKey())));
+				try {
+					diffSegment(localSegments.get(segId).iterator(),
+							remoteSegmentItr, updates);
+				} catch (HashTreesCustomRuntimeException e) {
+					if (e.getCause() instanceof IOException)
+						throw (IOException) e.getCause();
+					throw e;
 				}
-				return new SyncDiffResult(totKeyDifferences,
-						totExtrinsicSegments);
-			} finally {
-				lockProvider.releaseLock(treeId);
 			}
+			pendingSegIds = pendingSegIds.subList(noOfServedSegments,
+					pendingSegIds.size());
 		}
-		return new SyncDiffResult(0, 0);
+		return updates.flush();
 	}
 
+	/**
+	 * Synchs a single segment by streaming both the local and the remote
+	 * segment in pages of segmentPageSize entries. Updates are sent to the
+	 * remote tree as soon as a page worth of them is collected, so the memory
+	 * used does not depend on the size of the segment.
+	 * 
+	 */
 	private int syncSegment(long treeId, int segId, HashTrees remoteTree,
 			boolean doUpdate) throws IOException {
+		SegmentUpdates updates = new SegmentUpdates(remoteTree, doUpdate,
+				segmentPageSize);
+		try {
+			diffSegment(getSegmentIterator(treeId, segId),
+					new RemoteSegmentPageIterator(remoteTree, treeId, segId,
+							segmentPageSize), updates);
+		} catch (HashTreesCustomRuntimeException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw e;
+		}
+		return updates.flush();
+	}
+
+	/**
+	 * The key immediately after the given key is the key followed by a zero
+	 * byte.
+	 */
+	private static byte[] getKeyAfter(byte[] key) {
+		return Arrays.copyOf(key, key.length + 1);
+	}
+
+	private static long getSizeInBytes(SegmentData sd) {
+		return sd.bufferForKey().remaining()
+				+ sd.bufferForDigest().remaining();
+	}
+
+	/**
+	 * Merges the sorted (key,digest) pairs of a local and a remote segment, and
+	 * passes the key values to be added to and the keys to be removed from the
+	 * remote tree to updates.
+	 * 
+	 */
+	private void diffSegment(Iterator<SegmentData> localSegmentItr,
+			Iterator<SegmentData> remoteSegmentItr, SegmentUpdates updates)
+			throws IOException {
 		PeekingIterator<SegmentData> localDataItr = Iterators
-				.peekingIterator(getSegment(treeId, segId).iterator());
+				.peekingIterator(localSegmentItr);
 		PeekingIterator<SegmentData> remoteDataItr = Iterators
-				.peekingIterator(remoteTree.getSegment(treeId, segId)
-						.iterator());
-
-		List<KeyValue> kvsForAddition = new ArrayList<KeyValue>();
-		List<ByteBuffer> keysForRemoval = new ArrayList<ByteBuffer>();
+				.peekingIterator(remoteSegmentItr);
 
 		SegmentData local, remote;
 		while (localDataItr.hasNext() || remoteDataItr.hasNext()) {
@@ -280,7 +1399,7 @@ public class HashTreesImpl implements HashTrees, Service {
 					ByteBuffer key = ByteBuffer.wrap(local.getKey());
 					byte[] value = store.get(local.getKey());
 					if (value != null)
-						kvsForAddition.add(new KeyValue(key, ByteBuffer
+						updates.addKeyValue(new KeyValue(key, ByteBuffer
 								.wrap(value)));
 				}
 				localDataItr.next();
@@ -289,23 +1408,14 @@ public class HashTreesImpl implements HashTrees, Service {
 				ByteBuffer key = ByteBuffer.wrap(local.getKey());
 				byte[] value = store.get(local.getKey());
 				if (value != null)
-					kvsForAddition
-							.add(new KeyValue(key, ByteBuffer.wrap(value)));
+					updates.addKeyValue(new KeyValue(key, ByteBuffer
+							.wrap(value)));
 				localDataItr.next();
 			} else {
-				keysForRemoval.add(ByteBuffer.wrap(remote.getKey()));
+				updates.removeKey(ByteBuffer.wrap(remote.getKey()));
 				remoteDataItr.next();
 			}
 		}
-
-		if (doUpdate) {
-			if (kvsForAddition.size() > 0)
-				remoteTree.sPut(kvsForAddition);
-			if (keysForRemoval.size() > 0)
-				remoteTree.sRemove(keysForRemoval);
-		}
-
-		return kvsForAddition.size() + keysForRemoval.size();
 	}
 
 	private int updateRemoteTreeWithMissingSegment(long treeId,
@@ -345,13 +1455,167 @@ public class HashTreesImpl implements HashTrees, Service {
 	@Override
 	public SegmentHash getSegmentHash(long treeId, int nodeId)
 			throws IOException {
+		if (nodeId < cachedNodesCount) {
+			ByteBuffer hash = getTopNodeHashes(treeId).get(nodeId);
+			return (hash == null) ? null : new SegmentHash(nodeId,
+					hash.duplicate());
+		}
 		return htStore.getSegmentHash(treeId, nodeId);
 	}
 
 	@Override
 	public List<SegmentHash> getSegmentHashes(long treeId,
 			final List<Integer> nodeIds) throws IOException {
-		return htStore.getSegmentHashes(treeId, nodeIds);
+		if (cachedNodesCount == 0)
+			return htStore.getSegmentHashes(treeId, nodeIds);
+		TopNodeHashes cachedHashes = getTopNodeHashes(treeId);
+		List<Integer> storedNodeIds = new ArrayList<>();
+		for (int nodeId : nodeIds)
+			if (nodeId >= cachedNodesCount)
+				storedNodeIds.add(nodeId);
+		List<SegmentHash> result = new ArrayList<>(nodeIds.size());
+		for (int nodeId : nodeIds) {
+			if (nodeId < cachedNodesCount) {
+				ByteBuffer hash = cachedHashes.get(nodeId);
+				if (hash != null)
+					result.add(new SegmentHash(nodeId, hash.duplicate()));
+			}
+		}
+		if (!storedNodeIds.isEmpty())
+			result.addAll(htStore.getSegmentHashes(treeId, storedNodeIds));
+		return result;
+	}
+
+	/**
+	 * Returns the cached hashes of the top levels of the tree. Those are read
+	 * from the store on the first use.
+	 * 
+	 * @param treeId
+	 * @return
+	 * @throws IOException
+	 */
+	private TopNodeHashes getTopNodeHashes(long treeId) throws IOException {
+		TopNodeHashes hashes = topNodeHashes.get(treeId);
+		if (hashes == null) {
+			hashes = new TopNodeHashes(cachedNodesCount);
+			List<Integer> nodeIds = new ArrayList<>(cachedNodesCount);
+			for (int nodeId = 0; nodeId < cachedNodesCount; nodeId++)
+				nodeIds.add(nodeId);
+			for (SegmentHash segHash : htStore.getSegmentHashes(treeId,
+					nodeIds))
+				hashes.load(segHash.getNodeId(), segHash.hash);
+			TopNodeHashes existingHashes = topNodeHashes.putIfAbsent(treeId,
+					hashes);
+			if (existingHashes != null)
+				hashes = existingHashes;
+		}
+		return hashes;
+	}
+
+	@Override
+	public List<SegmentHash> getSubtreeHashes(long treeId,
+			final List<Integer> nodeIds, int depth) throws IOException {
+		Set<Integer> subtreeNodeIds = new TreeSet<Integer>();
+		List<Integer> levelNodeIds = nodeIds;
+		for (int level = 0; (level <= depth)
+				&& !levelNodeIds.isEmpty(); level++) {
+			List<Integer> nextLevelNodeIds = new ArrayList<Integer>();
+			for (int nodeId : levelNodeIds) {
+				if (!subtreeNodeIds.add(nodeId) || isLeafNode(nodeId))
+					continue;
+				nextLevelNodeIds.addAll(getImmediateChildren(nodeId,
+						noOfChildren));
+			}
+			levelNodeIds = nextLevelNodeIds;
+		}
+		return getSegmentHashes(treeId, new ArrayList<Integer>(subtreeNodeIds));
+	}
+
+	@Override
+	public List<Integer> compareSegmentHashes(long treeId,
+			final List<SegmentHash> segmentHashes) throws IOException {
+		List<Integer> nodeIds = new ArrayList<Integer>(segmentHashes.size());
+		for (SegmentHash segmentHash : segmentHashes)
+			nodeIds.add(segmentHash.getNodeId());
+		Map<Integer, byte[]> localHashes = new HashMap<Integer, byte[]>();
+		for (SegmentHash local : getSegmentHashes(treeId, nodeIds))
+			localHashes.put(local.getNodeId(), local.getHash());
+
+		List<Integer> diffNodeIds = new ArrayList<Integer>();
+		for (SegmentHash remote : segmentHashes) {
+			byte[] localHash = localHashes.get(remote.getNodeId());
+			byte[] remoteHash = remote.getHash();
+			if ((localHash == null) ? remoteHash.length > 0 : !Arrays.equals(
+					localHash, remoteHash))
+				diffNodeIds.add(remote.getNodeId());
+		}
+		return diffNodeIds;
+	}
+
+	/**
+	 * The response is cut once its size exceeds maxSegmentsBatchBytes.
+	 */
+	@Override
+	public List<SegmentData> getSegments(long treeId, List<Integer> segIds)
+			throws IOException {
+		List<SegmentData> result = new ArrayList<SegmentData>();
+		long resultBytes = 0;
+		for (int segId : segIds) {
+			Iterator<SegmentData> itr = getSegmentIterator(treeId, segId);
+			while (itr.hasNext()) {
+				SegmentData sd = itr.next();
+				result.add(sd);
+				resultBytes += getSizeInBytes(sd);
+				if (resultBytes > maxSegmentsBatchBytes)
+					return result;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public List<SegmentData> getSegmentPage(long treeId, int segId,
+			ByteBuffer fromKey, int maxEntries) throws IOException {
+		List<SegmentData> result = new ArrayList<SegmentData>();
+		Iterator<SegmentData> itr = readSegment(treeId, segId, fromKey);
+		while (itr.hasNext() && result.size() < maxEntries)
+			result.add(itr.next());
+		return result;
+	}
+
+	/**
+	 * Returns an iterator over the (key,hash) pairs of the given segment, in
+	 * the key order. Local variant of
+	 * {@link #getSegmentPage(long, int, ByteBuffer, int)}, which does not read
+	 * the complete segment into memory.
+	 * 
+	 * @param treeId
+	 * @param segId
+	 * @return
+	 * @throws IOException
+	 */
+	public Iterator<SegmentData> getSegmentIterator(long treeId, int segId)
+			throws IOException {
+		return readSegment(treeId, segId, ByteBuffer.wrap(EMPTY_KEY));
+	}
+
+	/**
+	 * Stores which do not implement {@link ExtendedHashTreesStore} read the
+	 * complete segment into memory.
+	 */
+	private Iterator<SegmentData> readSegment(long treeId, int segId,
+			final ByteBuffer fromKey) throws IOException {
+		if (extHtStore != null)
+			return extHtStore.getSegmentIterator(treeId, segId, fromKey);
+		final SegmentData fromSegData = new SegmentData(segId, fromKey, null);
+		return Iterators.filter(htStore.getSegment(treeId, segId).iterator(),
+				new Predicate<SegmentData>() {
+
+					@Override
+					public boolean apply(SegmentData sd) {
+						return compareSegmentKeys(sd, fromSegData) >= 0;
+					}
+				});
 	}
 
 	@Override
@@ -382,19 +1646,46 @@ public class HashTreesImpl implements HashTrees, Service {
 		List<Integer> dirtySegments = null;
 		if (lockProvider.acquireLock(treeId)) {
 			try {
+				moveSpilledOperationsToQueue();
+				checkUnappliedUpdates(treeId);
 				notifier.preRebuild(treeId, fullRebuild);
 				long buildBeginTS = System.currentTimeMillis();
-				if (fullRebuild)
-					rebuildCompleteTree(treeId);
-				dirtySegments = htStore.getDirtySegments(treeId);
-				htStore.markSegments(treeId, dirtySegments);
-				List<Integer> dirtyNodes = rebuildLeaves(treeId, dirtySegments);
-				rebuildInternalNodes(treeId, dirtyNodes);
-				htStore.unmarkSegments(treeId, dirtySegments);
+				// Cleared before reading the store, so that the updates missed
+				// while rebuilding schedule another recovery.
+				boolean recover = treesToRecover.remove(treeId);
+				boolean recovered = false;
+				try {
+					if (fullRebuild)
+						rebuildCompleteTree(treeId);
+					else if (recover)
+						recoverDirtySegments(treeId);
+					recovered = true;
+				} finally {
+					if (recover && !recovered)
+						scheduleRecovery(treeId);
+				}
+				if (recover && !treesToRecover.contains(treeId))
+					recoveredUnappliedUpdates(treeId);
+				int noOfRebuiltSegments;
+				if (!hasCurrentDigestFormat(treeId)) {
+					rehashAllSegments(treeId);
+					recordDigestFormat(treeId);
+					noOfRebuiltSegments = segmentsCount;
+				} else {
+					dirtySegments = htStore.getDirtySegments(treeId);
+					htStore.markSegments(treeId, dirtySegments);
+					boolean rehashSegments = !incrementalLeafHashing
+							|| fullRebuild || recover;
+					List<Integer> dirtyNodes = rebuildLeaves(treeId,
+							dirtySegments, rehashSegments, false);
+					rebuildInternalNodes(treeId, dirtyNodes);
+					htStore.unmarkSegments(treeId, dirtySegments);
+					noOfRebuiltSegments = dirtySegments.size();
+				}
 				if (fullRebuild)
 					htStore.setCompleteRebuiltTimestamp(treeId, buildBeginTS);
 				notifier.postRebuild(treeId, fullRebuild);
-				return dirtySegments.size();
+				return noOfRebuiltSegments;
 			} catch (HashTreesCustomRuntimeException e) {
 				if (dirtySegments != null)
 					htStore.markSegments(treeId, dirtySegments);
@@ -402,116 +1693,693 @@ public class HashTreesImpl implements HashTrees, Service {
 				lockProvider.releaseLock(treeId);
 			}
 		}
-		return 0;
+		return 0;
+	}
+
+	/**
+	 * Unlike the digest algorithm, the digest format affects only the hashes
+	 * of the tree nodes, and those can be recomputed from the segment data. So
+	 * the format is recorded per tree, and a tree which was built with a
+	 * different format gets all its segments rehashed on the next rebuild.
+	 * Incremental leaf hashing is recorded as part of the format, as it
+	 * changes the leaf hashes.
+	 * 
+	 * A tree which does not have any format recorded, but has a root hash,
+	 * was built before the formats were recorded, and is treated as
+	 * {@link DigestFormat#V1}. A tree without a root hash has no hashes to
+	 * migrate, so it is recorded with the current format. Stores which do not
+	 * keep meta data can not tell the format, and their trees are always
+	 * treated as having the current one.
+	 * 
+	 * @param treeId
+	 * @return
+	 * @throws IOException
+	 */
+	private boolean hasCurrentDigestFormat(long treeId) throws IOException {
+		if (treesWithCurrentDigestFormat.contains(treeId) || extHtStore == null)
+			return true;
+		byte[] actualValue = getStoreMetaData(DIGEST_FORMAT_META_DATA
+				+ treeId);
+		if (actualValue == null
+				&& htStore.getSegmentHash(treeId, ROOT_NODE) == null) {
+			recordDigestFormat(treeId);
+			return true;
+		}
+		String actualFormat = (actualValue == null) ? DigestFormat.V1.name()
+				: new String(actualValue, Charsets.UTF_8);
+		if (!actualFormat.equals(treeHashFormat))
+			return false;
+		treesWithCurrentDigestFormat.add(treeId);
+		return true;
+	}
+
+	/**
+	 * Rehashes all the segments of a tree. The segment ids are walked in
+	 * ranges of {@link #FORMAT_MIGRATION_RANGE_SIZE}, and the internal nodes
+	 * above a range are rebuilt before moving to the next one, so the list of
+	 * all the segment ids is never built. Segments without a leaf hash were
+	 * never built, and are skipped, so the migrated tree is the same as a
+	 * tree built with the current format. The segments are neither marked
+	 * nor checked for dirty bits, as the format is recorded only after all of
+	 * them are rehashed, and a crash restarts the migration anyway.
+	 * 
+	 * @param treeId
+	 * @throws IOException
+	 */
+	private void rehashAllSegments(long treeId) throws IOException {
+		for (int from = 0; from < segmentsCount; from += FORMAT_MIGRATION_RANGE_SIZE) {
+			int to = Math.min(segmentsCount, from
+					+ FORMAT_MIGRATION_RANGE_SIZE);
+			List<Integer> nodeIds = new ArrayList<>(to - from);
+			for (int segId = from; segId < to; segId++)
+				nodeIds.add(getLeafIdFromSegmentId(segId));
+			List<Integer> segIds = new ArrayList<>();
+			for (SegmentHash segHash : htStore.getSegmentHashes(treeId,
+					nodeIds))
+				segIds.add(getSegmentIdFromLeafId(segHash.getNodeId()));
+			rebuildInternalNodes(treeId,
+					rebuildLeaves(treeId, segIds, true, true));
+		}
+	}
+
+	private void recordDigestFormat(long treeId) throws IOException {
+		putStoreMetaData(DIGEST_FORMAT_META_DATA + treeId,
+				treeHashFormat.getBytes(Charsets.UTF_8));
+		treesWithCurrentDigestFormat.add(treeId);
+	}
+
+	/**
+	 * This reads all the entries from the {@link Store}, and updates
+	 * {@link HashTreesStore} with those (key,value) pairs, whose digests have
+	 * changed. Also reads all the existing entries from {@link HashTreesStore}
+	 * and if they don't exist on the {@link Store}, removes from
+	 * {@link HashTreesStore}. So the segments are marked dirty only if those
+	 * have changed, and rebuilding an unchanged tree does not write anything.
+	 * 
+	 * If the store is a {@link SegmentOrderedStore}, both stores are read
+	 * sequentially, and merged segment by segment. Otherwise the splits of a
+	 * {@link SplittableStore} are read, and then the keys of
+	 * {@link HashTreesStore} are looked up on the store. The work is split
+	 * into {@link #rebuildParallelism} partitions, which run on
+	 * {@link #rebuildPool}, and each partition writes its changes in batches.
+	 * 
+	 * @param treeId
+	 * @throws IOException
+	 */
+	private void rebuildCompleteTree(final long treeId) throws IOException {
+		List<FullRebuildTask> mergeOrRemoveTasks = new ArrayList<>();
+		List<FullRebuildPartition> partitions = new ArrayList<>();
+		if (store instanceof SegmentOrderedStore) {
+			final SegmentOrderedStore orderedStore = (SegmentOrderedStore) store;
+			for (final int[] segRange : splitSegments())
+				mergeOrRemoveTasks.add(new FullRebuildTask() {
+
+					@Override
+					protected FullRebuildPartition rebuild()
+							throws IOException {
+						return mergeSegments(treeId, orderedStore,
+								segRange[0], segRange[1]);
+					}
+				});
+		} else {
+			List<FullRebuildTask> putTasks = new ArrayList<>();
+			for (final Iterator<Map.Entry<byte[], byte[]>> split : splitStore(
+					treeId))
+				putTasks.add(new FullRebuildTask() {
+
+					@Override
+					protected FullRebuildPartition rebuild()
+							throws IOException {
+						return putChangedDigests(split);
+					}
+				});
+			partitions.addAll(invokeFullRebuildTasks(putTasks));
+			for (final int[] segRange : splitSegments())
+				mergeOrRemoveTasks.add(new FullRebuildTask() {
+
+					@Override
+					protected FullRebuildPartition rebuild()
+							throws IOException {
+						return removeMissingKeys(treeId, segRange[0],
+								segRange[1]);
+					}
+				});
+		}
+		partitions.addAll(invokeFullRebuildTasks(mergeOrRemoveTasks));
+		recordFullRebuild(treeId, partitions);
+	}
+
+	private List<Iterator<Map.Entry<byte[], byte[]>>> splitStore(long treeId)
+			throws IOException {
+		if (rebuildParallelism > 1 && store instanceof SplittableStore)
+			return ((SplittableStore) store).splitIterators(treeId,
+					rebuildParallelism);
+		return Collections.singletonList(store.iterator(treeId));
+	}
+
+	/**
+	 * Splits the segment ids into {@link #rebuildParallelism} contiguous
+	 * ranges.
+	 * 
+	 * @return inclusive (fromSegId, toSegId) pairs.
+	 */
+	private List<int[]> splitSegments() {
+		int noOfRanges = Math.min(rebuildParallelism, segmentsCount);
+		List<int[]> segRanges = new ArrayList<>(noOfRanges);
+		for (int i = 0; i < noOfRanges; i++)
+			segRanges.add(new int[] {
+					(int) ((long) segmentsCount * i / noOfRanges),
+					(int) ((long) segmentsCount * (i + 1) / noOfRanges) - 1 });
+		return segRanges;
+	}
+
+	/**
+	 * Runs a single task on the calling thread, and more tasks concurrently on
+	 * {@link #rebuildPool}.
+	 * 
+	 * @param tasks
+	 * @return results of the tasks.
+	 * @throws IOException
+	 */
+	private List<FullRebuildPartition> invokeFullRebuildTasks(
+			final List<FullRebuildTask> tasks) throws IOException {
+		try {
+			if (tasks.size() == 1)
+				tasks.get(0).invoke();
+			else
+				getRebuildPool().invoke(new RecursiveAction() {
+
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected void compute() {
+						invokeAll(tasks);
+					}
+				});
+		} catch (RuntimeException e) {
+			throw unwrapRebuildException(e);
+		}
+		List<FullRebuildPartition> partitions = new ArrayList<>(tasks.size());
+		for (FullRebuildTask task : tasks)
+			partitions.add(task.getRawResult());
+		return partitions;
+	}
+
+	/**
+	 * Reads the pairs of a split of the store, and writes those whose digests
+	 * have changed.
+	 * 
+	 * @param itr
+	 * @return
+	 * @throws IOException
+	 */
+	private FullRebuildPartition putChangedDigests(
+			Iterator<Map.Entry<byte[], byte[]>> itr) throws IOException {
+		FullRebuildPartition partition = new FullRebuildPartition(this);
+		while (itr.hasNext()) {
+			Map.Entry<byte[], byte[]> pair = itr.next();
+			partition.scannedKeys++;
+			if (hasChangedDigest(pair))
+				partition.put(ByteBuffer.wrap(pair.getKey()),
+						ByteBuffer.wrap(pair.getValue()));
+		}
+		partition.flush();
+		return partition;
+	}
+
+	/**
+	 * Removes the keys of the given segments, which are missing on the store.
+	 * 
+	 * @param treeId
+	 * @param fromSegId
+	 *            , inclusive
+	 * @param toSegId
+	 *            , inclusive
+	 * @return
+	 * @throws IOException
+	 */
+	private FullRebuildPartition removeMissingKeys(long treeId,
+			int fromSegId, int toSegId) throws IOException {
+		FullRebuildPartition partition = new FullRebuildPartition(this);
+		Iterator<SegmentData> segDataItr;
+		if (fromSegId == 0 && toSegId == segmentsCount - 1)
+			segDataItr = htStore.getSegmentDataIterator(treeId);
+		else
+			segDataItr = htStore.getSegmentDataIterator(treeId, fromSegId,
+					toSegId);
+		while (segDataItr.hasNext()) {
+			SegmentData sd = segDataItr.next();
+			if (!store.contains(sd.getKey()))
+				partition.remove(sd.key);
+		}
+		partition.flush();
+		return partition;
+	}
+
+	/**
+	 * Merges the given segments of the store and {@link HashTreesStore}
+	 * instead of looking up each key. Both are read in the (segment,key)
+	 * order, so the merge is a single pass, and nothing is buffered except
+	 * the changes of the partition.
+	 * 
+	 * @param treeId
+	 * @param orderedStore
+	 * @param fromSegId
+	 *            , inclusive
+	 * @param toSegId
+	 *            , inclusive
+	 * @return
+	 * @throws IOException
+	 */
+	private FullRebuildPartition mergeSegments(long treeId,
+			final SegmentOrderedStore orderedStore, int fromSegId, int toSegId)
+			throws IOException {
+		FullRebuildPartition partition = new FullRebuildPartition(this);
+		Iterator<Map.Entry<byte[], byte[]>> storeItr = orderedStore.iterator(
+				treeId, fromSegId, toSegId);
+		PeekingIterator<SegmentData> segDataItr = Iterators
+				.peekingIterator(htStore.getSegmentDataIterator(treeId,
+						fromSegId, toSegId));
+		Digester digester = digesters.get();
+		while (storeItr.hasNext()) {
+			Map.Entry<byte[], byte[]> pair = storeItr.next();
+			partition.scannedKeys++;
+			int segId = segIdProvider.getSegmentId(pair.getKey());
+			int compRes = 1;
+			while (segDataItr.hasNext()
+					&& (compRes = compareSegIdsAndKeys(segDataItr.peek(),
+							segId, pair.getKey())) < 0)
+				partition.remove(segDataItr.next().key);
+			if (compRes == 0
+					&& Arrays.equals(segDataItr.next().getDigest(),
+							digester.digest(pair.getValue())))
+				continue;
+			partition.put(ByteBuffer.wrap(pair.getKey()),
+					ByteBuffer.wrap(pair.getValue()));
+		}
+		while (segDataItr.hasNext())
+			partition.remove(segDataItr.next().key);
+		partition.flush();
+		return partition;
+	}
+
+	private static int compareSegIdsAndKeys(SegmentData sd, int segId,
+			byte[] key) {
+		int compRes = Integer.compare(sd.getSegId(), segId);
+		return (compRes != 0) ? compRes : ByteUtils.compareTo(sd.getKey(),
+				key);
+	}
+
+	private void recordFullRebuild(long treeId,
+			List<FullRebuildPartition> partitions) {
+		long scannedKeys = 0, changedKeys = 0, removedKeys = 0;
+		for (FullRebuildPartition partition : partitions) {
+			scannedKeys += partition.scannedKeys;
+			changedKeys += partition.changedKeys;
+			removedKeys += partition.removedKeys;
+		}
+		fullRebuildScannedKeys.addAndGet(scannedKeys);
+		fullRebuildChangedKeys.addAndGet(changedKeys);
+		fullRebuildRemovedKeys.addAndGet(removedKeys);
+		LOGGER.info("Full rebuild of tree " + treeId + " scanned "
+				+ scannedKeys + " keys, changed " + changedKeys
+				+ " keys, and removed " + removedKeys + " keys.");
+	}
+
+	/**
+	 * Checks whether the digest of the pair differs from the digest on
+	 * {@link HashTreesStore}.
+	 * 
+	 * @param pair
+	 * @return true if the digest is missing or changed.
+	 * @throws IOException
+	 */
+	private boolean hasChangedDigest(Map.Entry<byte[], byte[]> pair)
+			throws IOException {
+		byte[] key = pair.getKey();
+		SegmentData sd = htStore.getSegmentData(treeIdProvider.getTreeId(key),
+				segIdProvider.getSegmentId(key), ByteBuffer.wrap(key));
+		return sd == null
+				|| !Arrays.equals(sd.getDigest(),
+						digesters.get().digest(pair.getValue()));
+	}
+
+	/**
+	 * Same as {@link #rebuildCompleteTree(long)}, but updates only the keys of
+	 * the dirty segments. If the store is a {@link SegmentOrderedStore}, only
+	 * the dirty segments are read from it, and merged with
+	 * {@link HashTreesStore}. Otherwise the store can only be iterated by tree,
+	 * so it is still read completely, but only the values of the dirty
+	 * segments are digested, and only the dirty segments are read from
+	 * {@link HashTreesStore}.
+	 * 
+	 * @param treeId
+	 * @throws IOException
+	 */
+	private void recoverDirtySegments(long treeId) throws IOException {
+		List<Integer> dirtySegments = htStore.getDirtySegments(treeId);
+		if (dirtySegments.isEmpty())
+			return;
+		LOGGER.info("Recovering " + dirtySegments.size()
+				+ " dirty segments of tree " + treeId + " from the store.");
+		if (store instanceof SegmentOrderedStore) {
+			for (int segId : dirtySegments)
+				recoverSegment(treeId, (SegmentOrderedStore) store, segId);
+			return;
+		}
+		Set<Integer> dirtySegIds = new HashSet<>(dirtySegments);
+		Iterator<Map.Entry<byte[], byte[]>> itr = store.iterator(treeId);
+		while (itr.hasNext()) {
+			Map.Entry<byte[], byte[]> pair = itr.next();
+			if (dirtySegIds.contains(segIdProvider.getSegmentId(pair
+					.getKey()))
+					&& hasChangedDigest(pair))
+				hPutInternal(HTOperation.PUT_IF_ABSENT,
+						ByteBuffer.wrap(pair.getKey()),
+						ByteBuffer.wrap(pair.getValue()));
+		}
+		for (int segId : dirtySegments) {
+			Iterator<SegmentData> segDataItr = htStore.getSegmentDataIterator(
+					treeId, segId, segId);
+			while (segDataItr.hasNext()) {
+				SegmentData sd = segDataItr.next();
+				if (!store.contains(sd.getKey()))
+					hRemoveInternal(HTOperation.REMOVE_IF_ABSENT, sd.key);
+			}
+		}
+	}
+
+	/**
+	 * Merges a segment of the store with the segment of
+	 * {@link HashTreesStore}, like
+	 * {@link #mergeSegments(long, SegmentOrderedStore, int, int)}, and applies
+	 * the changes to the tree.
+	 * 
+	 * @param treeId
+	 * @param orderedStore
+	 * @param segId
+	 * @throws IOException
+	 */
+	private void recoverSegment(long treeId,
+			SegmentOrderedStore orderedStore, int segId) throws IOException {
+		Iterator<Map.Entry<byte[], byte[]>> storeItr = orderedStore.iterator(
+				treeId, segId, segId);
+		PeekingIterator<SegmentData> segDataItr = Iterators
+				.peekingIterator(htStore.getSegmentDataIterator(treeId, segId,
+						segId));
+		Digester digester = digesters.get();
+		while (storeItr.hasNext()) {
+			Map.Entry<byte[], byte[]> pair = storeItr.next();
+			int compRes = 1;
+			while (segDataItr.hasNext()
+					&& (compRes = compareSegIdsAndKeys(segDataItr.peek(),
+							segId, pair.getKey())) < 0)
+				hRemoveInternal(HTOperation.REMOVE_IF_ABSENT,
+						segDataItr.next().key);
+			if (compRes == 0
+					&& Arrays.equals(segDataItr.next().getDigest(),
+							digester.digest(pair.getValue())))
+				continue;
+			hPutInternal(HTOperation.PUT_IF_ABSENT,
+					ByteBuffer.wrap(pair.getKey()),
+					ByteBuffer.wrap(pair.getValue()));
+		}
+		while (segDataItr.hasNext())
+			hRemoveInternal(HTOperation.REMOVE_IF_ABSENT, segDataItr.next().key);
+	}
+
+	/**
+	 * Rebuilds the dirty segments, and updates the segment hashes of the
+	 * leaves. With incremental leaf hashing, the leaves are already up to date,
+	 * and they are rehashed only when rehashSegments is set.
+	 * 
+	 * @param treeId
+	 * @param dirtySegments
+	 * @param rehashSegments
+	 * @return corresponding nodeIds of the segments.
+	 * @throws IOException
+	 */
+	private List<Integer> rebuildLeaves(long treeId,
+			final List<Integer> dirtySegments, boolean rehashSegments,
+			boolean ignoreDirtyBits) throws IOException {
+		if (rebuildParallelism > 1
+				&& dirtySegments.size() > LEAF_REBUILD_BATCH_SIZE)
+			return rebuildLeavesInParallel(treeId, dirtySegments,
+					rehashSegments, ignoreDirtyBits);
+		return rebuildLeaves(treeId, dirtySegments, 0, dirtySegments.size(),
+				rehashSegments, ignoreDirtyBits);
+	}
+
+	/**
+	 * Rebuilds the dirty segments in the given range of the list. The leaf
+	 * hashes are digested first, and written in batches of
+	 * {@link #LEAF_REBUILD_BATCH_SIZE}.
+	 * 
+	 * @param treeId
+	 * @param dirtySegments
+	 * @param from
+	 *            , inclusive.
+	 * @param to
+	 *            , exclusive.
+	 * @param rehashSegments
+	 * @param ignoreDirtyBits
+	 *            , rebuilds the segments even if those are not marked as
+	 *            dirty.
+	 * @return corresponding nodeIds of the segments.
+	 * @throws IOException
+	 */
+	private List<Integer> rebuildLeaves(long treeId,
+			final List<Integer> dirtySegments, int from, int to,
+			boolean rehashSegments, boolean ignoreDirtyBits)
+			throws IOException {
+		List<Integer> nodeIds = new ArrayList<>(to - from);
+		List<Integer> hashedNodeIds = new ArrayList<>(LEAF_REBUILD_BATCH_SIZE);
+		List<ByteBuffer> leafHashes = new ArrayList<>(LEAF_REBUILD_BATCH_SIZE);
+		for (int i = from; i < to; i++) {
+			int dirtySegId = dirtySegments.get(i);
+			if (htStore.clearDirtySegment(treeId, dirtySegId)
+					|| ignoreDirtyBits) {
+				int nodeId = getLeafIdFromSegmentId(dirtySegId);
+				if (rehashSegments) {
+					if (incrementalLeafHashing)
+						rehashIncrementalLeaf(treeId, dirtySegId, nodeId);
+					else {
+						hashedNodeIds.add(nodeId);
+						leafHashes.add(digestSegmentData(treeId, dirtySegId));
+						if (hashedNodeIds.size() == LEAF_REBUILD_BATCH_SIZE)
+							putLeafHashes(treeId, hashedNodeIds, leafHashes);
+					}
+				}
+				nodeIds.add(nodeId);
+			}
+		}
+		putLeafHashes(treeId, hashedNodeIds, leafHashes);
+		return nodeIds;
+	}
+
+	private void putLeafHashes(long treeId, List<Integer> nodeIds,
+			List<ByteBuffer> leafHashes) throws IOException {
+		putSegmentHashes(treeId, nodeIds, leafHashes);
+		nodeIds.clear();
+		leafHashes.clear();
+	}
+
+	private void putSegmentHashes(long treeId, List<Integer> nodeIds,
+			List<ByteBuffer> digests) throws IOException {
+		if (nodeIds.isEmpty())
+			return;
+		if (extHtStore != null)
+			extHtStore.putSegmentHashes(treeId, nodeIds, digests);
+		else
+			for (int i = 0; i < nodeIds.size(); i++)
+				htStore.putSegmentHash(treeId, nodeIds.get(i), digests.get(i));
 	}
 
 	/**
-	 * This reads all the entries from the {@link Store}, and updates
-	 * {@link HashTreesStore} with those (key,value) pairs. Also reads all the
-	 * existing entries from {@link HashTreesStore} and if they don't exist on
-	 * the {@link Store}, removes from {@link HashTreesStore}.
+	 * Splits the dirty segments into batches of
+	 * {@link #LEAF_REBUILD_BATCH_SIZE}, and rebuilds them on
+	 * {@link #rebuildPool}. The result and the dirty bits are the same as the
+	 * serial rebuild.
 	 * 
 	 * @param treeId
+	 * @param dirtySegments
+	 * @param rehashSegments
+	 * @param ignoreDirtyBits
+	 * @return corresponding nodeIds of the segments.
 	 * @throws IOException
 	 */
-	private void rebuildCompleteTree(long treeId) throws IOException {
-		Iterator<Map.Entry<byte[], byte[]>> itr = store.iterator(treeId);
-		while (itr.hasNext()) {
-			Map.Entry<byte[], byte[]> pair = itr.next();
-			hPutInternal(HTOperation.PUT_IF_ABSENT,
-					ByteBuffer.wrap(pair.getKey()),
-					ByteBuffer.wrap(pair.getValue()));
-		}
-		Iterator<SegmentData> segDataItr = htStore
-				.getSegmentDataIterator(treeId);
-		while (segDataItr.hasNext()) {
-			SegmentData sd = segDataItr.next();
-			if (!store.contains(sd.getKey())) {
-				hRemoveInternal(HTOperation.REMOVE_IF_ABSENT, sd.key);
-			}
+	private List<Integer> rebuildLeavesInParallel(long treeId,
+			final List<Integer> dirtySegments, boolean rehashSegments,
+			boolean ignoreDirtyBits) throws IOException {
+		try {
+			return getRebuildPool().invoke(
+					new LeafRebuildTask(this, treeId, dirtySegments, 0,
+							dirtySegments.size(), rehashSegments,
+							ignoreDirtyBits));
+		} catch (RuntimeException e) {
+			throw unwrapRebuildException(e);
 		}
 	}
 
 	/**
-	 * Rebuilds the dirty segments, and updates the segment hashes of the
-	 * leaves.
+	 * The pool may rethrow a copy of the exception, which has the original one
+	 * as its cause.
 	 * 
-	 * @param treeId
-	 * @param dirtySegments
-	 * @return corresponding nodeIds of the segments.
+	 * @param e
+	 * @return the exception to be thrown, if it does not carry an IOException.
 	 * @throws IOException
 	 */
-	private List<Integer> rebuildLeaves(long treeId,
-			final List<Integer> dirtySegments) throws IOException {
-		List<Integer> nodeIds = new ArrayList<>();
-		for (int dirtySegId : dirtySegments) {
-			if (htStore.clearDirtySegment(treeId, dirtySegId)) {
-				ByteBuffer digest = digestSegmentData(treeId, dirtySegId);
-				int nodeId = getLeafIdFromSegmentId(dirtySegId);
-				htStore.putSegmentHash(treeId, nodeId, digest);
-				nodeIds.add(nodeId);
+	private static RuntimeException unwrapRebuildException(RuntimeException e)
+			throws IOException {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof RebuildTaskException)
+				throw (IOException) cause.getCause();
+			if (cause instanceof HashTreesCustomRuntimeException)
+				return (HashTreesCustomRuntimeException) cause;
+		}
+		return e;
+	}
+
+	private ForkJoinPool getRebuildPool() {
+		ForkJoinPool pool = rebuildPool;
+		if (pool == null) {
+			synchronized (rebuildPoolLock) {
+				pool = rebuildPool;
+				if (pool == null) {
+					pool = new ForkJoinPool(rebuildParallelism);
+					rebuildPool = pool;
+				}
 			}
 		}
-		return nodeIds;
+		return pool;
+	}
+
+	private void stopRebuildPool() {
+		synchronized (rebuildPoolLock) {
+			if (rebuildPool != null) {
+				rebuildPool.shutdown();
+				rebuildPool = null;
+			}
+		}
+	}
+
+	private void rehashIncrementalLeaf(long treeId, int segId, int nodeId)
+			throws IOException {
+		Digester digester = digesters.get();
+		Lock segmentLock = getSegmentLock(treeId, segId);
+		segmentLock.lock();
+		try {
+			byte[] sum = new byte[digestAlgorithm.getDigestLength()];
+			Iterator<SegmentData> segDataItr = htStore.getSegmentDataIterator(
+					treeId, segId, segId);
+			while (segDataItr.hasNext()) {
+				SegmentData sd = segDataItr.next();
+				ByteUtils.add(sum, digestKeyAndDigest(digester, sd.key,
+						sd.digest));
+			}
+			htStore.putSegmentHash(treeId, nodeId, ByteBuffer.wrap(sum));
+		} finally {
+			segmentLock.unlock();
+		}
 	}
 
 	private ByteBuffer digestSegmentData(long treeId, int segId)
 			throws IOException {
-		List<SegmentData> dirtySegmentData = htStore.getSegment(treeId, segId);
-		List<String> hexStrings = new ArrayList<String>();
-		for (SegmentData sd : dirtySegmentData)
-			hexStrings.add(getHexString(sd.key, sd.digest));
-		return digestHexStrings(hexStrings);
+		return digestFormat.digestSegment(digesters.get(),
+				htStore.getSegmentDataIterator(treeId, segId, segId));
 	}
 
 	/**
-	 * Updates the segment hashes iteratively for each level on the tree.
+	 * Updates the segment hashes iteratively for each level on the tree. The
+	 * dirty parents of a level are tracked in a bitset, and the hashes of
+	 * their children are read in batches. The changed hashes of the cached top
+	 * levels are written to the store at the end.
 	 * 
 	 * @param dirtyNodeIds
 	 * @throws IOException
 	 */
 	private void rebuildInternalNodes(long treeId,
 			final List<Integer> dirtyNodeIds) throws IOException {
-		Set<Integer> parentNodeIds = new TreeSet<Integer>();
-		Set<Integer> nodeIds = new TreeSet<Integer>(dirtyNodeIds);
-		while (!nodeIds.isEmpty()) {
-			for (int nodeId : nodeIds)
-				parentNodeIds.add(getParent(nodeId, noOfChildren));
-			rebuildParentNodes(treeId, parentNodeIds);
-			nodeIds.clear();
-			nodeIds.addAll(parentNodeIds);
-			parentNodeIds.clear();
-			if (nodeIds.contains(ROOT_NODE))
+		BitSet parentIds = new BitSet();
+		for (int nodeId : dirtyNodeIds)
+			parentIds.set(getParent(nodeId, noOfChildren));
+		while (!parentIds.isEmpty()) {
+			rebuildParentNodes(treeId, parentIds);
+			if (parentIds.get(ROOT_NODE))
 				break;
+			BitSet nextParentIds = new BitSet();
+			for (int nodeId = parentIds.nextSetBit(0); nodeId >= 0; nodeId = parentIds
+					.nextSetBit(nodeId + 1))
+				nextParentIds.set(getParent(nodeId, noOfChildren));
+			parentIds = nextParentIds;
 		}
+		flushTopNodeHashes(treeId);
 	}
 
 	/**
 	 * For each parent id, gets all the child hashes, and updates the parent
-	 * hash.
+	 * hash. The child hashes are read with one
+	 * {@link HashTreesStore#getSegmentHashes(long, java.util.Collection)}
+	 * call per {@link #CHILD_HASHES_BATCH_SIZE} children.
 	 * 
 	 * @param parentIds
 	 * @throws IOException
 	 */
-	private void rebuildParentNodes(long treeId, final Set<Integer> parentIds)
+	private void rebuildParentNodes(long treeId, final BitSet parentIds)
 			throws IOException {
-		List<Integer> children;
-		List<ByteBuffer> segHashes = new ArrayList<>(noOfChildren);
-		ByteBuffer segHashBB;
-		SegmentHash segHash;
+		List<Integer> batchParentIds = new ArrayList<>();
+		List<Integer> childIds = new ArrayList<>();
+		for (int parentId = parentIds.nextSetBit(0); parentId >= 0; parentId = parentIds
+				.nextSetBit(parentId + 1)) {
+			batchParentIds.add(parentId);
+			for (int i = 1; i <= noOfChildren; i++)
+				childIds.add(noOfChildren * parentId + i);
+			if (childIds.size() >= CHILD_HASHES_BATCH_SIZE) {
+				rebuildParentNodes(treeId, batchParentIds, childIds);
+				batchParentIds.clear();
+				childIds.clear();
+			}
+		}
+		if (!batchParentIds.isEmpty())
+			rebuildParentNodes(treeId, batchParentIds, childIds);
+	}
 
+	/**
+	 * Updates the hashes of the given parents. childIds has the children of
+	 * each parent in order.
+	 */
+	private void rebuildParentNodes(long treeId, final List<Integer> parentIds,
+			final List<Integer> childIds) throws IOException {
+		Map<Integer, ByteBuffer> childHashes = new HashMap<>(childIds.size());
+		for (SegmentHash childHash : getSegmentHashes(treeId, childIds))
+			childHashes.put(childHash.getNodeId(), childHash.hash);
+		Iterator<Integer> childIdsItr = childIds.iterator();
+		List<ByteBuffer> segHashes = new ArrayList<>(noOfChildren);
+		List<Integer> storedParentIds = new ArrayList<>(parentIds.size());
+		List<ByteBuffer> storedDigests = new ArrayList<>(parentIds.size());
 		for (int parentId : parentIds) {
-			children = getImmediateChildren(parentId, noOfChildren);
-			for (int child : children) {
-				segHash = htStore.getSegmentHash(treeId, child);
-				segHashBB = (segHash == null) ? null : segHash.hash.duplicate();
-				if (segHashBB != null)
-					segHashes.add(segHashBB);
-			}
-			ByteBuffer digest = digestByteBuffers(segHashes);
-			htStore.putSegmentHash(treeId, parentId, digest);
+			for (int i = 0; i < noOfChildren; i++) {
+				ByteBuffer childHash = childHashes.get(childIdsItr.next());
+				segHashes.add((childHash == null) ? null : childHash
+						.duplicate());
+			}
+			ByteBuffer digest = digestFormat.digestNodes(digesters.get(),
+					segHashes);
+			if (parentId < cachedNodesCount)
+				getTopNodeHashes(treeId).put(parentId, digest);
+			else {
+				storedParentIds.add(parentId);
+				storedDigests.add(digest);
+			}
 			segHashes.clear();
 		}
+		putSegmentHashes(treeId, storedParentIds, storedDigests);
+	}
+
+	private void flushTopNodeHashes(long treeId) throws IOException {
+		TopNodeHashes hashes = topNodeHashes.get(treeId);
+		if (hashes != null)
+			hashes.flush(this, treeId);
 	}
 
 	@Override
@@ -553,28 +2421,150 @@ public class HashTreesImpl implements HashTrees, Service {
 	private void enableNonBlockingOperations() {
 		synchronized (nonBlockingCallsLock) {
 			if (enabledNonBlockingCalls) {
-				if (bgDataUpdater == null)
-					bgDataUpdater = new NonBlockingHTDataUpdater(this,
-							nonBlockingQueueSize);
-				new Thread(bgDataUpdater).start();
-				LOGGER.info("Non blocking calls are enabled.");
+				if (bgDataUpdaters == null) {
+					HTDataUpdater[] updaters = new HTDataUpdater[noOfNonBlockingWorkers];
+					try {
+						if (queueOverflowPolicy == QueueOverflowPolicy.SPILL_TO_DISK)
+							replayOverflowLogs();
+						for (int i = 0; i < updaters.length; i++)
+							updaters[i] = newDataUpdater(i);
+					} catch (IOException e) {
+						throw new HashTreesCustomRuntimeException(
+								"Exception occurred while opening the overflow logs.",
+								e);
+					}
+					bgDataUpdaters = updaters;
+				}
+				for (HTDataUpdater updater : bgDataUpdaters)
+					new Thread(updater).start();
+				LOGGER.info("Non blocking calls are enabled with "
+						+ noOfNonBlockingWorkers + " workers.");
+			}
+		}
+	}
+
+	private HTDataUpdater newDataUpdater(int workerId) throws IOException {
+		HTDataUpdater updater;
+		switch (nonBlockingQueueType) {
+		case RING_BUFFER:
+			int ringBufferSize = (nonBlockingQueueSize == DEFAULT_NB_QUE_SIZE) ? DEFAULT_RING_BUFFER_SIZE
+					: roundUpToPowerOf2(Math.min(nonBlockingQueueSize,
+							MAX_RING_BUFFER_SIZE));
+			updater = new RingBufferHTDataUpdater(this, ringBufferSize);
+			break;
+		case BLOCKING_QUEUE:
+		default:
+			updater = new NonBlockingHTDataUpdater(this, nonBlockingQueueSize);
+			break;
+		}
+		if (queueOverflowPolicy == QueueOverflowPolicy.SPILL_TO_DISK)
+			updater = new SpillingHTDataUpdater(this, updater,
+					new OverflowLog(new File(overflowLogDir,
+							OVERFLOW_LOG_FILE_PREFIX + workerId
+									+ OVERFLOW_LOG_FILE_SUFFIX)));
+		return updater;
+	}
+
+	/**
+	 * Applies the operations which are left on the overflow logs by an
+	 * instance which did not stop properly. Their pending digests are lost, so
+	 * the trees of {@link HTOperation#APPLY_PENDING} operations are scheduled
+	 * for a recovery instead.
+	 * 
+	 * @throws IOException
+	 */
+	private void replayOverflowLogs() throws IOException {
+		File dir = new File(overflowLogDir);
+		if (!dir.exists() && !dir.mkdirs())
+			throw new IOException("Unable to create overflow log dir "
+					+ overflowLogDir);
+		File[] files = dir.listFiles(new FilenameFilter() {
+
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(OVERFLOW_LOG_FILE_PREFIX)
+						&& name.endsWith(OVERFLOW_LOG_FILE_SUFFIX);
+			}
+		});
+		for (File file : files) {
+			OverflowLog overflowLog = new OverflowLog(file);
+			try {
+				if (!overflowLog.isEmpty())
+					LOGGER.info("Replaying " + overflowLog.size()
+							+ " operations from " + file);
+				OverflowLog.Entry entry;
+				while ((entry = overflowLog.peek()) != null) {
+					HTOperation operation = HTOperation.values()[entry
+							.getType()];
+					if (operation == HTOperation.APPLY_PENDING)
+						scheduleRecovery(treeIdProvider.getTreeId(entry
+								.getKey().array()));
+					else
+						applyOperation(operation, entry.getKey(),
+								entry.getValue());
+					overflowLog.remove();
+				}
+			} finally {
+				overflowLog.close();
 			}
+			if (!file.delete())
+				LOGGER.warn("Unable to delete overflow log " + file);
 		}
 	}
 
+	/**
+	 * Moves the operations spilled to the overflow logs back to the queues,
+	 * as far as the queues have room.
+	 * 
+	 * @throws IOException
+	 */
+	private void moveSpilledOperationsToQueue() throws IOException {
+		HTDataUpdater[] updaters = bgDataUpdaters;
+		if (updaters == null)
+			return;
+		for (HTDataUpdater updater : updaters)
+			if (updater instanceof SpillingHTDataUpdater)
+				((SpillingHTDataUpdater) updater).moveSpilledToQueue();
+	}
+
 	private void disableNonblockingOperations() {
 		synchronized (nonBlockingCallsLock) {
-			if (enabledNonBlockingCalls && bgDataUpdater != null) {
-				CountDownLatch countDownLatch = new CountDownLatch(1);
-				bgDataUpdater.stopAsync(countDownLatch);
+			if (enabledNonBlockingCalls && bgDataUpdaters != null) {
+				CountDownLatch countDownLatch = new CountDownLatch(
+						bgDataUpdaters.length);
+				for (HTDataUpdater updater : bgDataUpdaters)
+					updater.stopAsync(countDownLatch);
+				boolean drained = true;
 				try {
 					countDownLatch.await();
 				} catch (InterruptedException e) {
+					drained = false;
 					LOGGER.warn(
 							"Exception occurred while waiting data updater to stop",
 							e);
 				}
-				bgDataUpdater = null;
+				for (HTDataUpdater updater : bgDataUpdaters) {
+					if (updater instanceof SpillingHTDataUpdater) {
+						try {
+							((SpillingHTDataUpdater) updater).applySpilled();
+						} catch (IOException e) {
+							drained = false;
+							LOGGER.warn(
+									"Exception occurred while applying the spilled operations",
+									e);
+						}
+					}
+				}
+				if (drained) {
+					try {
+						clearUnappliedUpdates();
+					} catch (IOException e) {
+						LOGGER.warn(
+								"Exception occurred while clearing the unapplied updates records",
+								e);
+					}
+				}
+				bgDataUpdaters = null;
 				LOGGER.info("Non blocking calls are disabled.");
 			}
 		}
@@ -583,6 +2573,7 @@ public class HashTreesImpl implements HashTrees, Service {
 	@Override
 	public void stop() {
 		disableNonblockingOperations();
+		stopRebuildPool();
 	}
 
 	@Override
@@ -620,6 +2611,42 @@ public class HashTreesImpl implements HashTrees, Service {
 				: roundUpToPowerOf2(noOfSegments);
 	}
 
+	/**
+	 * Returns the no of nodes, including the leaves, of the tree which is built
+	 * with the given no of segments and fan out. Can be used for sizing
+	 * {@link HashTreesMemStore#HashTreesMemStore(int, int)}.
+	 * 
+	 * @param noOfSegments
+	 * @param fanOut
+	 * @return
+	 */
+	public static int getTotalNoOfNodes(int noOfSegments, int fanOut) {
+		int validNoOfSegments = getValidSegmentsCount(noOfSegments, fanOut);
+		int height = height(validNoOfSegments, fanOut);
+		return getNoOfNodes((height - 1), fanOut) + validNoOfSegments;
+	}
+
+	/**
+	 * Every leaf should be at the same level, so the no of segments is rounded
+	 * up to a power of fanOut, and limited to the highest power of fanOut
+	 * which is not more than {@link #MAX_NO_OF_SEGMENTS}.
+	 * 
+	 * @param noOfSegments
+	 * @param fanOut
+	 * @return
+	 */
+	private static int getValidSegmentsCount(int noOfSegments, int fanOut) {
+		int maxNoOfSegments = fanOut;
+		while (maxNoOfSegments <= MAX_NO_OF_SEGMENTS / fanOut)
+			maxNoOfSegments *= fanOut;
+		if ((noOfSegments > maxNoOfSegments) || (noOfSegments < 0))
+			return maxNoOfSegments;
+		int validNoOfSegments = 1;
+		while (validNoOfSegments < noOfSegments)
+			validNoOfSegments *= fanOut;
+		return validNoOfSegments;
+	}
+
 	/**
 	 * Concatenates the given ByteBuffer values by first converting them to the
 	 * equivalent hex strings, and then concatenates by adding the comma
@@ -638,109 +2665,658 @@ public class HashTreesImpl implements HashTrees, Service {
 	}
 
 	public static ByteBuffer digestByteBuffers(List<ByteBuffer> bbList) {
+		return digestByteBuffers(DigestAlgorithms.SHA1.newDigester(), bbList);
+	}
+
+	public static ByteBuffer digestByteBuffers(Digester digester,
+			List<ByteBuffer> bbList) {
 		List<String> hexStrings = new ArrayList<String>();
 		for (ByteBuffer bb : bbList)
 			hexStrings.add(Hex.encodeHexString(bb.array()));
-		return digestHexStrings(hexStrings);
+		return digestHexStrings(digester, hexStrings);
 	}
 
 	public static ByteBuffer digestHexStrings(List<String> hexStrings) {
+		return digestHexStrings(DigestAlgorithms.SHA1.newDigester(),
+				hexStrings);
+	}
+
+	public static ByteBuffer digestHexStrings(Digester digester,
+			List<String> hexStrings) {
 		StringBuilder sb = new StringBuilder();
 		for (String hexString : hexStrings)
 			sb.append(hexString + NEW_LINE_DELIMETER);
-		return ByteBuffer.wrap(sha1(sb.toString().getBytes()));
+		return ByteBuffer.wrap(digester.digest(sb.toString().getBytes()));
+	}
+
+	/**
+	 * Segment block id starts with 0. Each leaf node corresponds to a segment
+	 * block. This function does the mapping from segment block id to leaf node
+	 * id.
+	 * 
+	 * @param segId
+	 * @return
+	 */
+	private int getLeafIdFromSegmentId(int segId) {
+		return internalNodesCount + segId;
+	}
+
+	private int getSegmentIdFromLeafId(int leafNodeId) {
+		return leafNodeId - internalNodesCount;
+	}
+
+	private boolean isLeafNode(int nodeId) {
+		return nodeId >= internalNodesCount;
+	}
+
+	/**
+	 * Used to tag type of operation when the input is fed into the non blocking
+	 * version of {@link HashTreesImpl} hPut and hRemove methods.
+	 * 
+	 */
+	private static enum HTOperation {
+		PUT, REMOVE, PUT_IF_ABSENT, REMOVE_IF_ABSENT, APPLY_PENDING
+	}
+
+	/**
+	 * Queues the operations of non blocking hPut and hRemove calls, and
+	 * applies them on a background thread.
+	 * 
+	 */
+	private static interface HTDataUpdater extends Runnable, Stoppable {
+
+		/**
+		 * @param operation
+		 * @param key
+		 * @param value
+		 *            , null for remove operations.
+		 */
+		void enque(HTOperation operation, ByteBuffer key, ByteBuffer value);
+
+		void stopAsync(CountDownLatch stopListenerLatch);
+
+		/**
+		 * Returns the no of operations on the queue.
+		 * 
+		 * @return
+		 */
+		int size();
+	}
+
+	/**
+	 * A task to enable non blocking calls on all
+	 * {@link HashTreesImpl#hPut(ByteArray, ByteArray)} and
+	 * {@link HashTreesImpl#hRemove(ByteArray)} operation.
+	 * 
+	 */
+	@ThreadSafe
+	private static class NonBlockingHTDataUpdater extends
+			NonBlockingQueuingTask<Pair<HTOperation, List<ByteBuffer>>>
+			implements HTDataUpdater {
+
+		private static final Pair<HTOperation, List<ByteBuffer>> STOP_MARKER = new Pair<HTOperation, List<ByteBuffer>>(
+				HTOperation.PUT, null);
+		private final ConcurrentSkipListSet<ByteBuffer> keysOnQueue = new ConcurrentSkipListSet<>();
+		private final HashTreesImpl hTree;
+
+		public NonBlockingHTDataUpdater(final HashTreesImpl hTree,
+				int maxElementsToQue) {
+			super(STOP_MARKER, maxElementsToQue);
+			this.hTree = hTree;
+		}
+
+		@Override
+		public void enque(HTOperation operation, ByteBuffer key,
+				ByteBuffer value) {
+			List<ByteBuffer> input = new ArrayList<ByteBuffer>();
+			input.add(key);
+			if (value != null)
+				input.add(value);
+			enque(Pair.create(operation, input));
+		}
+
+		@Override
+		public void enque(Pair<HTOperation, List<ByteBuffer>> pair) {
+			if (pair == STOP_MARKER)
+				super.enque(pair);
+			else {
+				ByteBuffer key = pair.getSecond().get(0);
+				boolean isAbsent = keysOnQueue.add(key);
+				try {
+					switch (pair.getFirst()) {
+					case PUT:
+					case REMOVE:
+					case APPLY_PENDING:
+						super.enque(pair);
+						break;
+					case PUT_IF_ABSENT:
+					case REMOVE_IF_ABSENT:
+						if (isAbsent)
+							super.enque(pair);
+						break;
+					}
+				} catch (RuntimeException e) {
+					// The key is not on the queue, if it was not already.
+					if (isAbsent)
+						keysOnQueue.remove(key);
+					throw e;
+				}
+			}
+		}
+
+		@Override
+		public void handleElement(Pair<HTOperation, List<ByteBuffer>> pair) {
+			ByteBuffer key = pair.getSecond().get(0);
+			try {
+				hTree.applyOperation(pair.getFirst(), key, (pair.getSecond()
+						.size() > 1) ? pair.getSecond().get(1) : null);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			} finally {
+				keysOnQueue.remove(key);
+			}
+		}
+
+	}
+
+	/**
+	 * A slot of {@link RingBufferHTDataUpdater}, which is reused for the
+	 * operations.
+	 * 
+	 */
+	@NotThreadSafe
+	private static class HTOperationSlot {
+
+		private static final Supplier<HTOperationSlot> FACTORY = new Supplier<HTOperationSlot>() {
+
+			@Override
+			public HTOperationSlot get() {
+				return new HTOperationSlot();
+			}
+		};
+
+		private HTOperation operation;
+		private ByteBuffer key;
+		private ByteBuffer value;
+	}
+
+	/**
+	 * Same as {@link NonBlockingHTDataUpdater}, except that the operations are
+	 * queued on a preallocated ring buffer, so the callers do not allocate
+	 * objects or take locks. Queued keys are not tracked, so
+	 * {@link HTOperation#PUT_IF_ABSENT} and
+	 * {@link HTOperation#REMOVE_IF_ABSENT} are always queued. Applying them
+	 * for a key which is on the queue is redundant but harmless, as the
+	 * operations are applied in order.
+	 * 
+	 */
+	@ThreadSafe
+	private static class RingBufferHTDataUpdater extends
+			RingBufferQueuingTask<HTOperationSlot> implements HTDataUpdater {
+
+		private final HashTreesImpl hTree;
+
+		public RingBufferHTDataUpdater(final HashTreesImpl hTree,
+				int ringBufferSize) {
+			super(ringBufferSize, RING_BUFFER_MAX_BATCH_SIZE,
+					HTOperationSlot.FACTORY);
+			this.hTree = hTree;
+		}
+
+		@Override
+		public void enque(HTOperation operation, ByteBuffer key,
+				ByteBuffer value) {
+			long sequence = claim();
+			HTOperationSlot slot = getSlot(sequence);
+			slot.operation = operation;
+			slot.key = key;
+			slot.value = value;
+			publish(sequence);
+		}
+
+		@Override
+		protected void handleElement(HTOperationSlot slot) {
+			try {
+				hTree.applyOperation(slot.operation, slot.key, slot.value);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			} finally {
+				slot.key = null;
+				slot.value = null;
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds a range of dirty segments. Ranges larger than
+	 * {@link HashTreesImpl#LEAF_REBUILD_BATCH_SIZE} are split in halves.
+	 * 
+	 */
+	private static class LeafRebuildTask extends RecursiveTask<List<Integer>> {
+
+		private static final long serialVersionUID = 1L;
+		private final HashTreesImpl hTreesImpl;
+		private final long treeId;
+		private final List<Integer> dirtySegments;
+		private final int from, to;
+		private final boolean rehashSegments;
+		private final boolean ignoreDirtyBits;
+
+		public LeafRebuildTask(final HashTreesImpl hTreesImpl, long treeId,
+				final List<Integer> dirtySegments, int from, int to,
+				boolean rehashSegments, boolean ignoreDirtyBits) {
+			this.hTreesImpl = hTreesImpl;
+			this.treeId = treeId;
+			this.dirtySegments = dirtySegments;
+			this.from = from;
+			this.to = to;
+			this.rehashSegments = rehashSegments;
+			this.ignoreDirtyBits = ignoreDirtyBits;
+		}
+
+		@Override
+		protected List<Integer> compute() {
+			if (to - from <= LEAF_REBUILD_BATCH_SIZE) {
+				try {
+					return hTreesImpl.rebuildLeaves(treeId, dirtySegments,
+							from, to, rehashSegments, ignoreDirtyBits);
+				} catch (IOException e) {
+					throw new RebuildTaskException(e);
+				}
+			}
+			int mid = (from + to) >>> 1;
+			LeafRebuildTask left = new LeafRebuildTask(hTreesImpl, treeId,
+					dirtySegments, from, mid, rehashSegments, ignoreDirtyBits);
+			left.fork();
+			List<Integer> nodeIds = new LeafRebuildTask(hTreesImpl, treeId,
+					dirtySegments, mid, to, rehashSegments, ignoreDirtyBits)
+					.compute();
+			nodeIds.addAll(left.join());
+			return nodeIds;
+		}
+	}
+
+	/**
+	 * Hashes of the top levels of a tree, which are kept in memory. Reads are
+	 * served from memory. Writes are done by the rebuilds, which hold the lock
+	 * of the tree, and only the changed hashes are written to the store at the
+	 * end of the rebuild.
+	 * 
+	 */
+	private static class TopNodeHashes {
+
+		private final AtomicReferenceArray<ByteBuffer> hashes;
+		// Updated under the lock of the tree.
+		private final BitSet unflushedNodeIds = new BitSet();
+
+		public TopNodeHashes(int noOfNodes) {
+			this.hashes = new AtomicReferenceArray<>(noOfNodes);
+		}
+
+		public ByteBuffer get(int nodeId) {
+			return hashes.get(nodeId);
+		}
+
+		public void load(int nodeId, ByteBuffer hash) {
+			hashes.set(nodeId, hash);
+		}
+
+		public void put(int nodeId, ByteBuffer hash) {
+			if (!hash.equals(hashes.getAndSet(nodeId, hash)))
+				unflushedNodeIds.set(nodeId);
+		}
+
+		public void flush(HashTreesImpl hTreesImpl, long treeId)
+				throws IOException {
+			List<Integer> nodeIds = new ArrayList<>();
+			List<ByteBuffer> digests = new ArrayList<>();
+			for (int nodeId = unflushedNodeIds.nextSetBit(0); nodeId >= 0; nodeId = unflushedNodeIds
+					.nextSetBit(nodeId + 1)) {
+				nodeIds.add(nodeId);
+				digests.add(hashes.get(nodeId).duplicate());
+			}
+			hTreesImpl.putSegmentHashes(treeId, nodeIds, digests);
+			unflushedNodeIds.clear();
+		}
 	}
 
 	/**
-	 * Segment block id starts with 0. Each leaf node corresponds to a segment
-	 * block. This function does the mapping from segment block id to leaf node
-	 * id.
+	 * A partition of a full rebuild, which is run on the rebuild pool.
 	 * 
-	 * @param segId
-	 * @return
 	 */
-	private int getLeafIdFromSegmentId(int segId) {
-		return internalNodesCount + segId;
-	}
+	private static abstract class FullRebuildTask extends
+			RecursiveTask<FullRebuildPartition> {
 
-	private int getSegmentIdFromLeafId(int leafNodeId) {
-		return leafNodeId - internalNodesCount;
+		private static final long serialVersionUID = 1L;
+
+		protected abstract FullRebuildPartition rebuild() throws IOException;
+
+		@Override
+		protected FullRebuildPartition compute() {
+			try {
+				return rebuild();
+			} catch (IOException e) {
+				throw new RebuildTaskException(e);
+			}
+		}
 	}
 
-	private boolean isLeafNode(int nodeId) {
-		return nodeId >= internalNodesCount;
+	/**
+	 * Collects the changes of a partition of a full rebuild, and writes them
+	 * with {@link HashTreesImpl#hPutAll(List)} and
+	 * {@link HashTreesImpl#hRemoveAll(List)} in batches of
+	 * {@link HashTreesImpl#FULL_REBUILD_BATCH_SIZE}. Also counts the keys of
+	 * the partition. Used by a single thread.
+	 * 
+	 */
+	@NotThreadSafe
+	private static class FullRebuildPartition {
+
+		private final HashTreesImpl hTreesImpl;
+		private final List<KeyValue> pairsToPut = new ArrayList<>();
+		private final List<ByteBuffer> keysToRemove = new ArrayList<>();
+		private long scannedKeys, changedKeys, removedKeys;
+
+		public FullRebuildPartition(final HashTreesImpl hTreesImpl) {
+			this.hTreesImpl = hTreesImpl;
+		}
+
+		/**
+		 * Without a batch write, the pair is put immediately, so that it does
+		 * not override a newer value which is queued.
+		 */
+		public void put(ByteBuffer key, ByteBuffer value) throws IOException {
+			changedKeys++;
+			if (!canWriteBatches()) {
+				hTreesImpl.hPutInternal(HTOperation.PUT_IF_ABSENT, key, value);
+				return;
+			}
+			pairsToPut.add(new KeyValue(key, value));
+			if (pairsToPut.size() >= FULL_REBUILD_BATCH_SIZE)
+				flush();
+		}
+
+		public void remove(ByteBuffer key) throws IOException {
+			removedKeys++;
+			if (!canWriteBatches()) {
+				hTreesImpl.hRemoveInternal(HTOperation.REMOVE_IF_ABSENT, key);
+				return;
+			}
+			keysToRemove.add(key);
+			if (keysToRemove.size() >= FULL_REBUILD_BATCH_SIZE)
+				flush();
+		}
+
+		public void flush() throws IOException {
+			if (!pairsToPut.isEmpty()) {
+				hTreesImpl.hPutAll(pairsToPut);
+				pairsToPut.clear();
+			}
+			if (!keysToRemove.isEmpty()) {
+				hTreesImpl.hRemoveAll(keysToRemove);
+				keysToRemove.clear();
+			}
+		}
+
+		private boolean canWriteBatches() {
+			return !hTreesImpl.enabledNonBlockingCalls
+					&& !hTreesImpl.incrementalLeafHashing;
+		}
 	}
 
 	/**
-	 * Used to tag type of operation when the input is fed into the non blocking
-	 * version of {@link HashTreesImpl} hPut and hRemove methods.
+	 * Carries an IOException of a rebuild task out of the pool.
 	 * 
 	 */
-	private static enum HTOperation {
-		PUT, REMOVE, PUT_IF_ABSENT, REMOVE_IF_ABSENT
+	private static class RebuildTaskException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public RebuildTaskException(IOException cause) {
+			super(cause);
+		}
 	}
 
 	/**
-	 * A task to enable non blocking calls on all
-	 * {@link HashTreesImpl#hPut(ByteArray, ByteArray)} and
-	 * {@link HashTreesImpl#hRemove(ByteArray)} operation.
+	 * Decorates a {@link HTDataUpdater} for
+	 * {@link QueueOverflowPolicy#SPILL_TO_DISK}. The operations which do not
+	 * fit in the queue are appended to an {@link OverflowLog}. While the log
+	 * has operations, the new ones are appended behind them, so the operations
+	 * on a key are still applied in order. The log is moved back to the queue
+	 * by the enqueuing threads and by the rebuilds, as the queue gets room.
 	 * 
 	 */
 	@ThreadSafe
-	private static class NonBlockingHTDataUpdater extends
-			NonBlockingQueuingTask<Pair<HTOperation, List<ByteBuffer>>> {
+	private static class SpillingHTDataUpdater implements HTDataUpdater {
 
-		private static final Pair<HTOperation, List<ByteBuffer>> STOP_MARKER = new Pair<HTOperation, List<ByteBuffer>>(
-				HTOperation.PUT, null);
-		private final ConcurrentSkipListSet<ByteBuffer> keysOnQueue = new ConcurrentSkipListSet<>();
 		private final HashTreesImpl hTree;
-
-		public NonBlockingHTDataUpdater(final HashTreesImpl hTree,
-				int maxElementsToQue) {
-			super(STOP_MARKER, maxElementsToQue);
+		private final HTDataUpdater updater;
+		@LockedBy("this")
+		private final OverflowLog overflowLog;
+		// Read without the lock, so that nothing is locked while the log is
+		// empty.
+		private volatile boolean spilled;
+
+		public SpillingHTDataUpdater(final HashTreesImpl hTree,
+				final HTDataUpdater updater, final OverflowLog overflowLog) {
 			this.hTree = hTree;
+			this.updater = updater;
+			this.overflowLog = overflowLog;
+			this.spilled = !overflowLog.isEmpty();
 		}
 
 		@Override
-		public void enque(Pair<HTOperation, List<ByteBuffer>> pair) {
-			if (pair != STOP_MARKER) {
-				ByteBuffer key = pair.getSecond().get(0);
-				boolean isAbsent = keysOnQueue.add(key);
-				switch (pair.getFirst()) {
-				case PUT:
-				case REMOVE:
-					super.enque(pair);
-					break;
-				case PUT_IF_ABSENT:
-				case REMOVE_IF_ABSENT:
-					if (isAbsent)
-						super.enque(pair);
-					break;
+		public void enque(HTOperation operation, ByteBuffer key,
+				ByteBuffer value) {
+			if (!spilled) {
+				try {
+					updater.enque(operation, key, value);
+					return;
+				} catch (QueueReachedMaxCapacityException e) {
+					// Spilled below.
 				}
 			}
+			synchronized (this) {
+				try {
+					if (moveSpilledToQueue()) {
+						try {
+							updater.enque(operation, key, value);
+							return;
+						} catch (QueueReachedMaxCapacityException e) {
+							// Spilled below.
+						}
+					}
+					overflowLog.append((byte) operation.ordinal(), key, value);
+					spilled = true;
+				} catch (IOException e) {
+					throw new QueueReachedMaxCapacityException(e);
+				}
+			}
+			hTree.countQueueOverflow(QueueOverflowPolicy.SPILL_TO_DISK);
 		}
 
-		@Override
-		public void handleElement(Pair<HTOperation, List<ByteBuffer>> pair) {
-			ByteBuffer key = pair.getSecond().get(0);
+		/**
+		 * Moves the spilled operations to the queue, as long as it has room.
+		 * 
+		 * @return true if no operation is left on the overflow log.
+		 * @throws IOException
+		 */
+		public synchronized boolean moveSpilledToQueue() throws IOException {
+			OverflowLog.Entry entry;
+			while ((entry = overflowLog.peek()) != null) {
+				try {
+					updater.enque(HTOperation.values()[entry.getType()],
+							entry.getKey(), entry.getValue());
+				} catch (QueueReachedMaxCapacityException e) {
+					return false;
+				}
+				overflowLog.remove();
+			}
+			spilled = false;
+			return true;
+		}
+
+		/**
+		 * Applies the spilled operations on the calling thread, and closes the
+		 * overflow log. Should be called after the worker has stopped.
+		 * 
+		 * @throws IOException
+		 */
+		public synchronized void applySpilled() throws IOException {
 			try {
-				switch (pair.getFirst()) {
-				case PUT:
-				case PUT_IF_ABSENT:
-					hTree.hPutInternal(key, pair.getSecond().get(1));
-					break;
-				case REMOVE:
-				case REMOVE_IF_ABSENT:
-					hTree.hRemoveInternal(key);
-					break;
+				OverflowLog.Entry entry;
+				while ((entry = overflowLog.peek()) != null) {
+					hTree.applyOperation(
+							HTOperation.values()[entry.getType()],
+							entry.getKey(), entry.getValue());
+					overflowLog.remove();
 				}
-			} catch (IOException e) {
-				throw new RuntimeException(e);
+				spilled = false;
 			} finally {
-				keysOnQueue.remove(key);
+				overflowLog.close();
+			}
+		}
+
+		@Override
+		public void run() {
+			updater.run();
+		}
+
+		@Override
+		public void stopAsync() {
+			updater.stopAsync();
+		}
+
+		@Override
+		public void stopAsync(CountDownLatch stopListenerLatch) {
+			updater.stopAsync(stopListenerLatch);
+		}
+
+		@Override
+		public int size() {
+			long spilledSize;
+			synchronized (this) {
+				spilledSize = overflowLog.size();
 			}
+			return (int) Math.min(updater.size() + spilledSize,
+					Integer.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * Collects the updates for the remote tree while synch operation, and
+	 * sends them once flushSize updates of a kind are collected.
+	 * 
+	 */
+	@NotThreadSafe
+	private static class SegmentUpdates {
+
+		private final HashTrees remoteTree;
+		private final boolean doUpdate;
+		private final int flushSize;
+		private final List<KeyValue> kvsForAddition = new ArrayList<KeyValue>();
+		private final List<ByteBuffer> keysForRemoval = new ArrayList<ByteBuffer>();
+		private int totUpdates;
+
+		public SegmentUpdates(HashTrees remoteTree, boolean doUpdate,
+				int flushSize) {
+			this.remoteTree = remoteTree;
+			this.doUpdate = doUpdate;
+			this.flushSize = flushSize;
+		}
+
+		public void addKeyValue(KeyValue kv) throws IOException {
+			kvsForAddition.add(kv);
+			if (kvsForAddition.size() >= flushSize)
+				flushAdditions();
+		}
+
+		public void removeKey(ByteBuffer key) throws IOException {
+			keysForRemoval.add(key);
+			if (keysForRemoval.size() >= flushSize)
+				flushRemovals();
+		}
+
+		/**
+		 * Sends the pending updates.
+		 * 
+		 * @return total no of updates collected so far.
+		 * @throws IOException
+		 */
+		public int flush() throws IOException {
+			flushAdditions();
+			flushRemovals();
+			return totUpdates;
+		}
+
+		private void flushAdditions() throws IOException {
+			if (kvsForAddition.isEmpty())
+				return;
+			if (doUpdate)
+				remoteTree.sPut(kvsForAddition);
+			totUpdates += kvsForAddition.size();
+			kvsForAddition.clear();
+		}
+
+		private void flushRemovals() throws IOException {
+			if (keysForRemoval.isEmpty())
+				return;
+			if (doUpdate)
+				remoteTree.sRemove(keysForRemoval);
+			totUpdates += keysForRemoval.size();
+			keysForRemoval.clear();
+		}
+	}
+
+	/**
+	 * Iterates over a remote segment by fetching it in pages through
+	 * {@link HashTrees#getSegmentPage(long, int, ByteBuffer, int)}. Failures
+	 * are thrown as {@link HashTreesCustomRuntimeException}.
+	 * 
+	 */
+	@NotThreadSafe
+	private static class RemoteSegmentPageIterator extends
+			AbstractIterator<SegmentData> {
+
+		private final HashTrees remoteTree;
+		private final long treeId;
+		private final int segId;
+		private final int pageSize;
+		private Iterator<SegmentData> page = Collections.emptyIterator();
+		private byte[] nextKey;
+
+		public RemoteSegmentPageIterator(HashTrees remoteTree, long treeId,
+				int segId, int pageSize) {
+			this(remoteTree, treeId, segId, pageSize, EMPTY_KEY);
+		}
+
+		public RemoteSegmentPageIterator(HashTrees remoteTree, long treeId,
+				int segId, int pageSize, byte[] fromKey) {
+			this.remoteTree = remoteTree;
+			this.treeId = treeId;
+			this.segId = segId;
+			this.pageSize = pageSize;
+			this.nextKey = fromKey;
 		}
 
+		@Override
+		protected SegmentData computeNext() {
+			if (!page.hasNext() && nextKey != null) {
+				List<SegmentData> segmentPage;
+				try {
+					segmentPage = remoteTree.getSegmentPage(treeId, segId,
+							ByteBuffer.wrap(nextKey), pageSize);
+				} catch (IOException e) {
+					throw new HashTreesCustomRuntimeException(e);
+				}
+				nextKey = null;
+				if (segmentPage.size() >= pageSize)
+					nextKey = getKeyAfter(segmentPage.get(
+							segmentPage.size() - 1).getKey());
+				page = segmentPage.iterator();
+			}
+			return page.hasNext() ? page.next() : endOfData();
+		}
 	}
 
 	@NotThreadSafe
@@ -754,7 +3330,22 @@ public class HashTreesImpl implements HashTrees, Service {
 		private int noOfSegments = 1 << 17,
 				nonBlockingQueueSize = DEFAULT_NB_QUE_SIZE;
 		private boolean enabledNonBlockingCalls = true;
+		private int fanOut = BINARY_TREE;
 		private LockProvider lockProvider;
+		private DigestAlgorithm digestAlgorithm = DigestAlgorithms.SHA1;
+		private DigestFormat digestFormat = DigestFormat.V1;
+		private boolean incrementalLeafHashing = false;
+		private SyncMode syncMode = SyncMode.PULL_HASHES;
+		private int maxSegmentsBatchBytes = DEFAULT_MAX_SEGMENTS_BATCH_BYTES;
+		private int segmentPageSize = DEFAULT_SEGMENT_PAGE_SIZE;
+		private NonBlockingQueueType nonBlockingQueueType = NonBlockingQueueType.BLOCKING_QUEUE;
+		private int noOfNonBlockingWorkers = 1;
+		private boolean digestAtEnqueue = false;
+		private QueueOverflowPolicy queueOverflowPolicy = QueueOverflowPolicy.FAIL;
+		private long queueOverflowBlockTimeoutMs = DEFAULT_QUEUE_OVERFLOW_BLOCK_TIMEOUT_MS;
+		private String overflowLogDir;
+		private int rebuildParallelism = 1;
+		private int cachedTopLevels = 0;
 
 		public Builder(Store store, HashTreesIdProvider treeIdProvider,
 				HashTreesStore htStore) {
@@ -790,6 +3381,24 @@ public class HashTreesImpl implements HashTrees, Service {
 					htStoreDirName));
 		}
 
+		/**
+		 * Same as {@link #Builder(Store, HashTreesIdProvider, String)}, but
+		 * opens LevelDB with the given options. Look at
+		 * {@link PersistentStoreOptions}.
+		 * 
+		 * @param store
+		 * @param treeIdProvider
+		 * @param htStoreDirName
+		 * @param storeOptions
+		 * @throws IOException
+		 */
+		public Builder(Store store, HashTreesIdProvider treeIdProvider,
+				String htStoreDirName, PersistentStoreOptions storeOptions)
+				throws IOException {
+			this(store, treeIdProvider, new HashTreesPersistentStore(
+					htStoreDirName, storeOptions));
+		}
+
 		/**
 		 * By default {@link ModuloSegIdProvider} is used.
 		 * 
@@ -812,7 +3421,8 @@ public class HashTreesImpl implements HashTrees, Service {
 		 * 
 		 * @param noOfSegments
 		 *            , value should be a power of 2, otherwise it will be
-		 *            converted to the equivalent.
+		 *            converted to the equivalent. When the fan out is more
+		 *            than 2, it is rounded up to a power of the fan out.
 		 * @return
 		 */
 		public Builder setNoOfSegments(int noOfSegments) {
@@ -820,6 +3430,23 @@ public class HashTreesImpl implements HashTrees, Service {
 			return this;
 		}
 
+		/**
+		 * Sets the no of children of each internal node. Synch fetches the
+		 * segment hashes level by level, so a higher fan out needs lesser
+		 * round trips to reach the leaves, with more hashes on each round trip.
+		 * Default value is 2. All the trees which are synched with each other
+		 * should use the same fan out.
+		 * 
+		 * @param fanOut
+		 *            , should be a power of 2.
+		 * @return
+		 */
+		public Builder setFanOut(int fanOut) {
+			assert (fanOut >= 2 && Integer.bitCount(fanOut) == 1);
+			this.fanOut = fanOut;
+			return this;
+		}
+
 		/**
 		 * Enable/Disable non blocking calls. By default non blocking calls are
 		 * enabled.
@@ -848,6 +3475,134 @@ public class HashTreesImpl implements HashTrees, Service {
 			return this;
 		}
 
+		/**
+		 * Sets the queue which holds the operations of non blocking calls. By
+		 * default {@link NonBlockingQueueType#BLOCKING_QUEUE} is used.
+		 * {@link NonBlockingQueueType#RING_BUFFER} preallocates the queue, so
+		 * its size is rounded up to a power of 2, and an unbounded queue size
+		 * is replaced with 1 << 16.
+		 * 
+		 * @param nonBlockingQueueType
+		 * @return
+		 */
+		public Builder setNonBlockingQueueType(
+				NonBlockingQueueType nonBlockingQueueType) {
+			assert (nonBlockingQueueType != null);
+			this.nonBlockingQueueType = nonBlockingQueueType;
+			return this;
+		}
+
+		/**
+		 * Sets the no of background threads which apply the non blocking
+		 * calls. Each worker has its own queue of the size set through
+		 * {@link #setNonBlockingQueueSize(int)}, and owns a contiguous range
+		 * of segment ids, so the operations on a key are applied in order.
+		 * Default value is 1.
+		 * 
+		 * @param noOfNonBlockingWorkers
+		 * @return
+		 */
+		public Builder setNoOfNonBlockingWorkers(int noOfNonBlockingWorkers) {
+			assert (noOfNonBlockingWorkers > 0);
+			this.noOfNonBlockingWorkers = noOfNonBlockingWorkers;
+			return this;
+		}
+
+		/**
+		 * Enables/Disables digesting the values on the calling thread of non
+		 * blocking hPut. When enabled, only the key is queued, and its latest
+		 * digest is kept in a table until the background thread applies it.
+		 * So the queue does not hold the values, and the repeated puts and
+		 * removes of a key which is still on the queue result in one store
+		 * write. Observers are notified on the calling thread. By default it
+		 * is disabled.
+		 * 
+		 * @param digestAtEnqueue
+		 * @return
+		 */
+		public Builder setDigestAtEnqueue(boolean digestAtEnqueue) {
+			this.digestAtEnqueue = digestAtEnqueue;
+			return this;
+		}
+
+		/**
+		 * Sets what happens to a non blocking hPut or hRemove, when the queue
+		 * of its worker is full. By default {@link QueueOverflowPolicy#FAIL}
+		 * is used, which throws QueueReachedMaxCapacityException to the
+		 * caller. {@link QueueOverflowPolicy#SPILL_TO_DISK} requires
+		 * {@link #setOverflowLogDir(String)}. Look at
+		 * {@link HashTreesImpl#getQueueOverflowCount(QueueOverflowPolicy)} for
+		 * how often the policy is used.
+		 * 
+		 * @param queueOverflowPolicy
+		 * @return
+		 */
+		public Builder setQueueOverflowPolicy(
+				QueueOverflowPolicy queueOverflowPolicy) {
+			assert (queueOverflowPolicy != null);
+			this.queueOverflowPolicy = queueOverflowPolicy;
+			return this;
+		}
+
+		/**
+		 * Sets how long {@link QueueOverflowPolicy#BLOCK} waits for the queue
+		 * to have room. Default value is 1 second.
+		 * 
+		 * @param queueOverflowBlockTimeoutMs
+		 * @return
+		 */
+		public Builder setQueueOverflowBlockTimeoutMs(
+				long queueOverflowBlockTimeoutMs) {
+			assert (queueOverflowBlockTimeoutMs >= 0);
+			this.queueOverflowBlockTimeoutMs = queueOverflowBlockTimeoutMs;
+			return this;
+		}
+
+		/**
+		 * Sets the local directory in which
+		 * {@link QueueOverflowPolicy#SPILL_TO_DISK} keeps an overflow log per
+		 * worker.
+		 * 
+		 * @param overflowLogDir
+		 * @return
+		 */
+		public Builder setOverflowLogDir(String overflowLogDir) {
+			assert (overflowLogDir != null);
+			this.overflowLogDir = overflowLogDir;
+			return this;
+		}
+
+		/**
+		 * Sets no of threads which rehash the dirty segments while rebuilding
+		 * a tree. Default value is 1, which rehashes the segments on the
+		 * calling thread. The threads are started on the first rebuild with
+		 * enough dirty segments, and stopped on {@link HashTreesImpl#stop()}.
+		 * 
+		 * @param rebuildParallelism
+		 * @return
+		 */
+		public Builder setRebuildParallelism(int rebuildParallelism) {
+			assert (rebuildParallelism > 0);
+			this.rebuildParallelism = rebuildParallelism;
+			return this;
+		}
+
+		/**
+		 * Sets no of top levels of each tree, whose hashes are kept in memory.
+		 * Those are read by every synch, and rewritten by every rebuild. The
+		 * rebuilds write the changed hashes to the store at the end. The
+		 * store should not be modified by others, while the hashes are
+		 * cached. Default value is 0, which does not cache any level.
+		 * 
+		 * @param cachedTopLevels
+		 * @return
+		 */
+		public Builder setCachedTopLevels(int cachedTopLevels) {
+			assert (cachedTopLevels >= 0);
+			this.cachedTopLevels = cachedTopLevels;
+			return this;
+		}
+
 		/**
 		 * Sets a lock provider to use. By default this uses
 		 * {@link HTReentrantLockProvider}.
@@ -861,14 +3616,114 @@ public class HashTreesImpl implements HashTrees, Service {
 			return this;
 		}
 
+		/**
+		 * Sets the algorithm which is used for digesting the values and the
+		 * tree nodes. By default {@link DigestAlgorithms#SHA1} is used. All
+		 * the trees which are synched with each other should use the same
+		 * algorithm.
+		 * 
+		 * @param digestAlgorithm
+		 * @return
+		 */
+		public Builder setDigestAlgorithm(DigestAlgorithm digestAlgorithm) {
+			assert (digestAlgorithm != null);
+			this.digestAlgorithm = digestAlgorithm;
+			return this;
+		}
+
+		/**
+		 * Sets the format in which the segment data and the children hashes
+		 * are fed into the digest algorithm. By default {@link DigestFormat#V1}
+		 * is used. All the trees which are synched with each other should use
+		 * the same format.
+		 * 
+		 * @param digestFormat
+		 * @return
+		 */
+		public Builder setDigestFormat(DigestFormat digestFormat) {
+			assert (digestFormat != null);
+			this.digestFormat = digestFormat;
+			return this;
+		}
+
+		/**
+		 * Enables/Disables incremental leaf hashing. When enabled, the hash of
+		 * a segment is kept up to date on every put and remove, by adding and
+		 * subtracting the hash of the (key, digest) pair. Rebuilds then only
+		 * propagate the changes to the internal nodes, instead of reading
+		 * every dirty segment. Puts and removes need to read the old digest of
+		 * the key. By default it is disabled. All the trees which are synched
+		 * with each other should use the same setting.
+		 * 
+		 * @param incrementalLeafHashing
+		 * @return
+		 */
+		public Builder setIncrementalLeafHashing(boolean incrementalLeafHashing) {
+			this.incrementalLeafHashing = incrementalLeafHashing;
+			return this;
+		}
+
+		/**
+		 * Sets how hashes are compared with the remote tree while synch
+		 * operation. By default {@link SyncMode#PULL_HASHES} is used, which
+		 * works with every remote tree. {@link SyncMode#PUSH_HASHES} requires
+		 * the remote tree to support
+		 * {@link HashTrees#compareSegmentHashes(long, List)}, and transfers
+		 * much less data when the trees are mostly consistent.
+		 * {@link SyncMode#FETCH_SUBTREE_HASHES} requires
+		 * {@link HashTrees#getSubtreeHashes(long, List, int)}, and makes fewer
+		 * calls to the remote tree, which helps when the round trip time is
+		 * high.
+		 * 
+		 * @param syncMode
+		 * @return
+		 */
+		public Builder setSyncMode(SyncMode syncMode) {
+			assert (syncMode != null);
+			this.syncMode = syncMode;
+			return this;
+		}
+
+		/**
+		 * While synch operation, mismatched segments are fetched from the
+		 * remote tree in batches. This sets the maximum size of a batch in
+		 * bytes, estimated from the size of the local segments. A segment
+		 * bigger than this value is not batched, but streamed in pages, see
+		 * {@link #setSegmentPageSize(int)}. The same value caps the responses
+		 * to {@link HashTrees#getSegments(long, List)} served by this tree.
+		 * Default value is 4MB.
+		 * 
+		 * @param maxSegmentsBatchBytes
+		 * @return
+		 */
+		public Builder setMaxSegmentsBatchBytes(int maxSegmentsBatchBytes) {
+			assert (maxSegmentsBatchBytes > 0);
+			this.maxSegmentsBatchBytes = maxSegmentsBatchBytes;
+			return this;
+		}
+
+		/**
+		 * Sets the no of (key,hash) pairs fetched from the remote tree in one
+		 * call, while streaming a segment which is too big to be batched. The
+		 * updates to the remote tree are also sent in chunks of this size.
+		 * Default value is 8192.
+		 * 
+		 * @param segmentPageSize
+		 * @return
+		 */
+		public Builder setSegmentPageSize(int segmentPageSize) {
+			assert (segmentPageSize > 0);
+			this.segmentPageSize = segmentPageSize;
+			return this;
+		}
+
 		public HashTreesImpl build() {
+			int validNoOfSegments = getValidSegmentsCount(noOfSegments, fanOut);
 			if (segIdProvider == null)
-				segIdProvider = new ModuloSegIdProvider(noOfSegments);
+				segIdProvider = new ModuloSegIdProvider(validNoOfSegments);
 			if (lockProvider == null)
 				lockProvider = new HTReentrantLockProvider();
-			return new HashTreesImpl(noOfSegments, enabledNonBlockingCalls,
-					nonBlockingQueueSize, treeIdProvider, segIdProvider,
-					htStore, store, lockProvider);
+			return new HashTreesImpl(this);
 		}
 	}
 }
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees;
+
+/**
+ * Defines what happens to an operation of a non blocking
+ * {@link HashTrees#hPut(java.nio.ByteBuffer, java.nio.ByteBuffer)} or
+ * {@link HashTrees#hRemove(java.nio.ByteBuffer)} call, when the queue of the
+ * background thread is full.
+ * 
+ * Policies which do not apply the operation in the queue order make the next
+ * rebuild of the tree read its dirty segments back from
+ * {@link org.hashtrees.store.Store}.
+ * 
+ */
+public enum QueueOverflowPolicy {
+	// Throws QueueReachedMaxCapacityException to the caller.
+	FAIL,
+	// Waits for the queue to have room, up to a timeout. Fails after the
+	// timeout.
+	BLOCK,
+	// Applies the operation on the calling thread. Without digest at enqueue,
+	// an earlier operation on the key can still be on the queue, so the dirty
+	// segments of the tree are also recovered on the next rebuild.
+	CALLER_RUNS,
+	// Appends the operation to an overflow log on local disk. Later operations
+	// of the same worker are appended behind it, until the log is moved back
+	// to the queue.
+	SPILL_TO_DISK,
+	// Drops the operation. Its segment is recovered from the store on the next
+	// rebuild.
+	MARK_SEGMENT_DIRTY
+}
@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees;
+
+/**
+ * Defines how the hashes of local and remote trees are compared while synch
+ * operation.
+ * 
+ */
+public enum SyncMode {
+	PULL_HASHES // Fetches remote hashes level by level, and compares them
+				// locally.
+	, PUSH_HASHES // Sends local hashes level by level, and the remote tree
+					// returns only the node ids which differ.
+	, FETCH_SUBTREE_HASHES // Fetches hashes of several levels in one call.
+							// The depth is chosen by the number of
+							// mismatched nodes.
+}
@@ -20,8 +20,11 @@ package org.hashtrees.manager;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.thrift.TApplicationException;
 import org.hashtrees.HashTrees;
 import org.hashtrees.HashTreesObserver;
 import org.hashtrees.SyncDiffResult;
@@ -119,6 +122,36 @@ public class HashTreesRemoteClient implements HashTrees {
 		}
 	}
 
+	@Override
+	public List<Integer> compareSegmentHashes(long treeId,
+			List<SegmentHash> segmentHashes) throws IOException {
+		HashTreesSyncInterface.Client remoteTree = null;
+		try {
+			remoteTree = clientPool.borrowObject();
+			return remoteTree.compareSegmentHashes(treeId, segmentHashes);
+		} catch (Exception e) {
+			throw new IOException(e);
+		} finally {
+			if (remoteTree != null)
+				clientPool.returnObject(remoteTree);
+		}
+	}
+
+	@Override
+	public List<SegmentHash> getSubtreeHashes(long treeId,
+			List<Integer> nodeIds, int depth) throws IOException {
+		HashTreesSyncInterface.Client remoteTree = null;
+		try {
+			remoteTree = clientPool.borrowObject();
+			return remoteTree.getSubtreeHashes(treeId, nodeIds, depth);
+		} catch (Exception e) {
+			throw new IOException(e);
+		} finally {
+			if (remoteTree != null)
+				clientPool.returnObject(remoteTree);
+		}
+	}
+
 	@Override
 	public List<SegmentData> getSegment(long treeId, int segId)
 			throws IOException {
@@ -134,6 +167,59 @@ public class HashTreesRemoteClient implements HashTrees {
 		}
 	}
 
+	@Override
+	public List<SegmentData> getSegments(long treeId, List<Integer> segIds)
+			throws IOException {
+		HashTreesSyncInterface.Client remoteTree = null;
+		try {
+			remoteTree = clientPool.borrowObject();
+			return remoteTree.getSegments(treeId, segIds);
+		} catch (Exception e) {
+			throw new IOException(e);
+		} finally {
+			if (remoteTree != null)
+				clientPool.returnObject(remoteTree);
+		}
+	}
+
+	@Override
+	public List<SegmentData> getSegmentPage(long treeId, int segId,
+			ByteBuffer fromKey, int maxEntries) throws IOException {
+		HashTreesSyncInterface.Client remoteTree = null;
+		try {
+			remoteTree = clientPool.borrowObject();
+			return remoteTree.getSegmentPage(treeId, segId, fromKey,
+					maxEntries);
+		} catch (Exception e) {
+			throw new IOException(e);
+		} finally {
+			if (remoteTree != null)
+				clientPool.returnObject(remoteTree);
+		}
+	}
+
+	/**
+	 * A remote tree which does not know the call yet returns no settings, so
+	 * that it can still be synched while the servers are upgraded.
+	 */
+	@Override
+	public Map<String, String> getSettings() throws IOException {
+		HashTreesSyncInterface.Client remoteTree = null;
+		try {
+			remoteTree = clientPool.borrowObject();
+			return remoteTree.getSettings();
+		} catch (TApplicationException e) {
+			if (e.getType() == TApplicationException.UNKNOWN_METHOD)
+				return Collections.emptyMap();
+			throw new IOException(e);
+		} catch (Exception e) {
+			throw new IOException(e);
+		} finally {
+			if (remoteTree != null)
+				clientPool.returnObject(remoteTree);
+		}
+	}
+
 	@Override
 	public SegmentData getSegmentData(long treeId, int segId, ByteBuffer key)
 			throws IOException {
@@ -201,6 +287,16 @@ public class HashTreesRemoteClient implements HashTrees {
 		throw new IOException("Remote tree does not support this operation.");
 	}
 
+	@Override
+	public void hPutAll(List<KeyValue> keyValuePairs) throws IOException {
+		throw new IOException("Remote tree does not support this operation.");
+	}
+
+	@Override
+	public void hRemoveAll(List<ByteBuffer> keys) throws IOException {
+		throw new IOException("Remote tree does not support this operation.");
+	}
+
 	@Override
 	public int rebuildHashTree(long treeId, long fullRebuildPeriod)
 			throws IOException {
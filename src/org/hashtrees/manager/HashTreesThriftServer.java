@@ -21,6 +21,7 @@ package org.hashtrees.manager;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.thrift.TException;
 import org.hashtrees.HashTrees;
@@ -89,6 +90,26 @@ class HashTreesThriftServer implements HashTreesSyncInterface.Iface {
 		}
 	}
 
+	@Override
+	public List<Integer> compareSegmentHashes(long treeId,
+			List<SegmentHash> segmentHashes) throws TException {
+		try {
+			return hashTrees.compareSegmentHashes(treeId, segmentHashes);
+		} catch (Exception e) {
+			throw new TException(e);
+		}
+	}
+
+	@Override
+	public List<SegmentHash> getSubtreeHashes(long treeId,
+			List<Integer> nodeIds, int depth) throws TException {
+		try {
+			return hashTrees.getSubtreeHashes(treeId, nodeIds, depth);
+		} catch (Exception e) {
+			throw new TException(e);
+		}
+	}
+
 	@Override
 	public List<SegmentData> getSegment(long treeId, int segId)
 			throws TException {
@@ -99,6 +120,36 @@ class HashTreesThriftServer implements HashTreesSyncInterface.Iface {
 		}
 	}
 
+	@Override
+	public List<SegmentData> getSegments(long treeId, List<Integer> segIds)
+			throws TException {
+		try {
+			return hashTrees.getSegments(treeId, segIds);
+		} catch (Exception e) {
+			throw new TException(e);
+		}
+	}
+
+	@Override
+	public List<SegmentData> getSegmentPage(long treeId, int segId,
+			ByteBuffer fromKey, int maxEntries) throws TException {
+		try {
+			return hashTrees.getSegmentPage(treeId, segId, fromKey,
+					maxEntries);
+		} catch (Exception e) {
+			throw new TException(e);
+		}
+	}
+
+	@Override
+	public Map<String, String> getSettings() throws TException {
+		try {
+			return hashTrees.getSettings();
+		} catch (Exception e) {
+			throw new TException(e);
+		}
+	}
+
 	@Override
 	public SegmentData getSegmentData(long treeId, int segId, ByteBuffer key)
 			throws TException {
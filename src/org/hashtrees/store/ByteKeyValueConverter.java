@@ -25,6 +25,7 @@ import java.util.Map.Entry;
 import org.hashtrees.thrift.generated.SegmentData;
 import org.hashtrees.util.ByteUtils;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 
 /**
@@ -41,6 +42,10 @@ import com.google.common.base.Function;
  * 
  * 5) Rebuild marker key [treeId|'R'|segId] -> [EMPTY_VALUE]
  * 
+ * 6) Store meta data, which is not bound to any tree. Format is
+ * [0|'G'|key] -> [value]. 'G' is not used by any of {@link BaseKey}s, so the
+ * tree level operations never see these keys.
+ * 
  */
 public class ByteKeyValueConverter {
 
@@ -50,6 +55,7 @@ public class ByteKeyValueConverter {
 
 	public static final int LEN_BASEKEY_AND_TREEID = BaseKey.LENGTH
 			+ ByteUtils.SIZEOF_LONG;
+	private static final byte STORE_META_DATA_MARKER = (byte) 'G';
 
 	public static enum BaseKey {
 
@@ -123,6 +129,16 @@ public class ByteKeyValueConverter {
 		return key;
 	}
 
+	public static byte[] generateStoreMetaDataKey(String name) {
+		byte[] nameBytes = name.getBytes(Charsets.UTF_8);
+		byte[] key = new byte[LEN_BASEKEY_AND_TREEID + nameBytes.length];
+		ByteBuffer bb = ByteBuffer.wrap(key);
+		bb.putLong(0);
+		bb.put(STORE_META_DATA_MARKER);
+		bb.put(nameBytes);
+		return key;
+	}
+
 	public static void fillSegmentKey(ByteBuffer keyToFill, BaseKey baseKey,
 			long treeId, int id) {
 		fillBaseKey(keyToFill, baseKey, treeId);
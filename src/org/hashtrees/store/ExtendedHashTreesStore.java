@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+
+import org.hashtrees.HashTrees;
+import org.hashtrees.HashTreesCustomRuntimeException;
+import org.hashtrees.thrift.generated.SegmentData;
+
+/**
+ * Optional operations of {@link HashTreesStore}, which let {@link HashTrees}
+ * implementations write in batches, read huge segments without holding them
+ * in memory, and record the settings which the store contents depend on.
+ * {@link HashTreesMemStore} and {@link HashTreesPersistentStore} implement
+ * these. For other stores the implementations fall back to the operations of
+ * {@link HashTreesStore}, and do not record or validate any settings.
+ * 
+ */
+public interface ExtendedHashTreesStore extends HashTreesStore {
+
+	/**
+	 * Puts and deletes the given segment data, and marks their segments as
+	 * dirty, as a single write. Puts are applied before deletes, and each list
+	 * is applied in the given order.
+	 *
+	 * @param treeId
+	 * @param segDataToPut
+	 *            , sorted by segment id and key.
+	 * @param segDataToDelete
+	 *            , sorted by segment id and key. Digests are ignored.
+	 */
+	void applyBatch(long treeId, List<SegmentData> segDataToPut,
+			List<SegmentData> segDataToDelete) throws IOException;
+
+	/**
+	 * Returns an iterator to read the segment data of the given segment block
+	 * in the key order, starting from the given key. Unlike
+	 * {@link #getSegment(long, int)}, the segment block is not read into
+	 * memory at once.
+	 * 
+	 * Note: Iterator implementations should throw
+	 * {@link HashTreesCustomRuntimeException} so that failure cases can be
+	 * handled properly by {@link HashTrees}
+	 * 
+	 * @param treeId
+	 * @param segId
+	 * @param fromKey
+	 *            , inclusive. An empty key starts from the beginning of the
+	 *            segment block.
+	 * @return
+	 * @throws IOException
+	 */
+	Iterator<SegmentData> getSegmentIterator(long treeId, int segId,
+			ByteBuffer fromKey) throws IOException;
+
+	/**
+	 * Same as calling {@link #putSegmentHash(long, int, ByteBuffer)} on each
+	 * node, but allows the implementation to write them in batches. Used by
+	 * the rebuilds, which write many hashes at once.
+	 * 
+	 * @param treeId
+	 * @param nodeIds
+	 * @param digests
+	 *            , digest of each node id in the same order.
+	 */
+	void putSegmentHashes(long treeId, List<Integer> nodeIds,
+			List<ByteBuffer> digests) throws IOException;
+
+	/**
+	 * Stores a meta data entry which is not bound to any tree. Used by
+	 * {@link HashTrees} implementations to record the settings which the
+	 * store contents depend on, like the digest algorithm.
+	 * 
+	 * @param name
+	 * @param value
+	 */
+	void putMetaData(String name, byte[] value) throws IOException;
+
+	/**
+	 * Returns the meta data entry stored through
+	 * {@link #putMetaData(String, byte[])}, or null if it does not exist.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	byte[] getMetaData(String name) throws IOException;
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.store;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Stores the hashes of all the nodes of a tree in a single array, indexed by
+ * nodeId * digestLength. A bit set tells whether a node hash is present.
+ * 
+ * Writers of a stripe of nodes are serialized through a version, which is odd
+ * while a write is in progress. Readers do not lock, they copy the hash and
+ * retry if the version of the stripe has changed in the meantime.
+ * 
+ */
+@ThreadSafe
+class FlatSegmentHashes {
+
+	private final static int ADDRESS_BITS_PER_WORD = 6;
+	private final static int NO_OF_STRIPES = 1 << 10;
+
+	private final int noOfNodes;
+	private final int digestLength;
+	private final byte[] hashes;
+	private final AtomicLongArray presentNodes;
+	private final AtomicIntegerArray versions = new AtomicIntegerArray(
+			NO_OF_STRIPES);
+
+	FlatSegmentHashes(int noOfNodes, int digestLength) {
+		if (((long) noOfNodes * digestLength) > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Can not store " + noOfNodes
+					+ " hashes of length " + digestLength + " in an array.");
+		this.noOfNodes = noOfNodes;
+		this.digestLength = digestLength;
+		this.hashes = new byte[noOfNodes * digestLength];
+		this.presentNodes = new AtomicLongArray(
+				(noOfNodes >> ADDRESS_BITS_PER_WORD) + 1);
+	}
+
+	private void validate(int nodeId) {
+		if (nodeId < 0 || nodeId >= noOfNodes)
+			throw new IllegalArgumentException("Node id " + nodeId
+					+ " is out of range, no of nodes is " + noOfNodes);
+	}
+
+	private static int getStripe(int nodeId) {
+		return nodeId & (NO_OF_STRIPES - 1);
+	}
+
+	public void put(int nodeId, ByteBuffer digest) {
+		validate(nodeId);
+		if (digest.remaining() != digestLength)
+			throw new IllegalArgumentException("Expected digest length is "
+					+ digestLength + ", but was " + digest.remaining());
+		int stripe = getStripe(nodeId);
+		int version;
+		while (true) {
+			version = versions.get(stripe);
+			if ((version & 1) == 0
+					&& versions.compareAndSet(stripe, version, version + 1))
+				break;
+		}
+		try {
+			digest.duplicate().get(hashes, nodeId * digestLength, digestLength);
+			setPresent(nodeId);
+		} finally {
+			versions.set(stripe, version + 2);
+		}
+	}
+
+	private void setPresent(int nodeId) {
+		int wordIndex = nodeId >> ADDRESS_BITS_PER_WORD;
+		long mask = 1L << nodeId;
+		while (true) {
+			long oldValue = presentNodes.get(wordIndex);
+			if ((oldValue & mask) != 0
+					|| presentNodes.compareAndSet(wordIndex, oldValue,
+							oldValue | mask))
+				return;
+		}
+	}
+
+	private boolean isPresent(int nodeId) {
+		return (presentNodes.get(nodeId >> ADDRESS_BITS_PER_WORD) & (1L << nodeId)) != 0;
+	}
+
+	/**
+	 * Returns a copy of the hash of the node.
+	 * 
+	 * @param nodeId
+	 * @return null if the hash is not present.
+	 */
+	public ByteBuffer get(int nodeId) {
+		validate(nodeId);
+		if (!isPresent(nodeId))
+			return null;
+		int stripe = getStripe(nodeId);
+		byte[] result = new byte[digestLength];
+		while (true) {
+			int version = versions.get(stripe);
+			if ((version & 1) != 0)
+				continue;
+			System.arraycopy(hashes, nodeId * digestLength, result, 0,
+					digestLength);
+			// A successful compare and set acts as a full fence, so the copy
+			// is not reordered after the version check.
+			if (versions.compareAndSet(stripe, version, version))
+				return ByteBuffer.wrap(result);
+		}
+	}
+}
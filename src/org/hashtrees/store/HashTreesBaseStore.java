@@ -19,12 +19,15 @@
 package org.hashtrees.store;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import org.hashtrees.HashTrees;
-import org.hashtrees.util.AtomicBitSet;
+import org.hashtrees.thrift.generated.SegmentData;
+
+import com.google.common.primitives.Ints;
 
 /**
  * In memory store, only stores the dirty segments. Tries to serve read calls
@@ -38,11 +41,28 @@ import org.hashtrees.util.AtomicBitSet;
  */
 public abstract class HashTreesBaseStore implements HashTreesStore {
 
-	private final ConcurrentMap<Long, AtomicBitSet> treeIdAndDirtySegmentMap = new ConcurrentHashMap<Long, AtomicBitSet>();
+	private final ConcurrentMap<Long, SegmentBits> treeIdAndDirtySegmentMap = new ConcurrentHashMap<Long, SegmentBits>();
+	private volatile int noOfSegments;
+
+	/**
+	 * Sets the no of segments of the trees, so that the segment bits of the
+	 * trees, which are accessed for the first time after this call, are
+	 * preallocated. Called by {@link HashTrees} implementations. If the store
+	 * is shared by more than one, the largest value is kept.
+	 * 
+	 * @param noOfSegments
+	 */
+	public synchronized void setNoOfSegments(int noOfSegments) {
+		this.noOfSegments = Math.max(this.noOfSegments, noOfSegments);
+	}
+
+	protected int getNoOfSegments() {
+		return noOfSegments;
+	}
 
-	private AtomicBitSet initializeDirtySegments(long treeId)
+	private SegmentBits initializeDirtySegments(long treeId)
 			throws IOException {
-		AtomicBitSet dirtySegmentsBitSet = new AtomicBitSet();
+		SegmentBits dirtySegmentsBitSet = new SegmentBits(noOfSegments);
 		List<Integer> dirtySegments = getDirtySegmentsInternal(treeId);
 		for (int dirtySegment : dirtySegments)
 			dirtySegmentsBitSet.set(dirtySegment);
@@ -52,7 +72,7 @@ public abstract class HashTreesBaseStore implements HashTreesStore {
 		return dirtySegmentsBitSet;
 	}
 
-	private AtomicBitSet getDirtySegmentsHolder(long treeId) throws IOException {
+	private SegmentBits getDirtySegmentsHolder(long treeId) throws IOException {
 		if (!treeIdAndDirtySegmentMap.containsKey(treeId))
 			treeIdAndDirtySegmentMap.putIfAbsent(treeId,
 					initializeDirtySegments(treeId));
@@ -69,7 +89,7 @@ public abstract class HashTreesBaseStore implements HashTreesStore {
 
 	@Override
 	public List<Integer> getDirtySegments(long treeId) throws IOException {
-		return getDirtySegmentsHolder(treeId).getAllSetBits();
+		return Ints.asList(getDirtySegmentsHolder(treeId).getAllSetBitsArray());
 	}
 
 	@Override
@@ -80,6 +100,47 @@ public abstract class HashTreesBaseStore implements HashTreesStore {
 		return prevValue;
 	}
 
+	/**
+	 * Implements {@link ExtendedHashTreesStore#applyBatch(long, List, List)}
+	 * for the subclasses which implement that interface.
+	 */
+	public void applyBatch(long treeId, List<SegmentData> segDataToPut,
+			List<SegmentData> segDataToDelete) throws IOException {
+		SegmentBits dirtySegments = getDirtySegmentsHolder(treeId);
+		List<Integer> newDirtySegments = new ArrayList<>();
+		for (SegmentData sd : segDataToPut)
+			if (!dirtySegments.set(sd.getSegId()))
+				newDirtySegments.add(sd.getSegId());
+		for (SegmentData sd : segDataToDelete)
+			if (!dirtySegments.set(sd.getSegId()))
+				newDirtySegments.add(sd.getSegId());
+		applyBatchInternal(treeId, newDirtySegments, segDataToPut,
+				segDataToDelete);
+	}
+
+	/**
+	 * Applies the batch along with the dirty markers of the segments which
+	 * were not dirty before. By default those are written one by one, the
+	 * subclasses can write them as a single write.
+	 * 
+	 * @param treeId
+	 * @param newDirtySegments
+	 * @param segDataToPut
+	 * @param segDataToDelete
+	 * @throws IOException
+	 */
+	protected void applyBatchInternal(long treeId,
+			List<Integer> newDirtySegments, List<SegmentData> segDataToPut,
+			List<SegmentData> segDataToDelete) throws IOException {
+		for (int segId : newDirtySegments)
+			setDirtySegmentInternal(treeId, segId);
+		for (SegmentData sd : segDataToPut)
+			putSegmentData(treeId, sd.getSegId(), sd.bufferForKey(),
+					sd.bufferForDigest());
+		for (SegmentData sd : segDataToDelete)
+			deleteSegmentData(treeId, sd.getSegId(), sd.bufferForKey());
+	}
+
 	protected abstract void setDirtySegmentInternal(long treeId, int segId)
 			throws IOException;
 
@@ -21,48 +21,136 @@ package org.hashtrees.store;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
 
+import javax.annotation.concurrent.NotThreadSafe;
 import javax.annotation.concurrent.ThreadSafe;
 
 import org.hashtrees.thrift.generated.SegmentData;
 import org.hashtrees.thrift.generated.SegmentHash;
-import org.hashtrees.util.AtomicBitSet;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.primitives.Ints;
 
 /**
  * In memory implementation of {@link HashTreesStore}.
  * 
+ * The pairs of a segment block are packed into a single byte array, and are
+ * ordered by the unsigned order of the keys, same as
+ * {@link HashTreesPersistentStore}. So the trees which are built on different
+ * stores have the same hashes.
+ * 
+ * By default node hashes are stored in a sorted map. When the no of nodes of
+ * the tree and the digest length are known, the hashes can be stored in a
+ * single flat array per tree instead, see
+ * {@link #HashTreesMemStore(int, int)}.
+ * 
  */
 @ThreadSafe
-public class HashTreesMemStore extends HashTreesBaseStore {
+public class HashTreesMemStore extends HashTreesBaseStore implements
+		ExtendedHashTreesStore {
+
+	private final static ByteBuffer EMPTY_KEY = ByteBuffer.allocate(0);
+	private final static int SEGMENT_READ_BATCH_SIZE = 1 << 10;
 
 	private final ConcurrentMap<Long, HashTreeMemStore> treeIdAndIndHashTree = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, byte[]> metaData = new ConcurrentHashMap<>();
+	private final int noOfNodes;
+	private final int digestLength;
+
+	public HashTreesMemStore() {
+		this(0, 0);
+	}
+
+	/**
+	 * Stores the node hashes of each tree in a flat array of noOfNodes *
+	 * digestLength bytes, which is allocated on the first access of the tree.
+	 * Node ids should be less than noOfNodes, and all the hashes should be
+	 * of digestLength bytes.
+	 * 
+	 * @param noOfNodes
+	 *            , no of nodes in the tree including the leaves. Look at
+	 *            {@link org.hashtrees.HashTreesImpl#getTotalNoOfNodes(int, int)}
+	 * @param digestLength
+	 *            , look at
+	 *            {@link org.hashtrees.DigestAlgorithm#getDigestLength()}
+	 */
+	public HashTreesMemStore(int noOfNodes, int digestLength) {
+		this.noOfNodes = noOfNodes;
+		this.digestLength = digestLength;
+	}
 
 	private static class HashTreeMemStore {
-		private final ConcurrentMap<Integer, ByteBuffer> segmentHashes = new ConcurrentSkipListMap<Integer, ByteBuffer>();
-		private final ConcurrentSkipListMap<Integer, ConcurrentSkipListMap<ByteBuffer, ByteBuffer>> segDataBlocks = new ConcurrentSkipListMap<Integer, ConcurrentSkipListMap<ByteBuffer, ByteBuffer>>();
+		private final ConcurrentMap<Integer, ByteBuffer> segmentHashes;
+		private final FlatSegmentHashes flatSegmentHashes;
+		private final ConcurrentSkipListMap<Integer, SegmentBlock> segDataBlocks = new ConcurrentSkipListMap<>();
 		private final AtomicLong lastRebuiltTS = new AtomicLong(0);
-		private final AtomicBitSet markedSegments = new AtomicBitSet();
+		private final SegmentBits markedSegments;
+
+		HashTreeMemStore(int noOfNodes, int digestLength, int noOfSegments) {
+			markedSegments = new SegmentBits(noOfSegments);
+			if (noOfNodes > 0) {
+				segmentHashes = null;
+				flatSegmentHashes = new FlatSegmentHashes(noOfNodes,
+						digestLength);
+			} else {
+				segmentHashes = new ConcurrentSkipListMap<Integer, ByteBuffer>();
+				flatSegmentHashes = null;
+			}
+		}
+
+		ByteBuffer getSegmentHash(int nodeId) {
+			return (flatSegmentHashes != null) ? flatSegmentHashes.get(nodeId)
+					: segmentHashes.get(nodeId);
+		}
+	}
+
+	/**
+	 * Creates the block which holds the segment data of a segment.
+	 * 
+	 * @return
+	 */
+	SegmentBlock newSegmentBlock() {
+		return new PackedSegmentBlock(false);
+	}
+
+	/**
+	 * Returns no of bytes allocated for the segment data of all the trees,
+	 * that is the slabs of the segment blocks and the offsets of the pairs.
+	 * Node hashes are not counted.
+	 * 
+	 * @return
+	 */
+	public long getMemoryUsed() {
+		long memoryUsed = 0;
+		for (HashTreeMemStore indPartition : treeIdAndIndHashTree.values())
+			for (SegmentBlock segDataBlock : indPartition.segDataBlocks
+					.values())
+				memoryUsed += segDataBlock.getMemoryUsed();
+		return memoryUsed;
 	}
 
 	private HashTreeMemStore getIndHTree(long treeId) {
 		if (!treeIdAndIndHashTree.containsKey(treeId))
-			treeIdAndIndHashTree.putIfAbsent(treeId, new HashTreeMemStore());
+			treeIdAndIndHashTree.putIfAbsent(treeId, new HashTreeMemStore(
+					noOfNodes, digestLength, getNoOfSegments()));
 		return treeIdAndIndHashTree.get(treeId);
 	}
 
 	@Override
 	public SegmentData getSegmentData(long treeId, int segId, ByteBuffer key) {
-		ConcurrentSkipListMap<ByteBuffer, ByteBuffer> segDataBlock = getIndHTree(treeId).segDataBlocks
+		SegmentBlock segDataBlock = getIndHTree(treeId).segDataBlocks
 				.get(segId);
 		if (segDataBlock != null) {
 			ByteBuffer value = segDataBlock.get(key);
@@ -79,32 +167,50 @@ public class HashTreesMemStore extends HashTreesBaseStore {
 			ByteBuffer digest) {
 		HashTreeMemStore hTreeStore = getIndHTree(treeId);
 		if (!hTreeStore.segDataBlocks.containsKey(segId))
-			hTreeStore.segDataBlocks.putIfAbsent(segId,
-					new ConcurrentSkipListMap<ByteBuffer, ByteBuffer>());
-		hTreeStore.segDataBlocks.get(segId).put(key.duplicate(),
-				digest.duplicate());
+			hTreeStore.segDataBlocks.putIfAbsent(segId, newSegmentBlock());
+		hTreeStore.segDataBlocks.get(segId).put(key, digest);
 	}
 
 	@Override
 	public void deleteSegmentData(long treeId, int segId, ByteBuffer key) {
 		HashTreeMemStore indPartition = getIndHTree(treeId);
-		Map<ByteBuffer, ByteBuffer> segDataBlock = indPartition.segDataBlocks
-				.get(segId);
+		SegmentBlock segDataBlock = indPartition.segDataBlocks.get(segId);
 		if (segDataBlock != null)
-			segDataBlock.remove(key.duplicate());
+			segDataBlock.remove(key);
+	}
+
+	@Override
+	protected void applyBatchInternal(long treeId,
+			List<Integer> newDirtySegments, List<SegmentData> segDataToPut,
+			List<SegmentData> segDataToDelete) {
+		for (SegmentData sd : segDataToPut)
+			putSegmentData(treeId, sd.getSegId(), sd.bufferForKey(),
+					sd.bufferForDigest());
+		for (SegmentData sd : segDataToDelete)
+			deleteSegmentData(treeId, sd.getSegId(), sd.bufferForKey());
 	}
 
 	@Override
 	public List<SegmentData> getSegment(long treeId, int segId) {
 		HashTreeMemStore indPartition = getIndHTree(treeId);
-		ConcurrentMap<ByteBuffer, ByteBuffer> segDataBlock = indPartition.segDataBlocks
-				.get(segId);
+		SegmentBlock segDataBlock = indPartition.segDataBlocks.get(segId);
 		if (segDataBlock == null)
 			return Collections.emptyList();
-		List<SegmentData> result = new ArrayList<SegmentData>();
-		for (Map.Entry<ByteBuffer, ByteBuffer> entry : segDataBlock.entrySet())
-			result.add(new SegmentData(segId, entry.getKey(), entry.getValue()));
-		return result;
+		return segDataBlock.read(segId, EMPTY_KEY, true, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Iterator returned by this method is not thread safe.
+	 */
+	@Override
+	public Iterator<SegmentData> getSegmentIterator(long treeId,
+			final int segId, ByteBuffer fromKey) {
+		HashTreeMemStore indPartition = getIndHTree(treeId);
+		SegmentBlock segDataBlock = indPartition.segDataBlocks.get(segId);
+		if (segDataBlock == null)
+			return Collections.emptyIterator();
+		return new SegmentBlocksIterator(Collections.singletonMap(segId,
+				segDataBlock).entrySet().iterator(), fromKey);
 	}
 
 	/**
@@ -113,68 +219,92 @@ public class HashTreesMemStore extends HashTreesBaseStore {
 	@Override
 	public Iterator<SegmentData> getSegmentDataIterator(long treeId) {
 		final HashTreeMemStore memStore = getIndHTree(treeId);
-		final Iterator<Map.Entry<Integer, ConcurrentSkipListMap<ByteBuffer, ByteBuffer>>> dataBlocksItr = memStore.segDataBlocks
-				.entrySet().iterator();
-		return convertMapEntriesToSegmentData(dataBlocksItr);
+		return new SegmentBlocksIterator(memStore.segDataBlocks.entrySet()
+				.iterator(), EMPTY_KEY);
 	}
 
 	@Override
 	public Iterator<SegmentData> getSegmentDataIterator(long treeId,
 			int fromSegId, int toSegId) throws IOException {
 		final HashTreeMemStore memStore = getIndHTree(treeId);
-		final Iterator<Map.Entry<Integer, ConcurrentSkipListMap<ByteBuffer, ByteBuffer>>> dataBlocksItr = memStore.segDataBlocks
-				.subMap(fromSegId, true, toSegId, true).entrySet().iterator();
-		return convertMapEntriesToSegmentData(dataBlocksItr);
-	}
-
-	private static Iterator<SegmentData> convertMapEntriesToSegmentData(
-			final Iterator<Map.Entry<Integer, ConcurrentSkipListMap<ByteBuffer, ByteBuffer>>> dataBlocksItr) {
-		return new Iterator<SegmentData>() {
-
-			volatile int segId;
-			volatile Iterator<Map.Entry<ByteBuffer, ByteBuffer>> itr = null;
-
-			@Override
-			public boolean hasNext() {
-				if (itr == null || !itr.hasNext()) {
-					while (dataBlocksItr.hasNext()) {
-						Map.Entry<Integer, ConcurrentSkipListMap<ByteBuffer, ByteBuffer>> entry = dataBlocksItr
-								.next();
-						segId = entry.getKey();
-						itr = entry.getValue().entrySet().iterator();
-						if (itr.hasNext())
-							break;
-					}
-				}
-				return (itr != null) && itr.hasNext();
-			}
+		return new SegmentBlocksIterator(memStore.segDataBlocks
+				.subMap(fromSegId, true, toSegId, true).entrySet().iterator(),
+				EMPTY_KEY);
+	}
 
-			@Override
-			public SegmentData next() {
-				if (itr == null || !itr.hasNext())
-					throw new NoSuchElementException(
-							"No more elements exist to return.");
-				Map.Entry<ByteBuffer, ByteBuffer> entry = itr.next();
-				return new SegmentData(segId, entry.getKey(), entry.getValue());
-			}
+	/**
+	 * Reads the blocks in batches of {@link #SEGMENT_READ_BATCH_SIZE} pairs.
+	 * A batch continues from the last key of the previous batch, so the
+	 * blocks can be changed while they are iterated.
+	 * 
+	 */
+	@NotThreadSafe
+	private static class SegmentBlocksIterator extends
+			AbstractIterator<SegmentData> {
+
+		private final Iterator<Map.Entry<Integer, SegmentBlock>> dataBlocksItr;
+		private int segId;
+		private SegmentBlock segDataBlock;
+		private ByteBuffer lastKey;
+		private boolean inclusive;
+		private Iterator<SegmentData> batchItr = Collections.emptyIterator();
+
+		public SegmentBlocksIterator(
+				final Iterator<Map.Entry<Integer, SegmentBlock>> dataBlocksItr,
+				final ByteBuffer fromKey) {
+			this.dataBlocksItr = dataBlocksItr;
+			this.lastKey = fromKey;
+		}
 
-			@Override
-			public void remove() {
-				throw new UnsupportedOperationException();
+		@Override
+		protected SegmentData computeNext() {
+			while (!batchItr.hasNext()) {
+				if (segDataBlock == null) {
+					if (!dataBlocksItr.hasNext())
+						return endOfData();
+					Map.Entry<Integer, SegmentBlock> entry = dataBlocksItr
+							.next();
+					segId = entry.getKey();
+					segDataBlock = entry.getValue();
+					// lastKey is the given key for the first block, and empty
+					// for the others.
+					inclusive = true;
+				}
+				List<SegmentData> batch = segDataBlock.read(segId, lastKey,
+						inclusive, SEGMENT_READ_BATCH_SIZE);
+				if (batch.isEmpty()) {
+					segDataBlock = null;
+					lastKey = EMPTY_KEY;
+				} else {
+					batchItr = batch.iterator();
+					lastKey = batch.get(batch.size() - 1).bufferForKey();
+					inclusive = false;
+				}
 			}
-		};
+			return batchItr.next();
+		}
 	}
 
 	@Override
 	public void putSegmentHash(long treeId, int nodeId, ByteBuffer digest) {
 		HashTreeMemStore indPartition = getIndHTree(treeId);
-		indPartition.segmentHashes.put(nodeId, digest.duplicate());
+		if (indPartition.flatSegmentHashes != null)
+			indPartition.flatSegmentHashes.put(nodeId, digest);
+		else
+			indPartition.segmentHashes.put(nodeId, digest.duplicate());
+	}
+
+	@Override
+	public void putSegmentHashes(long treeId, List<Integer> nodeIds,
+			List<ByteBuffer> digests) {
+		for (int i = 0; i < nodeIds.size(); i++)
+			putSegmentHash(treeId, nodeIds.get(i), digests.get(i));
 	}
 
 	@Override
 	public SegmentHash getSegmentHash(long treeId, int nodeId) {
 		HashTreeMemStore indPartition = getIndHTree(treeId);
-		ByteBuffer hash = indPartition.segmentHashes.get(nodeId);
+		ByteBuffer hash = indPartition.getSegmentHash(nodeId);
 		if (hash == null)
 			return null;
 		return new SegmentHash(nodeId, hash);
@@ -183,9 +313,10 @@ public class HashTreesMemStore extends HashTreesBaseStore {
 	@Override
 	public List<SegmentHash> getSegmentHashes(long treeId,
 			Collection<Integer> nodeIds) {
-		List<SegmentHash> result = new ArrayList<SegmentHash>();
+		HashTreeMemStore indPartition = getIndHTree(treeId);
+		List<SegmentHash> result = new ArrayList<SegmentHash>(nodeIds.size());
 		for (int nodeId : nodeIds) {
-			ByteBuffer hash = getIndHTree(treeId).segmentHashes.get(nodeId);
+			ByteBuffer hash = indPartition.getSegmentHash(nodeId);
 			if (hash != null)
 				result.add(new SegmentHash(nodeId, hash));
 		}
@@ -204,6 +335,16 @@ public class HashTreesMemStore extends HashTreesBaseStore {
 		return value;
 	}
 
+	@Override
+	public void putMetaData(String name, byte[] value) {
+		metaData.put(name, value);
+	}
+
+	@Override
+	public byte[] getMetaData(String name) {
+		return metaData.get(name);
+	}
+
 	@Override
 	public void deleteTree(long treeId) {
 		treeIdAndIndHashTree.remove(treeId);
@@ -215,14 +356,27 @@ public class HashTreesMemStore extends HashTreesBaseStore {
 			getIndHTree(treeId).markedSegments.set(segId);
 	}
 
+	/**
+	 * The rebuild unmarks the same segments which it marked, so all the
+	 * marks are drained at once, and only the marks which are not in segIds,
+	 * if any, are set back.
+	 */
 	@Override
 	public void unmarkSegments(long treeId, List<Integer> segIds) {
-		getIndHTree(treeId).markedSegments.clearBits(segIds);
+		SegmentBits markedSegments = getIndHTree(treeId).markedSegments;
+		int[] drainedSegIds = markedSegments.drain();
+		if (Arrays.equals(drainedSegIds, Ints.toArray(segIds)))
+			return;
+		Set<Integer> unmarkedSegIds = new HashSet<>(segIds);
+		for (int segId : drainedSegIds)
+			if (!unmarkedSegIds.contains(segId))
+				markedSegments.set(segId);
 	}
 
 	@Override
 	public List<Integer> getMarkedSegments(long treeId) {
-		return getIndHTree(treeId).markedSegments.getAllSetBits();
+		return Ints.asList(getIndHTree(treeId).markedSegments
+				.getAllSetBitsArray());
 	}
 
 	@Override
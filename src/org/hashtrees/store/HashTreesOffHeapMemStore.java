@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.store;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Same as {@link HashTreesMemStore}, except that the segment data is kept in
+ * direct memory, outside the java heap. Each segment block keeps its pairs in
+ * a slab, and only an int offset per pair is kept on the heap. So the heap
+ * size and the garbage collection pauses do not grow with no of keys.
+ * 
+ * The direct memory is limited by -XX:MaxDirectMemorySize, which defaults to
+ * the max heap size. A slab is freed only by the garbage collector, once its
+ * block drops or outgrows it, and a heap which sees little garbage may not be
+ * collected for a long time. A block compacts in its current slab whenever
+ * the live pairs fit, so the slabs waiting for a collection are bounded by the
+ * growth of the blocks, which doubles the slab each time. Leave room for them
+ * while setting the limit, roughly twice the size of the segment data.
+ * 
+ */
+@ThreadSafe
+public class HashTreesOffHeapMemStore extends HashTreesMemStore {
+
+	public HashTreesOffHeapMemStore() {
+		super();
+	}
+
+	/**
+	 * Look at {@link HashTreesMemStore#HashTreesMemStore(int, int)}.
+	 * 
+	 * @param noOfNodes
+	 * @param digestLength
+	 */
+	public HashTreesOffHeapMemStore(int noOfNodes, int digestLength) {
+		super(noOfNodes, digestLength);
+	}
+
+	@Override
+	SegmentBlock newSegmentBlock() {
+		return new PackedSegmentBlock(true);
+	}
+}
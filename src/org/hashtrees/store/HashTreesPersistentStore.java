@@ -28,15 +28,19 @@ import static org.hashtrees.store.ByteKeyValueConverter.generateMetaDataKey;
 import static org.hashtrees.store.ByteKeyValueConverter.generateRebuildMarkerKey;
 import static org.hashtrees.store.ByteKeyValueConverter.generateSegmentDataKey;
 import static org.hashtrees.store.ByteKeyValueConverter.generateSegmentHashKey;
+import static org.hashtrees.store.ByteKeyValueConverter.generateStoreMetaDataKey;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
+import javax.annotation.concurrent.NotThreadSafe;
+
 import org.apache.commons.io.FileUtils;
 import org.fusesource.leveldbjni.JniDBFactory;
 import org.hashtrees.store.ByteKeyValueConverter.BaseKey;
@@ -47,7 +51,8 @@ import org.hashtrees.util.ByteUtils;
 import org.hashtrees.util.DataFilterableIterator;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBIterator;
-import org.iq80.leveldb.Options;
+import org.iq80.leveldb.WriteBatch;
+import org.iq80.leveldb.WriteOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,9 +64,13 @@ import com.google.common.collect.Lists;
  * 
  * The byte keys and values are generated from {@link ByteKeyValueConverter}.
  * Look at the class for more information about internal key format.
+ * 
+ * Bulk updates are written with LevelDB write batches of bounded size. Look
+ * at {@link PersistentStoreOptions} for tuning LevelDB.
  */
 
-public class HashTreesPersistentStore extends HashTreesBaseStore {
+public class HashTreesPersistentStore extends HashTreesBaseStore
+		implements ExtendedHashTreesStore {
 
 	private static final Logger LOG = LoggerFactory
 			.getLogger(HashTreesPersistentStore.class);
@@ -69,10 +78,21 @@ public class HashTreesPersistentStore extends HashTreesBaseStore {
 
 	private final String dbDir;
 	private final DB dbObj;
+	private final int writeBatchSize;
+	private final WriteOptions segmentWriteOptions;
+	private final WriteOptions markerWriteOptions;
 
 	public HashTreesPersistentStore(String dbDir) throws IOException {
+		this(dbDir, new PersistentStoreOptions());
+	}
+
+	public HashTreesPersistentStore(String dbDir,
+			PersistentStoreOptions options) throws IOException {
 		this.dbDir = dbDir;
-		this.dbObj = initDB(dbDir);
+		this.dbObj = initDB(dbDir, options);
+		this.writeBatchSize = options.getWriteBatchSize();
+		this.segmentWriteOptions = options.segmentWriteOptions();
+		this.markerWriteOptions = options.markerWriteOptions();
 	}
 
 	private static boolean createDir(String dirName) {
@@ -82,11 +102,10 @@ public class HashTreesPersistentStore extends HashTreesBaseStore {
 		return file.mkdirs();
 	}
 
-	private static DB initDB(String dbDir) throws IOException {
+	private static DB initDB(String dbDir, PersistentStoreOptions options)
+			throws IOException {
 		createDir(dbDir);
-		Options options = new Options();
-		options.createIfMissing(true);
-		return JniDBFactory.factory.open(new File(dbDir), options);
+		return JniDBFactory.factory.open(new File(dbDir), options.toOptions());
 	}
 
 	public String getDbDir() {
@@ -95,13 +114,14 @@ public class HashTreesPersistentStore extends HashTreesBaseStore {
 
 	@Override
 	protected void setDirtySegmentInternal(long treeId, int segId) {
-		dbObj.put(generateDirtySegmentKey(treeId, segId), EMPTY_VALUE);
+		dbObj.put(generateDirtySegmentKey(treeId, segId), EMPTY_VALUE,
+				markerWriteOptions);
 	}
 
 	@Override
 	protected void clearDirtySegmentInternal(long treeId, int segId) {
 		byte[] key = generateDirtySegmentKey(treeId, segId);
-		dbObj.delete(key);
+		dbObj.delete(key, markerWriteOptions);
 	}
 
 	@Override
@@ -121,7 +141,22 @@ public class HashTreesPersistentStore extends HashTreesBaseStore {
 
 	@Override
 	public void putSegmentHash(long treeId, int nodeId, ByteBuffer digest) {
-		dbObj.put(generateSegmentHashKey(treeId, nodeId), digest.array());
+		dbObj.put(generateSegmentHashKey(treeId, nodeId), digest.array(),
+				segmentWriteOptions);
+	}
+
+	@Override
+	public void putSegmentHashes(long treeId, List<Integer> nodeIds,
+			List<ByteBuffer> digests) throws IOException {
+		BoundedWriteBatch batch = new BoundedWriteBatch(segmentWriteOptions);
+		try {
+			for (int i = 0; i < nodeIds.size(); i++)
+				batch.put(generateSegmentHashKey(treeId, nodeIds.get(i)),
+						digests.get(i).array());
+			batch.flush();
+		} finally {
+			batch.close();
+		}
 	}
 
 	@Override
@@ -132,15 +167,33 @@ public class HashTreesPersistentStore extends HashTreesBaseStore {
 		return null;
 	}
 
+	/**
+	 * Reads the hashes with one iterator. The segment hash keys are ordered by
+	 * the node id, so the iterator moves forward without seeking, while the
+	 * requested node ids are ascending and dense, like the children of a
+	 * level of the tree.
+	 */
 	@Override
 	public List<SegmentHash> getSegmentHashes(long treeId,
-			Collection<Integer> nodeIds) {
-		List<SegmentHash> result = new ArrayList<SegmentHash>();
-		SegmentHash temp;
-		for (int nodeId : nodeIds) {
-			temp = getSegmentHash(treeId, nodeId);
-			if (temp != null)
-				result.add(temp);
+			Collection<Integer> nodeIds) throws IOException {
+		List<SegmentHash> result = new ArrayList<SegmentHash>(nodeIds.size());
+		DBIterator iterator = dbObj.iterator();
+		try {
+			int prevNodeId = -1;
+			for (int nodeId : nodeIds) {
+				byte[] key = generateSegmentHashKey(treeId, nodeId);
+				if (prevNodeId < 0 || nodeId <= prevNodeId
+						|| (iterator.hasNext() && ByteUtils.compareTo(iterator
+								.peekNext().getKey(), key) < 0))
+					iterator.seek(key);
+				prevNodeId = nodeId;
+				if (iterator.hasNext()
+						&& Arrays.equals(iterator.peekNext().getKey(), key))
+					result.add(new SegmentHash(nodeId, ByteBuffer
+							.wrap(iterator.next().getValue())));
+			}
+		} finally {
+			iterator.close();
 		}
 		return result;
 	}
@@ -151,7 +204,7 @@ public class HashTreesPersistentStore extends HashTreesBaseStore {
 		ByteBuffer bbValue = ByteBuffer.wrap(value);
 		bbValue.putLong(ts);
 		byte[] key = generateMetaDataKey(MetaDataKey.FULL_REBUILT_TS, treeId);
-		dbObj.put(key, value);
+		dbObj.put(key, value, segmentWriteOptions);
 	}
 
 	@Override
@@ -162,20 +215,44 @@ public class HashTreesPersistentStore extends HashTreesBaseStore {
 	}
 
 	@Override
-	public void deleteTree(long treeId) {
-		DBIterator dbItr;
+	public void putMetaData(String name, byte[] value) {
+		dbObj.put(generateStoreMetaDataKey(name), value, segmentWriteOptions);
+	}
+
+	@Override
+	public byte[] getMetaData(String name) {
+		return dbObj.get(generateStoreMetaDataKey(name));
+	}
+
+	/**
+	 * Deletes the keys of each prefix with bounded write batches. The
+	 * iterator reads an implicit snapshot, so the deletes do not disturb it.
+	 */
+	@Override
+	public void deleteTree(long treeId) throws IOException {
 		byte[] temp = new byte[LEN_BASEKEY_AND_TREEID];
-		for (BaseKey keyPrefix : BaseKey.values()) {
-			dbItr = dbObj.iterator();
-			ByteBuffer wrap = ByteBuffer.wrap(temp);
-			fillBaseKey(wrap, keyPrefix, treeId);
-			dbItr.seek(wrap.array());
-			for (; dbItr.hasNext(); dbItr.next()) {
-				if (ByteUtils.compareTo(temp, 0, temp.length, dbItr.peekNext()
-						.getKey(), 0, temp.length) != 0)
-					break;
-				dbObj.delete(dbItr.peekNext().getKey());
+		BoundedWriteBatch batch = new BoundedWriteBatch(segmentWriteOptions);
+		try {
+			for (BaseKey keyPrefix : BaseKey.values()) {
+				ByteBuffer wrap = ByteBuffer.wrap(temp);
+				fillBaseKey(wrap, keyPrefix, treeId);
+				DBIterator dbItr = dbObj.iterator();
+				try {
+					dbItr.seek(wrap.array());
+					for (; dbItr.hasNext(); dbItr.next()) {
+						byte[] key = dbItr.peekNext().getKey();
+						if (ByteUtils.compareTo(temp, 0, temp.length, key, 0,
+								temp.length) != 0)
+							break;
+						batch.delete(key);
+					}
+				} finally {
+					dbItr.close();
+				}
 			}
+			batch.flush();
+		} finally {
+			batch.close();
 		}
 	}
 
@@ -183,7 +260,7 @@ public class HashTreesPersistentStore extends HashTreesBaseStore {
 	public void putSegmentData(long treeId, int segId, ByteBuffer key,
 			ByteBuffer digest) {
 		byte[] dbKey = generateSegmentDataKey(treeId, segId, key);
-		dbObj.put(dbKey, digest.array());
+		dbObj.put(dbKey, digest.array(), segmentWriteOptions);
 	}
 
 	@Override
@@ -201,7 +278,34 @@ public class HashTreesPersistentStore extends HashTreesBaseStore {
 	@Override
 	public void deleteSegmentData(long treeId, int segId, ByteBuffer key) {
 		byte[] dbKey = generateSegmentDataKey(treeId, segId, key);
-		dbObj.delete(dbKey);
+		dbObj.delete(dbKey, segmentWriteOptions);
+	}
+
+	/**
+	 * Writes the whole batch, including the dirty segment markers, with one
+	 * LevelDB write batch. So either all of them reach the disk or none. The
+	 * batch is synced if either segment or marker writes are synced.
+	 */
+	@Override
+	protected void applyBatchInternal(long treeId,
+			List<Integer> newDirtySegments, List<SegmentData> segDataToPut,
+			List<SegmentData> segDataToDelete) throws IOException {
+		WriteBatch batch = dbObj.createWriteBatch();
+		try {
+			for (int segId : newDirtySegments)
+				batch.put(generateDirtySegmentKey(treeId, segId), EMPTY_VALUE);
+			for (SegmentData sd : segDataToPut)
+				batch.put(
+						generateSegmentDataKey(treeId, sd.getSegId(),
+								sd.bufferForKey()), sd.getDigest());
+			for (SegmentData sd : segDataToDelete)
+				batch.delete(generateSegmentDataKey(treeId, sd.getSegId(),
+						sd.bufferForKey()));
+			dbObj.write(batch, (markerWriteOptions.sync()) ? markerWriteOptions
+					: segmentWriteOptions);
+		} finally {
+			batch.close();
+		}
 	}
 
 	@Override
@@ -234,18 +338,38 @@ public class HashTreesPersistentStore extends HashTreesBaseStore {
 	}
 
 	@Override
-	public void markSegments(long treeId, List<Integer> segIds) {
-		for (int segId : segIds) {
-			byte[] key = generateRebuildMarkerKey(treeId, segId);
-			dbObj.put(key, EMPTY_VALUE);
+	public Iterator<SegmentData> getSegmentIterator(long treeId, int segId,
+			ByteBuffer fromKey) {
+		byte[] segmentKey = generateSegmentDataKey(treeId, segId);
+		DBIterator iterator = dbObj.iterator();
+		iterator.seek(generateSegmentDataKey(treeId, segId, fromKey));
+		return new DataFilterableIterator<>(segmentKey, true,
+				KVBYTES_TO_SEGDATA_CONVERTER, iterator);
+	}
+
+	@Override
+	public void markSegments(long treeId, List<Integer> segIds)
+			throws IOException {
+		BoundedWriteBatch batch = new BoundedWriteBatch(markerWriteOptions);
+		try {
+			for (int segId : segIds)
+				batch.put(generateRebuildMarkerKey(treeId, segId), EMPTY_VALUE);
+			batch.flush();
+		} finally {
+			batch.close();
 		}
 	}
 
 	@Override
-	public void unmarkSegments(long treeId, List<Integer> segIds) {
-		for (int segId : segIds) {
-			byte[] key = generateRebuildMarkerKey(treeId, segId);
-			dbObj.delete(key);
+	public void unmarkSegments(long treeId, List<Integer> segIds)
+			throws IOException {
+		BoundedWriteBatch batch = new BoundedWriteBatch(markerWriteOptions);
+		try {
+			for (int segId : segIds)
+				batch.delete(generateRebuildMarkerKey(treeId, segId));
+			batch.flush();
+		} finally {
+			batch.close();
 		}
 	}
 
@@ -284,4 +408,62 @@ public class HashTreesPersistentStore extends HashTreesBaseStore {
 		}
 	}
 
+	/**
+	 * Collects the updates into a LevelDB write batch, and writes the batch
+	 * whenever it reaches the write batch size. So a bulk update does not
+	 * hold all of its updates in memory, and is not written key by key
+	 * either. The updates written before a failure are not rolled back.
+	 * 
+	 */
+	@NotThreadSafe
+	private class BoundedWriteBatch {
+
+		private final WriteOptions writeOptions;
+		private WriteBatch batch;
+		private int size;
+
+		public BoundedWriteBatch(WriteOptions writeOptions) {
+			this.writeOptions = writeOptions;
+		}
+
+		public void put(byte[] key, byte[] value) throws IOException {
+			getBatch().put(key, value);
+			flushIfFull();
+		}
+
+		public void delete(byte[] key) throws IOException {
+			getBatch().delete(key);
+			flushIfFull();
+		}
+
+		private WriteBatch getBatch() {
+			if (batch == null)
+				batch = dbObj.createWriteBatch();
+			return batch;
+		}
+
+		private void flushIfFull() throws IOException {
+			if (++size >= writeBatchSize)
+				flush();
+		}
+
+		public void flush() throws IOException {
+			if (batch == null)
+				return;
+			try {
+				dbObj.write(batch, writeOptions);
+			} finally {
+				close();
+			}
+		}
+
+		public void close() throws IOException {
+			if (batch != null) {
+				batch.close();
+				batch = null;
+				size = 0;
+			}
+		}
+	}
+
 }
@@ -36,6 +36,11 @@ import org.hashtrees.util.Service;
  * 
  * {@link HashTreesMemStore} provides in memory store implementation.
  * {@link HashTreesPersistentStore} provides persistent store implementation.
+ * {@link HashTreesOffHeapMemStore} keeps the segment data of the in memory
+ * store outside the java heap.
+ * 
+ * Stores may implement {@link ExtendedHashTreesStore} for batched writes and
+ * meta data.
  * 
  */
 public interface HashTreesStore extends Service {
@@ -142,7 +147,7 @@ public interface HashTreesStore extends Service {
 	 * @param treeId
 	 * @param nodeIds
 	 *            , internal tree node ids.
-	 * @return
+	 * @return hashes in any order.
 	 */
 	List<SegmentHash> getSegmentHashes(long treeId, Collection<Integer> nodeIds)
 			throws IOException;
@@ -0,0 +1,423 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.store;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.hashtrees.thrift.generated.SegmentData;
+import org.hashtrees.util.ByteUtils;
+import org.hashtrees.util.LockedBy;
+
+/**
+ * {@link SegmentBlock} which packs the pairs into a single slab, either on the
+ * java heap or in direct memory. Each pair is appended to the slab as a record
+ * of key length, digest length, key and digest. The offsets of the records are
+ * kept in int arrays, sorted by the key in the unsigned order of
+ * {@link ByteUtils#compareTo(byte[], byte[])}, which is the order of
+ * {@link HashTreesPersistentStore} too. Same as that store, the keys and
+ * digests are read from the complete backing arrays of the buffers.
+ * 
+ * New keys are inserted into a small sorted run, which is merged into the
+ * main offsets array when it grows beyond the square root of the size of the
+ * block. Removed keys are marked in the main offsets array, and are dropped
+ * by the next merge. So building a block of n keys costs n square root of n
+ * instead of n square.
+ * 
+ * Updated and removed pairs leave their old records in the slab. When the
+ * slab is full, or the old records take more space than the live ones, the
+ * live records are moved to the beginning of the slab. A new slab of twice
+ * the size of the live records is allocated only if they do not fit in the
+ * current one, or if the current one is more than four times that size.
+ * 
+ */
+@ThreadSafe
+class PackedSegmentBlock implements SegmentBlock {
+
+	private final static int RECORD_HEADER_SIZE = 2 * ByteUtils.SIZEOF_INT;
+	private final static int INITIAL_SLAB_SIZE = 1 << 10;
+	private final static int MIN_RUN_SIZE = 1 << 6;
+	private final static int[] EMPTY_OFFSETS = new int[0];
+
+	private final boolean offHeap;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	@LockedBy("lock")
+	private ByteBuffer slab;
+	// Sorted offsets of the records. A removed record is kept as the
+	// complement of its offset until the next merge, so it is negative.
+	@LockedBy("lock")
+	private int[] offsets = EMPTY_OFFSETS;
+	@LockedBy("lock")
+	private int size;
+	@LockedBy("lock")
+	private int noOfRemoved;
+	// Sorted offsets of the records of the keys, which are inserted after the
+	// last merge.
+	@LockedBy("lock")
+	private int[] run = EMPTY_OFFSETS;
+	@LockedBy("lock")
+	private int runSize;
+	@LockedBy("lock")
+	private int writePos;
+	@LockedBy("lock")
+	private int liveBytes;
+
+	/**
+	 * @param offHeap
+	 *            , whether the slab is allocated in direct memory.
+	 */
+	public PackedSegmentBlock(boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+
+	@Override
+	public ByteBuffer get(ByteBuffer key) {
+		lock.readLock().lock();
+		try {
+			byte[] keyBytes = key.array();
+			int offset;
+			int index = search(offsets, size, keyBytes);
+			if (index >= 0)
+				offset = offsets[index];
+			else {
+				index = search(run, runSize, keyBytes);
+				if (index < 0)
+					return null;
+				offset = run[index];
+			}
+			if (offset < 0)
+				return null;
+			int keyLength = slab.getInt(offset);
+			return copyBytes(offset + RECORD_HEADER_SIZE + keyLength,
+					slab.getInt(offset + ByteUtils.SIZEOF_INT));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void put(ByteBuffer key, ByteBuffer digest) {
+		byte[] keyBytes = key.array();
+		byte[] digestBytes = digest.array();
+		int recordLength = RECORD_HEADER_SIZE + keyBytes.length
+				+ digestBytes.length;
+		lock.writeLock().lock();
+		try {
+			if (slab == null || writePos + recordLength > slab.capacity())
+				compact(liveBytes + recordLength);
+			int index = search(offsets, size, keyBytes);
+			if (index >= 0) {
+				if (offsets[index] < 0)
+					noOfRemoved--;
+				else
+					liveBytes -= getRecordLength(offsets[index]);
+				offsets[index] = writePos;
+			} else {
+				index = search(run, runSize, keyBytes);
+				if (index >= 0) {
+					liveBytes -= getRecordLength(run[index]);
+					run[index] = writePos;
+				} else
+					insertIntoRun(-(index + 1), writePos);
+			}
+			slab.putInt(writePos, keyBytes.length);
+			slab.putInt(writePos + ByteUtils.SIZEOF_INT, digestBytes.length);
+			ByteBuffer dst = slab.duplicate();
+			dst.position(writePos + RECORD_HEADER_SIZE);
+			dst.put(keyBytes);
+			dst.put(digestBytes);
+			writePos += recordLength;
+			liveBytes += recordLength;
+			if (runSize > Math.max(MIN_RUN_SIZE, (int) Math.sqrt(size)))
+				merge();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void remove(ByteBuffer key) {
+		lock.writeLock().lock();
+		try {
+			byte[] keyBytes = key.array();
+			int index = search(offsets, size, keyBytes);
+			if (index >= 0) {
+				if (offsets[index] < 0)
+					return;
+				liveBytes -= getRecordLength(offsets[index]);
+				offsets[index] = ~offsets[index];
+				noOfRemoved++;
+			} else {
+				index = search(run, runSize, keyBytes);
+				if (index < 0)
+					return;
+				liveBytes -= getRecordLength(run[index]);
+				System.arraycopy(run, index + 1, run, index, runSize - index
+						- 1);
+				runSize--;
+			}
+			if (size - noOfRemoved + runSize == 0) {
+				slab = null;
+				offsets = EMPTY_OFFSETS;
+				run = EMPTY_OFFSETS;
+				size = noOfRemoved = runSize = 0;
+				writePos = liveBytes = 0;
+			} else if (slab.capacity() > INITIAL_SLAB_SIZE
+					&& writePos - liveBytes > liveBytes)
+				compact(liveBytes);
+			else if (noOfRemoved > (size >> 1))
+				merge();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public List<SegmentData> read(int segId, ByteBuffer fromKey,
+			boolean inclusive, int maxEntries) {
+		List<SegmentData> result = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			byte[] fromKeyBytes = fromKey.array();
+			int i = lowerBound(offsets, size, fromKeyBytes, inclusive);
+			int j = lowerBound(run, runSize, fromKeyBytes, inclusive);
+			while (result.size() < maxEntries) {
+				while (i < size && offsets[i] < 0)
+					i++;
+				int offset;
+				if (i < size
+						&& (j == runSize || compareRecordKeys(offsets[i],
+								run[j]) < 0))
+					offset = offsets[i++];
+				else if (j < runSize)
+					offset = run[j++];
+				else
+					break;
+				int keyLength = slab.getInt(offset);
+				int digestLength = slab.getInt(offset + ByteUtils.SIZEOF_INT);
+				int keyPos = offset + RECORD_HEADER_SIZE;
+				result.add(new SegmentData(segId, copyBytes(keyPos, keyLength),
+						copyBytes(keyPos + keyLength, digestLength)));
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the capacity of the slab, and the offsets.
+	 */
+	@Override
+	public long getMemoryUsed() {
+		lock.readLock().lock();
+		try {
+			long slabSize = (slab == null) ? 0 : slab.capacity();
+			return slabSize + (long) (offsets.length + run.length)
+					* ByteUtils.SIZEOF_INT;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Makes room for the required bytes at the end of the slab, by moving the
+	 * live records to the beginning of the slab, or by copying them to a new
+	 * slab, which has space for twice the required bytes.
+	 * 
+	 * @param requiredBytes
+	 */
+	private void compact(int requiredBytes) {
+		merge();
+		int capacity = (int) Math.min(Integer.MAX_VALUE,
+				Math.max(INITIAL_SLAB_SIZE, 2L * requiredBytes));
+		if (slab != null && capacity <= slab.capacity()
+				&& slab.capacity() <= 4L * capacity) {
+			compactInPlace();
+			return;
+		}
+		ByteBuffer newSlab = offHeap ? ByteBuffer.allocateDirect(capacity)
+				: ByteBuffer.allocate(capacity);
+		for (int i = 0; i < size; i++) {
+			int offset = offsets[i];
+			ByteBuffer src = slab.duplicate();
+			src.limit(offset + getRecordLength(offset)).position(offset);
+			offsets[i] = newSlab.position();
+			newSlab.put(src);
+		}
+		slab = newSlab;
+		writePos = newSlab.position();
+		liveBytes = writePos;
+	}
+
+	/**
+	 * Moves the live records to the beginning of the slab, in the order of
+	 * their positions, so that a record never overwrites the one which is
+	 * moved after it.
+	 */
+	private void compactInPlace() {
+		long[] positionAndIndex = new long[size];
+		for (int i = 0; i < size; i++)
+			positionAndIndex[i] = ((long) offsets[i] << 32) | i;
+		Arrays.sort(positionAndIndex);
+		byte[] record = new byte[0];
+		int pos = 0;
+		for (long value : positionAndIndex) {
+			int offset = (int) (value >>> 32);
+			int index = (int) value;
+			int recordLength = getRecordLength(offset);
+			if (offset != pos) {
+				if (record.length < recordLength)
+					record = new byte[recordLength];
+				ByteBuffer src = slab.duplicate();
+				src.position(offset);
+				src.get(record, 0, recordLength);
+				ByteBuffer dst = slab.duplicate();
+				dst.position(pos);
+				dst.put(record, 0, recordLength);
+			}
+			offsets[index] = pos;
+			pos += recordLength;
+		}
+		writePos = pos;
+		liveBytes = pos;
+	}
+
+	/**
+	 * Merges the run into the main offsets, and drops the removed records.
+	 */
+	private void merge() {
+		if (runSize == 0 && noOfRemoved == 0)
+			return;
+		int[] merged = new int[size - noOfRemoved + runSize];
+		int from = 0, noOfMerged = 0;
+		for (int j = 0; j < runSize; j++) {
+			int keyLength = slab.getInt(run[j]);
+			byte[] key = copyBytes(run[j] + RECORD_HEADER_SIZE, keyLength)
+					.array();
+			int to = -(search(offsets, size, key) + 1);
+			noOfMerged = copyLiveOffsets(from, to, merged, noOfMerged);
+			merged[noOfMerged++] = run[j];
+			from = to;
+		}
+		copyLiveOffsets(from, size, merged, noOfMerged);
+		offsets = merged;
+		size = merged.length;
+		noOfRemoved = 0;
+		runSize = 0;
+	}
+
+	private int copyLiveOffsets(int from, int to, int[] dst, int dstPos) {
+		if (noOfRemoved == 0) {
+			System.arraycopy(offsets, from, dst, dstPos, to - from);
+			return dstPos + to - from;
+		}
+		for (int i = from; i < to; i++)
+			if (offsets[i] >= 0)
+				dst[dstPos++] = offsets[i];
+		return dstPos;
+	}
+
+	private void insertIntoRun(int index, int offset) {
+		if (runSize == run.length)
+			run = Arrays.copyOf(run, Math.max(MIN_RUN_SIZE, runSize << 1));
+		System.arraycopy(run, index, run, index + 1, runSize - index);
+		run[index] = offset;
+		runSize++;
+	}
+
+	/**
+	 * Binary search on the given offsets. Removed records are compared by
+	 * their keys too.
+	 * 
+	 * @param array
+	 * @param length
+	 * @param key
+	 * @return index of the key, or (-(insertion point) - 1) if the key does
+	 *         not exist.
+	 */
+	private int search(int[] array, int length, byte[] key) {
+		int low = 0, high = length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int offset = array[mid];
+			int compRes = compareKey((offset < 0) ? ~offset : offset, key);
+			if (compRes < 0)
+				low = mid + 1;
+			else if (compRes > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	private int lowerBound(int[] array, int length, byte[] key,
+			boolean inclusive) {
+		int index = search(array, length, key);
+		if (index < 0)
+			return -(index + 1);
+		return inclusive ? index : index + 1;
+	}
+
+	private int compareKey(int offset, byte[] key) {
+		int keyLength = slab.getInt(offset);
+		int keyPos = offset + RECORD_HEADER_SIZE;
+		for (int i = 0; i < keyLength && i < key.length; i++) {
+			int a = (slab.get(keyPos + i) & 0xff);
+			int b = (key[i] & 0xff);
+			if (a != b)
+				return a - b;
+		}
+		return keyLength - key.length;
+	}
+
+	private int compareRecordKeys(int offset, int otherOffset) {
+		int keyLength = slab.getInt(offset);
+		int otherKeyLength = slab.getInt(otherOffset);
+		int keyPos = offset + RECORD_HEADER_SIZE;
+		int otherKeyPos = otherOffset + RECORD_HEADER_SIZE;
+		for (int i = 0; i < keyLength && i < otherKeyLength; i++) {
+			int a = (slab.get(keyPos + i) & 0xff);
+			int b = (slab.get(otherKeyPos + i) & 0xff);
+			if (a != b)
+				return a - b;
+		}
+		return keyLength - otherKeyLength;
+	}
+
+	private int getRecordLength(int offset) {
+		return RECORD_HEADER_SIZE + slab.getInt(offset)
+				+ slab.getInt(offset + ByteUtils.SIZEOF_INT);
+	}
+
+	private ByteBuffer copyBytes(int pos, int length) {
+		byte[] bytes = new byte[length];
+		ByteBuffer src = slab.duplicate();
+		src.position(pos);
+		src.get(bytes);
+		return ByteBuffer.wrap(bytes);
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.store;
+
+import org.iq80.leveldb.CompressionType;
+import org.iq80.leveldb.Options;
+import org.iq80.leveldb.WriteOptions;
+
+/**
+ * LevelDB settings of {@link HashTreesPersistentStore}. The defaults are the
+ * LevelDB defaults, and writes are not synced to the disk, which is the
+ * behavior of the store without options.
+ * 
+ * Segment writes are the segment data and segment hashes, which are rebuilt
+ * from the store anyway. Marker writes are the dirty segment and rebuild
+ * markers, which are used to recover after a crash, so those may be synced
+ * alone.
+ * 
+ */
+public class PersistentStoreOptions {
+
+	public static final int DEFAULT_WRITE_BATCH_SIZE = 1 << 12;
+
+	private long blockCacheSize = 8 << 20;
+	private int writeBufferSize = 4 << 20;
+	private int blockSize = 4 << 10;
+	private CompressionType compressionType = CompressionType.SNAPPY;
+	private int maxOpenFiles = 1000;
+	private boolean syncSegmentWrites = false;
+	private boolean syncMarkerWrites = false;
+	private int writeBatchSize = DEFAULT_WRITE_BATCH_SIZE;
+
+	/**
+	 * Size of the LevelDB cache of uncompressed blocks in bytes. Default
+	 * value is 8MB.
+	 * 
+	 * @param blockCacheSize
+	 * @return
+	 */
+	public PersistentStoreOptions setBlockCacheSize(long blockCacheSize) {
+		assert (blockCacheSize >= 0);
+		this.blockCacheSize = blockCacheSize;
+		return this;
+	}
+
+	/**
+	 * Size of the LevelDB memtable in bytes. Larger values make bulk writes
+	 * like a full rebuild faster, but make the recovery on open slower.
+	 * Default value is 4MB.
+	 * 
+	 * @param writeBufferSize
+	 * @return
+	 */
+	public PersistentStoreOptions setWriteBufferSize(int writeBufferSize) {
+		assert (writeBufferSize > 0);
+		this.writeBufferSize = writeBufferSize;
+		return this;
+	}
+
+	/**
+	 * Approximate size of the LevelDB blocks in bytes. Default value is 4KB.
+	 * 
+	 * @param blockSize
+	 * @return
+	 */
+	public PersistentStoreOptions setBlockSize(int blockSize) {
+		assert (blockSize > 0);
+		this.blockSize = blockSize;
+		return this;
+	}
+
+	/**
+	 * Digests do not compress, so {@link CompressionType#NONE} saves the
+	 * compression cost when the keys are small. Default value is
+	 * {@link CompressionType#SNAPPY}.
+	 * 
+	 * @param compressionType
+	 * @return
+	 */
+	public PersistentStoreOptions setCompressionType(
+			CompressionType compressionType) {
+		this.compressionType = compressionType;
+		return this;
+	}
+
+	/**
+	 * Default value is 1000.
+	 * 
+	 * @param maxOpenFiles
+	 * @return
+	 */
+	public PersistentStoreOptions setMaxOpenFiles(int maxOpenFiles) {
+		assert (maxOpenFiles > 0);
+		this.maxOpenFiles = maxOpenFiles;
+		return this;
+	}
+
+	/**
+	 * Whether writes of segment data and segment hashes wait for the disk.
+	 * Default value is false.
+	 * 
+	 * @param syncSegmentWrites
+	 * @return
+	 */
+	public PersistentStoreOptions setSyncSegmentWrites(
+			boolean syncSegmentWrites) {
+		this.syncSegmentWrites = syncSegmentWrites;
+		return this;
+	}
+
+	/**
+	 * Whether writes of dirty segment and rebuild markers wait for the disk.
+	 * Default value is false.
+	 * 
+	 * @param syncMarkerWrites
+	 * @return
+	 */
+	public PersistentStoreOptions setSyncMarkerWrites(boolean syncMarkerWrites) {
+		this.syncMarkerWrites = syncMarkerWrites;
+		return this;
+	}
+
+	/**
+	 * Maximum no of updates in a single LevelDB write batch, which is used
+	 * for bulk updates like marking segments, writing rebuilt hashes and
+	 * deleting a tree. Default value is {@link #DEFAULT_WRITE_BATCH_SIZE}.
+	 * 
+	 * @param writeBatchSize
+	 * @return
+	 */
+	public PersistentStoreOptions setWriteBatchSize(int writeBatchSize) {
+		assert (writeBatchSize > 0);
+		this.writeBatchSize = writeBatchSize;
+		return this;
+	}
+
+	public int getWriteBatchSize() {
+		return writeBatchSize;
+	}
+
+	Options toOptions() {
+		Options options = new Options();
+		options.createIfMissing(true);
+		options.cacheSize(blockCacheSize);
+		options.writeBufferSize(writeBufferSize);
+		options.blockSize(blockSize);
+		options.compressionType(compressionType);
+		options.maxOpenFiles(maxOpenFiles);
+		return options;
+	}
+
+	WriteOptions segmentWriteOptions() {
+		return new WriteOptions().sync(syncSegmentWrites);
+	}
+
+	WriteOptions markerWriteOptions() {
+		return new WriteOptions().sync(syncMarkerWrites);
+	}
+}
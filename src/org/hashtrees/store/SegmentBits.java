@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.store;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.hashtrees.util.AtomicBitSet;
+import org.hashtrees.util.DenseAtomicBitSet;
+
+import com.google.common.primitives.Ints;
+
+/**
+ * Bits of the segments of a tree. Segment ids below the no of segments are
+ * kept in a preallocated {@link DenseAtomicBitSet}, and the others, which
+ * are not expected, in an {@link AtomicBitSet}.
+ * 
+ */
+@ThreadSafe
+class SegmentBits {
+
+	private final DenseAtomicBitSet denseBits;
+	private final AtomicBitSet otherBits = new AtomicBitSet();
+
+	SegmentBits(int noOfSegments) {
+		this.denseBits = new DenseAtomicBitSet(noOfSegments);
+	}
+
+	private boolean isDense(int segId) {
+		return segId >= 0 && segId < denseBits.capacity();
+	}
+
+	/**
+	 * @param segId
+	 * @return previousValue
+	 */
+	public boolean set(int segId) {
+		return isDense(segId) ? denseBits.set(segId) : otherBits.set(segId);
+	}
+
+	/**
+	 * @param segId
+	 * @return previousValue
+	 */
+	public boolean clear(int segId) {
+		return isDense(segId) ? denseBits.clear(segId) : otherBits
+				.clear(segId);
+	}
+
+	/**
+	 * Returns the set bits, the ones below the no of segments first. Those are
+	 * read without boxing.
+	 * 
+	 * @return
+	 */
+	public int[] getAllSetBitsArray() {
+		return Ints.concat(denseBits.getAllSetBitsArray(),
+				Ints.toArray(otherBits.getAllSetBits()));
+	}
+
+	/**
+	 * Clears all the bits, and returns the bits which were set, in the same
+	 * order as {@link #getAllSetBitsArray()}.
+	 * 
+	 * @return
+	 */
+	public int[] drain() {
+		return Ints.concat(denseBits.drain(),
+				Ints.toArray(otherBits.clearAndGetAllSetBits()));
+	}
+}
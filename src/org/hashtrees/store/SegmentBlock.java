@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.store;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.hashtrees.thrift.generated.SegmentData;
+
+/**
+ * Holds the (key,digest) pairs of a segment block of {@link HashTreesMemStore}
+ * in the key order.
+ * 
+ */
+@ThreadSafe
+interface SegmentBlock {
+
+	/**
+	 * Returns the digest of the key, or null if the key does not exist.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	ByteBuffer get(ByteBuffer key);
+
+	void put(ByteBuffer key, ByteBuffer digest);
+
+	void remove(ByteBuffer key);
+
+	/**
+	 * Returns the pairs starting from fromKey, in the key order. The pairs are
+	 * copied, so the block can be changed while the result is used.
+	 * 
+	 * @param segId
+	 *            , segment id to be set on the result.
+	 * @param fromKey
+	 *            , an empty key starts from the beginning of the block.
+	 * @param inclusive
+	 *            , whether fromKey itself should be returned.
+	 * @param maxEntries
+	 * @return
+	 */
+	List<SegmentData> read(int segId, ByteBuffer fromKey, boolean inclusive,
+			int maxEntries);
+
+	/**
+	 * Returns no of bytes held by the block.
+	 * 
+	 * @return
+	 */
+	long getMemoryUsed();
+}
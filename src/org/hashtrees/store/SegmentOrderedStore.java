@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.store;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.hashtrees.HashTrees;
+import org.hashtrees.HashTreesCustomRuntimeException;
+import org.hashtrees.SegmentIdProvider;
+
+/**
+ * An optional capability of {@link Store}, which can iterate the (key,value)
+ * pairs in the order of their segments. When the store implements this,
+ * {@link HashTrees#rebuildHashTree(long, boolean)} compares the store with
+ * {@link HashTreesStore} by reading both sequentially, instead of looking up
+ * every key of {@link HashTreesStore} on the store.
+ * 
+ */
+public interface SegmentOrderedStore extends Store {
+
+	/**
+	 * Returns the (key,value) pairs of the given tree id, whose segment ids
+	 * are between fromSegId and toSegId. The segment ids are the ones given by
+	 * the {@link SegmentIdProvider} of {@link HashTrees}. The pairs are
+	 * ordered by the segment id, and the pairs of a segment by the key, in
+	 * the unsigned lexicographical order of the bytes. This is the order of
+	 * {@link HashTreesStore#getSegmentDataIterator(long, int, int)}.
+	 * 
+	 * Note: Iterator implementations should throw
+	 * {@link HashTreesCustomRuntimeException} so that failure cases can be
+	 * handled properly by {@link HashTrees}
+	 * 
+	 * @param treeId
+	 * @param fromSegId
+	 *            , inclusive
+	 * @param toSegId
+	 *            , inclusive
+	 * @return
+	 * @throws IOException
+	 */
+	Iterator<Map.Entry<byte[], byte[]>> iterator(long treeId, int fromSegId,
+			int toSegId) throws IOException;
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.store;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.hashtrees.HashTrees;
+import org.hashtrees.HashTreesCustomRuntimeException;
+
+/**
+ * An optional capability of {@link Store}, which can split the (key,value)
+ * pairs of a tree into disjoint parts, which can be read concurrently. When
+ * the store implements this, {@link HashTrees#rebuildHashTree(long, boolean)}
+ * reads the parts on different threads during a full rebuild.
+ * 
+ */
+public interface SplittableStore extends Store {
+
+	/**
+	 * Returns iterators over disjoint parts of the (key,value) pairs of the
+	 * given tree id. Together the iterators return the same pairs as
+	 * {@link #iterator(long)}. Each iterator is read by only one thread, but
+	 * the iterators are read concurrently.
+	 * 
+	 * Note: Iterator implementations should throw
+	 * {@link HashTreesCustomRuntimeException} so that failure cases can be
+	 * handled properly by {@link HashTrees}
+	 * 
+	 * @param treeId
+	 * @param maxNoOfSplits
+	 *            , upper limit on no of iterators to return.
+	 * @return at least one iterator.
+	 * @throws IOException
+	 */
+	List<Iterator<Map.Entry<byte[], byte[]>>> splitIterators(long treeId,
+			int maxNoOfSplits) throws IOException;
+}
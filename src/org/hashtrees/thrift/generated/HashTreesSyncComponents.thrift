@@ -137,4 +137,42 @@ service HashTreesSyncInterface
 	 *
 	 **/
 	list<ServerName> getServerNameListFor(1:i64 treeId);
+
+	/**
+	 * Compares the given segment hashes with the hashes stored on the tree, and
+	 * returns the node ids whose hashes differ, or which are missing on either
+	 * side. A node missing on the caller side is passed with an empty hash.
+	 *
+	 */
+	list<i32> compareSegmentHashes(1:i64 treeId, 2:list<SegmentHash> segmentHashes);
+
+	/**
+	 * Returns the hashes of the given nodes, and of their descendants up to depth
+	 * levels below them. Leaf nodes are not descended further.
+	 *
+	 */
+	list<SegmentHash> getSubtreeHashes(1:i64 treeId, 2:list<i32> nodeIds, 3:i32 depth);
+
+	/**
+	 * Returns the (key,hash) pairs of all the given segments in one call. Each
+	 * SegmentData carries its segment id.
+	 *
+	 */
+	list<SegmentData> getSegments(1:i64 treeId, 2:list<i32> segIds);
+
+	/**
+	 * Returns at most maxEntries (key,hash) pairs of the given segment, starting
+	 * from fromKey (inclusive) in the key order. An empty fromKey starts from the
+	 * beginning of the segment. Allows huge segments to be transferred in pages.
+	 *
+	 */
+	list<SegmentData> getSegmentPage(1:i64 treeId, 2:i32 segId, 3:binary fromKey, 4:i32 maxEntries);
+
+	/**
+	 * Returns the settings which the hashes of the trees depend on, like the
+	 * digest algorithm and the fan out, by their names. Trees built with
+	 * different settings never match, so peers compare them before a sync.
+	 *
+	 */
+	map<string,string> getSettings();
 }
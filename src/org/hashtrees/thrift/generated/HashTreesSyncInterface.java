@@ -142,6 +142,59 @@ public class HashTreesSyncInterface {
      */
     public List<ServerName> getServerNameListFor(long treeId) throws org.apache.thrift.TException;
 
+    /**
+     * Compares the given segment hashes with the hashes stored on the tree, and
+     * returns the node ids whose hashes differ, or which are missing on either
+     * side. A node missing on the caller side is passed with an empty hash.
+     * 
+     * 
+     * @param treeId
+     * @param segmentHashes
+     */
+    public List<Integer> compareSegmentHashes(long treeId, List<SegmentHash> segmentHashes) throws org.apache.thrift.TException;
+
+    /**
+     * Returns the hashes of the given nodes, and of their descendants up to depth
+     * levels below them. Leaf nodes are not descended further.
+     * 
+     * 
+     * @param treeId
+     * @param nodeIds
+     * @param depth
+     */
+    public List<SegmentHash> getSubtreeHashes(long treeId, List<Integer> nodeIds, int depth) throws org.apache.thrift.TException;
+
+    /**
+     * Returns the (key,hash) pairs of all the given segments in one call. Each
+     * SegmentData carries its segment id.
+     * 
+     * 
+     * @param treeId
+     * @param segIds
+     */
+    public List<SegmentData> getSegments(long treeId, List<Integer> segIds) throws org.apache.thrift.TException;
+
+    /**
+     * Returns at most maxEntries (key,hash) pairs of the given segment, starting
+     * from fromKey (inclusive) in the key order. An empty fromKey starts from the
+     * beginning of the segment.
+     * 
+     * 
+     * @param treeId
+     * @param segId
+     * @param fromKey
+     * @param maxEntries
+     */
+    public List<SegmentData> getSegmentPage(long treeId, int segId, ByteBuffer fromKey, int maxEntries) throws org.apache.thrift.TException;
+
+    /**
+     * Returns the settings which the hashes of the trees depend on, like the
+     * digest algorithm and the fan out, by their names. Trees built with
+     * different settings never match, so peers compare them before a sync.
+     * 
+     */
+    public Map<String,String> getSettings() throws org.apache.thrift.TException;
+
   }
 
   public interface AsyncIface {
@@ -168,6 +221,16 @@ public class HashTreesSyncInterface {
 
     public void getServerNameListFor(long treeId, org.apache.thrift.async.AsyncMethodCallback<AsyncClient.getServerNameListFor_call> resultHandler) throws org.apache.thrift.TException;
 
+    public void compareSegmentHashes(long treeId, List<SegmentHash> segmentHashes, org.apache.thrift.async.AsyncMethodCallback<AsyncClient.compareSegmentHashes_call> resultHandler) throws org.apache.thrift.TException;
+
+    public void getSubtreeHashes(long treeId, List<Integer> nodeIds, int depth, org.apache.thrift.async.AsyncMethodCallback<AsyncClient.getSubtreeHashes_call> resultHandler) throws org.apache.thrift.TException;
+
+    public void getSegments(long treeId, List<Integer> segIds, org.apache.thrift.async.AsyncMethodCallback<AsyncClient.getSegments_call> resultHandler) throws org.apache.thrift.TException;
+
+    public void getSegmentPage(long treeId, int segId, ByteBuffer fromKey, int maxEntries, org.apache.thrift.async.AsyncMethodCallback<AsyncClient.getSegmentPage_call> resultHandler) throws org.apache.thrift.TException;
+
+    public void getSettings(org.apache.thrift.async.AsyncMethodCallback<AsyncClient.getSettings_call> resultHandler) throws org.apache.thrift.TException;
+
   }
 
   public static class Client extends org.apache.thrift.TServiceClient implements Iface {
@@ -432,6 +495,123 @@ public class HashTreesSyncInterface {
       }
       throw new org.apache.thrift.TApplicationException(org.apache.thrift.TApplicationException.MISSING_RESULT, "getServerNameListFor failed: unknown result");
     }
+    public List<Integer> compareSegmentHashes(long treeId, List<SegmentHash> segmentHashes) throws org.apache.thrift.TException
+    {
+      send_compareSegmentHashes(treeId, segmentHashes);
+      return recv_compareSegmentHashes();
+    }
+
+    public void send_compareSegmentHashes(long treeId, List<SegmentHash> segmentHashes) throws org.apache.thrift.TException
+    {
+      compareSegmentHashes_args args = new compareSegmentHashes_args();
+      args.setTreeId(treeId);
+      args.setSegmentHashes(segmentHashes);
+      sendBase("compareSegmentHashes", args);
+    }
+
+    public List<Integer> recv_compareSegmentHashes() throws org.apache.thrift.TException
+    {
+      compareSegmentHashes_result result = new compareSegmentHashes_result();
+      receiveBase(result, "compareSegmentHashes");
+      if (result.isSetSuccess()) {
+        return result.success;
+      }
+      throw new org.apache.thrift.TApplicationException(org.apache.thrift.TApplicationException.MISSING_RESULT, "compareSegmentHashes failed: unknown result");
+    }
+    public List<SegmentHash> getSubtreeHashes(long treeId, List<Integer> nodeIds, int depth) throws org.apache.thrift.TException
+    {
+      send_getSubtreeHashes(treeId, nodeIds, depth);
+      return recv_getSubtreeHashes();
+    }
+
+    public void send_getSubtreeHashes(long treeId, List<Integer> nodeIds, int depth) throws org.apache.thrift.TException
+    {
+      getSubtreeHashes_args args = new getSubtreeHashes_args();
+      args.setTreeId(treeId);
+      args.setNodeIds(nodeIds);
+      args.setDepth(depth);
+      sendBase("getSubtreeHashes", args);
+    }
+
+    public List<SegmentHash> recv_getSubtreeHashes() throws org.apache.thrift.TException
+    {
+      getSubtreeHashes_result result = new getSubtreeHashes_result();
+      receiveBase(result, "getSubtreeHashes");
+      if (result.isSetSuccess()) {
+        return result.success;
+      }
+      throw new org.apache.thrift.TApplicationException(org.apache.thrift.TApplicationException.MISSING_RESULT, "getSubtreeHashes failed: unknown result");
+    }
+    public List<SegmentData> getSegments(long treeId, List<Integer> segIds) throws org.apache.thrift.TException
+    {
+      send_getSegments(treeId, segIds);
+      return recv_getSegments();
+    }
+
+    public void send_getSegments(long treeId, List<Integer> segIds) throws org.apache.thrift.TException
+    {
+      getSegments_args args = new getSegments_args();
+      args.setTreeId(treeId);
+      args.setSegIds(segIds);
+      sendBase("getSegments", args);
+    }
+
+    public List<SegmentData> recv_getSegments() throws org.apache.thrift.TException
+    {
+      getSegments_result result = new getSegments_result();
+      receiveBase(result, "getSegments");
+      if (result.isSetSuccess()) {
+        return result.success;
+      }
+      throw new org.apache.thrift.TApplicationException(org.apache.thrift.TApplicationException.MISSING_RESULT, "getSegments failed: unknown result");
+    }
+    public List<SegmentData> getSegmentPage(long treeId, int segId, ByteBuffer fromKey, int maxEntries) throws org.apache.thrift.TException
+    {
+      send_getSegmentPage(treeId, segId, fromKey, maxEntries);
+      return recv_getSegmentPage();
+    }
+
+    public void send_getSegmentPage(long treeId, int segId, ByteBuffer fromKey, int maxEntries) throws org.apache.thrift.TException
+    {
+      getSegmentPage_args args = new getSegmentPage_args();
+      args.setTreeId(treeId);
+      args.setSegId(segId);
+      args.setFromKey(fromKey);
+      args.setMaxEntries(maxEntries);
+      sendBase("getSegmentPage", args);
+    }
+
+    public List<SegmentData> recv_getSegmentPage() throws org.apache.thrift.TException
+    {
+      getSegmentPage_result result = new getSegmentPage_result();
+      receiveBase(result, "getSegmentPage");
+      if (result.isSetSuccess()) {
+        return result.success;
+      }
+      throw new org.apache.thrift.TApplicationException(org.apache.thrift.TApplicationException.MISSING_RESULT, "getSegmentPage failed: unknown result");
+    }
+
+    public Map<String,String> getSettings() throws org.apache.thrift.TException
+    {
+      send_getSettings();
+      return recv_getSettings();
+    }
+
+    public void send_getSettings() throws org.apache.thrift.TException
+    {
+      getSettings_args args = new getSettings_args();
+      sendBase("getSettings", args);
+    }
+
+    public Map<String,String> recv_getSettings() throws org.apache.thrift.TException
+    {
+      getSettings_result result = new getSettings_result();
+      receiveBase(result, "getSettings");
+      if (result.isSetSuccess()) {
+        return result.success;
+      }
+      throw new org.apache.thrift.TApplicationException(org.apache.thrift.TApplicationException.MISSING_RESULT, "getSettings failed: unknown result");
+    }
 
   }
   public static class AsyncClient extends org.apache.thrift.async.TAsyncClient implements AsyncIface {
@@ -817,6 +997,184 @@ public class HashTreesSyncInterface {
         return (new Client(prot)).recv_getServerNameListFor();
       }
     }
+    public void compareSegmentHashes(long treeId, List<SegmentHash> segmentHashes, org.apache.thrift.async.AsyncMethodCallback<compareSegmentHashes_call> resultHandler) throws org.apache.thrift.TException {
+      checkReady();
+      compareSegmentHashes_call method_call = new compareSegmentHashes_call(treeId, segmentHashes, resultHandler, this, ___protocolFactory, ___transport);
+      this.___currentMethod = method_call;
+      ___manager.call(method_call);
+    }
+
+    public static class compareSegmentHashes_call extends org.apache.thrift.async.TAsyncMethodCall {
+      private long treeId;
+      private List<SegmentHash> segmentHashes;
+      public compareSegmentHashes_call(long treeId, List<SegmentHash> segmentHashes, org.apache.thrift.async.AsyncMethodCallback<compareSegmentHashes_call> resultHandler, org.apache.thrift.async.TAsyncClient client, org.apache.thrift.protocol.TProtocolFactory protocolFactory, org.apache.thrift.transport.TNonblockingTransport transport) throws org.apache.thrift.TException {
+        super(client, protocolFactory, transport, resultHandler, false);
+        this.treeId = treeId;
+        this.segmentHashes = segmentHashes;
+      }
+
+      public void write_args(org.apache.thrift.protocol.TProtocol prot) throws org.apache.thrift.TException {
+        prot.writeMessageBegin(new org.apache.thrift.protocol.TMessage("compareSegmentHashes", org.apache.thrift.protocol.TMessageType.CALL, 0));
+        compareSegmentHashes_args args = new compareSegmentHashes_args();
+        args.setTreeId(treeId);
+        args.setSegmentHashes(segmentHashes);
+        args.write(prot);
+        prot.writeMessageEnd();
+      }
+
+      public List<Integer> getResult() throws org.apache.thrift.TException {
+        if (getState() != org.apache.thrift.async.TAsyncMethodCall.State.RESPONSE_READ) {
+          throw new IllegalStateException("Method call not finished!");
+        }
+        org.apache.thrift.transport.TMemoryInputTransport memoryTransport = new org.apache.thrift.transport.TMemoryInputTransport(getFrameBuffer().array());
+        org.apache.thrift.protocol.TProtocol prot = client.getProtocolFactory().getProtocol(memoryTransport);
+        return (new Client(prot)).recv_compareSegmentHashes();
+      }
+    }
+
+    public void getSubtreeHashes(long treeId, List<Integer> nodeIds, int depth, org.apache.thrift.async.AsyncMethodCallback<getSubtreeHashes_call> resultHandler) throws org.apache.thrift.TException {
+      checkReady();
+      getSubtreeHashes_call method_call = new getSubtreeHashes_call(treeId, nodeIds, depth, resultHandler, this, ___protocolFactory, ___transport);
+      this.___currentMethod = method_call;
+      ___manager.call(method_call);
+    }
+
+    public static class getSubtreeHashes_call extends org.apache.thrift.async.TAsyncMethodCall {
+      private long treeId;
+      private List<Integer> nodeIds;
+      private int depth;
+      public getSubtreeHashes_call(long treeId, List<Integer> nodeIds, int depth, org.apache.thrift.async.AsyncMethodCallback<getSubtreeHashes_call> resultHandler, org.apache.thrift.async.TAsyncClient client, org.apache.thrift.protocol.TProtocolFactory protocolFactory, org.apache.thrift.transport.TNonblockingTransport transport) throws org.apache.thrift.TException {
+        super(client, protocolFactory, transport, resultHandler, false);
+        this.treeId = treeId;
+        this.nodeIds = nodeIds;
+        this.depth = depth;
+      }
+
+      public void write_args(org.apache.thrift.protocol.TProtocol prot) throws org.apache.thrift.TException {
+        prot.writeMessageBegin(new org.apache.thrift.protocol.TMessage("getSubtreeHashes", org.apache.thrift.protocol.TMessageType.CALL, 0));
+        getSubtreeHashes_args args = new getSubtreeHashes_args();
+        args.setTreeId(treeId);
+        args.setNodeIds(nodeIds);
+        args.setDepth(depth);
+        args.write(prot);
+        prot.writeMessageEnd();
+      }
+
+      public List<SegmentHash> getResult() throws org.apache.thrift.TException {
+        if (getState() != org.apache.thrift.async.TAsyncMethodCall.State.RESPONSE_READ) {
+          throw new IllegalStateException("Method call not finished!");
+        }
+        org.apache.thrift.transport.TMemoryInputTransport memoryTransport = new org.apache.thrift.transport.TMemoryInputTransport(getFrameBuffer().array());
+        org.apache.thrift.protocol.TProtocol prot = client.getProtocolFactory().getProtocol(memoryTransport);
+        return (new Client(prot)).recv_getSubtreeHashes();
+      }
+    }
+
+    public void getSegments(long treeId, List<Integer> segIds, org.apache.thrift.async.AsyncMethodCallback<getSegments_call> resultHandler) throws org.apache.thrift.TException {
+      checkReady();
+      getSegments_call method_call = new getSegments_call(treeId, segIds, resultHandler, this, ___protocolFactory, ___transport);
+      this.___currentMethod = method_call;
+      ___manager.call(method_call);
+    }
+
+    public static class getSegments_call extends org.apache.thrift.async.TAsyncMethodCall {
+      private long treeId;
+      private List<Integer> segIds;
+      public getSegments_call(long treeId, List<Integer> segIds, org.apache.thrift.async.AsyncMethodCallback<getSegments_call> resultHandler, org.apache.thrift.async.TAsyncClient client, org.apache.thrift.protocol.TProtocolFactory protocolFactory, org.apache.thrift.transport.TNonblockingTransport transport) throws org.apache.thrift.TException {
+        super(client, protocolFactory, transport, resultHandler, false);
+        this.treeId = treeId;
+        this.segIds = segIds;
+      }
+
+      public void write_args(org.apache.thrift.protocol.TProtocol prot) throws org.apache.thrift.TException {
+        prot.writeMessageBegin(new org.apache.thrift.protocol.TMessage("getSegments", org.apache.thrift.protocol.TMessageType.CALL, 0));
+        getSegments_args args = new getSegments_args();
+        args.setTreeId(treeId);
+        args.setSegIds(segIds);
+        args.write(prot);
+        prot.writeMessageEnd();
+      }
+
+      public List<SegmentData> getResult() throws org.apache.thrift.TException {
+        if (getState() != org.apache.thrift.async.TAsyncMethodCall.State.RESPONSE_READ) {
+          throw new IllegalStateException("Method call not finished!");
+        }
+        org.apache.thrift.transport.TMemoryInputTransport memoryTransport = new org.apache.thrift.transport.TMemoryInputTransport(getFrameBuffer().array());
+        org.apache.thrift.protocol.TProtocol prot = client.getProtocolFactory().getProtocol(memoryTransport);
+        return (new Client(prot)).recv_getSegments();
+      }
+    }
+
+    public void getSegmentPage(long treeId, int segId, ByteBuffer fromKey, int maxEntries, org.apache.thrift.async.AsyncMethodCallback<getSegmentPage_call> resultHandler) throws org.apache.thrift.TException {
+      checkReady();
+      getSegmentPage_call method_call = new getSegmentPage_call(treeId, segId, fromKey, maxEntries, resultHandler, this, ___protocolFactory, ___transport);
+      this.___currentMethod = method_call;
+      ___manager.call(method_call);
+    }
+
+    public static class getSegmentPage_call extends org.apache.thrift.async.TAsyncMethodCall {
+      private long treeId;
+      private int segId;
+      private ByteBuffer fromKey;
+      private int maxEntries;
+      public getSegmentPage_call(long treeId, int segId, ByteBuffer fromKey, int maxEntries, org.apache.thrift.async.AsyncMethodCallback<getSegmentPage_call> resultHandler, org.apache.thrift.async.TAsyncClient client, org.apache.thrift.protocol.TProtocolFactory protocolFactory, org.apache.thrift.transport.TNonblockingTransport transport) throws org.apache.thrift.TException {
+        super(client, protocolFactory, transport, resultHandler, false);
+        this.treeId = treeId;
+        this.segId = segId;
+        this.fromKey = fromKey;
+        this.maxEntries = maxEntries;
+      }
+
+      public void write_args(org.apache.thrift.protocol.TProtocol prot) throws org.apache.thrift.TException {
+        prot.writeMessageBegin(new org.apache.thrift.protocol.TMessage("getSegmentPage", org.apache.thrift.protocol.TMessageType.CALL, 0));
+        getSegmentPage_args args = new getSegmentPage_args();
+        args.setTreeId(treeId);
+        args.setSegId(segId);
+        args.setFromKey(fromKey);
+        args.setMaxEntries(maxEntries);
+        args.write(prot);
+        prot.writeMessageEnd();
+      }
+
+      public List<SegmentData> getResult() throws org.apache.thrift.TException {
+        if (getState() != org.apache.thrift.async.TAsyncMethodCall.State.RESPONSE_READ) {
+          throw new IllegalStateException("Method call not finished!");
+        }
+        org.apache.thrift.transport.TMemoryInputTransport memoryTransport = new org.apache.thrift.transport.TMemoryInputTransport(getFrameBuffer().array());
+        org.apache.thrift.protocol.TProtocol prot = client.getProtocolFactory().getProtocol(memoryTransport);
+        return (new Client(prot)).recv_getSegmentPage();
+      }
+    }
+
+    public void getSettings(org.apache.thrift.async.AsyncMethodCallback<getSettings_call> resultHandler) throws org.apache.thrift.TException {
+      checkReady();
+      getSettings_call method_call = new getSettings_call(resultHandler, this, ___protocolFactory, ___transport);
+      this.___currentMethod = method_call;
+      ___manager.call(method_call);
+    }
+
+    public static class getSettings_call extends org.apache.thrift.async.TAsyncMethodCall {
+      public getSettings_call(org.apache.thrift.async.AsyncMethodCallback<getSettings_call> resultHandler, org.apache.thrift.async.TAsyncClient client, org.apache.thrift.protocol.TProtocolFactory protocolFactory, org.apache.thrift.transport.TNonblockingTransport transport) throws org.apache.thrift.TException {
+        super(client, protocolFactory, transport, resultHandler, false);
+      }
+
+      public void write_args(org.apache.thrift.protocol.TProtocol prot) throws org.apache.thrift.TException {
+        prot.writeMessageBegin(new org.apache.thrift.protocol.TMessage("getSettings", org.apache.thrift.protocol.TMessageType.CALL, 0));
+        getSettings_args args = new getSettings_args();
+        args.write(prot);
+        prot.writeMessageEnd();
+      }
+
+      public Map<String,String> getResult() throws org.apache.thrift.TException {
+        if (getState() != org.apache.thrift.async.TAsyncMethodCall.State.RESPONSE_READ) {
+          throw new IllegalStateException("Method call not finished!");
+        }
+        org.apache.thrift.transport.TMemoryInputTransport memoryTransport = new org.apache.thrift.transport.TMemoryInputTransport(getFrameBuffer().array());
+        org.apache.thrift.protocol.TProtocol prot = client.getProtocolFactory().getProtocol(memoryTransport);
+        return (new Client(prot)).recv_getSettings();
+      }
+    }
+
 
   }
 
@@ -842,6 +1200,11 @@ public class HashTreesSyncInterface {
       processMap.put("submitRebuildRequest", new submitRebuildRequest());
       processMap.put("submitRebuildResponse", new submitRebuildResponse());
       processMap.put("getServerNameListFor", new getServerNameListFor());
+      processMap.put("compareSegmentHashes", new compareSegmentHashes());
+      processMap.put("getSubtreeHashes", new getSubtreeHashes());
+      processMap.put("getSegments", new getSegments());
+      processMap.put("getSegmentPage", new getSegmentPage());
+      processMap.put("getSettings", new getSettings());
       return processMap;
     }
 
@@ -1020,35 +1383,115 @@ public class HashTreesSyncInterface {
         return result;
       }
     }
+    private static class compareSegmentHashes<I extends Iface> extends org.apache.thrift.ProcessFunction<I, compareSegmentHashes_args> {
+      public compareSegmentHashes() {
+        super("compareSegmentHashes");
+      }
 
-  }
+      protected compareSegmentHashes_args getEmptyArgsInstance() {
+        return new compareSegmentHashes_args();
+      }
 
-  public static class ping_args implements org.apache.thrift.TBase<ping_args, ping_args._Fields>, java.io.Serializable, Cloneable   {
-    private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("ping_args");
+      protected compareSegmentHashes_result getResult(I iface, compareSegmentHashes_args args) throws org.apache.thrift.TException {
+        compareSegmentHashes_result result = new compareSegmentHashes_result();
+        result.success = iface.compareSegmentHashes(args.treeId, args.segmentHashes);
+        return result;
+      }
+    }
+
+    private static class getSubtreeHashes<I extends Iface> extends org.apache.thrift.ProcessFunction<I, getSubtreeHashes_args> {
+      public getSubtreeHashes() {
+        super("getSubtreeHashes");
+      }
 
+      protected getSubtreeHashes_args getEmptyArgsInstance() {
+        return new getSubtreeHashes_args();
+      }
 
-    private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
-    static {
-      schemes.put(StandardScheme.class, new ping_argsStandardSchemeFactory());
-      schemes.put(TupleScheme.class, new ping_argsTupleSchemeFactory());
+      protected getSubtreeHashes_result getResult(I iface, getSubtreeHashes_args args) throws org.apache.thrift.TException {
+        getSubtreeHashes_result result = new getSubtreeHashes_result();
+        result.success = iface.getSubtreeHashes(args.treeId, args.nodeIds, args.depth);
+        return result;
+      }
     }
 
+    private static class getSegments<I extends Iface> extends org.apache.thrift.ProcessFunction<I, getSegments_args> {
+      public getSegments() {
+        super("getSegments");
+      }
 
-    /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
-    public enum _Fields implements org.apache.thrift.TFieldIdEnum {
-;
+      protected getSegments_args getEmptyArgsInstance() {
+        return new getSegments_args();
+      }
 
-      private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+      protected getSegments_result getResult(I iface, getSegments_args args) throws org.apache.thrift.TException {
+        getSegments_result result = new getSegments_result();
+        result.success = iface.getSegments(args.treeId, args.segIds);
+        return result;
+      }
+    }
 
-      static {
-        for (_Fields field : EnumSet.allOf(_Fields.class)) {
-          byName.put(field.getFieldName(), field);
-        }
+    private static class getSegmentPage<I extends Iface> extends org.apache.thrift.ProcessFunction<I, getSegmentPage_args> {
+      public getSegmentPage() {
+        super("getSegmentPage");
       }
 
-      /**
-       * Find the _Fields constant that matches fieldId, or null if its not found.
-       */
+      protected getSegmentPage_args getEmptyArgsInstance() {
+        return new getSegmentPage_args();
+      }
+
+      protected getSegmentPage_result getResult(I iface, getSegmentPage_args args) throws org.apache.thrift.TException {
+        getSegmentPage_result result = new getSegmentPage_result();
+        result.success = iface.getSegmentPage(args.treeId, args.segId, args.fromKey, args.maxEntries);
+        return result;
+      }
+    }
+
+    private static class getSettings<I extends Iface> extends org.apache.thrift.ProcessFunction<I, getSettings_args> {
+      public getSettings() {
+        super("getSettings");
+      }
+
+      protected getSettings_args getEmptyArgsInstance() {
+        return new getSettings_args();
+      }
+
+      protected getSettings_result getResult(I iface, getSettings_args args) throws org.apache.thrift.TException {
+        getSettings_result result = new getSettings_result();
+        result.success = iface.getSettings();
+        return result;
+      }
+    }
+
+
+  }
+
+  public static class ping_args implements org.apache.thrift.TBase<ping_args, ping_args._Fields>, java.io.Serializable, Cloneable   {
+    private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("ping_args");
+
+
+    private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+    static {
+      schemes.put(StandardScheme.class, new ping_argsStandardSchemeFactory());
+      schemes.put(TupleScheme.class, new ping_argsTupleSchemeFactory());
+    }
+
+
+    /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+    public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+;
+
+      private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+      static {
+        for (_Fields field : EnumSet.allOf(_Fields.class)) {
+          byName.put(field.getFieldName(), field);
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, or null if its not found.
+       */
       public static _Fields findByThriftId(int fieldId) {
         switch(fieldId) {
           default:
@@ -9046,4 +9489,4548 @@ public class HashTreesSyncInterface {
 
   }
 
+  public static class compareSegmentHashes_args implements org.apache.thrift.TBase<compareSegmentHashes_args, compareSegmentHashes_args._Fields>, java.io.Serializable, Cloneable   {
+    private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("compareSegmentHashes_args");
+
+    private static final org.apache.thrift.protocol.TField TREE_ID_FIELD_DESC = new org.apache.thrift.protocol.TField("treeId", org.apache.thrift.protocol.TType.I64, (short)1);
+    private static final org.apache.thrift.protocol.TField SEGMENT_HASHES_FIELD_DESC = new org.apache.thrift.protocol.TField("segmentHashes", org.apache.thrift.protocol.TType.LIST, (short)2);
+
+    private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+    static {
+      schemes.put(StandardScheme.class, new compareSegmentHashes_argsStandardSchemeFactory());
+      schemes.put(TupleScheme.class, new compareSegmentHashes_argsTupleSchemeFactory());
+    }
+
+    public long treeId; // required
+    public List<SegmentHash> segmentHashes; // required
+
+    /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+    public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+      TREE_ID((short)1, "treeId"),
+      SEGMENT_HASHES((short)2, "segmentHashes");
+
+      private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+      static {
+        for (_Fields field : EnumSet.allOf(_Fields.class)) {
+          byName.put(field.getFieldName(), field);
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, or null if its not found.
+       */
+      public static _Fields findByThriftId(int fieldId) {
+        switch(fieldId) {
+          case 1: // TREE_ID
+            return TREE_ID;
+          case 2: // SEGMENT_HASHES
+            return SEGMENT_HASHES;
+          default:
+            return null;
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, throwing an exception
+       * if it is not found.
+       */
+      public static _Fields findByThriftIdOrThrow(int fieldId) {
+        _Fields fields = findByThriftId(fieldId);
+        if (fields == null) throw new IllegalArgumentException("Field " + fieldId + " doesn't exist!");
+        return fields;
+      }
+
+      /**
+       * Find the _Fields constant that matches name, or null if its not found.
+       */
+      public static _Fields findByName(String name) {
+        return byName.get(name);
+      }
+
+      private final short _thriftId;
+      private final String _fieldName;
+
+      _Fields(short thriftId, String fieldName) {
+        _thriftId = thriftId;
+        _fieldName = fieldName;
+      }
+
+      public short getThriftFieldId() {
+        return _thriftId;
+      }
+
+      public String getFieldName() {
+        return _fieldName;
+      }
+    }
+
+    // isset id assignments
+    private static final int __TREEID_ISSET_ID = 0;
+    private BitSet __isset_bit_vector = new BitSet(1);
+    public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
+    static {
+      Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
+      tmpMap.put(_Fields.TREE_ID, new org.apache.thrift.meta_data.FieldMetaData("treeId", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I64)));
+      tmpMap.put(_Fields.SEGMENT_HASHES, new org.apache.thrift.meta_data.FieldMetaData("segmentHashes", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.ListMetaData(org.apache.thrift.protocol.TType.LIST, 
+              new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, SegmentHash.class))));
+      metaDataMap = Collections.unmodifiableMap(tmpMap);
+      org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(compareSegmentHashes_args.class, metaDataMap);
+    }
+
+    public compareSegmentHashes_args() {
+    }
+
+    public compareSegmentHashes_args(
+      long treeId,
+      List<SegmentHash> segmentHashes)
+    {
+      this();
+      this.treeId = treeId;
+      setTreeIdIsSet(true);
+      this.segmentHashes = segmentHashes;
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public compareSegmentHashes_args(compareSegmentHashes_args other) {
+      __isset_bit_vector.clear();
+      __isset_bit_vector.or(other.__isset_bit_vector);
+      this.treeId = other.treeId;
+      if (other.isSetSegmentHashes()) {
+        List<SegmentHash> __this__segmentHashes = new ArrayList<SegmentHash>();
+        for (SegmentHash other_element : other.segmentHashes) {
+          __this__segmentHashes.add(new SegmentHash(other_element));
+        }
+        this.segmentHashes = __this__segmentHashes;
+      }
+    }
+
+    public compareSegmentHashes_args deepCopy() {
+      return new compareSegmentHashes_args(this);
+    }
+
+    @Override
+    public void clear() {
+      setTreeIdIsSet(false);
+      this.treeId = 0;
+      this.segmentHashes = null;
+    }
+
+    public long getTreeId() {
+      return this.treeId;
+    }
+
+    public compareSegmentHashes_args setTreeId(long treeId) {
+      this.treeId = treeId;
+      setTreeIdIsSet(true);
+      return this;
+    }
+
+    public void unsetTreeId() {
+      __isset_bit_vector.clear(__TREEID_ISSET_ID);
+    }
+
+    /** Returns true if field treeId is set (has been assigned a value) and false otherwise */
+    public boolean isSetTreeId() {
+      return __isset_bit_vector.get(__TREEID_ISSET_ID);
+    }
+
+    public void setTreeIdIsSet(boolean value) {
+      __isset_bit_vector.set(__TREEID_ISSET_ID, value);
+    }
+
+    public int getSegmentHashesSize() {
+      return (this.segmentHashes == null) ? 0 : this.segmentHashes.size();
+    }
+
+    public java.util.Iterator<SegmentHash> getSegmentHashesIterator() {
+      return (this.segmentHashes == null) ? null : this.segmentHashes.iterator();
+    }
+
+    public void addToSegmentHashes(SegmentHash elem) {
+      if (this.segmentHashes == null) {
+        this.segmentHashes = new ArrayList<SegmentHash>();
+      }
+      this.segmentHashes.add(elem);
+    }
+
+    public List<SegmentHash> getSegmentHashes() {
+      return this.segmentHashes;
+    }
+
+    public compareSegmentHashes_args setSegmentHashes(List<SegmentHash> segmentHashes) {
+      this.segmentHashes = segmentHashes;
+      return this;
+    }
+
+    public void unsetSegmentHashes() {
+      this.segmentHashes = null;
+    }
+
+    /** Returns true if field segmentHashes is set (has been assigned a value) and false otherwise */
+    public boolean isSetSegmentHashes() {
+      return this.segmentHashes != null;
+    }
+
+    public void setSegmentHashesIsSet(boolean value) {
+      if (!value) {
+        this.segmentHashes = null;
+      }
+    }
+
+    public void setFieldValue(_Fields field, Object value) {
+      switch (field) {
+      case TREE_ID:
+        if (value == null) {
+          unsetTreeId();
+        } else {
+          setTreeId((Long)value);
+        }
+        break;
+
+      case SEGMENT_HASHES:
+        if (value == null) {
+          unsetSegmentHashes();
+        } else {
+          setSegmentHashes((List<SegmentHash>)value);
+        }
+        break;
+
+      }
+    }
+
+    public Object getFieldValue(_Fields field) {
+      switch (field) {
+      case TREE_ID:
+        return Long.valueOf(getTreeId());
+
+      case SEGMENT_HASHES:
+        return getSegmentHashes();
+
+      }
+      throw new IllegalStateException();
+    }
+
+    /** Returns true if field corresponding to fieldID is set (has been assigned a value) and false otherwise */
+    public boolean isSet(_Fields field) {
+      if (field == null) {
+        throw new IllegalArgumentException();
+      }
+
+      switch (field) {
+      case TREE_ID:
+        return isSetTreeId();
+      case SEGMENT_HASHES:
+        return isSetSegmentHashes();
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof compareSegmentHashes_args)
+        return this.equals((compareSegmentHashes_args)that);
+      return false;
+    }
+
+    public boolean equals(compareSegmentHashes_args that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_treeId = true;
+      boolean that_present_treeId = true;
+      if (this_present_treeId || that_present_treeId) {
+        if (!(this_present_treeId && that_present_treeId))
+          return false;
+        if (this.treeId != that.treeId)
+          return false;
+      }
+
+      boolean this_present_segmentHashes = true && this.isSetSegmentHashes();
+      boolean that_present_segmentHashes = true && that.isSetSegmentHashes();
+      if (this_present_segmentHashes || that_present_segmentHashes) {
+        if (!(this_present_segmentHashes && that_present_segmentHashes))
+          return false;
+        if (!this.segmentHashes.equals(that.segmentHashes))
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public int compareTo(compareSegmentHashes_args other) {
+      if (!getClass().equals(other.getClass())) {
+        return getClass().getName().compareTo(other.getClass().getName());
+      }
+
+      int lastComparison = 0;
+      compareSegmentHashes_args typedOther = (compareSegmentHashes_args)other;
+
+      lastComparison = Boolean.valueOf(isSetTreeId()).compareTo(typedOther.isSetTreeId());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetTreeId()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.treeId, typedOther.treeId);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      lastComparison = Boolean.valueOf(isSetSegmentHashes()).compareTo(typedOther.isSetSegmentHashes());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetSegmentHashes()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.segmentHashes, typedOther.segmentHashes);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      return 0;
+    }
+
+    public _Fields fieldForId(int fieldId) {
+      return _Fields.findByThriftId(fieldId);
+    }
+
+    public void read(org.apache.thrift.protocol.TProtocol iprot) throws org.apache.thrift.TException {
+      schemes.get(iprot.getScheme()).getScheme().read(iprot, this);
+    }
+
+    public void write(org.apache.thrift.protocol.TProtocol oprot) throws org.apache.thrift.TException {
+      schemes.get(oprot.getScheme()).getScheme().write(oprot, this);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("compareSegmentHashes_args(");
+      boolean first = true;
+
+      sb.append("treeId:");
+      sb.append(this.treeId);
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("segmentHashes:");
+      if (this.segmentHashes == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.segmentHashes);
+      }
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws org.apache.thrift.TException {
+      // check for required fields
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+      try {
+        write(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(out)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+      try {
+        // it doesn't seem like you should have to do this, but java serialization is wacky, and doesn't call the default constructor.
+        __isset_bit_vector = new BitSet(1);
+        read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private static class compareSegmentHashes_argsStandardSchemeFactory implements SchemeFactory {
+      public compareSegmentHashes_argsStandardScheme getScheme() {
+        return new compareSegmentHashes_argsStandardScheme();
+      }
+    }
+
+    private static class compareSegmentHashes_argsStandardScheme extends StandardScheme<compareSegmentHashes_args> {
+
+      public void read(org.apache.thrift.protocol.TProtocol iprot, compareSegmentHashes_args struct) throws org.apache.thrift.TException {
+        org.apache.thrift.protocol.TField schemeField;
+        iprot.readStructBegin();
+        while (true)
+        {
+          schemeField = iprot.readFieldBegin();
+          if (schemeField.type == org.apache.thrift.protocol.TType.STOP) { 
+            break;
+          }
+          switch (schemeField.id) {
+            case 1: // TREE_ID
+              if (schemeField.type == org.apache.thrift.protocol.TType.I64) {
+                struct.treeId = iprot.readI64();
+                struct.setTreeIdIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            case 2: // SEGMENT_HASHES
+              if (schemeField.type == org.apache.thrift.protocol.TType.LIST) {
+                {
+                  org.apache.thrift.protocol.TList _list48 = iprot.readListBegin();
+                  struct.segmentHashes = new ArrayList<SegmentHash>(_list48.size);
+                  for (int _i49 = 0; _i49 < _list48.size; ++_i49)
+                  {
+                    SegmentHash _elem50; // required
+                    _elem50 = new SegmentHash();
+                    _elem50.read(iprot);
+                    struct.segmentHashes.add(_elem50);
+                  }
+                  iprot.readListEnd();
+                }
+                struct.setSegmentHashesIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            default:
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+          }
+          iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+
+        // check for required fields of primitive type, which can't be checked in the validate method
+        struct.validate();
+      }
+
+      public void write(org.apache.thrift.protocol.TProtocol oprot, compareSegmentHashes_args struct) throws org.apache.thrift.TException {
+        struct.validate();
+
+        oprot.writeStructBegin(STRUCT_DESC);
+        oprot.writeFieldBegin(TREE_ID_FIELD_DESC);
+        oprot.writeI64(struct.treeId);
+        oprot.writeFieldEnd();
+        if (struct.segmentHashes != null) {
+          oprot.writeFieldBegin(SEGMENT_HASHES_FIELD_DESC);
+          {
+            oprot.writeListBegin(new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRUCT, struct.segmentHashes.size()));
+            for (SegmentHash _iter51 : struct.segmentHashes)
+            {
+              _iter51.write(oprot);
+            }
+            oprot.writeListEnd();
+          }
+          oprot.writeFieldEnd();
+        }
+        oprot.writeFieldStop();
+        oprot.writeStructEnd();
+      }
+
+    }
+
+    private static class compareSegmentHashes_argsTupleSchemeFactory implements SchemeFactory {
+      public compareSegmentHashes_argsTupleScheme getScheme() {
+        return new compareSegmentHashes_argsTupleScheme();
+      }
+    }
+
+    private static class compareSegmentHashes_argsTupleScheme extends TupleScheme<compareSegmentHashes_args> {
+
+      @Override
+      public void write(org.apache.thrift.protocol.TProtocol prot, compareSegmentHashes_args struct) throws org.apache.thrift.TException {
+        TTupleProtocol oprot = (TTupleProtocol) prot;
+        BitSet optionals = new BitSet();
+        if (struct.isSetTreeId()) {
+          optionals.set(0);
+        }
+        if (struct.isSetSegmentHashes()) {
+          optionals.set(1);
+        }
+        oprot.writeBitSet(optionals, 2);
+        if (struct.isSetTreeId()) {
+          oprot.writeI64(struct.treeId);
+        }
+        if (struct.isSetSegmentHashes()) {
+          {
+            oprot.writeI32(struct.segmentHashes.size());
+            for (SegmentHash _iter52 : struct.segmentHashes)
+            {
+              _iter52.write(oprot);
+            }
+          }
+        }
+      }
+
+      @Override
+      public void read(org.apache.thrift.protocol.TProtocol prot, compareSegmentHashes_args struct) throws org.apache.thrift.TException {
+        TTupleProtocol iprot = (TTupleProtocol) prot;
+        BitSet incoming = iprot.readBitSet(2);
+        if (incoming.get(0)) {
+          struct.treeId = iprot.readI64();
+          struct.setTreeIdIsSet(true);
+        }
+        if (incoming.get(1)) {
+          {
+            org.apache.thrift.protocol.TList _list53 = new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRUCT, iprot.readI32());
+            struct.segmentHashes = new ArrayList<SegmentHash>(_list53.size);
+            for (int _i54 = 0; _i54 < _list53.size; ++_i54)
+            {
+              SegmentHash _elem55; // required
+              _elem55 = new SegmentHash();
+              _elem55.read(iprot);
+              struct.segmentHashes.add(_elem55);
+            }
+          }
+          struct.setSegmentHashesIsSet(true);
+        }
+      }
+    }
+
+  }
+
+  public static class compareSegmentHashes_result implements org.apache.thrift.TBase<compareSegmentHashes_result, compareSegmentHashes_result._Fields>, java.io.Serializable, Cloneable   {
+    private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("compareSegmentHashes_result");
+
+    private static final org.apache.thrift.protocol.TField SUCCESS_FIELD_DESC = new org.apache.thrift.protocol.TField("success", org.apache.thrift.protocol.TType.LIST, (short)0);
+
+    private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+    static {
+      schemes.put(StandardScheme.class, new compareSegmentHashes_resultStandardSchemeFactory());
+      schemes.put(TupleScheme.class, new compareSegmentHashes_resultTupleSchemeFactory());
+    }
+
+    public List<Integer> success; // required
+
+    /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+    public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+      SUCCESS((short)0, "success");
+
+      private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+      static {
+        for (_Fields field : EnumSet.allOf(_Fields.class)) {
+          byName.put(field.getFieldName(), field);
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, or null if its not found.
+       */
+      public static _Fields findByThriftId(int fieldId) {
+        switch(fieldId) {
+          case 0: // SUCCESS
+            return SUCCESS;
+          default:
+            return null;
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, throwing an exception
+       * if it is not found.
+       */
+      public static _Fields findByThriftIdOrThrow(int fieldId) {
+        _Fields fields = findByThriftId(fieldId);
+        if (fields == null) throw new IllegalArgumentException("Field " + fieldId + " doesn't exist!");
+        return fields;
+      }
+
+      /**
+       * Find the _Fields constant that matches name, or null if its not found.
+       */
+      public static _Fields findByName(String name) {
+        return byName.get(name);
+      }
+
+      private final short _thriftId;
+      private final String _fieldName;
+
+      _Fields(short thriftId, String fieldName) {
+        _thriftId = thriftId;
+        _fieldName = fieldName;
+      }
+
+      public short getThriftFieldId() {
+        return _thriftId;
+      }
+
+      public String getFieldName() {
+        return _fieldName;
+      }
+    }
+
+    // isset id assignments
+    public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
+    static {
+      Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
+      tmpMap.put(_Fields.SUCCESS, new org.apache.thrift.meta_data.FieldMetaData("success", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.ListMetaData(org.apache.thrift.protocol.TType.LIST, 
+              new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I32))));
+      metaDataMap = Collections.unmodifiableMap(tmpMap);
+      org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(compareSegmentHashes_result.class, metaDataMap);
+    }
+
+    public compareSegmentHashes_result() {
+    }
+
+    public compareSegmentHashes_result(
+      List<Integer> success)
+    {
+      this();
+      this.success = success;
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public compareSegmentHashes_result(compareSegmentHashes_result other) {
+      if (other.isSetSuccess()) {
+        List<Integer> __this__success = new ArrayList<Integer>();
+        for (Integer other_element : other.success) {
+          __this__success.add(other_element);
+        }
+        this.success = __this__success;
+      }
+    }
+
+    public compareSegmentHashes_result deepCopy() {
+      return new compareSegmentHashes_result(this);
+    }
+
+    @Override
+    public void clear() {
+      this.success = null;
+    }
+
+    public int getSuccessSize() {
+      return (this.success == null) ? 0 : this.success.size();
+    }
+
+    public java.util.Iterator<Integer> getSuccessIterator() {
+      return (this.success == null) ? null : this.success.iterator();
+    }
+
+    public void addToSuccess(int elem) {
+      if (this.success == null) {
+        this.success = new ArrayList<Integer>();
+      }
+      this.success.add(elem);
+    }
+
+    public List<Integer> getSuccess() {
+      return this.success;
+    }
+
+    public compareSegmentHashes_result setSuccess(List<Integer> success) {
+      this.success = success;
+      return this;
+    }
+
+    public void unsetSuccess() {
+      this.success = null;
+    }
+
+    /** Returns true if field success is set (has been assigned a value) and false otherwise */
+    public boolean isSetSuccess() {
+      return this.success != null;
+    }
+
+    public void setSuccessIsSet(boolean value) {
+      if (!value) {
+        this.success = null;
+      }
+    }
+
+    public void setFieldValue(_Fields field, Object value) {
+      switch (field) {
+      case SUCCESS:
+        if (value == null) {
+          unsetSuccess();
+        } else {
+          setSuccess((List<Integer>)value);
+        }
+        break;
+
+      }
+    }
+
+    public Object getFieldValue(_Fields field) {
+      switch (field) {
+      case SUCCESS:
+        return getSuccess();
+
+      }
+      throw new IllegalStateException();
+    }
+
+    /** Returns true if field corresponding to fieldID is set (has been assigned a value) and false otherwise */
+    public boolean isSet(_Fields field) {
+      if (field == null) {
+        throw new IllegalArgumentException();
+      }
+
+      switch (field) {
+      case SUCCESS:
+        return isSetSuccess();
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof compareSegmentHashes_result)
+        return this.equals((compareSegmentHashes_result)that);
+      return false;
+    }
+
+    public boolean equals(compareSegmentHashes_result that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_success = true && this.isSetSuccess();
+      boolean that_present_success = true && that.isSetSuccess();
+      if (this_present_success || that_present_success) {
+        if (!(this_present_success && that_present_success))
+          return false;
+        if (!this.success.equals(that.success))
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public int compareTo(compareSegmentHashes_result other) {
+      if (!getClass().equals(other.getClass())) {
+        return getClass().getName().compareTo(other.getClass().getName());
+      }
+
+      int lastComparison = 0;
+      compareSegmentHashes_result typedOther = (compareSegmentHashes_result)other;
+
+      lastComparison = Boolean.valueOf(isSetSuccess()).compareTo(typedOther.isSetSuccess());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetSuccess()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.success, typedOther.success);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      return 0;
+    }
+
+    public _Fields fieldForId(int fieldId) {
+      return _Fields.findByThriftId(fieldId);
+    }
+
+    public void read(org.apache.thrift.protocol.TProtocol iprot) throws org.apache.thrift.TException {
+      schemes.get(iprot.getScheme()).getScheme().read(iprot, this);
+    }
+
+    public void write(org.apache.thrift.protocol.TProtocol oprot) throws org.apache.thrift.TException {
+      schemes.get(oprot.getScheme()).getScheme().write(oprot, this);
+      }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("compareSegmentHashes_result(");
+      boolean first = true;
+
+      sb.append("success:");
+      if (this.success == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.success);
+      }
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws org.apache.thrift.TException {
+      // check for required fields
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+      try {
+        write(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(out)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+      try {
+        read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private static class compareSegmentHashes_resultStandardSchemeFactory implements SchemeFactory {
+      public compareSegmentHashes_resultStandardScheme getScheme() {
+        return new compareSegmentHashes_resultStandardScheme();
+      }
+    }
+
+    private static class compareSegmentHashes_resultStandardScheme extends StandardScheme<compareSegmentHashes_result> {
+
+      public void read(org.apache.thrift.protocol.TProtocol iprot, compareSegmentHashes_result struct) throws org.apache.thrift.TException {
+        org.apache.thrift.protocol.TField schemeField;
+        iprot.readStructBegin();
+        while (true)
+        {
+          schemeField = iprot.readFieldBegin();
+          if (schemeField.type == org.apache.thrift.protocol.TType.STOP) { 
+            break;
+          }
+          switch (schemeField.id) {
+            case 0: // SUCCESS
+              if (schemeField.type == org.apache.thrift.protocol.TType.LIST) {
+                {
+                  org.apache.thrift.protocol.TList _list56 = iprot.readListBegin();
+                  struct.success = new ArrayList<Integer>(_list56.size);
+                  for (int _i57 = 0; _i57 < _list56.size; ++_i57)
+                  {
+                    int _elem58; // required
+                    _elem58 = iprot.readI32();
+                    struct.success.add(_elem58);
+                  }
+                  iprot.readListEnd();
+                }
+                struct.setSuccessIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            default:
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+          }
+          iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+
+        // check for required fields of primitive type, which can't be checked in the validate method
+        struct.validate();
+      }
+
+      public void write(org.apache.thrift.protocol.TProtocol oprot, compareSegmentHashes_result struct) throws org.apache.thrift.TException {
+        struct.validate();
+
+        oprot.writeStructBegin(STRUCT_DESC);
+        if (struct.success != null) {
+          oprot.writeFieldBegin(SUCCESS_FIELD_DESC);
+          {
+            oprot.writeListBegin(new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.I32, struct.success.size()));
+            for (int _iter59 : struct.success)
+            {
+              oprot.writeI32(_iter59);
+            }
+            oprot.writeListEnd();
+          }
+          oprot.writeFieldEnd();
+        }
+        oprot.writeFieldStop();
+        oprot.writeStructEnd();
+      }
+
+    }
+
+    private static class compareSegmentHashes_resultTupleSchemeFactory implements SchemeFactory {
+      public compareSegmentHashes_resultTupleScheme getScheme() {
+        return new compareSegmentHashes_resultTupleScheme();
+      }
+    }
+
+    private static class compareSegmentHashes_resultTupleScheme extends TupleScheme<compareSegmentHashes_result> {
+
+      @Override
+      public void write(org.apache.thrift.protocol.TProtocol prot, compareSegmentHashes_result struct) throws org.apache.thrift.TException {
+        TTupleProtocol oprot = (TTupleProtocol) prot;
+        BitSet optionals = new BitSet();
+        if (struct.isSetSuccess()) {
+          optionals.set(0);
+        }
+        oprot.writeBitSet(optionals, 1);
+        if (struct.isSetSuccess()) {
+          {
+            oprot.writeI32(struct.success.size());
+            for (int _iter60 : struct.success)
+            {
+              oprot.writeI32(_iter60);
+            }
+          }
+        }
+      }
+
+      @Override
+      public void read(org.apache.thrift.protocol.TProtocol prot, compareSegmentHashes_result struct) throws org.apache.thrift.TException {
+        TTupleProtocol iprot = (TTupleProtocol) prot;
+        BitSet incoming = iprot.readBitSet(1);
+        if (incoming.get(0)) {
+          {
+            org.apache.thrift.protocol.TList _list61 = new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.I32, iprot.readI32());
+            struct.success = new ArrayList<Integer>(_list61.size);
+            for (int _i62 = 0; _i62 < _list61.size; ++_i62)
+            {
+              int _elem63; // required
+              _elem63 = iprot.readI32();
+              struct.success.add(_elem63);
+            }
+          }
+          struct.setSuccessIsSet(true);
+        }
+      }
+    }
+
+  }
+
+  public static class getSubtreeHashes_args implements org.apache.thrift.TBase<getSubtreeHashes_args, getSubtreeHashes_args._Fields>, java.io.Serializable, Cloneable   {
+    private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("getSubtreeHashes_args");
+
+    private static final org.apache.thrift.protocol.TField TREE_ID_FIELD_DESC = new org.apache.thrift.protocol.TField("treeId", org.apache.thrift.protocol.TType.I64, (short)1);
+    private static final org.apache.thrift.protocol.TField NODE_IDS_FIELD_DESC = new org.apache.thrift.protocol.TField("nodeIds", org.apache.thrift.protocol.TType.LIST, (short)2);
+    private static final org.apache.thrift.protocol.TField DEPTH_FIELD_DESC = new org.apache.thrift.protocol.TField("depth", org.apache.thrift.protocol.TType.I32, (short)3);
+
+    private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+    static {
+      schemes.put(StandardScheme.class, new getSubtreeHashes_argsStandardSchemeFactory());
+      schemes.put(TupleScheme.class, new getSubtreeHashes_argsTupleSchemeFactory());
+    }
+
+    public long treeId; // required
+    public List<Integer> nodeIds; // required
+    public int depth; // required
+
+    /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+    public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+      TREE_ID((short)1, "treeId"),
+      NODE_IDS((short)2, "nodeIds"),
+      DEPTH((short)3, "depth");
+
+      private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+      static {
+        for (_Fields field : EnumSet.allOf(_Fields.class)) {
+          byName.put(field.getFieldName(), field);
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, or null if its not found.
+       */
+      public static _Fields findByThriftId(int fieldId) {
+        switch(fieldId) {
+          case 1: // TREE_ID
+            return TREE_ID;
+          case 2: // NODE_IDS
+            return NODE_IDS;
+          case 3: // DEPTH
+            return DEPTH;
+          default:
+            return null;
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, throwing an exception
+       * if it is not found.
+       */
+      public static _Fields findByThriftIdOrThrow(int fieldId) {
+        _Fields fields = findByThriftId(fieldId);
+        if (fields == null) throw new IllegalArgumentException("Field " + fieldId + " doesn't exist!");
+        return fields;
+      }
+
+      /**
+       * Find the _Fields constant that matches name, or null if its not found.
+       */
+      public static _Fields findByName(String name) {
+        return byName.get(name);
+      }
+
+      private final short _thriftId;
+      private final String _fieldName;
+
+      _Fields(short thriftId, String fieldName) {
+        _thriftId = thriftId;
+        _fieldName = fieldName;
+      }
+
+      public short getThriftFieldId() {
+        return _thriftId;
+      }
+
+      public String getFieldName() {
+        return _fieldName;
+      }
+    }
+
+    // isset id assignments
+    private static final int __TREEID_ISSET_ID = 0;
+    private static final int __DEPTH_ISSET_ID = 1;
+    private BitSet __isset_bit_vector = new BitSet(2);
+    public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
+    static {
+      Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
+      tmpMap.put(_Fields.TREE_ID, new org.apache.thrift.meta_data.FieldMetaData("treeId", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I64)));
+      tmpMap.put(_Fields.NODE_IDS, new org.apache.thrift.meta_data.FieldMetaData("nodeIds", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.ListMetaData(org.apache.thrift.protocol.TType.LIST, 
+              new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I32))));
+      tmpMap.put(_Fields.DEPTH, new org.apache.thrift.meta_data.FieldMetaData("depth", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I32)));
+      metaDataMap = Collections.unmodifiableMap(tmpMap);
+      org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(getSubtreeHashes_args.class, metaDataMap);
+    }
+
+    public getSubtreeHashes_args() {
+    }
+
+    public getSubtreeHashes_args(
+      long treeId,
+      List<Integer> nodeIds,
+      int depth)
+    {
+      this();
+      this.treeId = treeId;
+      setTreeIdIsSet(true);
+      this.nodeIds = nodeIds;
+      this.depth = depth;
+      setDepthIsSet(true);
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public getSubtreeHashes_args(getSubtreeHashes_args other) {
+      __isset_bit_vector.clear();
+      __isset_bit_vector.or(other.__isset_bit_vector);
+      this.treeId = other.treeId;
+      if (other.isSetNodeIds()) {
+        List<Integer> __this__nodeIds = new ArrayList<Integer>();
+        for (Integer other_element : other.nodeIds) {
+          __this__nodeIds.add(other_element);
+        }
+        this.nodeIds = __this__nodeIds;
+      }
+      this.depth = other.depth;
+    }
+
+    public getSubtreeHashes_args deepCopy() {
+      return new getSubtreeHashes_args(this);
+    }
+
+    @Override
+    public void clear() {
+      setTreeIdIsSet(false);
+      this.treeId = 0;
+      this.nodeIds = null;
+      setDepthIsSet(false);
+      this.depth = 0;
+    }
+
+    public long getTreeId() {
+      return this.treeId;
+    }
+
+    public getSubtreeHashes_args setTreeId(long treeId) {
+      this.treeId = treeId;
+      setTreeIdIsSet(true);
+      return this;
+    }
+
+    public void unsetTreeId() {
+      __isset_bit_vector.clear(__TREEID_ISSET_ID);
+    }
+
+    /** Returns true if field treeId is set (has been assigned a value) and false otherwise */
+    public boolean isSetTreeId() {
+      return __isset_bit_vector.get(__TREEID_ISSET_ID);
+    }
+
+    public void setTreeIdIsSet(boolean value) {
+      __isset_bit_vector.set(__TREEID_ISSET_ID, value);
+    }
+
+    public int getNodeIdsSize() {
+      return (this.nodeIds == null) ? 0 : this.nodeIds.size();
+    }
+
+    public java.util.Iterator<Integer> getNodeIdsIterator() {
+      return (this.nodeIds == null) ? null : this.nodeIds.iterator();
+    }
+
+    public void addToNodeIds(int elem) {
+      if (this.nodeIds == null) {
+        this.nodeIds = new ArrayList<Integer>();
+      }
+      this.nodeIds.add(elem);
+    }
+
+    public List<Integer> getNodeIds() {
+      return this.nodeIds;
+    }
+
+    public getSubtreeHashes_args setNodeIds(List<Integer> nodeIds) {
+      this.nodeIds = nodeIds;
+      return this;
+    }
+
+    public void unsetNodeIds() {
+      this.nodeIds = null;
+    }
+
+    /** Returns true if field nodeIds is set (has been assigned a value) and false otherwise */
+    public boolean isSetNodeIds() {
+      return this.nodeIds != null;
+    }
+
+    public void setNodeIdsIsSet(boolean value) {
+      if (!value) {
+        this.nodeIds = null;
+      }
+    }
+
+    public int getDepth() {
+      return this.depth;
+    }
+
+    public getSubtreeHashes_args setDepth(int depth) {
+      this.depth = depth;
+      setDepthIsSet(true);
+      return this;
+    }
+
+    public void unsetDepth() {
+      __isset_bit_vector.clear(__DEPTH_ISSET_ID);
+    }
+
+    /** Returns true if field depth is set (has been assigned a value) and false otherwise */
+    public boolean isSetDepth() {
+      return __isset_bit_vector.get(__DEPTH_ISSET_ID);
+    }
+
+    public void setDepthIsSet(boolean value) {
+      __isset_bit_vector.set(__DEPTH_ISSET_ID, value);
+    }
+
+    public void setFieldValue(_Fields field, Object value) {
+      switch (field) {
+      case TREE_ID:
+        if (value == null) {
+          unsetTreeId();
+        } else {
+          setTreeId((Long)value);
+        }
+        break;
+
+      case NODE_IDS:
+        if (value == null) {
+          unsetNodeIds();
+        } else {
+          setNodeIds((List<Integer>)value);
+        }
+        break;
+
+      case DEPTH:
+        if (value == null) {
+          unsetDepth();
+        } else {
+          setDepth((Integer)value);
+        }
+        break;
+
+      }
+    }
+
+    public Object getFieldValue(_Fields field) {
+      switch (field) {
+      case TREE_ID:
+        return Long.valueOf(getTreeId());
+
+      case NODE_IDS:
+        return getNodeIds();
+
+      case DEPTH:
+        return Integer.valueOf(getDepth());
+
+      }
+      throw new IllegalStateException();
+    }
+
+    /** Returns true if field corresponding to fieldID is set (has been assigned a value) and false otherwise */
+    public boolean isSet(_Fields field) {
+      if (field == null) {
+        throw new IllegalArgumentException();
+      }
+
+      switch (field) {
+      case TREE_ID:
+        return isSetTreeId();
+      case NODE_IDS:
+        return isSetNodeIds();
+      case DEPTH:
+        return isSetDepth();
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof getSubtreeHashes_args)
+        return this.equals((getSubtreeHashes_args)that);
+      return false;
+    }
+
+    public boolean equals(getSubtreeHashes_args that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_treeId = true;
+      boolean that_present_treeId = true;
+      if (this_present_treeId || that_present_treeId) {
+        if (!(this_present_treeId && that_present_treeId))
+          return false;
+        if (this.treeId != that.treeId)
+          return false;
+      }
+
+      boolean this_present_nodeIds = true && this.isSetNodeIds();
+      boolean that_present_nodeIds = true && that.isSetNodeIds();
+      if (this_present_nodeIds || that_present_nodeIds) {
+        if (!(this_present_nodeIds && that_present_nodeIds))
+          return false;
+        if (!this.nodeIds.equals(that.nodeIds))
+          return false;
+      }
+
+      boolean this_present_depth = true;
+      boolean that_present_depth = true;
+      if (this_present_depth || that_present_depth) {
+        if (!(this_present_depth && that_present_depth))
+          return false;
+        if (this.depth != that.depth)
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public int compareTo(getSubtreeHashes_args other) {
+      if (!getClass().equals(other.getClass())) {
+        return getClass().getName().compareTo(other.getClass().getName());
+      }
+
+      int lastComparison = 0;
+      getSubtreeHashes_args typedOther = (getSubtreeHashes_args)other;
+
+      lastComparison = Boolean.valueOf(isSetTreeId()).compareTo(typedOther.isSetTreeId());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetTreeId()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.treeId, typedOther.treeId);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      lastComparison = Boolean.valueOf(isSetNodeIds()).compareTo(typedOther.isSetNodeIds());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetNodeIds()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.nodeIds, typedOther.nodeIds);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      lastComparison = Boolean.valueOf(isSetDepth()).compareTo(typedOther.isSetDepth());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetDepth()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.depth, typedOther.depth);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      return 0;
+    }
+
+    public _Fields fieldForId(int fieldId) {
+      return _Fields.findByThriftId(fieldId);
+    }
+
+    public void read(org.apache.thrift.protocol.TProtocol iprot) throws org.apache.thrift.TException {
+      schemes.get(iprot.getScheme()).getScheme().read(iprot, this);
+    }
+
+    public void write(org.apache.thrift.protocol.TProtocol oprot) throws org.apache.thrift.TException {
+      schemes.get(oprot.getScheme()).getScheme().write(oprot, this);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("getSubtreeHashes_args(");
+      boolean first = true;
+
+      sb.append("treeId:");
+      sb.append(this.treeId);
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("nodeIds:");
+      if (this.nodeIds == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.nodeIds);
+      }
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("depth:");
+      sb.append(this.depth);
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws org.apache.thrift.TException {
+      // check for required fields
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+      try {
+        write(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(out)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+      try {
+        // it doesn't seem like you should have to do this, but java serialization is wacky, and doesn't call the default constructor.
+        __isset_bit_vector = new BitSet(1);
+        read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private static class getSubtreeHashes_argsStandardSchemeFactory implements SchemeFactory {
+      public getSubtreeHashes_argsStandardScheme getScheme() {
+        return new getSubtreeHashes_argsStandardScheme();
+      }
+    }
+
+    private static class getSubtreeHashes_argsStandardScheme extends StandardScheme<getSubtreeHashes_args> {
+
+      public void read(org.apache.thrift.protocol.TProtocol iprot, getSubtreeHashes_args struct) throws org.apache.thrift.TException {
+        org.apache.thrift.protocol.TField schemeField;
+        iprot.readStructBegin();
+        while (true)
+        {
+          schemeField = iprot.readFieldBegin();
+          if (schemeField.type == org.apache.thrift.protocol.TType.STOP) { 
+            break;
+          }
+          switch (schemeField.id) {
+            case 1: // TREE_ID
+              if (schemeField.type == org.apache.thrift.protocol.TType.I64) {
+                struct.treeId = iprot.readI64();
+                struct.setTreeIdIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            case 2: // NODE_IDS
+              if (schemeField.type == org.apache.thrift.protocol.TType.LIST) {
+                {
+                  org.apache.thrift.protocol.TList _list64 = iprot.readListBegin();
+                  struct.nodeIds = new ArrayList<Integer>(_list64.size);
+                  for (int _i65 = 0; _i65 < _list64.size; ++_i65)
+                  {
+                    int _elem66; // required
+                    _elem66 = iprot.readI32();
+                    struct.nodeIds.add(_elem66);
+                  }
+                  iprot.readListEnd();
+                }
+                struct.setNodeIdsIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            case 3: // DEPTH
+              if (schemeField.type == org.apache.thrift.protocol.TType.I32) {
+                struct.depth = iprot.readI32();
+                struct.setDepthIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            default:
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+          }
+          iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+
+        // check for required fields of primitive type, which can't be checked in the validate method
+        struct.validate();
+      }
+
+      public void write(org.apache.thrift.protocol.TProtocol oprot, getSubtreeHashes_args struct) throws org.apache.thrift.TException {
+        struct.validate();
+
+        oprot.writeStructBegin(STRUCT_DESC);
+        oprot.writeFieldBegin(TREE_ID_FIELD_DESC);
+        oprot.writeI64(struct.treeId);
+        oprot.writeFieldEnd();
+        if (struct.nodeIds != null) {
+          oprot.writeFieldBegin(NODE_IDS_FIELD_DESC);
+          {
+            oprot.writeListBegin(new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.I32, struct.nodeIds.size()));
+            for (int _iter67 : struct.nodeIds)
+            {
+              oprot.writeI32(_iter67);
+            }
+            oprot.writeListEnd();
+          }
+          oprot.writeFieldEnd();
+        }
+        oprot.writeFieldBegin(DEPTH_FIELD_DESC);
+        oprot.writeI32(struct.depth);
+        oprot.writeFieldEnd();
+        oprot.writeFieldStop();
+        oprot.writeStructEnd();
+      }
+
+    }
+
+    private static class getSubtreeHashes_argsTupleSchemeFactory implements SchemeFactory {
+      public getSubtreeHashes_argsTupleScheme getScheme() {
+        return new getSubtreeHashes_argsTupleScheme();
+      }
+    }
+
+    private static class getSubtreeHashes_argsTupleScheme extends TupleScheme<getSubtreeHashes_args> {
+
+      @Override
+      public void write(org.apache.thrift.protocol.TProtocol prot, getSubtreeHashes_args struct) throws org.apache.thrift.TException {
+        TTupleProtocol oprot = (TTupleProtocol) prot;
+        BitSet optionals = new BitSet();
+        if (struct.isSetTreeId()) {
+          optionals.set(0);
+        }
+        if (struct.isSetNodeIds()) {
+          optionals.set(1);
+        }
+        if (struct.isSetDepth()) {
+          optionals.set(2);
+        }
+        oprot.writeBitSet(optionals, 3);
+        if (struct.isSetTreeId()) {
+          oprot.writeI64(struct.treeId);
+        }
+        if (struct.isSetNodeIds()) {
+          {
+            oprot.writeI32(struct.nodeIds.size());
+            for (int _iter68 : struct.nodeIds)
+            {
+              oprot.writeI32(_iter68);
+            }
+          }
+        }
+        if (struct.isSetDepth()) {
+          oprot.writeI32(struct.depth);
+        }
+      }
+
+      @Override
+      public void read(org.apache.thrift.protocol.TProtocol prot, getSubtreeHashes_args struct) throws org.apache.thrift.TException {
+        TTupleProtocol iprot = (TTupleProtocol) prot;
+        BitSet incoming = iprot.readBitSet(3);
+        if (incoming.get(0)) {
+          struct.treeId = iprot.readI64();
+          struct.setTreeIdIsSet(true);
+        }
+        if (incoming.get(1)) {
+          {
+            org.apache.thrift.protocol.TList _list69 = new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.I32, iprot.readI32());
+            struct.nodeIds = new ArrayList<Integer>(_list69.size);
+            for (int _i70 = 0; _i70 < _list69.size; ++_i70)
+            {
+              int _elem71; // required
+              _elem71 = iprot.readI32();
+              struct.nodeIds.add(_elem71);
+            }
+          }
+          struct.setNodeIdsIsSet(true);
+        }
+        if (incoming.get(2)) {
+          struct.depth = iprot.readI32();
+          struct.setDepthIsSet(true);
+        }
+      }
+    }
+
+  }
+
+  public static class getSubtreeHashes_result implements org.apache.thrift.TBase<getSubtreeHashes_result, getSubtreeHashes_result._Fields>, java.io.Serializable, Cloneable   {
+    private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("getSubtreeHashes_result");
+
+    private static final org.apache.thrift.protocol.TField SUCCESS_FIELD_DESC = new org.apache.thrift.protocol.TField("success", org.apache.thrift.protocol.TType.LIST, (short)0);
+
+    private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+    static {
+      schemes.put(StandardScheme.class, new getSubtreeHashes_resultStandardSchemeFactory());
+      schemes.put(TupleScheme.class, new getSubtreeHashes_resultTupleSchemeFactory());
+    }
+
+    public List<SegmentHash> success; // required
+
+    /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+    public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+      SUCCESS((short)0, "success");
+
+      private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+      static {
+        for (_Fields field : EnumSet.allOf(_Fields.class)) {
+          byName.put(field.getFieldName(), field);
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, or null if its not found.
+       */
+      public static _Fields findByThriftId(int fieldId) {
+        switch(fieldId) {
+          case 0: // SUCCESS
+            return SUCCESS;
+          default:
+            return null;
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, throwing an exception
+       * if it is not found.
+       */
+      public static _Fields findByThriftIdOrThrow(int fieldId) {
+        _Fields fields = findByThriftId(fieldId);
+        if (fields == null) throw new IllegalArgumentException("Field " + fieldId + " doesn't exist!");
+        return fields;
+      }
+
+      /**
+       * Find the _Fields constant that matches name, or null if its not found.
+       */
+      public static _Fields findByName(String name) {
+        return byName.get(name);
+      }
+
+      private final short _thriftId;
+      private final String _fieldName;
+
+      _Fields(short thriftId, String fieldName) {
+        _thriftId = thriftId;
+        _fieldName = fieldName;
+      }
+
+      public short getThriftFieldId() {
+        return _thriftId;
+      }
+
+      public String getFieldName() {
+        return _fieldName;
+      }
+    }
+
+    // isset id assignments
+    public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
+    static {
+      Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
+      tmpMap.put(_Fields.SUCCESS, new org.apache.thrift.meta_data.FieldMetaData("success", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.ListMetaData(org.apache.thrift.protocol.TType.LIST, 
+              new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, SegmentHash.class))));
+      metaDataMap = Collections.unmodifiableMap(tmpMap);
+      org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(getSubtreeHashes_result.class, metaDataMap);
+    }
+
+    public getSubtreeHashes_result() {
+    }
+
+    public getSubtreeHashes_result(
+      List<SegmentHash> success)
+    {
+      this();
+      this.success = success;
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public getSubtreeHashes_result(getSubtreeHashes_result other) {
+      if (other.isSetSuccess()) {
+        List<SegmentHash> __this__success = new ArrayList<SegmentHash>();
+        for (SegmentHash other_element : other.success) {
+          __this__success.add(new SegmentHash(other_element));
+        }
+        this.success = __this__success;
+      }
+    }
+
+    public getSubtreeHashes_result deepCopy() {
+      return new getSubtreeHashes_result(this);
+    }
+
+    @Override
+    public void clear() {
+      this.success = null;
+    }
+
+    public int getSuccessSize() {
+      return (this.success == null) ? 0 : this.success.size();
+    }
+
+    public java.util.Iterator<SegmentHash> getSuccessIterator() {
+      return (this.success == null) ? null : this.success.iterator();
+    }
+
+    public void addToSuccess(SegmentHash elem) {
+      if (this.success == null) {
+        this.success = new ArrayList<SegmentHash>();
+      }
+      this.success.add(elem);
+    }
+
+    public List<SegmentHash> getSuccess() {
+      return this.success;
+    }
+
+    public getSubtreeHashes_result setSuccess(List<SegmentHash> success) {
+      this.success = success;
+      return this;
+    }
+
+    public void unsetSuccess() {
+      this.success = null;
+    }
+
+    /** Returns true if field success is set (has been assigned a value) and false otherwise */
+    public boolean isSetSuccess() {
+      return this.success != null;
+    }
+
+    public void setSuccessIsSet(boolean value) {
+      if (!value) {
+        this.success = null;
+      }
+    }
+
+    public void setFieldValue(_Fields field, Object value) {
+      switch (field) {
+      case SUCCESS:
+        if (value == null) {
+          unsetSuccess();
+        } else {
+          setSuccess((List<SegmentHash>)value);
+        }
+        break;
+
+      }
+    }
+
+    public Object getFieldValue(_Fields field) {
+      switch (field) {
+      case SUCCESS:
+        return getSuccess();
+
+      }
+      throw new IllegalStateException();
+    }
+
+    /** Returns true if field corresponding to fieldID is set (has been assigned a value) and false otherwise */
+    public boolean isSet(_Fields field) {
+      if (field == null) {
+        throw new IllegalArgumentException();
+      }
+
+      switch (field) {
+      case SUCCESS:
+        return isSetSuccess();
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof getSubtreeHashes_result)
+        return this.equals((getSubtreeHashes_result)that);
+      return false;
+    }
+
+    public boolean equals(getSubtreeHashes_result that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_success = true && this.isSetSuccess();
+      boolean that_present_success = true && that.isSetSuccess();
+      if (this_present_success || that_present_success) {
+        if (!(this_present_success && that_present_success))
+          return false;
+        if (!this.success.equals(that.success))
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public int compareTo(getSubtreeHashes_result other) {
+      if (!getClass().equals(other.getClass())) {
+        return getClass().getName().compareTo(other.getClass().getName());
+      }
+
+      int lastComparison = 0;
+      getSubtreeHashes_result typedOther = (getSubtreeHashes_result)other;
+
+      lastComparison = Boolean.valueOf(isSetSuccess()).compareTo(typedOther.isSetSuccess());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetSuccess()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.success, typedOther.success);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      return 0;
+    }
+
+    public _Fields fieldForId(int fieldId) {
+      return _Fields.findByThriftId(fieldId);
+    }
+
+    public void read(org.apache.thrift.protocol.TProtocol iprot) throws org.apache.thrift.TException {
+      schemes.get(iprot.getScheme()).getScheme().read(iprot, this);
+    }
+
+    public void write(org.apache.thrift.protocol.TProtocol oprot) throws org.apache.thrift.TException {
+      schemes.get(oprot.getScheme()).getScheme().write(oprot, this);
+      }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("getSubtreeHashes_result(");
+      boolean first = true;
+
+      sb.append("success:");
+      if (this.success == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.success);
+      }
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws org.apache.thrift.TException {
+      // check for required fields
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+      try {
+        write(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(out)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+      try {
+        read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private static class getSubtreeHashes_resultStandardSchemeFactory implements SchemeFactory {
+      public getSubtreeHashes_resultStandardScheme getScheme() {
+        return new getSubtreeHashes_resultStandardScheme();
+      }
+    }
+
+    private static class getSubtreeHashes_resultStandardScheme extends StandardScheme<getSubtreeHashes_result> {
+
+      public void read(org.apache.thrift.protocol.TProtocol iprot, getSubtreeHashes_result struct) throws org.apache.thrift.TException {
+        org.apache.thrift.protocol.TField schemeField;
+        iprot.readStructBegin();
+        while (true)
+        {
+          schemeField = iprot.readFieldBegin();
+          if (schemeField.type == org.apache.thrift.protocol.TType.STOP) { 
+            break;
+          }
+          switch (schemeField.id) {
+            case 0: // SUCCESS
+              if (schemeField.type == org.apache.thrift.protocol.TType.LIST) {
+                {
+                  org.apache.thrift.protocol.TList _list72 = iprot.readListBegin();
+                  struct.success = new ArrayList<SegmentHash>(_list72.size);
+                  for (int _i73 = 0; _i73 < _list72.size; ++_i73)
+                  {
+                    SegmentHash _elem74; // required
+                    _elem74 = new SegmentHash();
+                    _elem74.read(iprot);
+                    struct.success.add(_elem74);
+                  }
+                  iprot.readListEnd();
+                }
+                struct.setSuccessIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            default:
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+          }
+          iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+
+        // check for required fields of primitive type, which can't be checked in the validate method
+        struct.validate();
+      }
+
+      public void write(org.apache.thrift.protocol.TProtocol oprot, getSubtreeHashes_result struct) throws org.apache.thrift.TException {
+        struct.validate();
+
+        oprot.writeStructBegin(STRUCT_DESC);
+        if (struct.success != null) {
+          oprot.writeFieldBegin(SUCCESS_FIELD_DESC);
+          {
+            oprot.writeListBegin(new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRUCT, struct.success.size()));
+            for (SegmentHash _iter75 : struct.success)
+            {
+              _iter75.write(oprot);
+            }
+            oprot.writeListEnd();
+          }
+          oprot.writeFieldEnd();
+        }
+        oprot.writeFieldStop();
+        oprot.writeStructEnd();
+      }
+
+    }
+
+    private static class getSubtreeHashes_resultTupleSchemeFactory implements SchemeFactory {
+      public getSubtreeHashes_resultTupleScheme getScheme() {
+        return new getSubtreeHashes_resultTupleScheme();
+      }
+    }
+
+    private static class getSubtreeHashes_resultTupleScheme extends TupleScheme<getSubtreeHashes_result> {
+
+      @Override
+      public void write(org.apache.thrift.protocol.TProtocol prot, getSubtreeHashes_result struct) throws org.apache.thrift.TException {
+        TTupleProtocol oprot = (TTupleProtocol) prot;
+        BitSet optionals = new BitSet();
+        if (struct.isSetSuccess()) {
+          optionals.set(0);
+        }
+        oprot.writeBitSet(optionals, 1);
+        if (struct.isSetSuccess()) {
+          {
+            oprot.writeI32(struct.success.size());
+            for (SegmentHash _iter76 : struct.success)
+            {
+              _iter76.write(oprot);
+            }
+          }
+        }
+      }
+
+      @Override
+      public void read(org.apache.thrift.protocol.TProtocol prot, getSubtreeHashes_result struct) throws org.apache.thrift.TException {
+        TTupleProtocol iprot = (TTupleProtocol) prot;
+        BitSet incoming = iprot.readBitSet(1);
+        if (incoming.get(0)) {
+          {
+            org.apache.thrift.protocol.TList _list77 = new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRUCT, iprot.readI32());
+            struct.success = new ArrayList<SegmentHash>(_list77.size);
+            for (int _i78 = 0; _i78 < _list77.size; ++_i78)
+            {
+              SegmentHash _elem79; // required
+              _elem79 = new SegmentHash();
+              _elem79.read(iprot);
+              struct.success.add(_elem79);
+            }
+          }
+          struct.setSuccessIsSet(true);
+        }
+      }
+    }
+
+  }
+
+  public static class getSegments_args implements org.apache.thrift.TBase<getSegments_args, getSegments_args._Fields>, java.io.Serializable, Cloneable   {
+    private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("getSegments_args");
+
+    private static final org.apache.thrift.protocol.TField TREE_ID_FIELD_DESC = new org.apache.thrift.protocol.TField("treeId", org.apache.thrift.protocol.TType.I64, (short)1);
+    private static final org.apache.thrift.protocol.TField SEG_IDS_FIELD_DESC = new org.apache.thrift.protocol.TField("segIds", org.apache.thrift.protocol.TType.LIST, (short)2);
+
+    private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+    static {
+      schemes.put(StandardScheme.class, new getSegments_argsStandardSchemeFactory());
+      schemes.put(TupleScheme.class, new getSegments_argsTupleSchemeFactory());
+    }
+
+    public long treeId; // required
+    public List<Integer> segIds; // required
+
+    /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+    public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+      TREE_ID((short)1, "treeId"),
+      SEG_IDS((short)2, "segIds");
+
+      private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+      static {
+        for (_Fields field : EnumSet.allOf(_Fields.class)) {
+          byName.put(field.getFieldName(), field);
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, or null if its not found.
+       */
+      public static _Fields findByThriftId(int fieldId) {
+        switch(fieldId) {
+          case 1: // TREE_ID
+            return TREE_ID;
+          case 2: // SEG_IDS
+            return SEG_IDS;
+          default:
+            return null;
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, throwing an exception
+       * if it is not found.
+       */
+      public static _Fields findByThriftIdOrThrow(int fieldId) {
+        _Fields fields = findByThriftId(fieldId);
+        if (fields == null) throw new IllegalArgumentException("Field " + fieldId + " doesn't exist!");
+        return fields;
+      }
+
+      /**
+       * Find the _Fields constant that matches name, or null if its not found.
+       */
+      public static _Fields findByName(String name) {
+        return byName.get(name);
+      }
+
+      private final short _thriftId;
+      private final String _fieldName;
+
+      _Fields(short thriftId, String fieldName) {
+        _thriftId = thriftId;
+        _fieldName = fieldName;
+      }
+
+      public short getThriftFieldId() {
+        return _thriftId;
+      }
+
+      public String getFieldName() {
+        return _fieldName;
+      }
+    }
+
+    // isset id assignments
+    private static final int __TREEID_ISSET_ID = 0;
+    private BitSet __isset_bit_vector = new BitSet(1);
+    public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
+    static {
+      Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
+      tmpMap.put(_Fields.TREE_ID, new org.apache.thrift.meta_data.FieldMetaData("treeId", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I64)));
+      tmpMap.put(_Fields.SEG_IDS, new org.apache.thrift.meta_data.FieldMetaData("segIds", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.ListMetaData(org.apache.thrift.protocol.TType.LIST, 
+              new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I32))));
+      metaDataMap = Collections.unmodifiableMap(tmpMap);
+      org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(getSegments_args.class, metaDataMap);
+    }
+
+    public getSegments_args() {
+    }
+
+    public getSegments_args(
+      long treeId,
+      List<Integer> segIds)
+    {
+      this();
+      this.treeId = treeId;
+      setTreeIdIsSet(true);
+      this.segIds = segIds;
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public getSegments_args(getSegments_args other) {
+      __isset_bit_vector.clear();
+      __isset_bit_vector.or(other.__isset_bit_vector);
+      this.treeId = other.treeId;
+      if (other.isSetSegIds()) {
+        List<Integer> __this__segIds = new ArrayList<Integer>();
+        for (Integer other_element : other.segIds) {
+          __this__segIds.add(other_element);
+        }
+        this.segIds = __this__segIds;
+      }
+    }
+
+    public getSegments_args deepCopy() {
+      return new getSegments_args(this);
+    }
+
+    @Override
+    public void clear() {
+      setTreeIdIsSet(false);
+      this.treeId = 0;
+      this.segIds = null;
+    }
+
+    public long getTreeId() {
+      return this.treeId;
+    }
+
+    public getSegments_args setTreeId(long treeId) {
+      this.treeId = treeId;
+      setTreeIdIsSet(true);
+      return this;
+    }
+
+    public void unsetTreeId() {
+      __isset_bit_vector.clear(__TREEID_ISSET_ID);
+    }
+
+    /** Returns true if field treeId is set (has been assigned a value) and false otherwise */
+    public boolean isSetTreeId() {
+      return __isset_bit_vector.get(__TREEID_ISSET_ID);
+    }
+
+    public void setTreeIdIsSet(boolean value) {
+      __isset_bit_vector.set(__TREEID_ISSET_ID, value);
+    }
+
+    public int getSegIdsSize() {
+      return (this.segIds == null) ? 0 : this.segIds.size();
+    }
+
+    public java.util.Iterator<Integer> getSegIdsIterator() {
+      return (this.segIds == null) ? null : this.segIds.iterator();
+    }
+
+    public void addToSegIds(int elem) {
+      if (this.segIds == null) {
+        this.segIds = new ArrayList<Integer>();
+      }
+      this.segIds.add(elem);
+    }
+
+    public List<Integer> getSegIds() {
+      return this.segIds;
+    }
+
+    public getSegments_args setSegIds(List<Integer> segIds) {
+      this.segIds = segIds;
+      return this;
+    }
+
+    public void unsetSegIds() {
+      this.segIds = null;
+    }
+
+    /** Returns true if field segIds is set (has been assigned a value) and false otherwise */
+    public boolean isSetSegIds() {
+      return this.segIds != null;
+    }
+
+    public void setSegIdsIsSet(boolean value) {
+      if (!value) {
+        this.segIds = null;
+      }
+    }
+
+    public void setFieldValue(_Fields field, Object value) {
+      switch (field) {
+      case TREE_ID:
+        if (value == null) {
+          unsetTreeId();
+        } else {
+          setTreeId((Long)value);
+        }
+        break;
+
+      case SEG_IDS:
+        if (value == null) {
+          unsetSegIds();
+        } else {
+          setSegIds((List<Integer>)value);
+        }
+        break;
+
+      }
+    }
+
+    public Object getFieldValue(_Fields field) {
+      switch (field) {
+      case TREE_ID:
+        return Long.valueOf(getTreeId());
+
+      case SEG_IDS:
+        return getSegIds();
+
+      }
+      throw new IllegalStateException();
+    }
+
+    /** Returns true if field corresponding to fieldID is set (has been assigned a value) and false otherwise */
+    public boolean isSet(_Fields field) {
+      if (field == null) {
+        throw new IllegalArgumentException();
+      }
+
+      switch (field) {
+      case TREE_ID:
+        return isSetTreeId();
+      case SEG_IDS:
+        return isSetSegIds();
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof getSegments_args)
+        return this.equals((getSegments_args)that);
+      return false;
+    }
+
+    public boolean equals(getSegments_args that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_treeId = true;
+      boolean that_present_treeId = true;
+      if (this_present_treeId || that_present_treeId) {
+        if (!(this_present_treeId && that_present_treeId))
+          return false;
+        if (this.treeId != that.treeId)
+          return false;
+      }
+
+      boolean this_present_segIds = true && this.isSetSegIds();
+      boolean that_present_segIds = true && that.isSetSegIds();
+      if (this_present_segIds || that_present_segIds) {
+        if (!(this_present_segIds && that_present_segIds))
+          return false;
+        if (!this.segIds.equals(that.segIds))
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public int compareTo(getSegments_args other) {
+      if (!getClass().equals(other.getClass())) {
+        return getClass().getName().compareTo(other.getClass().getName());
+      }
+
+      int lastComparison = 0;
+      getSegments_args typedOther = (getSegments_args)other;
+
+      lastComparison = Boolean.valueOf(isSetTreeId()).compareTo(typedOther.isSetTreeId());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetTreeId()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.treeId, typedOther.treeId);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      lastComparison = Boolean.valueOf(isSetSegIds()).compareTo(typedOther.isSetSegIds());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetSegIds()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.segIds, typedOther.segIds);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      return 0;
+    }
+
+    public _Fields fieldForId(int fieldId) {
+      return _Fields.findByThriftId(fieldId);
+    }
+
+    public void read(org.apache.thrift.protocol.TProtocol iprot) throws org.apache.thrift.TException {
+      schemes.get(iprot.getScheme()).getScheme().read(iprot, this);
+    }
+
+    public void write(org.apache.thrift.protocol.TProtocol oprot) throws org.apache.thrift.TException {
+      schemes.get(oprot.getScheme()).getScheme().write(oprot, this);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("getSegments_args(");
+      boolean first = true;
+
+      sb.append("treeId:");
+      sb.append(this.treeId);
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("segIds:");
+      if (this.segIds == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.segIds);
+      }
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws org.apache.thrift.TException {
+      // check for required fields
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+      try {
+        write(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(out)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+      try {
+        read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private static class getSegments_argsStandardSchemeFactory implements SchemeFactory {
+      public getSegments_argsStandardScheme getScheme() {
+        return new getSegments_argsStandardScheme();
+      }
+    }
+
+    private static class getSegments_argsStandardScheme extends StandardScheme<getSegments_args> {
+
+      public void read(org.apache.thrift.protocol.TProtocol iprot, getSegments_args struct) throws org.apache.thrift.TException {
+        org.apache.thrift.protocol.TField schemeField;
+        iprot.readStructBegin();
+        while (true)
+        {
+          schemeField = iprot.readFieldBegin();
+          if (schemeField.type == org.apache.thrift.protocol.TType.STOP) { 
+            break;
+          }
+          switch (schemeField.id) {
+            case 1: // TREE_ID
+              if (schemeField.type == org.apache.thrift.protocol.TType.I64) {
+                struct.treeId = iprot.readI64();
+                struct.setTreeIdIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            case 2: // SEG_IDS
+              if (schemeField.type == org.apache.thrift.protocol.TType.LIST) {
+                {
+                  org.apache.thrift.protocol.TList _list80 = iprot.readListBegin();
+                  struct.segIds = new ArrayList<Integer>(_list80.size);
+                  for (int _i81 = 0; _i81 < _list80.size; ++_i81)
+                  {
+                    int _elem82; // required
+                    _elem82 = iprot.readI32();
+                    struct.segIds.add(_elem82);
+                  }
+                  iprot.readListEnd();
+                }
+                struct.setSegIdsIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            default:
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+          }
+          iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+
+        // check for required fields of primitive type, which can't be checked in the validate method
+        struct.validate();
+      }
+
+      public void write(org.apache.thrift.protocol.TProtocol oprot, getSegments_args struct) throws org.apache.thrift.TException {
+        struct.validate();
+
+        oprot.writeStructBegin(STRUCT_DESC);
+        oprot.writeFieldBegin(TREE_ID_FIELD_DESC);
+        oprot.writeI64(struct.treeId);
+        oprot.writeFieldEnd();
+        if (struct.segIds != null) {
+          oprot.writeFieldBegin(SEG_IDS_FIELD_DESC);
+          {
+            oprot.writeListBegin(new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.I32, struct.segIds.size()));
+            for (int _iter83 : struct.segIds)
+            {
+              oprot.writeI32(_iter83);
+            }
+            oprot.writeListEnd();
+          }
+          oprot.writeFieldEnd();
+        }
+        oprot.writeFieldStop();
+        oprot.writeStructEnd();
+      }
+
+    }
+
+    private static class getSegments_argsTupleSchemeFactory implements SchemeFactory {
+      public getSegments_argsTupleScheme getScheme() {
+        return new getSegments_argsTupleScheme();
+      }
+    }
+
+    private static class getSegments_argsTupleScheme extends TupleScheme<getSegments_args> {
+
+      @Override
+      public void write(org.apache.thrift.protocol.TProtocol prot, getSegments_args struct) throws org.apache.thrift.TException {
+        TTupleProtocol oprot = (TTupleProtocol) prot;
+        BitSet optionals = new BitSet();
+        if (struct.isSetTreeId()) {
+          optionals.set(0);
+        }
+        if (struct.isSetSegIds()) {
+          optionals.set(1);
+        }
+        oprot.writeBitSet(optionals, 2);
+        if (struct.isSetTreeId()) {
+          oprot.writeI64(struct.treeId);
+        }
+        if (struct.isSetSegIds()) {
+          {
+            oprot.writeI32(struct.segIds.size());
+            for (int _iter84 : struct.segIds)
+            {
+              oprot.writeI32(_iter84);
+            }
+          }
+        }
+      }
+
+      @Override
+      public void read(org.apache.thrift.protocol.TProtocol prot, getSegments_args struct) throws org.apache.thrift.TException {
+        TTupleProtocol iprot = (TTupleProtocol) prot;
+        BitSet incoming = iprot.readBitSet(2);
+        if (incoming.get(0)) {
+          struct.treeId = iprot.readI64();
+          struct.setTreeIdIsSet(true);
+        }
+        if (incoming.get(1)) {
+          {
+            org.apache.thrift.protocol.TList _list85 = new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.I32, iprot.readI32());
+            struct.segIds = new ArrayList<Integer>(_list85.size);
+            for (int _i86 = 0; _i86 < _list85.size; ++_i86)
+            {
+              int _elem87; // required
+              _elem87 = iprot.readI32();
+              struct.segIds.add(_elem87);
+            }
+          }
+          struct.setSegIdsIsSet(true);
+        }
+      }
+    }
+
+  }
+
+  public static class getSegments_result implements org.apache.thrift.TBase<getSegments_result, getSegments_result._Fields>, java.io.Serializable, Cloneable   {
+    private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("getSegments_result");
+
+    private static final org.apache.thrift.protocol.TField SUCCESS_FIELD_DESC = new org.apache.thrift.protocol.TField("success", org.apache.thrift.protocol.TType.LIST, (short)0);
+
+    private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+    static {
+      schemes.put(StandardScheme.class, new getSegments_resultStandardSchemeFactory());
+      schemes.put(TupleScheme.class, new getSegments_resultTupleSchemeFactory());
+    }
+
+    public List<SegmentData> success; // required
+
+    /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+    public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+      SUCCESS((short)0, "success");
+
+      private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+      static {
+        for (_Fields field : EnumSet.allOf(_Fields.class)) {
+          byName.put(field.getFieldName(), field);
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, or null if its not found.
+       */
+      public static _Fields findByThriftId(int fieldId) {
+        switch(fieldId) {
+          case 0: // SUCCESS
+            return SUCCESS;
+          default:
+            return null;
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, throwing an exception
+       * if it is not found.
+       */
+      public static _Fields findByThriftIdOrThrow(int fieldId) {
+        _Fields fields = findByThriftId(fieldId);
+        if (fields == null) throw new IllegalArgumentException("Field " + fieldId + " doesn't exist!");
+        return fields;
+      }
+
+      /**
+       * Find the _Fields constant that matches name, or null if its not found.
+       */
+      public static _Fields findByName(String name) {
+        return byName.get(name);
+      }
+
+      private final short _thriftId;
+      private final String _fieldName;
+
+      _Fields(short thriftId, String fieldName) {
+        _thriftId = thriftId;
+        _fieldName = fieldName;
+      }
+
+      public short getThriftFieldId() {
+        return _thriftId;
+      }
+
+      public String getFieldName() {
+        return _fieldName;
+      }
+    }
+
+    // isset id assignments
+    public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
+    static {
+      Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
+      tmpMap.put(_Fields.SUCCESS, new org.apache.thrift.meta_data.FieldMetaData("success", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.ListMetaData(org.apache.thrift.protocol.TType.LIST, 
+              new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, SegmentData.class))));
+      metaDataMap = Collections.unmodifiableMap(tmpMap);
+      org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(getSegments_result.class, metaDataMap);
+    }
+
+    public getSegments_result() {
+    }
+
+    public getSegments_result(
+      List<SegmentData> success)
+    {
+      this();
+      this.success = success;
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public getSegments_result(getSegments_result other) {
+      if (other.isSetSuccess()) {
+        List<SegmentData> __this__success = new ArrayList<SegmentData>();
+        for (SegmentData other_element : other.success) {
+          __this__success.add(new SegmentData(other_element));
+        }
+        this.success = __this__success;
+      }
+    }
+
+    public getSegments_result deepCopy() {
+      return new getSegments_result(this);
+    }
+
+    @Override
+    public void clear() {
+      this.success = null;
+    }
+
+    public int getSuccessSize() {
+      return (this.success == null) ? 0 : this.success.size();
+    }
+
+    public java.util.Iterator<SegmentData> getSuccessIterator() {
+      return (this.success == null) ? null : this.success.iterator();
+    }
+
+    public void addToSuccess(SegmentData elem) {
+      if (this.success == null) {
+        this.success = new ArrayList<SegmentData>();
+      }
+      this.success.add(elem);
+    }
+
+    public List<SegmentData> getSuccess() {
+      return this.success;
+    }
+
+    public getSegments_result setSuccess(List<SegmentData> success) {
+      this.success = success;
+      return this;
+    }
+
+    public void unsetSuccess() {
+      this.success = null;
+    }
+
+    /** Returns true if field success is set (has been assigned a value) and false otherwise */
+    public boolean isSetSuccess() {
+      return this.success != null;
+    }
+
+    public void setSuccessIsSet(boolean value) {
+      if (!value) {
+        this.success = null;
+      }
+    }
+
+    public void setFieldValue(_Fields field, Object value) {
+      switch (field) {
+      case SUCCESS:
+        if (value == null) {
+          unsetSuccess();
+        } else {
+          setSuccess((List<SegmentData>)value);
+        }
+        break;
+
+      }
+    }
+
+    public Object getFieldValue(_Fields field) {
+      switch (field) {
+      case SUCCESS:
+        return getSuccess();
+
+      }
+      throw new IllegalStateException();
+    }
+
+    /** Returns true if field corresponding to fieldID is set (has been assigned a value) and false otherwise */
+    public boolean isSet(_Fields field) {
+      if (field == null) {
+        throw new IllegalArgumentException();
+      }
+
+      switch (field) {
+      case SUCCESS:
+        return isSetSuccess();
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof getSegments_result)
+        return this.equals((getSegments_result)that);
+      return false;
+    }
+
+    public boolean equals(getSegments_result that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_success = true && this.isSetSuccess();
+      boolean that_present_success = true && that.isSetSuccess();
+      if (this_present_success || that_present_success) {
+        if (!(this_present_success && that_present_success))
+          return false;
+        if (!this.success.equals(that.success))
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public int compareTo(getSegments_result other) {
+      if (!getClass().equals(other.getClass())) {
+        return getClass().getName().compareTo(other.getClass().getName());
+      }
+
+      int lastComparison = 0;
+      getSegments_result typedOther = (getSegments_result)other;
+
+      lastComparison = Boolean.valueOf(isSetSuccess()).compareTo(typedOther.isSetSuccess());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetSuccess()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.success, typedOther.success);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      return 0;
+    }
+
+    public _Fields fieldForId(int fieldId) {
+      return _Fields.findByThriftId(fieldId);
+    }
+
+    public void read(org.apache.thrift.protocol.TProtocol iprot) throws org.apache.thrift.TException {
+      schemes.get(iprot.getScheme()).getScheme().read(iprot, this);
+    }
+
+    public void write(org.apache.thrift.protocol.TProtocol oprot) throws org.apache.thrift.TException {
+      schemes.get(oprot.getScheme()).getScheme().write(oprot, this);
+      }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("getSegments_result(");
+      boolean first = true;
+
+      sb.append("success:");
+      if (this.success == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.success);
+      }
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws org.apache.thrift.TException {
+      // check for required fields
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+      try {
+        write(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(out)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+      try {
+        read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private static class getSegments_resultStandardSchemeFactory implements SchemeFactory {
+      public getSegments_resultStandardScheme getScheme() {
+        return new getSegments_resultStandardScheme();
+      }
+    }
+
+    private static class getSegments_resultStandardScheme extends StandardScheme<getSegments_result> {
+
+      public void read(org.apache.thrift.protocol.TProtocol iprot, getSegments_result struct) throws org.apache.thrift.TException {
+        org.apache.thrift.protocol.TField schemeField;
+        iprot.readStructBegin();
+        while (true)
+        {
+          schemeField = iprot.readFieldBegin();
+          if (schemeField.type == org.apache.thrift.protocol.TType.STOP) { 
+            break;
+          }
+          switch (schemeField.id) {
+            case 0: // SUCCESS
+              if (schemeField.type == org.apache.thrift.protocol.TType.LIST) {
+                {
+                  org.apache.thrift.protocol.TList _list88 = iprot.readListBegin();
+                  struct.success = new ArrayList<SegmentData>(_list88.size);
+                  for (int _i89 = 0; _i89 < _list88.size; ++_i89)
+                  {
+                    SegmentData _elem90; // required
+                    _elem90 = new SegmentData();
+                    _elem90.read(iprot);
+                    struct.success.add(_elem90);
+                  }
+                  iprot.readListEnd();
+                }
+                struct.setSuccessIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            default:
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+          }
+          iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+
+        // check for required fields of primitive type, which can't be checked in the validate method
+        struct.validate();
+      }
+
+      public void write(org.apache.thrift.protocol.TProtocol oprot, getSegments_result struct) throws org.apache.thrift.TException {
+        struct.validate();
+
+        oprot.writeStructBegin(STRUCT_DESC);
+        if (struct.success != null) {
+          oprot.writeFieldBegin(SUCCESS_FIELD_DESC);
+          {
+            oprot.writeListBegin(new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRUCT, struct.success.size()));
+            for (SegmentData _iter91 : struct.success)
+            {
+              _iter91.write(oprot);
+            }
+            oprot.writeListEnd();
+          }
+          oprot.writeFieldEnd();
+        }
+        oprot.writeFieldStop();
+        oprot.writeStructEnd();
+      }
+
+    }
+
+    private static class getSegments_resultTupleSchemeFactory implements SchemeFactory {
+      public getSegments_resultTupleScheme getScheme() {
+        return new getSegments_resultTupleScheme();
+      }
+    }
+
+    private static class getSegments_resultTupleScheme extends TupleScheme<getSegments_result> {
+
+      @Override
+      public void write(org.apache.thrift.protocol.TProtocol prot, getSegments_result struct) throws org.apache.thrift.TException {
+        TTupleProtocol oprot = (TTupleProtocol) prot;
+        BitSet optionals = new BitSet();
+        if (struct.isSetSuccess()) {
+          optionals.set(0);
+        }
+        oprot.writeBitSet(optionals, 1);
+        if (struct.isSetSuccess()) {
+          {
+            oprot.writeI32(struct.success.size());
+            for (SegmentData _iter92 : struct.success)
+            {
+              _iter92.write(oprot);
+            }
+          }
+        }
+      }
+
+      @Override
+      public void read(org.apache.thrift.protocol.TProtocol prot, getSegments_result struct) throws org.apache.thrift.TException {
+        TTupleProtocol iprot = (TTupleProtocol) prot;
+        BitSet incoming = iprot.readBitSet(1);
+        if (incoming.get(0)) {
+          {
+            org.apache.thrift.protocol.TList _list93 = new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRUCT, iprot.readI32());
+            struct.success = new ArrayList<SegmentData>(_list93.size);
+            for (int _i94 = 0; _i94 < _list93.size; ++_i94)
+            {
+              SegmentData _elem95; // required
+              _elem95 = new SegmentData();
+              _elem95.read(iprot);
+              struct.success.add(_elem95);
+            }
+          }
+          struct.setSuccessIsSet(true);
+        }
+      }
+    }
+
+  }
+
+  public static class getSegmentPage_args implements org.apache.thrift.TBase<getSegmentPage_args, getSegmentPage_args._Fields>, java.io.Serializable, Cloneable   {
+    private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("getSegmentPage_args");
+
+    private static final org.apache.thrift.protocol.TField TREE_ID_FIELD_DESC = new org.apache.thrift.protocol.TField("treeId", org.apache.thrift.protocol.TType.I64, (short)1);
+    private static final org.apache.thrift.protocol.TField SEG_ID_FIELD_DESC = new org.apache.thrift.protocol.TField("segId", org.apache.thrift.protocol.TType.I32, (short)2);
+    private static final org.apache.thrift.protocol.TField FROM_KEY_FIELD_DESC = new org.apache.thrift.protocol.TField("fromKey", org.apache.thrift.protocol.TType.STRING, (short)3);
+    private static final org.apache.thrift.protocol.TField MAX_ENTRIES_FIELD_DESC = new org.apache.thrift.protocol.TField("maxEntries", org.apache.thrift.protocol.TType.I32, (short)4);
+
+    private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+    static {
+      schemes.put(StandardScheme.class, new getSegmentPage_argsStandardSchemeFactory());
+      schemes.put(TupleScheme.class, new getSegmentPage_argsTupleSchemeFactory());
+    }
+
+    public long treeId; // required
+    public int segId; // required
+    public ByteBuffer fromKey; // required
+    public int maxEntries; // required
+
+    /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+    public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+      TREE_ID((short)1, "treeId"),
+      SEG_ID((short)2, "segId"),
+      FROM_KEY((short)3, "fromKey"),
+      MAX_ENTRIES((short)4, "maxEntries");
+
+      private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+      static {
+        for (_Fields field : EnumSet.allOf(_Fields.class)) {
+          byName.put(field.getFieldName(), field);
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, or null if its not found.
+       */
+      public static _Fields findByThriftId(int fieldId) {
+        switch(fieldId) {
+          case 1: // TREE_ID
+            return TREE_ID;
+          case 2: // SEG_ID
+            return SEG_ID;
+          case 3: // FROM_KEY
+            return FROM_KEY;
+          case 4: // MAX_ENTRIES
+            return MAX_ENTRIES;
+          default:
+            return null;
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, throwing an exception
+       * if it is not found.
+       */
+      public static _Fields findByThriftIdOrThrow(int fieldId) {
+        _Fields fields = findByThriftId(fieldId);
+        if (fields == null) throw new IllegalArgumentException("Field " + fieldId + " doesn't exist!");
+        return fields;
+      }
+
+      /**
+       * Find the _Fields constant that matches name, or null if its not found.
+       */
+      public static _Fields findByName(String name) {
+        return byName.get(name);
+      }
+
+      private final short _thriftId;
+      private final String _fieldName;
+
+      _Fields(short thriftId, String fieldName) {
+        _thriftId = thriftId;
+        _fieldName = fieldName;
+      }
+
+      public short getThriftFieldId() {
+        return _thriftId;
+      }
+
+      public String getFieldName() {
+        return _fieldName;
+      }
+    }
+
+    // isset id assignments
+    private static final int __TREEID_ISSET_ID = 0;
+    private static final int __SEGID_ISSET_ID = 1;
+    private static final int __MAXENTRIES_ISSET_ID = 2;
+    private BitSet __isset_bit_vector = new BitSet(3);
+    public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
+    static {
+      Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
+      tmpMap.put(_Fields.TREE_ID, new org.apache.thrift.meta_data.FieldMetaData("treeId", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I64)));
+      tmpMap.put(_Fields.SEG_ID, new org.apache.thrift.meta_data.FieldMetaData("segId", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I32)));
+      tmpMap.put(_Fields.FROM_KEY, new org.apache.thrift.meta_data.FieldMetaData("fromKey", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING          , true)));
+      tmpMap.put(_Fields.MAX_ENTRIES, new org.apache.thrift.meta_data.FieldMetaData("maxEntries", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I32)));
+      metaDataMap = Collections.unmodifiableMap(tmpMap);
+      org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(getSegmentPage_args.class, metaDataMap);
+    }
+
+    public getSegmentPage_args() {
+    }
+
+    public getSegmentPage_args(
+      long treeId,
+      int segId,
+      ByteBuffer fromKey,
+      int maxEntries)
+    {
+      this();
+      this.treeId = treeId;
+      setTreeIdIsSet(true);
+      this.segId = segId;
+      setSegIdIsSet(true);
+      this.fromKey = fromKey;
+      this.maxEntries = maxEntries;
+      setMaxEntriesIsSet(true);
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public getSegmentPage_args(getSegmentPage_args other) {
+      __isset_bit_vector.clear();
+      __isset_bit_vector.or(other.__isset_bit_vector);
+      this.treeId = other.treeId;
+      this.segId = other.segId;
+      if (other.isSetFromKey()) {
+        this.fromKey = org.apache.thrift.TBaseHelper.copyBinary(other.fromKey);
+;
+      }
+      this.maxEntries = other.maxEntries;
+    }
+
+    public getSegmentPage_args deepCopy() {
+      return new getSegmentPage_args(this);
+    }
+
+    @Override
+    public void clear() {
+      setTreeIdIsSet(false);
+      this.treeId = 0;
+      setSegIdIsSet(false);
+      this.segId = 0;
+      this.fromKey = null;
+      setMaxEntriesIsSet(false);
+      this.maxEntries = 0;
+    }
+
+    public long getTreeId() {
+      return this.treeId;
+    }
+
+    public getSegmentPage_args setTreeId(long treeId) {
+      this.treeId = treeId;
+      setTreeIdIsSet(true);
+      return this;
+    }
+
+    public void unsetTreeId() {
+      __isset_bit_vector.clear(__TREEID_ISSET_ID);
+    }
+
+    /** Returns true if field treeId is set (has been assigned a value) and false otherwise */
+    public boolean isSetTreeId() {
+      return __isset_bit_vector.get(__TREEID_ISSET_ID);
+    }
+
+    public void setTreeIdIsSet(boolean value) {
+      __isset_bit_vector.set(__TREEID_ISSET_ID, value);
+    }
+
+    public int getSegId() {
+      return this.segId;
+    }
+
+    public getSegmentPage_args setSegId(int segId) {
+      this.segId = segId;
+      setSegIdIsSet(true);
+      return this;
+    }
+
+    public void unsetSegId() {
+      __isset_bit_vector.clear(__SEGID_ISSET_ID);
+    }
+
+    /** Returns true if field segId is set (has been assigned a value) and false otherwise */
+    public boolean isSetSegId() {
+      return __isset_bit_vector.get(__SEGID_ISSET_ID);
+    }
+
+    public void setSegIdIsSet(boolean value) {
+      __isset_bit_vector.set(__SEGID_ISSET_ID, value);
+    }
+
+    public byte[] getFromKey() {
+      setFromKey(org.apache.thrift.TBaseHelper.rightSize(fromKey));
+      return fromKey == null ? null : fromKey.array();
+    }
+
+    public ByteBuffer bufferForFromKey() {
+      return fromKey;
+    }
+
+    public getSegmentPage_args setFromKey(byte[] fromKey) {
+      setFromKey(fromKey == null ? (ByteBuffer)null : ByteBuffer.wrap(fromKey));
+      return this;
+    }
+
+    public getSegmentPage_args setFromKey(ByteBuffer fromKey) {
+      this.fromKey = fromKey;
+      return this;
+    }
+
+    public void unsetFromKey() {
+      this.fromKey = null;
+    }
+
+    /** Returns true if field fromKey is set (has been assigned a value) and false otherwise */
+    public boolean isSetFromKey() {
+      return this.fromKey != null;
+    }
+
+    public void setFromKeyIsSet(boolean value) {
+      if (!value) {
+        this.fromKey = null;
+      }
+    }
+
+    public int getMaxEntries() {
+      return this.maxEntries;
+    }
+
+    public getSegmentPage_args setMaxEntries(int maxEntries) {
+      this.maxEntries = maxEntries;
+      setMaxEntriesIsSet(true);
+      return this;
+    }
+
+    public void unsetMaxEntries() {
+      __isset_bit_vector.clear(__MAXENTRIES_ISSET_ID);
+    }
+
+    /** Returns true if field maxEntries is set (has been assigned a value) and false otherwise */
+    public boolean isSetMaxEntries() {
+      return __isset_bit_vector.get(__MAXENTRIES_ISSET_ID);
+    }
+
+    public void setMaxEntriesIsSet(boolean value) {
+      __isset_bit_vector.set(__MAXENTRIES_ISSET_ID, value);
+    }
+
+    public void setFieldValue(_Fields field, Object value) {
+      switch (field) {
+      case TREE_ID:
+        if (value == null) {
+          unsetTreeId();
+        } else {
+          setTreeId((Long)value);
+        }
+        break;
+
+      case SEG_ID:
+        if (value == null) {
+          unsetSegId();
+        } else {
+          setSegId((Integer)value);
+        }
+        break;
+
+      case FROM_KEY:
+        if (value == null) {
+          unsetFromKey();
+        } else {
+          setFromKey((ByteBuffer)value);
+        }
+        break;
+
+      case MAX_ENTRIES:
+        if (value == null) {
+          unsetMaxEntries();
+        } else {
+          setMaxEntries((Integer)value);
+        }
+        break;
+
+      }
+    }
+
+    public Object getFieldValue(_Fields field) {
+      switch (field) {
+      case TREE_ID:
+        return Long.valueOf(getTreeId());
+
+      case SEG_ID:
+        return Integer.valueOf(getSegId());
+
+      case FROM_KEY:
+        return getFromKey();
+
+      case MAX_ENTRIES:
+        return Integer.valueOf(getMaxEntries());
+
+      }
+      throw new IllegalStateException();
+    }
+
+    /** Returns true if field corresponding to fieldID is set (has been assigned a value) and false otherwise */
+    public boolean isSet(_Fields field) {
+      if (field == null) {
+        throw new IllegalArgumentException();
+      }
+
+      switch (field) {
+      case TREE_ID:
+        return isSetTreeId();
+      case SEG_ID:
+        return isSetSegId();
+      case FROM_KEY:
+        return isSetFromKey();
+      case MAX_ENTRIES:
+        return isSetMaxEntries();
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof getSegmentPage_args)
+        return this.equals((getSegmentPage_args)that);
+      return false;
+    }
+
+    public boolean equals(getSegmentPage_args that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_treeId = true;
+      boolean that_present_treeId = true;
+      if (this_present_treeId || that_present_treeId) {
+        if (!(this_present_treeId && that_present_treeId))
+          return false;
+        if (this.treeId != that.treeId)
+          return false;
+      }
+
+      boolean this_present_segId = true;
+      boolean that_present_segId = true;
+      if (this_present_segId || that_present_segId) {
+        if (!(this_present_segId && that_present_segId))
+          return false;
+        if (this.segId != that.segId)
+          return false;
+      }
+
+      boolean this_present_fromKey = true && this.isSetFromKey();
+      boolean that_present_fromKey = true && that.isSetFromKey();
+      if (this_present_fromKey || that_present_fromKey) {
+        if (!(this_present_fromKey && that_present_fromKey))
+          return false;
+        if (!this.fromKey.equals(that.fromKey))
+          return false;
+      }
+
+      boolean this_present_maxEntries = true;
+      boolean that_present_maxEntries = true;
+      if (this_present_maxEntries || that_present_maxEntries) {
+        if (!(this_present_maxEntries && that_present_maxEntries))
+          return false;
+        if (this.maxEntries != that.maxEntries)
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public int compareTo(getSegmentPage_args other) {
+      if (!getClass().equals(other.getClass())) {
+        return getClass().getName().compareTo(other.getClass().getName());
+      }
+
+      int lastComparison = 0;
+      getSegmentPage_args typedOther = (getSegmentPage_args)other;
+
+      lastComparison = Boolean.valueOf(isSetTreeId()).compareTo(typedOther.isSetTreeId());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetTreeId()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.treeId, typedOther.treeId);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      lastComparison = Boolean.valueOf(isSetSegId()).compareTo(typedOther.isSetSegId());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetSegId()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.segId, typedOther.segId);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      lastComparison = Boolean.valueOf(isSetFromKey()).compareTo(typedOther.isSetFromKey());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetFromKey()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.fromKey, typedOther.fromKey);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      lastComparison = Boolean.valueOf(isSetMaxEntries()).compareTo(typedOther.isSetMaxEntries());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetMaxEntries()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.maxEntries, typedOther.maxEntries);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      return 0;
+    }
+
+    public _Fields fieldForId(int fieldId) {
+      return _Fields.findByThriftId(fieldId);
+    }
+
+    public void read(org.apache.thrift.protocol.TProtocol iprot) throws org.apache.thrift.TException {
+      schemes.get(iprot.getScheme()).getScheme().read(iprot, this);
+    }
+
+    public void write(org.apache.thrift.protocol.TProtocol oprot) throws org.apache.thrift.TException {
+      schemes.get(oprot.getScheme()).getScheme().write(oprot, this);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("getSegmentPage_args(");
+      boolean first = true;
+
+      sb.append("treeId:");
+      sb.append(this.treeId);
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("segId:");
+      sb.append(this.segId);
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("fromKey:");
+      if (this.fromKey == null) {
+        sb.append("null");
+      } else {
+        org.apache.thrift.TBaseHelper.toString(this.fromKey, sb);
+      }
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("maxEntries:");
+      sb.append(this.maxEntries);
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws org.apache.thrift.TException {
+      // check for required fields
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+      try {
+        write(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(out)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+      try {
+        // it doesn't seem like you should have to do this, but java serialization is wacky, and doesn't call the default constructor.
+        __isset_bit_vector = new BitSet(1);
+        read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private static class getSegmentPage_argsStandardSchemeFactory implements SchemeFactory {
+      public getSegmentPage_argsStandardScheme getScheme() {
+        return new getSegmentPage_argsStandardScheme();
+      }
+    }
+
+    private static class getSegmentPage_argsStandardScheme extends StandardScheme<getSegmentPage_args> {
+
+      public void read(org.apache.thrift.protocol.TProtocol iprot, getSegmentPage_args struct) throws org.apache.thrift.TException {
+        org.apache.thrift.protocol.TField schemeField;
+        iprot.readStructBegin();
+        while (true)
+        {
+          schemeField = iprot.readFieldBegin();
+          if (schemeField.type == org.apache.thrift.protocol.TType.STOP) { 
+            break;
+          }
+          switch (schemeField.id) {
+            case 1: // TREE_ID
+              if (schemeField.type == org.apache.thrift.protocol.TType.I64) {
+                struct.treeId = iprot.readI64();
+                struct.setTreeIdIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            case 2: // SEG_ID
+              if (schemeField.type == org.apache.thrift.protocol.TType.I32) {
+                struct.segId = iprot.readI32();
+                struct.setSegIdIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            case 3: // FROM_KEY
+              if (schemeField.type == org.apache.thrift.protocol.TType.STRING) {
+                struct.fromKey = iprot.readBinary();
+                struct.setFromKeyIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            case 4: // MAX_ENTRIES
+              if (schemeField.type == org.apache.thrift.protocol.TType.I32) {
+                struct.maxEntries = iprot.readI32();
+                struct.setMaxEntriesIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            default:
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+          }
+          iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+
+        // check for required fields of primitive type, which can't be checked in the validate method
+        struct.validate();
+      }
+
+      public void write(org.apache.thrift.protocol.TProtocol oprot, getSegmentPage_args struct) throws org.apache.thrift.TException {
+        struct.validate();
+
+        oprot.writeStructBegin(STRUCT_DESC);
+        oprot.writeFieldBegin(TREE_ID_FIELD_DESC);
+        oprot.writeI64(struct.treeId);
+        oprot.writeFieldEnd();
+        oprot.writeFieldBegin(SEG_ID_FIELD_DESC);
+        oprot.writeI32(struct.segId);
+        oprot.writeFieldEnd();
+        if (struct.fromKey != null) {
+          oprot.writeFieldBegin(FROM_KEY_FIELD_DESC);
+          oprot.writeBinary(struct.fromKey);
+          oprot.writeFieldEnd();
+        }
+        oprot.writeFieldBegin(MAX_ENTRIES_FIELD_DESC);
+        oprot.writeI32(struct.maxEntries);
+        oprot.writeFieldEnd();
+        oprot.writeFieldStop();
+        oprot.writeStructEnd();
+      }
+
+    }
+
+    private static class getSegmentPage_argsTupleSchemeFactory implements SchemeFactory {
+      public getSegmentPage_argsTupleScheme getScheme() {
+        return new getSegmentPage_argsTupleScheme();
+      }
+    }
+
+    private static class getSegmentPage_argsTupleScheme extends TupleScheme<getSegmentPage_args> {
+
+      @Override
+      public void write(org.apache.thrift.protocol.TProtocol prot, getSegmentPage_args struct) throws org.apache.thrift.TException {
+        TTupleProtocol oprot = (TTupleProtocol) prot;
+        BitSet optionals = new BitSet();
+        if (struct.isSetTreeId()) {
+          optionals.set(0);
+        }
+        if (struct.isSetSegId()) {
+          optionals.set(1);
+        }
+        if (struct.isSetFromKey()) {
+          optionals.set(2);
+        }
+        if (struct.isSetMaxEntries()) {
+          optionals.set(3);
+        }
+        oprot.writeBitSet(optionals, 4);
+        if (struct.isSetTreeId()) {
+          oprot.writeI64(struct.treeId);
+        }
+        if (struct.isSetSegId()) {
+          oprot.writeI32(struct.segId);
+        }
+        if (struct.isSetFromKey()) {
+          oprot.writeBinary(struct.fromKey);
+        }
+        if (struct.isSetMaxEntries()) {
+          oprot.writeI32(struct.maxEntries);
+        }
+      }
+
+      @Override
+      public void read(org.apache.thrift.protocol.TProtocol prot, getSegmentPage_args struct) throws org.apache.thrift.TException {
+        TTupleProtocol iprot = (TTupleProtocol) prot;
+        BitSet incoming = iprot.readBitSet(4);
+        if (incoming.get(0)) {
+          struct.treeId = iprot.readI64();
+          struct.setTreeIdIsSet(true);
+        }
+        if (incoming.get(1)) {
+          struct.segId = iprot.readI32();
+          struct.setSegIdIsSet(true);
+        }
+        if (incoming.get(2)) {
+          struct.fromKey = iprot.readBinary();
+          struct.setFromKeyIsSet(true);
+        }
+        if (incoming.get(3)) {
+          struct.maxEntries = iprot.readI32();
+          struct.setMaxEntriesIsSet(true);
+        }
+      }
+    }
+
+  }
+
+  public static class getSegmentPage_result implements org.apache.thrift.TBase<getSegmentPage_result, getSegmentPage_result._Fields>, java.io.Serializable, Cloneable   {
+    private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("getSegmentPage_result");
+
+    private static final org.apache.thrift.protocol.TField SUCCESS_FIELD_DESC = new org.apache.thrift.protocol.TField("success", org.apache.thrift.protocol.TType.LIST, (short)0);
+
+    private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+    static {
+      schemes.put(StandardScheme.class, new getSegmentPage_resultStandardSchemeFactory());
+      schemes.put(TupleScheme.class, new getSegmentPage_resultTupleSchemeFactory());
+    }
+
+    public List<SegmentData> success; // required
+
+    /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+    public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+      SUCCESS((short)0, "success");
+
+      private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+      static {
+        for (_Fields field : EnumSet.allOf(_Fields.class)) {
+          byName.put(field.getFieldName(), field);
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, or null if its not found.
+       */
+      public static _Fields findByThriftId(int fieldId) {
+        switch(fieldId) {
+          case 0: // SUCCESS
+            return SUCCESS;
+          default:
+            return null;
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, throwing an exception
+       * if it is not found.
+       */
+      public static _Fields findByThriftIdOrThrow(int fieldId) {
+        _Fields fields = findByThriftId(fieldId);
+        if (fields == null) throw new IllegalArgumentException("Field " + fieldId + " doesn't exist!");
+        return fields;
+      }
+
+      /**
+       * Find the _Fields constant that matches name, or null if its not found.
+       */
+      public static _Fields findByName(String name) {
+        return byName.get(name);
+      }
+
+      private final short _thriftId;
+      private final String _fieldName;
+
+      _Fields(short thriftId, String fieldName) {
+        _thriftId = thriftId;
+        _fieldName = fieldName;
+      }
+
+      public short getThriftFieldId() {
+        return _thriftId;
+      }
+
+      public String getFieldName() {
+        return _fieldName;
+      }
+    }
+
+    // isset id assignments
+    public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
+    static {
+      Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
+      tmpMap.put(_Fields.SUCCESS, new org.apache.thrift.meta_data.FieldMetaData("success", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.ListMetaData(org.apache.thrift.protocol.TType.LIST, 
+              new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, SegmentData.class))));
+      metaDataMap = Collections.unmodifiableMap(tmpMap);
+      org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(getSegmentPage_result.class, metaDataMap);
+    }
+
+    public getSegmentPage_result() {
+    }
+
+    public getSegmentPage_result(
+      List<SegmentData> success)
+    {
+      this();
+      this.success = success;
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public getSegmentPage_result(getSegmentPage_result other) {
+      if (other.isSetSuccess()) {
+        List<SegmentData> __this__success = new ArrayList<SegmentData>();
+        for (SegmentData other_element : other.success) {
+          __this__success.add(new SegmentData(other_element));
+        }
+        this.success = __this__success;
+      }
+    }
+
+    public getSegmentPage_result deepCopy() {
+      return new getSegmentPage_result(this);
+    }
+
+    @Override
+    public void clear() {
+      this.success = null;
+    }
+
+    public int getSuccessSize() {
+      return (this.success == null) ? 0 : this.success.size();
+    }
+
+    public java.util.Iterator<SegmentData> getSuccessIterator() {
+      return (this.success == null) ? null : this.success.iterator();
+    }
+
+    public void addToSuccess(SegmentData elem) {
+      if (this.success == null) {
+        this.success = new ArrayList<SegmentData>();
+      }
+      this.success.add(elem);
+    }
+
+    public List<SegmentData> getSuccess() {
+      return this.success;
+    }
+
+    public getSegmentPage_result setSuccess(List<SegmentData> success) {
+      this.success = success;
+      return this;
+    }
+
+    public void unsetSuccess() {
+      this.success = null;
+    }
+
+    /** Returns true if field success is set (has been assigned a value) and false otherwise */
+    public boolean isSetSuccess() {
+      return this.success != null;
+    }
+
+    public void setSuccessIsSet(boolean value) {
+      if (!value) {
+        this.success = null;
+      }
+    }
+
+    public void setFieldValue(_Fields field, Object value) {
+      switch (field) {
+      case SUCCESS:
+        if (value == null) {
+          unsetSuccess();
+        } else {
+          setSuccess((List<SegmentData>)value);
+        }
+        break;
+
+      }
+    }
+
+    public Object getFieldValue(_Fields field) {
+      switch (field) {
+      case SUCCESS:
+        return getSuccess();
+
+      }
+      throw new IllegalStateException();
+    }
+
+    /** Returns true if field corresponding to fieldID is set (has been assigned a value) and false otherwise */
+    public boolean isSet(_Fields field) {
+      if (field == null) {
+        throw new IllegalArgumentException();
+      }
+
+      switch (field) {
+      case SUCCESS:
+        return isSetSuccess();
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof getSegmentPage_result)
+        return this.equals((getSegmentPage_result)that);
+      return false;
+    }
+
+    public boolean equals(getSegmentPage_result that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_success = true && this.isSetSuccess();
+      boolean that_present_success = true && that.isSetSuccess();
+      if (this_present_success || that_present_success) {
+        if (!(this_present_success && that_present_success))
+          return false;
+        if (!this.success.equals(that.success))
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public int compareTo(getSegmentPage_result other) {
+      if (!getClass().equals(other.getClass())) {
+        return getClass().getName().compareTo(other.getClass().getName());
+      }
+
+      int lastComparison = 0;
+      getSegmentPage_result typedOther = (getSegmentPage_result)other;
+
+      lastComparison = Boolean.valueOf(isSetSuccess()).compareTo(typedOther.isSetSuccess());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetSuccess()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.success, typedOther.success);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      return 0;
+    }
+
+    public _Fields fieldForId(int fieldId) {
+      return _Fields.findByThriftId(fieldId);
+    }
+
+    public void read(org.apache.thrift.protocol.TProtocol iprot) throws org.apache.thrift.TException {
+      schemes.get(iprot.getScheme()).getScheme().read(iprot, this);
+    }
+
+    public void write(org.apache.thrift.protocol.TProtocol oprot) throws org.apache.thrift.TException {
+      schemes.get(oprot.getScheme()).getScheme().write(oprot, this);
+      }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("getSegmentPage_result(");
+      boolean first = true;
+
+      sb.append("success:");
+      if (this.success == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.success);
+      }
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws org.apache.thrift.TException {
+      // check for required fields
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+      try {
+        write(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(out)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+      try {
+        read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private static class getSegmentPage_resultStandardSchemeFactory implements SchemeFactory {
+      public getSegmentPage_resultStandardScheme getScheme() {
+        return new getSegmentPage_resultStandardScheme();
+      }
+    }
+
+    private static class getSegmentPage_resultStandardScheme extends StandardScheme<getSegmentPage_result> {
+
+      public void read(org.apache.thrift.protocol.TProtocol iprot, getSegmentPage_result struct) throws org.apache.thrift.TException {
+        org.apache.thrift.protocol.TField schemeField;
+        iprot.readStructBegin();
+        while (true)
+        {
+          schemeField = iprot.readFieldBegin();
+          if (schemeField.type == org.apache.thrift.protocol.TType.STOP) { 
+            break;
+          }
+          switch (schemeField.id) {
+            case 0: // SUCCESS
+              if (schemeField.type == org.apache.thrift.protocol.TType.LIST) {
+                {
+                  org.apache.thrift.protocol.TList _list96 = iprot.readListBegin();
+                  struct.success = new ArrayList<SegmentData>(_list96.size);
+                  for (int _i97 = 0; _i97 < _list96.size; ++_i97)
+                  {
+                    SegmentData _elem98; // required
+                    _elem98 = new SegmentData();
+                    _elem98.read(iprot);
+                    struct.success.add(_elem98);
+                  }
+                  iprot.readListEnd();
+                }
+                struct.setSuccessIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            default:
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+          }
+          iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+
+        // check for required fields of primitive type, which can't be checked in the validate method
+        struct.validate();
+      }
+
+      public void write(org.apache.thrift.protocol.TProtocol oprot, getSegmentPage_result struct) throws org.apache.thrift.TException {
+        struct.validate();
+
+        oprot.writeStructBegin(STRUCT_DESC);
+        if (struct.success != null) {
+          oprot.writeFieldBegin(SUCCESS_FIELD_DESC);
+          {
+            oprot.writeListBegin(new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRUCT, struct.success.size()));
+            for (SegmentData _iter99 : struct.success)
+            {
+              _iter99.write(oprot);
+            }
+            oprot.writeListEnd();
+          }
+          oprot.writeFieldEnd();
+        }
+        oprot.writeFieldStop();
+        oprot.writeStructEnd();
+      }
+
+    }
+
+    private static class getSegmentPage_resultTupleSchemeFactory implements SchemeFactory {
+      public getSegmentPage_resultTupleScheme getScheme() {
+        return new getSegmentPage_resultTupleScheme();
+      }
+    }
+
+    private static class getSegmentPage_resultTupleScheme extends TupleScheme<getSegmentPage_result> {
+
+      @Override
+      public void write(org.apache.thrift.protocol.TProtocol prot, getSegmentPage_result struct) throws org.apache.thrift.TException {
+        TTupleProtocol oprot = (TTupleProtocol) prot;
+        BitSet optionals = new BitSet();
+        if (struct.isSetSuccess()) {
+          optionals.set(0);
+        }
+        oprot.writeBitSet(optionals, 1);
+        if (struct.isSetSuccess()) {
+          {
+            oprot.writeI32(struct.success.size());
+            for (SegmentData _iter100 : struct.success)
+            {
+              _iter100.write(oprot);
+            }
+          }
+        }
+      }
+
+      @Override
+      public void read(org.apache.thrift.protocol.TProtocol prot, getSegmentPage_result struct) throws org.apache.thrift.TException {
+        TTupleProtocol iprot = (TTupleProtocol) prot;
+        BitSet incoming = iprot.readBitSet(1);
+        if (incoming.get(0)) {
+          {
+            org.apache.thrift.protocol.TList _list101 = new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRUCT, iprot.readI32());
+            struct.success = new ArrayList<SegmentData>(_list101.size);
+            for (int _i102 = 0; _i102 < _list101.size; ++_i102)
+            {
+              SegmentData _elem103; // required
+              _elem103 = new SegmentData();
+              _elem103.read(iprot);
+              struct.success.add(_elem103);
+            }
+          }
+          struct.setSuccessIsSet(true);
+        }
+      }
+    }
+
+  }
+
+  public static class getSettings_args implements org.apache.thrift.TBase<getSettings_args, getSettings_args._Fields>, java.io.Serializable, Cloneable   {
+    private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("getSettings_args");
+
+
+    private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+    static {
+      schemes.put(StandardScheme.class, new getSettings_argsStandardSchemeFactory());
+      schemes.put(TupleScheme.class, new getSettings_argsTupleSchemeFactory());
+    }
+
+
+    /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+    public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+;
+
+      private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+      static {
+        for (_Fields field : EnumSet.allOf(_Fields.class)) {
+          byName.put(field.getFieldName(), field);
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, or null if its not found.
+       */
+      public static _Fields findByThriftId(int fieldId) {
+        switch(fieldId) {
+          default:
+            return null;
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, throwing an exception
+       * if it is not found.
+       */
+      public static _Fields findByThriftIdOrThrow(int fieldId) {
+        _Fields fields = findByThriftId(fieldId);
+        if (fields == null) throw new IllegalArgumentException("Field " + fieldId + " doesn't exist!");
+        return fields;
+      }
+
+      /**
+       * Find the _Fields constant that matches name, or null if its not found.
+       */
+      public static _Fields findByName(String name) {
+        return byName.get(name);
+      }
+
+      private final short _thriftId;
+      private final String _fieldName;
+
+      _Fields(short thriftId, String fieldName) {
+        _thriftId = thriftId;
+        _fieldName = fieldName;
+      }
+
+      public short getThriftFieldId() {
+        return _thriftId;
+      }
+
+      public String getFieldName() {
+        return _fieldName;
+      }
+    }
+    public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
+    static {
+      Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
+      metaDataMap = Collections.unmodifiableMap(tmpMap);
+      org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(getSettings_args.class, metaDataMap);
+    }
+
+    public getSettings_args() {
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public getSettings_args(getSettings_args other) {
+    }
+
+    public getSettings_args deepCopy() {
+      return new getSettings_args(this);
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    public void setFieldValue(_Fields field, Object value) {
+      switch (field) {
+      }
+    }
+
+    public Object getFieldValue(_Fields field) {
+      switch (field) {
+      }
+      throw new IllegalStateException();
+    }
+
+    /** Returns true if field corresponding to fieldID is set (has been assigned a value) and false otherwise */
+    public boolean isSet(_Fields field) {
+      if (field == null) {
+        throw new IllegalArgumentException();
+      }
+
+      switch (field) {
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof getSettings_args)
+        return this.equals((getSettings_args)that);
+      return false;
+    }
+
+    public boolean equals(getSettings_args that) {
+      if (that == null)
+        return false;
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public int compareTo(getSettings_args other) {
+      if (!getClass().equals(other.getClass())) {
+        return getClass().getName().compareTo(other.getClass().getName());
+      }
+
+      int lastComparison = 0;
+      getSettings_args typedOther = (getSettings_args)other;
+
+      return 0;
+    }
+
+    public _Fields fieldForId(int fieldId) {
+      return _Fields.findByThriftId(fieldId);
+    }
+
+    public void read(org.apache.thrift.protocol.TProtocol iprot) throws org.apache.thrift.TException {
+      schemes.get(iprot.getScheme()).getScheme().read(iprot, this);
+    }
+
+    public void write(org.apache.thrift.protocol.TProtocol oprot) throws org.apache.thrift.TException {
+      schemes.get(oprot.getScheme()).getScheme().write(oprot, this);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("getSettings_args(");
+      boolean first = true;
+
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws org.apache.thrift.TException {
+      // check for required fields
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+      try {
+        write(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(out)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+      try {
+        read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private static class getSettings_argsStandardSchemeFactory implements SchemeFactory {
+      public getSettings_argsStandardScheme getScheme() {
+        return new getSettings_argsStandardScheme();
+      }
+    }
+
+    private static class getSettings_argsStandardScheme extends StandardScheme<getSettings_args> {
+
+      public void read(org.apache.thrift.protocol.TProtocol iprot, getSettings_args struct) throws org.apache.thrift.TException {
+        org.apache.thrift.protocol.TField schemeField;
+        iprot.readStructBegin();
+        while (true)
+        {
+          schemeField = iprot.readFieldBegin();
+          if (schemeField.type == org.apache.thrift.protocol.TType.STOP) { 
+            break;
+          }
+          switch (schemeField.id) {
+            default:
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+          }
+          iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+
+        // check for required fields of primitive type, which can't be checked in the validate method
+        struct.validate();
+      }
+
+      public void write(org.apache.thrift.protocol.TProtocol oprot, getSettings_args struct) throws org.apache.thrift.TException {
+        struct.validate();
+
+        oprot.writeStructBegin(STRUCT_DESC);
+        oprot.writeFieldStop();
+        oprot.writeStructEnd();
+      }
+
+    }
+
+    private static class getSettings_argsTupleSchemeFactory implements SchemeFactory {
+      public getSettings_argsTupleScheme getScheme() {
+        return new getSettings_argsTupleScheme();
+      }
+    }
+
+    private static class getSettings_argsTupleScheme extends TupleScheme<getSettings_args> {
+
+      @Override
+      public void write(org.apache.thrift.protocol.TProtocol prot, getSettings_args struct) throws org.apache.thrift.TException {
+        TTupleProtocol oprot = (TTupleProtocol) prot;
+      }
+
+      @Override
+      public void read(org.apache.thrift.protocol.TProtocol prot, getSettings_args struct) throws org.apache.thrift.TException {
+        TTupleProtocol iprot = (TTupleProtocol) prot;
+      }
+    }
+
+  }
+
+  public static class getSettings_result implements org.apache.thrift.TBase<getSettings_result, getSettings_result._Fields>, java.io.Serializable, Cloneable   {
+    private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("getSettings_result");
+
+    private static final org.apache.thrift.protocol.TField SUCCESS_FIELD_DESC = new org.apache.thrift.protocol.TField("success", org.apache.thrift.protocol.TType.MAP, (short)0);
+
+    private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+    static {
+      schemes.put(StandardScheme.class, new getSettings_resultStandardSchemeFactory());
+      schemes.put(TupleScheme.class, new getSettings_resultTupleSchemeFactory());
+    }
+
+    public Map<String,String> success; // required
+
+    /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+    public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+      SUCCESS((short)0, "success");
+
+      private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+      static {
+        for (_Fields field : EnumSet.allOf(_Fields.class)) {
+          byName.put(field.getFieldName(), field);
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, or null if its not found.
+       */
+      public static _Fields findByThriftId(int fieldId) {
+        switch(fieldId) {
+          case 0: // SUCCESS
+            return SUCCESS;
+          default:
+            return null;
+        }
+      }
+
+      /**
+       * Find the _Fields constant that matches fieldId, throwing an exception
+       * if it is not found.
+       */
+      public static _Fields findByThriftIdOrThrow(int fieldId) {
+        _Fields fields = findByThriftId(fieldId);
+        if (fields == null) throw new IllegalArgumentException("Field " + fieldId + " doesn't exist!");
+        return fields;
+      }
+
+      /**
+       * Find the _Fields constant that matches name, or null if its not found.
+       */
+      public static _Fields findByName(String name) {
+        return byName.get(name);
+      }
+
+      private final short _thriftId;
+      private final String _fieldName;
+
+      _Fields(short thriftId, String fieldName) {
+        _thriftId = thriftId;
+        _fieldName = fieldName;
+      }
+
+      public short getThriftFieldId() {
+        return _thriftId;
+      }
+
+      public String getFieldName() {
+        return _fieldName;
+      }
+    }
+
+    // isset id assignments
+    public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
+    static {
+      Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
+      tmpMap.put(_Fields.SUCCESS, new org.apache.thrift.meta_data.FieldMetaData("success", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+          new org.apache.thrift.meta_data.MapMetaData(org.apache.thrift.protocol.TType.MAP, 
+              new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING), 
+              new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING))));
+      metaDataMap = Collections.unmodifiableMap(tmpMap);
+      org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(getSettings_result.class, metaDataMap);
+    }
+
+    public getSettings_result() {
+    }
+
+    public getSettings_result(
+      Map<String,String> success)
+    {
+      this();
+      this.success = success;
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public getSettings_result(getSettings_result other) {
+      if (other.isSetSuccess()) {
+        Map<String,String> __this__success = new HashMap<String,String>();
+        for (Map.Entry<String, String> other_element : other.success.entrySet()) {
+
+          String other_element_key = other_element.getKey();
+          String other_element_value = other_element.getValue();
+
+          String __this__success_copy_key = other_element_key;
+
+          String __this__success_copy_value = other_element_value;
+
+          __this__success.put(__this__success_copy_key, __this__success_copy_value);
+        }
+        this.success = __this__success;
+      }
+    }
+
+    public getSettings_result deepCopy() {
+      return new getSettings_result(this);
+    }
+
+    @Override
+    public void clear() {
+      this.success = null;
+    }
+
+    public int getSuccessSize() {
+      return (this.success == null) ? 0 : this.success.size();
+    }
+
+    public void putToSuccess(String key, String val) {
+      if (this.success == null) {
+        this.success = new HashMap<String,String>();
+      }
+      this.success.put(key, val);
+    }
+
+    public Map<String,String> getSuccess() {
+      return this.success;
+    }
+
+    public getSettings_result setSuccess(Map<String,String> success) {
+      this.success = success;
+      return this;
+    }
+
+    public void unsetSuccess() {
+      this.success = null;
+    }
+
+    /** Returns true if field success is set (has been assigned a value) and false otherwise */
+    public boolean isSetSuccess() {
+      return this.success != null;
+    }
+
+    public void setSuccessIsSet(boolean value) {
+      if (!value) {
+        this.success = null;
+      }
+    }
+
+    public void setFieldValue(_Fields field, Object value) {
+      switch (field) {
+      case SUCCESS:
+        if (value == null) {
+          unsetSuccess();
+        } else {
+          setSuccess((Map<String,String>)value);
+        }
+        break;
+
+      }
+    }
+
+    public Object getFieldValue(_Fields field) {
+      switch (field) {
+      case SUCCESS:
+        return getSuccess();
+
+      }
+      throw new IllegalStateException();
+    }
+
+    /** Returns true if field corresponding to fieldID is set (has been assigned a value) and false otherwise */
+    public boolean isSet(_Fields field) {
+      if (field == null) {
+        throw new IllegalArgumentException();
+      }
+
+      switch (field) {
+      case SUCCESS:
+        return isSetSuccess();
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof getSettings_result)
+        return this.equals((getSettings_result)that);
+      return false;
+    }
+
+    public boolean equals(getSettings_result that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_success = true && this.isSetSuccess();
+      boolean that_present_success = true && that.isSetSuccess();
+      if (this_present_success || that_present_success) {
+        if (!(this_present_success && that_present_success))
+          return false;
+        if (!this.success.equals(that.success))
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public int compareTo(getSettings_result other) {
+      if (!getClass().equals(other.getClass())) {
+        return getClass().getName().compareTo(other.getClass().getName());
+      }
+
+      int lastComparison = 0;
+      getSettings_result typedOther = (getSettings_result)other;
+
+      lastComparison = Boolean.valueOf(isSetSuccess()).compareTo(typedOther.isSetSuccess());
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+      if (isSetSuccess()) {
+        lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.success, typedOther.success);
+        if (lastComparison != 0) {
+          return lastComparison;
+        }
+      }
+      return 0;
+    }
+
+    public _Fields fieldForId(int fieldId) {
+      return _Fields.findByThriftId(fieldId);
+    }
+
+    public void read(org.apache.thrift.protocol.TProtocol iprot) throws org.apache.thrift.TException {
+      schemes.get(iprot.getScheme()).getScheme().read(iprot, this);
+    }
+
+    public void write(org.apache.thrift.protocol.TProtocol oprot) throws org.apache.thrift.TException {
+      schemes.get(oprot.getScheme()).getScheme().write(oprot, this);
+      }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("getSettings_result(");
+      boolean first = true;
+
+      sb.append("success:");
+      if (this.success == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.success);
+      }
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws org.apache.thrift.TException {
+      // check for required fields
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+      try {
+        write(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(out)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+      try {
+        read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
+      } catch (org.apache.thrift.TException te) {
+        throw new java.io.IOException(te);
+      }
+    }
+
+    private static class getSettings_resultStandardSchemeFactory implements SchemeFactory {
+      public getSettings_resultStandardScheme getScheme() {
+        return new getSettings_resultStandardScheme();
+      }
+    }
+
+    private static class getSettings_resultStandardScheme extends StandardScheme<getSettings_result> {
+
+      public void read(org.apache.thrift.protocol.TProtocol iprot, getSettings_result struct) throws org.apache.thrift.TException {
+        org.apache.thrift.protocol.TField schemeField;
+        iprot.readStructBegin();
+        while (true)
+        {
+          schemeField = iprot.readFieldBegin();
+          if (schemeField.type == org.apache.thrift.protocol.TType.STOP) { 
+            break;
+          }
+          switch (schemeField.id) {
+            case 0: // SUCCESS
+              if (schemeField.type == org.apache.thrift.protocol.TType.MAP) {
+                {
+                  org.apache.thrift.protocol.TMap _map104 = iprot.readMapBegin();
+                  struct.success = new HashMap<String,String>(2*_map104.size);
+                  for (int _i105 = 0; _i105 < _map104.size; ++_i105)
+                  {
+                    String _key106; // required
+                    String _val107; // required
+                    _key106 = iprot.readString();
+                    _val107 = iprot.readString();
+                    struct.success.put(_key106, _val107);
+                  }
+                  iprot.readMapEnd();
+                }
+                struct.setSuccessIsSet(true);
+              } else { 
+                org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+              }
+              break;
+            default:
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+          }
+          iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+
+        // check for required fields of primitive type, which can't be checked in the validate method
+        struct.validate();
+      }
+
+      public void write(org.apache.thrift.protocol.TProtocol oprot, getSettings_result struct) throws org.apache.thrift.TException {
+        struct.validate();
+
+        oprot.writeStructBegin(STRUCT_DESC);
+        if (struct.success != null) {
+          oprot.writeFieldBegin(SUCCESS_FIELD_DESC);
+          {
+            oprot.writeMapBegin(new org.apache.thrift.protocol.TMap(org.apache.thrift.protocol.TType.STRING, org.apache.thrift.protocol.TType.STRING, struct.success.size()));
+            for (Map.Entry<String, String> _iter108 : struct.success.entrySet())
+            {
+              oprot.writeString(_iter108.getKey());
+              oprot.writeString(_iter108.getValue());
+            }
+            oprot.writeMapEnd();
+          }
+          oprot.writeFieldEnd();
+        }
+        oprot.writeFieldStop();
+        oprot.writeStructEnd();
+      }
+
+    }
+
+    private static class getSettings_resultTupleSchemeFactory implements SchemeFactory {
+      public getSettings_resultTupleScheme getScheme() {
+        return new getSettings_resultTupleScheme();
+      }
+    }
+
+    private static class getSettings_resultTupleScheme extends TupleScheme<getSettings_result> {
+
+      @Override
+      public void write(org.apache.thrift.protocol.TProtocol prot, getSettings_result struct) throws org.apache.thrift.TException {
+        TTupleProtocol oprot = (TTupleProtocol) prot;
+        BitSet optionals = new BitSet();
+        if (struct.isSetSuccess()) {
+          optionals.set(0);
+        }
+        oprot.writeBitSet(optionals, 1);
+        if (struct.isSetSuccess()) {
+          {
+            oprot.writeI32(struct.success.size());
+            for (Map.Entry<String, String> _iter109 : struct.success.entrySet())
+            {
+              oprot.writeString(_iter109.getKey());
+              oprot.writeString(_iter109.getValue());
+            }
+          }
+        }
+      }
+
+      @Override
+      public void read(org.apache.thrift.protocol.TProtocol prot, getSettings_result struct) throws org.apache.thrift.TException {
+        TTupleProtocol iprot = (TTupleProtocol) prot;
+        BitSet incoming = iprot.readBitSet(1);
+        if (incoming.get(0)) {
+          {
+            org.apache.thrift.protocol.TMap _map110 = new org.apache.thrift.protocol.TMap(org.apache.thrift.protocol.TType.STRING, org.apache.thrift.protocol.TType.STRING, iprot.readI32());
+            struct.success = new HashMap<String,String>(2*_map110.size);
+            for (int _i111 = 0; _i111 < _map110.size; ++_i111)
+            {
+              String _key112; // required
+              String _val113; // required
+              _key112 = iprot.readString();
+              _val113 = iprot.readString();
+              struct.success.put(_key112, _val113);
+            }
+          }
+          struct.setSuccessIsSet(true);
+        }
+      }
+    }
+
+  }
+
 }
@@ -175,6 +175,66 @@ public class ByteUtils {
 		return l;
 	}
 
+	/**
+	 * Writes the long value into the byte array in big endian order. Reverses
+	 * {@link #toLong(byte[], int)}.
+	 * 
+	 * @param bytes
+	 *            array to write into
+	 * @param offset
+	 *            offset into array
+	 * @param value
+	 *            the long value
+	 * @return the offset after the written bytes
+	 */
+	public static int putLong(byte[] bytes, int offset, long value) {
+		if (offset + SIZEOF_LONG > bytes.length) {
+			throw explainWrongLengthOrOffset(bytes, offset, SIZEOF_LONG,
+					SIZEOF_LONG);
+		}
+		for (int i = offset + SIZEOF_LONG - 1; i > offset; i--) {
+			bytes[i] = (byte) value;
+			value >>>= 8;
+		}
+		bytes[offset] = (byte) value;
+		return offset + SIZEOF_LONG;
+	}
+
+	/**
+	 * Adds the value to the sum, treating both the arrays as unsigned big
+	 * endian numbers of the same length. The result is stored in sum, and the
+	 * carry out of the most significant byte is dropped.
+	 * 
+	 * @param sum
+	 * @param value
+	 */
+	public static void add(byte[] sum, byte[] value) {
+		assert (sum.length == value.length);
+		int carry = 0;
+		for (int i = sum.length - 1; i >= 0; i--) {
+			carry += (sum[i] & 0xFF) + (value[i] & 0xFF);
+			sum[i] = (byte) carry;
+			carry >>>= 8;
+		}
+	}
+
+	/**
+	 * Subtracts the value from the difference, reverses
+	 * {@link #add(byte[], byte[])}.
+	 * 
+	 * @param difference
+	 * @param value
+	 */
+	public static void subtract(byte[] difference, byte[] value) {
+		assert (difference.length == value.length);
+		int borrow = 0;
+		for (int i = difference.length - 1; i >= 0; i--) {
+			borrow = (difference[i] & 0xFF) - (value[i] & 0xFF) - borrow;
+			difference[i] = (byte) borrow;
+			borrow = (borrow < 0) ? 1 : 0;
+		}
+	}
+
 	private static IllegalArgumentException explainWrongLengthOrOffset(
 			final byte[] bytes, final int offset, final int length,
 			final int expectedLength) {
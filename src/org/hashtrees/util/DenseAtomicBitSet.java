@@ -0,0 +1,320 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Thread safe bit set of a fixed capacity, which is allocated upfront. Unlike
+ * {@link AtomicBitSet}, no call allocates, and the no of set bits is
+ * maintained on every change.
+ * 
+ * The bits are summarized by levels of bitmaps, where a bit says whether a
+ * word of the level below has any bit set, up to a level of a single word.
+ * So finding the set bits costs in proportion to no of set bits, not to the
+ * capacity. A summary bit can be set for an empty word for a while, but it is
+ * never clear for a non empty word.
+ * 
+ * The words are padded by a cache line on both the ends, and the count is
+ * kept in its own padded array, so that they do not share a cache line with
+ * other objects.
+ * 
+ */
+@ThreadSafe
+public class DenseAtomicBitSet {
+
+	private final static int ADDRESS_BITS_PER_WORD = 6;
+	private final static int BITS_PER_WORD = 1 << ADDRESS_BITS_PER_WORD;
+	// No of longs in a cache line.
+	private final static int PADDING_WORDS = 8;
+
+	private final int capacity;
+	// levels[0] has the bits, and levels[i] summarizes the words of
+	// levels[i - 1].
+	private final AtomicLongArray[] levels;
+	private final int[] noOfBits;
+	private final AtomicLongArray count = new AtomicLongArray(
+			2 * PADDING_WORDS + 1);
+
+	/**
+	 * @param capacity
+	 *            , bit indexes should be less than this.
+	 */
+	public DenseAtomicBitSet(int capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("Capacity can not be negative:"
+					+ capacity);
+		this.capacity = capacity;
+		List<Integer> bitsOfLevels = new ArrayList<>();
+		int bits = capacity;
+		do {
+			bitsOfLevels.add(bits);
+			bits = getNoOfWords(bits);
+		} while (bits > 1);
+		this.levels = new AtomicLongArray[bitsOfLevels.size()];
+		this.noOfBits = new int[bitsOfLevels.size()];
+		for (int level = 0; level < levels.length; level++) {
+			noOfBits[level] = bitsOfLevels.get(level);
+			levels[level] = new AtomicLongArray(
+					getNoOfWords(noOfBits[level]) + 2 * PADDING_WORDS);
+		}
+	}
+
+	private static int getNoOfWords(int noOfBits) {
+		return (int) (((long) noOfBits + BITS_PER_WORD - 1) >>> ADDRESS_BITS_PER_WORD);
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	private void validate(int bitIndex) {
+		if (bitIndex < 0 || bitIndex >= capacity)
+			throw new IndexOutOfBoundsException("Bit index " + bitIndex
+					+ " is out of range, capacity is " + capacity);
+	}
+
+	private static int getWordIndex(int bitIndex) {
+		return PADDING_WORDS + (bitIndex >> ADDRESS_BITS_PER_WORD);
+	}
+
+	/**
+	 * Sets given bitIndex.
+	 * 
+	 * @param bitIndex
+	 * @return previousValue
+	 */
+	public boolean set(int bitIndex) {
+		validate(bitIndex);
+		boolean prevValue = setBit(0, bitIndex);
+		if (!prevValue)
+			count.incrementAndGet(PADDING_WORDS);
+		return prevValue;
+	}
+
+	/**
+	 * Sets the bit on the given level, and on the levels above if its word
+	 * was empty.
+	 * 
+	 * @return previousValue
+	 */
+	private boolean setBit(int level, int bitIndex) {
+		AtomicLongArray bits = levels[level];
+		int wordIndex = getWordIndex(bitIndex);
+		long mask = 1L << bitIndex;
+		while (true) {
+			long oldValue = bits.get(wordIndex);
+			if ((oldValue & mask) != 0)
+				return true;
+			if (bits.compareAndSet(wordIndex, oldValue, oldValue | mask)) {
+				if (oldValue == 0 && level + 1 < levels.length)
+					setBit(level + 1, bitIndex >> ADDRESS_BITS_PER_WORD);
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Clears the given bitIndex.
+	 * 
+	 * @param bitIndex
+	 * @return previousValue
+	 */
+	public boolean clear(int bitIndex) {
+		validate(bitIndex);
+		AtomicLongArray bits = levels[0];
+		int wordIndex = getWordIndex(bitIndex);
+		long mask = 1L << bitIndex;
+		while (true) {
+			long oldValue = bits.get(wordIndex);
+			if ((oldValue & mask) == 0)
+				return false;
+			long newValue = oldValue & ~mask;
+			if (bits.compareAndSet(wordIndex, oldValue, newValue)) {
+				count.decrementAndGet(PADDING_WORDS);
+				if (newValue == 0)
+					clearSummaryBit(1, bitIndex >> ADDRESS_BITS_PER_WORD);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Clears the summary bit of an empty word of the level below. The word is
+	 * checked again after clearing, as a bit could have been set on it in the
+	 * meantime.
+	 * 
+	 * @param level
+	 * @param bitIndex
+	 *            , index of the word on the level below.
+	 */
+	private void clearSummaryBit(int level, int bitIndex) {
+		if (level == levels.length)
+			return;
+		AtomicLongArray bits = levels[level];
+		int wordIndex = getWordIndex(bitIndex);
+		long mask = 1L << bitIndex;
+		while (true) {
+			long oldValue = bits.get(wordIndex);
+			if ((oldValue & mask) == 0)
+				break;
+			long newValue = oldValue & ~mask;
+			if (bits.compareAndSet(wordIndex, oldValue, newValue)) {
+				if (newValue == 0)
+					clearSummaryBit(level + 1, bitIndex >> ADDRESS_BITS_PER_WORD);
+				break;
+			}
+		}
+		if (levels[level - 1].get(PADDING_WORDS + bitIndex) != 0)
+			setBit(level, bitIndex);
+	}
+
+	public void clearBits(List<Integer> bitIndexList) {
+		for (int bitIndex : bitIndexList)
+			clear(bitIndex);
+	}
+
+	public boolean get(int bitIndex) {
+		validate(bitIndex);
+		return (levels[0].get(getWordIndex(bitIndex)) & (1L << bitIndex)) != 0;
+	}
+
+	/**
+	 * Returns no of set bits. The count is updated after the word, so it can
+	 * be off by the no of concurrent updates, and even be negative for a
+	 * moment.
+	 * 
+	 * @return
+	 */
+	public int cardinality() {
+		return (int) count.get(PADDING_WORDS);
+	}
+
+	public boolean isEmpty() {
+		return cardinality() <= 0;
+	}
+
+	/**
+	 * Returns the index of the first set bit, which is equal or greater than
+	 * fromIndex.
+	 * 
+	 * @param fromIndex
+	 * @return -1 if there is no such bit.
+	 */
+	public int nextSetBit(int fromIndex) {
+		if (fromIndex < 0)
+			throw new IndexOutOfBoundsException("From index can not be negative:"
+					+ fromIndex);
+		return nextSetBit(0, fromIndex);
+	}
+
+	/**
+	 * Skips the empty words through the summary bits of the level above. The
+	 * top level has a single word.
+	 */
+	private int nextSetBit(int level, int fromIndex) {
+		if (fromIndex >= noOfBits[level])
+			return -1;
+		AtomicLongArray bits = levels[level];
+		int word = fromIndex >> ADDRESS_BITS_PER_WORD;
+		long value = bits.get(PADDING_WORDS + word) & (-1L << fromIndex);
+		while (value == 0) {
+			word = nextNonEmptyWord(level, word + 1);
+			if (word < 0)
+				return -1;
+			value = bits.get(PADDING_WORDS + word);
+		}
+		return (word << ADDRESS_BITS_PER_WORD)
+				+ Long.numberOfTrailingZeros(value);
+	}
+
+	private int nextNonEmptyWord(int level, int fromWord) {
+		if (level + 1 < levels.length)
+			return nextSetBit(level + 1, fromWord);
+		return (fromWord < getNoOfWords(noOfBits[level])) ? fromWord : -1;
+	}
+
+	public List<Integer> getAllSetBits() {
+		if (isEmpty())
+			return new ArrayList<>();
+		List<Integer> result = new ArrayList<>(Math.max(0, cardinality()));
+		for (int bitIndex = nextSetBit(0); bitIndex >= 0; bitIndex = nextSetBit(
+				bitIndex + 1))
+			result.add(bitIndex);
+		return result;
+	}
+
+	/**
+	 * Same as {@link #getAllSetBits()}, but without boxing the bits. The words
+	 * are read one by one, skipping the empty ones.
+	 * 
+	 * @return set bits in the ascending order.
+	 */
+	public int[] getAllSetBitsArray() {
+		int[] result = new int[Math.max(0, cardinality())];
+		int size = 0;
+		AtomicLongArray bits = levels[0];
+		for (int word = nextNonEmptyWord(0, 0); word >= 0; word = nextNonEmptyWord(
+				0, word + 1)) {
+			long value = bits.get(PADDING_WORDS + word);
+			int bitCount = Long.bitCount(value);
+			if (size + bitCount > result.length)
+				result = Arrays.copyOf(result,
+						Math.max(size + bitCount, result.length << 1));
+			for (; value != 0; value &= value - 1)
+				result[size++] = (word << ADDRESS_BITS_PER_WORD)
+						+ Long.numberOfTrailingZeros(value);
+		}
+		return (size == result.length) ? result : Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Clears all the bits, and returns the bits which were set. Each word is
+	 * cleared atomically, so a bit which is set concurrently is either
+	 * returned, or stays set.
+	 * 
+	 * @return set bits in the ascending order.
+	 */
+	public int[] drain() {
+		int[] result = new int[Math.max(0, cardinality())];
+		int size = 0;
+		AtomicLongArray bits = levels[0];
+		for (int word = nextNonEmptyWord(0, 0); word >= 0; word = nextNonEmptyWord(
+				0, word + 1)) {
+			if (bits.get(PADDING_WORDS + word) == 0)
+				continue;
+			long value = bits.getAndSet(PADDING_WORDS + word, 0);
+			int bitCount = Long.bitCount(value);
+			count.addAndGet(PADDING_WORDS, -bitCount);
+			clearSummaryBit(1, word);
+			if (size + bitCount > result.length)
+				result = Arrays.copyOf(result,
+						Math.max(size + bitCount, result.length << 1));
+			for (; value != 0; value &= value - 1)
+				result[size++] = (word << ADDRESS_BITS_PER_WORD)
+						+ Long.numberOfTrailingZeros(value);
+		}
+		return (size == result.length) ? result : Arrays.copyOf(result, size);
+	}
+}
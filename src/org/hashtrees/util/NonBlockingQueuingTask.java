@@ -22,6 +22,9 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * An abstract class which queues elements, and which can be dequeued while
  * running as a background thread. Multiple producers can add elements using
@@ -34,6 +37,9 @@ import java.util.concurrent.LinkedBlockingQueue;
  */
 public abstract class NonBlockingQueuingTask<T> extends StoppableTask {
 
+	private final static Logger LOGGER = LoggerFactory
+			.getLogger(NonBlockingQueuingTask.class.getName());
+
 	// A special marker to note down a stop operation has been requested on this
 	// thread.
 	private final T stopMarker;
@@ -63,16 +69,45 @@ public abstract class NonBlockingQueuingTask<T> extends StoppableTask {
 			throw new QueueReachedMaxCapacityException();
 	}
 
+	/**
+	 * Returns the no of elements on the queue.
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return que.size();
+	}
+
+	/**
+	 * Handles the elements which are left on the queue, as the consumer may
+	 * have never run, or died on an exception. An element which fails is
+	 * logged, and the remaining ones are still handled.
+	 */
 	@Override
-	public synchronized void stopAsync() {
-		super.stopAsync();
-		enque(stopMarker);
+	protected void completePendingWork() {
+		T data;
+		while ((data = que.poll()) != null) {
+			if (data == stopMarker)
+				continue;
+			try {
+				handleElement(data);
+			} catch (RuntimeException e) {
+				LOGGER.warn(
+						"Exception occurred while handling a pending element",
+						e);
+			}
+		}
 	}
 
+	/**
+	 * {@link StoppableTask#stopAsync(CountDownLatch)} also ends up here.
+	 */
 	@Override
-	public synchronized void stopAsync(final CountDownLatch shutDownLatch) {
-		super.stopAsync(shutDownLatch);
-		enque(stopMarker);
+	public synchronized void stopAsync() {
+		super.stopAsync();
+		// The marker only wakes up a consumer waiting on an empty queue. A
+		// full queue is drained by the consumer, and then it stops anyway.
+		que.offer(stopMarker);
 	}
 
 	@Override
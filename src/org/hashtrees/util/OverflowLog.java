@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * An append only log on a local file, which holds the elements that do not fit
+ * in a bounded in memory queue. Elements are read back in the order they were
+ * appended, and the file is truncated once all of them are removed. Each
+ * element is a type, a key and an optional value.
+ * 
+ * The file is not synced on appends, so the elements survive a process crash,
+ * but not a machine crash. A partially written element at the end of the file
+ * is discarded on opening.
+ * 
+ */
+@NotThreadSafe
+public class OverflowLog implements Closeable {
+
+	private static final int NULL_VALUE_LENGTH = -1;
+	private static final int HEADER_SIZE = ByteUtils.SIZEOF_BYTE
+			+ ByteUtils.SIZEOF_INT;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private long readPosition;
+	private long writePosition;
+	private long size;
+	private Entry head;
+
+	public OverflowLog(File file) throws IOException {
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "rw");
+		this.channel = raf.getChannel();
+		recover();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Counts the complete elements of an existing file, and truncates the file
+	 * after them.
+	 * 
+	 * @throws IOException
+	 */
+	private void recover() throws IOException {
+		long fileSize = channel.size();
+		long position = 0;
+		for (;;) {
+			try {
+				long nextPosition = position + readEntrySize(position);
+				if (nextPosition > fileSize)
+					break;
+				position = nextPosition;
+				size++;
+			} catch (EOFException e) {
+				break;
+			}
+		}
+		if (position < fileSize)
+			channel.truncate(position);
+		writePosition = position;
+	}
+
+	private long readEntrySize(long position) throws IOException {
+		ByteBuffer header = readFully(position, HEADER_SIZE);
+		header.get();
+		int keyLength = header.getInt();
+		if (keyLength < 0)
+			throw new EOFException();
+		ByteBuffer valueLength = readFully(position + HEADER_SIZE + keyLength,
+				ByteUtils.SIZEOF_INT);
+		int length = valueLength.getInt();
+		if (length < NULL_VALUE_LENGTH)
+			throw new EOFException();
+		return HEADER_SIZE + keyLength + ByteUtils.SIZEOF_INT
+				+ ((length == NULL_VALUE_LENGTH) ? 0 : length);
+	}
+
+	private ByteBuffer readFully(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0)
+				throw new EOFException();
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Appends an element to the end of the log.
+	 * 
+	 * @param type
+	 * @param key
+	 * @param value
+	 *            , can be null.
+	 * @throws IOException
+	 */
+	public void append(byte type, ByteBuffer key, ByteBuffer value)
+			throws IOException {
+		byte[] keyBytes = key.array();
+		byte[] valueBytes = (value == null) ? null : value.array();
+		int valueLength = (valueBytes == null) ? 0 : valueBytes.length;
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length
+				+ ByteUtils.SIZEOF_INT + valueLength);
+		buffer.put(type);
+		buffer.putInt(keyBytes.length);
+		buffer.put(keyBytes);
+		buffer.putInt((valueBytes == null) ? NULL_VALUE_LENGTH
+				: valueBytes.length);
+		if (valueBytes != null)
+			buffer.put(valueBytes);
+		buffer.flip();
+		while (buffer.hasRemaining())
+			writePosition += channel.write(buffer, writePosition);
+		size++;
+	}
+
+	/**
+	 * Returns the oldest element which is not removed yet, or null if the log
+	 * is empty.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public Entry peek() throws IOException {
+		if (head == null && readPosition < writePosition) {
+			ByteBuffer header = readFully(readPosition, HEADER_SIZE);
+			byte type = header.get();
+			int keyLength = header.getInt();
+			long position = readPosition + HEADER_SIZE;
+			ByteBuffer key = readFully(position, keyLength);
+			position += keyLength;
+			int valueLength = readFully(position, ByteUtils.SIZEOF_INT)
+					.getInt();
+			position += ByteUtils.SIZEOF_INT;
+			ByteBuffer value = null;
+			if (valueLength != NULL_VALUE_LENGTH) {
+				value = readFully(position, valueLength);
+				position += valueLength;
+			}
+			head = new Entry(type, key, value);
+			readPosition = position;
+		}
+		return head;
+	}
+
+	/**
+	 * Removes the element which is returned by {@link #peek()}.
+	 * 
+	 * @throws IOException
+	 */
+	public void remove() throws IOException {
+		if (peek() == null)
+			return;
+		head = null;
+		size--;
+		if (readPosition == writePosition) {
+			channel.truncate(0);
+			readPosition = 0;
+			writePosition = 0;
+		}
+	}
+
+	/**
+	 * Returns the no of elements which are not removed yet.
+	 * 
+	 * @return
+	 */
+	public long size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		raf.close();
+	}
+
+	public static class Entry {
+
+		private final byte type;
+		private final ByteBuffer key;
+		private final ByteBuffer value;
+
+		public Entry(byte type, ByteBuffer key, ByteBuffer value) {
+			this.type = type;
+			this.key = key;
+			this.value = value;
+		}
+
+		public byte getType() {
+			return type;
+		}
+
+		public ByteBuffer getKey() {
+			return key;
+		}
+
+		/**
+		 * @return null if the element was appended without a value.
+		 */
+		public ByteBuffer getValue() {
+			return value;
+		}
+	}
+}
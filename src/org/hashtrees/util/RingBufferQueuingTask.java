@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.hashtrees.util.NonBlockingQueuingTask.QueueReachedMaxCapacityException;
+import org.hashtrees.util.NonBlockingQueuingTask.QueuingTaskIsStoppedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Supplier;
+
+/**
+ * A bounded multiple producer and single consumer queue, which is backed by a
+ * preallocated ring buffer, and is drained by a background thread. Unlike
+ * {@link NonBlockingQueuingTask}, no objects are allocated per element. The
+ * slots of the ring buffer are created upfront, and producers fill them in
+ * place:
+ * 
+ * <pre>
+ * long sequence = task.claim();
+ * T slot = task.getSlot(sequence);
+ * // fill the slot
+ * task.publish(sequence);
+ * </pre>
+ * 
+ * Every claimed sequence has to be published, otherwise the consumer will not
+ * move past it. The consumer thread handles the published slots in the order
+ * of their sequences, in batches of at most maxBatchSize slots, and releases
+ * a batch of slots to the producers at once.
+ * 
+ * @param <T>
+ */
+@ThreadSafe
+public abstract class RingBufferQueuingTask<T> extends StoppableTask {
+
+	private final static Logger LOGGER = LoggerFactory
+			.getLogger(RingBufferQueuingTask.class.getName());
+
+	private final Object[] slots;
+	// Holds the sequence which was last published on each slot.
+	private final AtomicLongArray publishedSequences;
+	private final int mask;
+	private final int maxBatchSize;
+	private final AtomicLong producerSequence = new AtomicLong();
+	private final AtomicLong consumerSequence = new AtomicLong();
+	private volatile Thread consumerThread;
+	private volatile boolean consumerWaiting;
+
+	/**
+	 * @param capacity
+	 *            no of slots in the ring buffer, should be a power of 2.
+	 * @param maxBatchSize
+	 *            maximum no of slots handled by the consumer before releasing
+	 *            them.
+	 * @param slotFactory
+	 *            creates the slots of the ring buffer.
+	 */
+	public RingBufferQueuingTask(int capacity, int maxBatchSize,
+			Supplier<T> slotFactory) {
+		if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException(
+					"Capacity should be a power of 2, but was " + capacity);
+		this.slots = new Object[capacity];
+		this.publishedSequences = new AtomicLongArray(capacity);
+		this.mask = capacity - 1;
+		this.maxBatchSize = maxBatchSize;
+		for (int i = 0; i < capacity; i++) {
+			slots[i] = slotFactory.get();
+			publishedSequences.set(i, -1);
+		}
+	}
+
+	public int getCapacity() {
+		return slots.length;
+	}
+
+	/**
+	 * Returns the no of slots which are claimed, but not yet handled by the
+	 * consumer.
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return (int) (producerSequence.get() - consumerSequence.get());
+	}
+
+	/**
+	 * Claims the next slot of the ring buffer.
+	 * 
+	 * @return sequence of the claimed slot.
+	 * @throws QueueReachedMaxCapacityException
+	 *             if all the slots are in use.
+	 * @throws QueuingTaskIsStoppedException
+	 *             if stop has been requested on this task.
+	 */
+	public long claim() {
+		if (hasStopRequested())
+			throw new QueuingTaskIsStoppedException();
+		for (;;) {
+			long sequence = producerSequence.get();
+			if (sequence - consumerSequence.get() >= slots.length)
+				throw new QueueReachedMaxCapacityException();
+			if (producerSequence.compareAndSet(sequence, sequence + 1))
+				return sequence;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public T getSlot(long sequence) {
+		return (T) slots[(int) sequence & mask];
+	}
+
+	/**
+	 * Makes the claimed slot available to the consumer.
+	 * 
+	 * @param sequence
+	 */
+	public void publish(long sequence) {
+		publishedSequences.set((int) sequence & mask, sequence);
+		if (consumerWaiting)
+			LockSupport.unpark(consumerThread);
+	}
+
+	private boolean isPublished(long sequence) {
+		return publishedSequences.get((int) sequence & mask) == sequence;
+	}
+
+	/**
+	 * Handles the slots which are left published, as the consumer may have
+	 * never run, or died on an exception. A slot which fails is logged, and
+	 * the remaining ones are still handled. Stops at the first slot which is
+	 * claimed but not published, as the producer of it may never publish.
+	 */
+	@Override
+	protected void completePendingWork() {
+		long nextSequence = consumerSequence.get();
+		while (isPublished(nextSequence)) {
+			try {
+				handleElement(getSlot(nextSequence));
+			} catch (RuntimeException e) {
+				LOGGER.warn("Exception occurred while handling a pending slot",
+						e);
+			}
+			nextSequence++;
+			consumerSequence.lazySet(nextSequence);
+		}
+	}
+
+	@Override
+	public synchronized void stopAsync() {
+		super.stopAsync();
+		Thread thread = consumerThread;
+		if (thread != null)
+			LockSupport.unpark(thread);
+	}
+
+	@Override
+	public void runImpl() {
+		consumerThread = Thread.currentThread();
+		long nextSequence = consumerSequence.get();
+		for (;;) {
+			int handled = 0;
+			try {
+				while (handled < maxBatchSize
+						&& isPublished(nextSequence + handled)) {
+					handleElement(getSlot(nextSequence + handled));
+					handled++;
+				}
+			} finally {
+				if (handled > 0) {
+					nextSequence += handled;
+					consumerSequence.lazySet(nextSequence);
+				}
+			}
+			if (handled > 0)
+				continue;
+			if (hasStopRequested() && producerSequence.get() == nextSequence)
+				return;
+			// Producers unpark the consumer only when it is waiting, so the
+			// slot is checked again after announcing it.
+			consumerWaiting = true;
+			if (!isPublished(nextSequence) && !hasStopRequested())
+				LockSupport.park(this);
+			consumerWaiting = false;
+		}
+	}
+
+	/**
+	 * Handles a published slot. The slot is reused for other elements after
+	 * this method returns, so references to its contents should not be kept.
+	 * 
+	 * @param slot
+	 */
+	protected abstract void handleElement(T slot);
+}
@@ -53,9 +53,14 @@ public abstract class StoppableTask implements Runnable, Stoppable {
 	}
 
 	private synchronized void disableRunningStatus() {
-		lock.set(false);
-		if (stopRequested) {
-			notifyStopListeners();
+		try {
+			if (stopRequested)
+				completePendingWork();
+		} finally {
+			lock.set(false);
+			if (stopRequested) {
+				notifyStopListeners();
+			}
 		}
 	}
 
@@ -69,11 +74,28 @@ public abstract class StoppableTask implements Runnable, Stoppable {
 		return stopRequested;
 	}
 
+	/**
+	 * Tasks which have to complete some work before stopping, like draining a
+	 * queue, should do it here. Called once stop has been requested, either
+	 * by the running task after {@link #runImpl()} returns, or by the stopping
+	 * thread if no task is running. So the work is completed even when the
+	 * task never ran, or died on an exception. The stop listeners are
+	 * notified after this returns, so it should not throw.
+	 */
+	protected void completePendingWork() {
+	}
+
 	@Override
 	public synchronized void stopAsync() {
 		stopRequested = true;
-		if (!lock.get())
-			notifyStopListeners();
+		if (lock.compareAndSet(false, true)) {
+			try {
+				completePendingWork();
+			} finally {
+				lock.set(false);
+				notifyStopListeners();
+			}
+		}
 	}
 
 	public synchronized void stopAsync(final CountDownLatch stopListenerLatch) {
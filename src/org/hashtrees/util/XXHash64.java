@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.util;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Streaming implementation of the 64 bit xxHash algorithm. This is a fast non
+ * cryptographic hash function. For more information, look at {@link https
+ * ://github.com/Cyan4973/xxHash}.
+ * 
+ */
+@NotThreadSafe
+public class XXHash64 {
+
+	private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME64_3 = 0x165667B19E3779F9L;
+	private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+	private static final int STRIPE_LENGTH = 32;
+
+	private final long seed;
+	private final byte[] buffer = new byte[STRIPE_LENGTH];
+	private int bufferedLength;
+	private long totalLength;
+	private long v1, v2, v3, v4;
+
+	public XXHash64(long seed) {
+		this.seed = seed;
+		reset();
+	}
+
+	public void reset() {
+		v1 = seed + PRIME64_1 + PRIME64_2;
+		v2 = seed + PRIME64_2;
+		v3 = seed;
+		v4 = seed - PRIME64_1;
+		bufferedLength = 0;
+		totalLength = 0;
+	}
+
+	public void update(byte[] input, int offset, int length) {
+		totalLength += length;
+		int end = offset + length;
+		if (bufferedLength > 0) {
+			int toCopy = Math.min(STRIPE_LENGTH - bufferedLength, length);
+			System.arraycopy(input, offset, buffer, bufferedLength, toCopy);
+			bufferedLength += toCopy;
+			offset += toCopy;
+			if (bufferedLength < STRIPE_LENGTH)
+				return;
+			processStripe(buffer, 0);
+			bufferedLength = 0;
+		}
+		for (; offset + STRIPE_LENGTH <= end; offset += STRIPE_LENGTH)
+			processStripe(input, offset);
+		if (offset < end) {
+			bufferedLength = end - offset;
+			System.arraycopy(input, offset, buffer, 0, bufferedLength);
+		}
+	}
+
+	/**
+	 * Returns the hash of the bytes which are fed so far. Does not reset the
+	 * state.
+	 * 
+	 * @return
+	 */
+	public long getValue() {
+		long h;
+		if (totalLength >= STRIPE_LENGTH) {
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+					+ Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = mergeRound(h, v1);
+			h = mergeRound(h, v2);
+			h = mergeRound(h, v3);
+			h = mergeRound(h, v4);
+		} else
+			h = seed + PRIME64_5;
+		h += totalLength;
+
+		int offset = 0;
+		for (; offset + 8 <= bufferedLength; offset += 8) {
+			h ^= round(0, readLongLE(buffer, offset));
+			h = Long.rotateLeft(h, 27) * PRIME64_1 + PRIME64_4;
+		}
+		if (offset + 4 <= bufferedLength) {
+			h ^= (readIntLE(buffer, offset) & 0xFFFFFFFFL) * PRIME64_1;
+			h = Long.rotateLeft(h, 23) * PRIME64_2 + PRIME64_3;
+			offset += 4;
+		}
+		for (; offset < bufferedLength; offset++) {
+			h ^= (buffer[offset] & 0xFF) * PRIME64_5;
+			h = Long.rotateLeft(h, 11) * PRIME64_1;
+		}
+
+		h ^= h >>> 33;
+		h *= PRIME64_2;
+		h ^= h >>> 29;
+		h *= PRIME64_3;
+		h ^= h >>> 32;
+		return h;
+	}
+
+	private void processStripe(byte[] input, int offset) {
+		v1 = round(v1, readLongLE(input, offset));
+		v2 = round(v2, readLongLE(input, offset + 8));
+		v3 = round(v3, readLongLE(input, offset + 16));
+		v4 = round(v4, readLongLE(input, offset + 24));
+	}
+
+	private static long round(long acc, long input) {
+		acc += input * PRIME64_2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * PRIME64_1;
+	}
+
+	private static long mergeRound(long acc, long value) {
+		acc ^= round(0, value);
+		return acc * PRIME64_1 + PRIME64_4;
+	}
+
+	private static long readLongLE(byte[] input, int offset) {
+		return (input[offset] & 0xFFL) | ((input[offset + 1] & 0xFFL) << 8)
+				| ((input[offset + 2] & 0xFFL) << 16)
+				| ((input[offset + 3] & 0xFFL) << 24)
+				| ((input[offset + 4] & 0xFFL) << 32)
+				| ((input[offset + 5] & 0xFFL) << 40)
+				| ((input[offset + 6] & 0xFFL) << 48)
+				| ((input[offset + 7] & 0xFFL) << 56);
+	}
+
+	private static int readIntLE(byte[] input, int offset) {
+		return (input[offset] & 0xFF) | ((input[offset + 1] & 0xFF) << 8)
+				| ((input[offset + 2] & 0xFF) << 16)
+				| ((input[offset + 3] & 0xFF) << 24);
+	}
+}
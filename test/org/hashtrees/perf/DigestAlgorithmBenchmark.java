@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.perf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.hashtrees.DigestAlgorithm;
+import org.hashtrees.DigestAlgorithms;
+import org.hashtrees.HashTreesImpl;
+import org.hashtrees.SimpleTreeIdProvider;
+import org.hashtrees.store.HashTreesMemStore;
+import org.hashtrees.store.SimpleMemStore;
+
+/**
+ * Compares the ingest and rebuild throughput of {@link HashTreesImpl} with
+ * each of the {@link DigestAlgorithms}. This is not a unit test, run it
+ * through {@link #main(String[])}.
+ * 
+ * Arguments are [noOfKeys] [valueSize] [noOfSegments].
+ * 
+ */
+public class DigestAlgorithmBenchmark {
+
+	private static final long TREE_ID = SimpleTreeIdProvider.TREE_ID;
+
+	public static void main(String[] args) throws IOException {
+		int noOfKeys = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+		int valueSize = (args.length > 1) ? Integer.parseInt(args[1]) : 1024;
+		int noOfSegments = (args.length > 2) ? Integer.parseInt(args[2])
+				: 1 << 10;
+
+		ByteBuffer[] keys = new ByteBuffer[noOfKeys];
+		ByteBuffer[] values = new ByteBuffer[noOfKeys];
+		Random random = new Random(1);
+		for (int i = 0; i < noOfKeys; i++) {
+			byte[] key = new byte[16];
+			byte[] value = new byte[valueSize];
+			random.nextBytes(key);
+			random.nextBytes(value);
+			keys[i] = ByteBuffer.wrap(key);
+			values[i] = ByteBuffer.wrap(value);
+		}
+
+		System.out.printf("keys=%d, valueSize=%d, segments=%d%n", noOfKeys,
+				valueSize, noOfSegments);
+		System.out.printf("%-12s %15s %15s%n", "algorithm", "ingest(ops/s)",
+				"rebuild(ms)");
+		// First round warms up the JIT, and is not reported.
+		for (int round = 0; round < 2; round++) {
+			for (DigestAlgorithm algorithm : DigestAlgorithms.values()) {
+				HashTreesImpl hashTrees = new HashTreesImpl.Builder(
+						new SimpleMemStore(), new SimpleTreeIdProvider(),
+						new HashTreesMemStore())
+						.setEnabledNonBlockingCalls(false)
+						.setNoOfSegments(noOfSegments)
+						.setDigestAlgorithm(algorithm).build();
+
+				long start = System.nanoTime();
+				for (int i = 0; i < noOfKeys; i++)
+					hashTrees.hPut(keys[i], values[i]);
+				long ingestNanos = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				hashTrees.rebuildHashTree(TREE_ID, false);
+				long rebuildNanos = System.nanoTime() - start;
+
+				if (round > 0)
+					System.out.printf("%-12s %15.0f %15.1f%n",
+							algorithm.getName(), noOfKeys * 1e9
+									/ ingestNanos, rebuildNanos / 1e6);
+			}
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.perf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.hashtrees.HashTreesImpl;
+import org.hashtrees.NonBlockingQueueType;
+import org.hashtrees.SimpleTreeIdProvider;
+import org.hashtrees.store.HashTreesMemStore;
+import org.hashtrees.store.SimpleMemStore;
+import org.hashtrees.util.NonBlockingQueuingTask;
+import org.hashtrees.util.NonBlockingQueuingTask.QueueReachedMaxCapacityException;
+import org.hashtrees.util.RingBufferQueuingTask;
+import org.hashtrees.util.StoppableTask;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Compares {@link NonBlockingQueuingTask} with {@link RingBufferQueuingTask},
+ * first as bare queues with an empty consumer, and then as the queue of non
+ * blocking {@link HashTreesImpl#hPut(ByteBuffer, ByteBuffer)} calls. Each
+ * producer thread enqueues noOfOps operations, retrying while the queue is
+ * full, and the time is measured until the consumer has drained the queue.
+ * This is not a unit test, run it through {@link #main(String[])}.
+ * 
+ * Arguments are [noOfProducers] [noOfOps] [queueSize].
+ * 
+ */
+public class NonBlockingQueueBenchmark {
+
+	private static interface Producer {
+		void produce(int producer, int op);
+	}
+
+	private static class Slot {
+		long value;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int noOfProducers = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+		int noOfOps = (args.length > 1) ? Integer.parseInt(args[1]) : 1000000;
+		int queueSize = (args.length > 2) ? Integer.parseInt(args[2])
+				: 1 << 16;
+
+		System.out.printf("producers=%d, ops/producer=%d, queueSize=%d%n",
+				noOfProducers, noOfOps, queueSize);
+		System.out.printf("%-30s %15s%n", "queue", "ops/s");
+		// First round warms up the JIT, and is not reported.
+		for (int round = 0; round < 2; round++) {
+			report(round, "bare BLOCKING_QUEUE",
+					benchmarkBlockingQueue(noOfProducers, noOfOps, queueSize),
+					noOfProducers * (long) noOfOps);
+			report(round, "bare RING_BUFFER",
+					benchmarkRingBuffer(noOfProducers, noOfOps, queueSize),
+					noOfProducers * (long) noOfOps);
+			for (NonBlockingQueueType queueType : NonBlockingQueueType
+					.values()) {
+				int hPutOps = noOfOps / 10;
+				report(round, "hPut " + queueType,
+						benchmarkHashTrees(queueType, noOfProducers, hPutOps,
+								queueSize), noOfProducers * (long) hPutOps);
+			}
+		}
+	}
+
+	private static void report(int round, String name, long nanos,
+			long totalOps) {
+		if (round > 0)
+			System.out.printf("%-30s %15.0f%n", name, totalOps * 1e9 / nanos);
+	}
+
+	private static long benchmarkBlockingQueue(int noOfProducers,
+			int noOfOps, int queueSize) throws InterruptedException {
+		final NonBlockingQueuingTask<Long> task = new NonBlockingQueuingTask<Long>(
+				-1L, queueSize) {
+
+			@Override
+			protected void handleElement(Long element) {
+			}
+		};
+		return run(task, noOfProducers, noOfOps, new Producer() {
+
+			@Override
+			public void produce(int producer, int op) {
+				task.enque((long) op);
+			}
+		});
+	}
+
+	private static long benchmarkRingBuffer(int noOfProducers, int noOfOps,
+			int queueSize) throws InterruptedException {
+		final RingBufferQueuingTask<Slot> task = new RingBufferQueuingTask<Slot>(
+				queueSize, 1 << 8, new Supplier<Slot>() {
+
+					@Override
+					public Slot get() {
+						return new Slot();
+					}
+				}) {
+
+			@Override
+			protected void handleElement(Slot slot) {
+			}
+		};
+		return run(task, noOfProducers, noOfOps, new Producer() {
+
+			@Override
+			public void produce(int producer, int op) {
+				long sequence = task.claim();
+				task.getSlot(sequence).value = op;
+				task.publish(sequence);
+			}
+		});
+	}
+
+	private static long benchmarkHashTrees(NonBlockingQueueType queueType,
+			int noOfProducers, int noOfOps, int queueSize) throws IOException,
+			InterruptedException {
+		final ByteBuffer[][] keys = new ByteBuffer[noOfProducers][noOfOps];
+		final ByteBuffer value = ByteBuffer.wrap(new byte[64]);
+		Random random = new Random(1);
+		for (int i = 0; i < noOfProducers; i++) {
+			for (int j = 0; j < noOfOps; j++) {
+				byte[] key = new byte[16];
+				random.nextBytes(key);
+				keys[i][j] = ByteBuffer.wrap(key);
+			}
+		}
+		final HashTreesImpl hashTrees = new HashTreesImpl.Builder(
+				new SimpleMemStore(), new SimpleTreeIdProvider(),
+				new HashTreesMemStore()).setNoOfSegments(1 << 10)
+				.setNonBlockingQueueSize(queueSize)
+				.setNonBlockingQueueType(queueType).build();
+		hashTrees.start();
+
+		long start = System.nanoTime();
+		runProducers(noOfProducers, noOfOps, new Producer() {
+
+			@Override
+			public void produce(int producer, int op) {
+				try {
+					hashTrees.hPut(keys[producer][op], value);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		// Stop waits for the queue to be drained.
+		hashTrees.stop();
+		return System.nanoTime() - start;
+	}
+
+	private static long run(StoppableTask task, int noOfProducers,
+			int noOfOps, Producer producer) throws InterruptedException {
+		new Thread(task).start();
+		long start = System.nanoTime();
+		runProducers(noOfProducers, noOfOps, producer);
+		CountDownLatch stopLatch = new CountDownLatch(1);
+		task.stopAsync(stopLatch);
+		stopLatch.await();
+		return System.nanoTime() - start;
+	}
+
+	private static void runProducers(int noOfProducers, final int noOfOps,
+			final Producer producer) throws InterruptedException {
+		Thread[] threads = new Thread[noOfProducers];
+		for (int i = 0; i < noOfProducers; i++) {
+			final int producerId = i;
+			threads[i] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					for (int op = 0; op < noOfOps; op++) {
+						for (;;) {
+							try {
+								producer.produce(producerId, op);
+								break;
+							} catch (QueueReachedMaxCapacityException e) {
+								Thread.yield();
+							}
+						}
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+	}
+}
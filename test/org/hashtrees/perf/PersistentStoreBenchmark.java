@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.perf;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.hashtrees.HashTreesImpl;
+import org.hashtrees.SimpleTreeIdProvider;
+import org.hashtrees.store.HashTreesPersistentStore;
+import org.hashtrees.store.PersistentStoreOptions;
+import org.hashtrees.store.SimpleMemStore;
+import org.hashtrees.test.utils.HashTreesImplTestUtils;
+import org.iq80.leveldb.CompressionType;
+
+/**
+ * Measures the full rebuild and deleteTree throughput of
+ * {@link HashTreesPersistentStore} with different
+ * {@link PersistentStoreOptions}. A write batch size of 1 writes the bulk
+ * updates key by key, as the store did before the bounded write batches.
+ * This is not a unit test, run it through {@link #main(String[])}.
+ * 
+ * Arguments are [noOfKeys] [noOfSegments].
+ * 
+ */
+public class PersistentStoreBenchmark {
+
+	private static final long TREE_ID = SimpleTreeIdProvider.TREE_ID;
+
+	public static void main(String[] args) throws IOException {
+		int noOfKeys = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+		int noOfSegments = (args.length > 1) ? Integer.parseInt(args[1])
+				: 1 << 14;
+
+		SimpleMemStore store = new SimpleMemStore();
+		Random random = new Random(1);
+		for (int i = 0; i < noOfKeys; i++) {
+			byte[] key = new byte[16];
+			byte[] value = new byte[64];
+			random.nextBytes(key);
+			random.nextBytes(value);
+			store.put(key, value);
+		}
+
+		String[] names = { "key by key", "batched", "batched, synced markers",
+				"batched, no compression" };
+		PersistentStoreOptions[] options = {
+				new PersistentStoreOptions().setWriteBatchSize(1),
+				new PersistentStoreOptions(),
+				new PersistentStoreOptions().setSyncMarkerWrites(true),
+				new PersistentStoreOptions().setCompressionType(
+						CompressionType.NONE).setWriteBufferSize(16 << 20) };
+
+		System.out.printf("keys=%d, segments=%d%n", noOfKeys, noOfSegments);
+		System.out.printf("%-26s %18s %18s%n", "options", "rebuild(keys/s)",
+				"deleteTree(keys/s)");
+		// First round warms up the JIT, and is not reported.
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < options.length; i++) {
+				HashTreesPersistentStore htStore = new HashTreesPersistentStore(
+						HashTreesImplTestUtils.randomDirName(), options[i]);
+				try {
+					HashTreesImpl hashTrees = new HashTreesImpl.Builder(store,
+							new SimpleTreeIdProvider(), htStore)
+							.setEnabledNonBlockingCalls(false)
+							.setNoOfSegments(noOfSegments).build();
+
+					long start = System.nanoTime();
+					hashTrees.rebuildHashTree(TREE_ID, true);
+					long rebuildNanos = System.nanoTime() - start;
+
+					start = System.nanoTime();
+					htStore.deleteTree(TREE_ID);
+					long deleteNanos = System.nanoTime() - start;
+
+					if (round > 0)
+						System.out.printf("%-26s %18.0f %18.0f%n", names[i],
+								noOfKeys * 1e9 / rebuildNanos, noOfKeys * 1e9
+										/ deleteNanos);
+				} finally {
+					htStore.delete();
+				}
+			}
+		}
+	}
+}
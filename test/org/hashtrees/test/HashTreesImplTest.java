@@ -29,34 +29,58 @@ import static org.hashtrees.test.utils.HashTreesImplTestUtils.generateInMemorySt
 import static org.hashtrees.test.utils.HashTreesImplTestUtils.generatePersistentStore;
 import static org.hashtrees.test.utils.HashTreesImplTestUtils.randomByteBuffer;
 import static org.hashtrees.test.utils.HashTreesImplTestUtils.randomBytes;
+import static org.hashtrees.test.utils.HashTreesImplTestUtils.randomKey;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.thrift.transport.TTransportException;
+import org.hashtrees.DigestAlgorithms;
+import org.hashtrees.DigestFormat;
 import org.hashtrees.HashTrees;
 import org.hashtrees.HashTreesImpl;
 import org.hashtrees.HashTreesObserver;
+import org.hashtrees.NonBlockingQueueType;
+import org.hashtrees.QueueOverflowPolicy;
 import org.hashtrees.SimpleTreeIdProvider;
 import org.hashtrees.SyncDiffResult;
+import org.hashtrees.SyncMode;
+import org.hashtrees.SyncType;
+import org.hashtrees.TreeUtils;
 import org.hashtrees.manager.EmptySyncListProvider;
 import org.hashtrees.manager.HashTreesManager;
 import org.hashtrees.manager.HashTreesRemoteClient;
 import org.hashtrees.manager.HashTreesSynchListProvider;
 import org.hashtrees.store.HashTreesMemStore;
+import org.hashtrees.store.HashTreesOffHeapMemStore;
 import org.hashtrees.store.HashTreesPersistentStore;
 import org.hashtrees.store.HashTreesStore;
+import org.hashtrees.store.SegmentOrderedStore;
 import org.hashtrees.store.SimpleMemStore;
+import org.hashtrees.store.SplittableStore;
 import org.hashtrees.store.Store;
 import org.hashtrees.test.utils.HashTreesConstants;
 import org.hashtrees.test.utils.HashTreesImplTestUtils;
 import org.hashtrees.test.utils.HashTreesImplTestUtils.HTreeComponents;
+import org.hashtrees.test.utils.MockHashTrees;
 import org.hashtrees.thrift.generated.KeyValue;
 import org.hashtrees.thrift.generated.SegmentData;
 import org.hashtrees.thrift.generated.SegmentHash;
@@ -66,6 +90,8 @@ import org.hashtrees.util.NonBlockingQueuingTask.QueueReachedMaxCapacityExceptio
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.common.collect.Lists;
+
 public class HashTreesImplTest {
 
 	private static byte[] generateBytesFrom(int... values) {
@@ -124,6 +150,109 @@ public class HashTreesImplTest {
 		}
 	}
 
+	@Test
+	public void testPutAllAndRemoveAll() throws IOException {
+		HashTreesStore[] stores = generateInMemoryAndPersistentStores();
+		HashTreesStore[] expectedStores = generateInMemoryAndPersistentStores();
+
+		try {
+			for (int i = 0; i < stores.length; i++) {
+				HashTrees testTree = createHashTree(
+						DEFAULT_SEG_DATA_BLOCKS_COUNT, false, TREE_ID_PROVIDER,
+						SEG_ID_PROVIDER, stores[i]).hTree;
+				HashTrees expectedTree = createHashTree(
+						DEFAULT_SEG_DATA_BLOCKS_COUNT, false, TREE_ID_PROVIDER,
+						SEG_ID_PROVIDER, expectedStores[i]).hTree;
+
+				List<KeyValue> keyValuePairs = new ArrayList<>();
+				List<ByteBuffer> keysToRemove = new ArrayList<>();
+				for (int j = 0; j < 40; j++) {
+					ByteBuffer key = ByteBuffer.wrap(generateRandomKeyWithPrefix(
+							j % 4).array());
+					ByteBuffer value = ByteBuffer.wrap(randomBytes());
+					keyValuePairs.add(new KeyValue(key, value));
+					expectedTree.hPut(key, value);
+					if (j % 3 == 0)
+						keysToRemove.add(key);
+				}
+				testTree.hPutAll(keyValuePairs);
+				for (ByteBuffer key : keysToRemove)
+					expectedTree.hRemove(key);
+				testTree.hRemoveAll(keysToRemove);
+
+				for (int segId = 0; segId < 4; segId++)
+					Assert.assertEquals(expectedTree.getSegment(
+							SimpleTreeIdProvider.TREE_ID, segId), testTree
+							.getSegment(SimpleTreeIdProvider.TREE_ID, segId));
+				Assert.assertEquals(Arrays.asList(0, 1, 2, 3),
+						stores[i].getDirtySegments(SimpleTreeIdProvider.TREE_ID));
+			}
+		} finally {
+			HashTreesImplTestUtils.closeStores(stores);
+			HashTreesImplTestUtils.closeStores(expectedStores);
+		}
+	}
+
+	@Test
+	public void testPutWithDigestAlgorithms() throws IOException {
+		int segId = 1;
+		for (DigestAlgorithms digestAlgorithm : DigestAlgorithms.values()) {
+			HashTreesImpl testTree = new HashTreesImpl.Builder(
+					new SimpleMemStore(), TREE_ID_PROVIDER,
+					generateInMemoryStore())
+					.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+					.setEnabledNonBlockingCalls(false)
+					.setSegmentIdProvider(SEG_ID_PROVIDER)
+					.setDigestAlgorithm(digestAlgorithm).build();
+
+			ByteBuffer key = generateRandomKeyWithPrefix(segId);
+			ByteBuffer value = ByteBuffer.wrap(randomBytes());
+			testTree.hPut(key, value);
+			byte[] expectedDigest = digestAlgorithm.newDigester().digest(
+					value.array());
+			Assert.assertEquals(digestAlgorithm.getDigestLength(),
+					expectedDigest.length);
+
+			SegmentData actualKeyAndDigest = testTree.getSegmentData(
+					SimpleTreeIdProvider.TREE_ID, segId, key);
+			Assert.assertNotNull(actualKeyAndDigest);
+			Assert.assertArrayEquals(expectedDigest,
+					actualKeyAndDigest.getDigest());
+
+			testTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID, false);
+			SegmentHash rootHash = testTree.getSegmentHash(
+					SimpleTreeIdProvider.TREE_ID, ROOT_NODE);
+			Assert.assertNotNull(rootHash);
+			Assert.assertEquals(digestAlgorithm.getDigestLength(),
+					rootHash.getHash().length);
+		}
+	}
+
+	@Test
+	public void testDigestAlgorithmMismatch() throws IOException {
+		HashTreesPersistentStore htStore = generatePersistentStore();
+		try {
+			new HashTreesImpl.Builder(new SimpleMemStore(), TREE_ID_PROVIDER,
+					htStore).setDigestAlgorithm(DigestAlgorithms.XXHASH64)
+					.build();
+			htStore.stop();
+			htStore = new HashTreesPersistentStore(htStore.getDbDir());
+			new HashTreesImpl.Builder(new SimpleMemStore(), TREE_ID_PROVIDER,
+					htStore).setDigestAlgorithm(DigestAlgorithms.XXHASH64)
+					.build();
+			boolean exceptionOccurred = false;
+			try {
+				new HashTreesImpl.Builder(new SimpleMemStore(),
+						TREE_ID_PROVIDER, htStore).build();
+			} catch (IllegalStateException e) {
+				exceptionOccurred = true;
+			}
+			Assert.assertTrue(exceptionOccurred);
+		} finally {
+			htStore.delete();
+		}
+	}
+
 	@Test
 	public void testRemove() throws IOException {
 
@@ -254,6 +383,765 @@ public class HashTreesImplTest {
 		}
 	}
 
+	private static byte[] sha1WithLengthPrefixes(byte[]... values) {
+		ByteBuffer bb = ByteBuffer.allocate(1024);
+		for (byte[] value : values) {
+			bb.putInt(value.length);
+			bb.put(value);
+		}
+		return ByteUtils.sha1(Arrays.copyOf(bb.array(), bb.position()));
+	}
+
+	@Test
+	public void testUpdateSegmentHashesWithDigestFormatV2() throws IOException {
+		int rootNodeId = 0;
+		int nodeId = 2;
+		int segId = 1;
+		int noOfSegments = 2;
+		HashTreesStore[] stores = generateInMemoryAndPersistentStores();
+
+		try {
+			for (HashTreesStore store : stores) {
+				HashTreesImpl testTree = new HashTreesImpl.Builder(
+						new SimpleMemStore(), TREE_ID_PROVIDER, store)
+						.setNoOfSegments(noOfSegments)
+						.setEnabledNonBlockingCalls(false)
+						.setSegmentIdProvider(SEG_ID_PROVIDER)
+						.setDigestFormat(DigestFormat.V2).build();
+
+				ByteBuffer expectedKey = generateRandomKeyWithPrefix(segId);
+				ByteBuffer expectedValue = ByteBuffer.wrap(randomBytes());
+				byte[] expectedLeafNodeDigest = sha1WithLengthPrefixes(
+						expectedKey.array(),
+						ByteUtils.sha1(expectedValue.array()));
+
+				testTree.hPut(expectedKey, expectedValue);
+				// A new tree has no hashes to migrate, so only the dirty
+				// segment is hashed.
+				Assert.assertEquals(1, testTree.rebuildHashTree(
+						SimpleTreeIdProvider.TREE_ID, false));
+				SegmentHash segHash = testTree.getSegmentHash(
+						SimpleTreeIdProvider.TREE_ID, nodeId);
+				Assert.assertNotNull(segHash);
+				Assert.assertArrayEquals(expectedLeafNodeDigest,
+						segHash.getHash());
+
+				// The empty segment 0 has no hash, so it is not part of the
+				// root hash.
+				ByteBuffer rootInput = ByteBuffer.allocate(8 + 20);
+				rootInput.putInt(1).putInt(20).put(expectedLeafNodeDigest);
+				byte[] expectedRootNodeDigest = ByteUtils.sha1(rootInput
+						.array());
+				SegmentHash actualRootNodeDigest = testTree.getSegmentHash(
+						SimpleTreeIdProvider.TREE_ID, rootNodeId);
+				Assert.assertNotNull(actualRootNodeDigest);
+				Assert.assertArrayEquals(expectedRootNodeDigest,
+						actualRootNodeDigest.getHash());
+			}
+		} finally {
+			HashTreesImplTestUtils.closeStores(stores);
+		}
+	}
+
+	@Test
+	public void testDigestFormatMigration() throws IOException {
+		SimpleMemStore store = new SimpleMemStore();
+		for (int i = 0; i < 100; i++)
+			store.put(randomBytes(), randomBytes());
+		HashTreesMemStore htStore = generateInMemoryStore();
+		HashTreesImpl testTree = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, htStore)
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setEnabledNonBlockingCalls(false).build();
+		testTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID, true);
+
+		testTree = new HashTreesImpl.Builder(store, TREE_ID_PROVIDER, htStore)
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setEnabledNonBlockingCalls(false)
+				.setDigestFormat(DigestFormat.V2).build();
+		Assert.assertEquals(DEFAULT_SEG_DATA_BLOCKS_COUNT,
+				testTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID, false));
+		Assert.assertTrue(htStore.getDirtySegments(
+				SimpleTreeIdProvider.TREE_ID).isEmpty());
+		Assert.assertTrue(htStore.getMarkedSegments(
+				SimpleTreeIdProvider.TREE_ID).isEmpty());
+
+		HashTreesImpl expectedTree = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, generateInMemoryStore())
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setEnabledNonBlockingCalls(false)
+				.setDigestFormat(DigestFormat.V2).build();
+		expectedTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID, true);
+
+		Assert.assertArrayEquals(
+				expectedTree.getSegmentHash(SimpleTreeIdProvider.TREE_ID,
+						ROOT_NODE).getHash(),
+				testTree.getSegmentHash(SimpleTreeIdProvider.TREE_ID,
+						ROOT_NODE).getHash());
+		SyncDiffResult diff = testTree.synch(SimpleTreeIdProvider.TREE_ID,
+				expectedTree);
+		Assert.assertFalse(diff.isAnyUpdatesMade());
+	}
+
+	@Test
+	public void testIncrementalLeafHashing() throws IOException {
+		HashTreesStore[] stores = generateInMemoryAndPersistentStores();
+
+		try {
+			for (HashTreesStore htStore : stores) {
+				SimpleMemStore store = new SimpleMemStore();
+				HashTreesImpl testTree = new HashTreesImpl.Builder(store,
+						TREE_ID_PROVIDER, htStore)
+						.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+						.setEnabledNonBlockingCalls(false)
+						.setIncrementalLeafHashing(true).build();
+				List<ByteBuffer> keys = new ArrayList<>();
+				for (int i = 0; i < 100; i++) {
+					ByteBuffer key = randomByteBuffer();
+					ByteBuffer value = randomByteBuffer();
+					keys.add(key);
+					store.put(key.array(), value.array());
+					testTree.hPut(key, value);
+				}
+				testTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID, false);
+				for (int i = 0; i < 50; i++) {
+					ByteBuffer key = keys.get(i);
+					if (i % 2 == 0) {
+						store.delete(key.array());
+						testTree.hRemove(key);
+					} else {
+						ByteBuffer value = randomByteBuffer();
+						store.put(key.array(), value.array());
+						testTree.hPut(key, value);
+					}
+				}
+				testTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID, false);
+
+				HashTreesImpl expectedTree = new HashTreesImpl.Builder(store,
+						TREE_ID_PROVIDER, generateInMemoryStore())
+						.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+						.setEnabledNonBlockingCalls(false)
+						.setIncrementalLeafHashing(true).build();
+				expectedTree
+						.rebuildHashTree(SimpleTreeIdProvider.TREE_ID, true);
+
+				// Segments which were emptied keep the hash of an empty
+				// segment, while the other tree never hashed them. So the
+				// hashes of the non empty segments are compared.
+				int internalNodesCount = TreeUtils.getNoOfNodes(
+						TreeUtils.height(DEFAULT_SEG_DATA_BLOCKS_COUNT, 2) - 1,
+						2);
+				for (int segId = 0; segId < DEFAULT_SEG_DATA_BLOCKS_COUNT; segId++) {
+					if (expectedTree.getSegment(SimpleTreeIdProvider.TREE_ID,
+							segId).isEmpty())
+						continue;
+					int nodeId = internalNodesCount + segId;
+					Assert.assertArrayEquals(
+							expectedTree.getSegmentHash(
+									SimpleTreeIdProvider.TREE_ID, nodeId)
+									.getHash(),
+							testTree.getSegmentHash(
+									SimpleTreeIdProvider.TREE_ID, nodeId)
+									.getHash());
+				}
+				SyncDiffResult diff = testTree.synch(
+						SimpleTreeIdProvider.TREE_ID, expectedTree);
+				Assert.assertFalse(diff.isAnyUpdatesMade());
+			}
+		} finally {
+			HashTreesImplTestUtils.closeStores(stores);
+		}
+	}
+
+	private static HTreeComponents createHashTreeWithFanOut(int fanOut,
+			HashTreesStore htStore) {
+		SimpleMemStore store = new SimpleMemStore();
+		HashTreesImpl hTree = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, htStore).setNoOfSegments(1 << 10)
+				.setEnabledNonBlockingCalls(false).setFanOut(fanOut).build();
+		store.registerHashTrees(hTree);
+		return new HTreeComponents(htStore, store, hTree);
+	}
+
+	@Test
+	public void testSynchWithFanOut() throws IOException {
+		for (int fanOut : new int[] { 4, 8, 32 }) {
+			HashTreesStore[] stores = generateInMemoryAndPersistentStores();
+			HashTreesStore[] remoteStores = generateInMemoryAndPersistentStores();
+
+			try {
+				for (int j = 0; j <= 1; j++) {
+					HTreeComponents localHTreeComp = createHashTreeWithFanOut(
+							fanOut, stores[j]);
+					HTreeComponents remoteHTreeComp = createHashTreeWithFanOut(
+							fanOut, remoteStores[j]);
+					Assert.assertEquals(fanOut,
+							((HashTreesImpl) localHTreeComp.hTree).getFanOut());
+
+					for (int i = 0; i < 100; i++) {
+						byte[] key = generateBytesFrom(i);
+						localHTreeComp.store.put(key, randomBytes());
+						if (i % 3 == 0)
+							remoteHTreeComp.store.put(key, randomBytes());
+						remoteHTreeComp.store.put(generateBytesFrom(100 + i),
+								randomBytes());
+					}
+
+					localHTreeComp.hTree.rebuildHashTree(
+							SimpleTreeIdProvider.TREE_ID, false);
+					remoteHTreeComp.hTree.rebuildHashTree(
+							SimpleTreeIdProvider.TREE_ID, false);
+					SyncDiffResult synchDiff = localHTreeComp.hTree.synch(1,
+							remoteHTreeComp.hTree);
+					Assert.assertTrue(synchDiff.isAnyUpdatesMade());
+					Assert.assertEquals(localHTreeComp.store,
+							remoteHTreeComp.store);
+
+					remoteHTreeComp.hTree.rebuildHashTree(
+							SimpleTreeIdProvider.TREE_ID, false);
+					synchDiff = localHTreeComp.hTree.synch(1,
+							remoteHTreeComp.hTree);
+					Assert.assertEquals(0, synchDiff.totKeyDifferences);
+				}
+			} finally {
+				HashTreesImplTestUtils.closeStores(stores);
+				HashTreesImplTestUtils.closeStores(remoteStores);
+			}
+		}
+	}
+
+	@Test
+	public void testFanOutMismatch() throws IOException {
+		HashTreesMemStore htStore = generateInMemoryStore();
+		HashTreesImpl hTree = new HashTreesImpl.Builder(new SimpleMemStore(),
+				TREE_ID_PROVIDER, htStore).setNoOfSegments(100).setFanOut(4)
+				.build();
+		Assert.assertEquals(256, hTree.getNoOfSegments());
+		boolean exceptionOccurred = false;
+		try {
+			new HashTreesImpl.Builder(new SimpleMemStore(), TREE_ID_PROVIDER,
+					htStore).build();
+		} catch (IllegalStateException e) {
+			exceptionOccurred = true;
+		}
+		Assert.assertTrue(exceptionOccurred);
+	}
+
+	@Test
+	public void testSynchWithMismatchedSettings() throws IOException {
+		HashTreesImpl hTree = new HashTreesImpl.Builder(new SimpleMemStore(),
+				TREE_ID_PROVIDER, generateInMemoryStore()).build();
+		List<HashTreesImpl> remoteTrees = Arrays.asList(
+				new HashTreesImpl.Builder(new SimpleMemStore(),
+						TREE_ID_PROVIDER, generateInMemoryStore())
+						.setDigestAlgorithm(DigestAlgorithms.XXHASH64).build(),
+				new HashTreesImpl.Builder(new SimpleMemStore(),
+						TREE_ID_PROVIDER, generateInMemoryStore()).setFanOut(4)
+						.build());
+		for (HashTreesImpl remoteTree : remoteTrees) {
+			boolean exceptionOccurred = false;
+			try {
+				hTree.synch(SimpleTreeIdProvider.TREE_ID, remoteTree);
+			} catch (IllegalStateException e) {
+				exceptionOccurred = true;
+			}
+			Assert.assertTrue(exceptionOccurred);
+		}
+		// A remote tree which does not report settings is still synched.
+		hTree.synch(SimpleTreeIdProvider.TREE_ID, new MockHashTrees());
+	}
+
+	@Test
+	public void testRebuildWithFlatMemStore() throws IOException {
+		SimpleMemStore store = new SimpleMemStore();
+		for (int i = 0; i < 100; i++)
+			store.put(randomBytes(), randomBytes());
+		int fanOut = 4;
+		HashTreesStore flatStore = new HashTreesMemStore(
+				HashTreesImpl.getTotalNoOfNodes(DEFAULT_SEG_DATA_BLOCKS_COUNT,
+						fanOut), DigestAlgorithms.SHA1.getDigestLength());
+		HashTreesImpl testTree = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, flatStore)
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setFanOut(fanOut).setEnabledNonBlockingCalls(false).build();
+		testTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID, true);
+
+		HashTreesImpl expectedTree = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, generateInMemoryStore())
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setFanOut(fanOut).setEnabledNonBlockingCalls(false).build();
+		expectedTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID, true);
+
+		Assert.assertArrayEquals(
+				expectedTree.getSegmentHash(SimpleTreeIdProvider.TREE_ID,
+						ROOT_NODE).getHash(),
+				testTree.getSegmentHash(SimpleTreeIdProvider.TREE_ID,
+						ROOT_NODE).getHash());
+		SyncDiffResult diff = testTree.synch(SimpleTreeIdProvider.TREE_ID,
+				expectedTree);
+		Assert.assertFalse(diff.isAnyUpdatesMade());
+	}
+
+	private static void assertSynchWithSyncMode(SyncMode syncMode)
+			throws IOException {
+		HashTreesStore[] stores = generateInMemoryAndPersistentStores();
+		HashTreesStore[] remoteStores = generateInMemoryAndPersistentStores();
+
+		try {
+			for (int j = 0; j <= 1; j++) {
+				HTreeComponents localHTreeComp = createHashTree(1 << 10, false,
+						stores[j]);
+				HTreeComponents remoteHTreeComp = createHashTree(1 << 10,
+						false, remoteStores[j]);
+				HashTreesImpl syncModeHTree = new HashTreesImpl.Builder(
+						localHTreeComp.store, TREE_ID_PROVIDER, stores[j])
+						.setNoOfSegments(1 << 10)
+						.setEnabledNonBlockingCalls(false)
+						.setSyncMode(syncMode).build();
+				Assert.assertEquals(syncMode, syncModeHTree.getSyncMode());
+
+				for (int i = 0; i < 100; i++) {
+					byte[] key = generateBytesFrom(i);
+					localHTreeComp.store.put(key, randomBytes());
+					if (i % 3 == 0)
+						remoteHTreeComp.store.put(key, randomBytes());
+					remoteHTreeComp.store.put(generateBytesFrom(100 + i),
+							randomBytes());
+				}
+
+				localHTreeComp.hTree.rebuildHashTree(
+						SimpleTreeIdProvider.TREE_ID, false);
+				remoteHTreeComp.hTree.rebuildHashTree(
+						SimpleTreeIdProvider.TREE_ID, false);
+
+				SyncDiffResult expected = localHTreeComp.hTree.synch(1,
+						remoteHTreeComp.hTree, SyncType.FIND_DIFF_ONLY);
+				SyncDiffResult actual = syncModeHTree.synch(1,
+						remoteHTreeComp.hTree, SyncType.FIND_DIFF_ONLY);
+				Assert.assertEquals(expected.totKeyDifferences,
+						actual.totKeyDifferences);
+				Assert.assertEquals(expected.totExtrinsicSegments,
+						actual.totExtrinsicSegments);
+
+				actual = syncModeHTree.synch(1, remoteHTreeComp.hTree);
+				Assert.assertTrue(actual.isAnyUpdatesMade());
+				Assert.assertEquals(localHTreeComp.store,
+						remoteHTreeComp.store);
+
+				remoteHTreeComp.hTree.rebuildHashTree(
+						SimpleTreeIdProvider.TREE_ID, false);
+				actual = syncModeHTree.synch(1, remoteHTreeComp.hTree);
+				Assert.assertEquals(0, actual.totKeyDifferences);
+			}
+		} finally {
+			HashTreesImplTestUtils.closeStores(stores);
+			HashTreesImplTestUtils.closeStores(remoteStores);
+		}
+	}
+
+	@Test
+	public void testSynchWithPushedHashes() throws IOException {
+		assertSynchWithSyncMode(SyncMode.PUSH_HASHES);
+	}
+
+	@Test
+	public void testSynchWithSubtreeHashes() throws IOException {
+		assertSynchWithSyncMode(SyncMode.FETCH_SUBTREE_HASHES);
+	}
+
+	@Test
+	public void testSynchWithSegmentsBatches() throws IOException {
+		for (int maxSegmentsBatchBytes : new int[] { 1, 512, 1 << 20 }) {
+			HashTreesStore[] stores = generateInMemoryAndPersistentStores();
+			HashTreesStore[] remoteStores = generateInMemoryAndPersistentStores();
+
+			try {
+				for (int j = 0; j <= 1; j++) {
+					SimpleMemStore store = new SimpleMemStore();
+					HashTreesImpl localHTree = new HashTreesImpl.Builder(store,
+							TREE_ID_PROVIDER, stores[j])
+							.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+							.setEnabledNonBlockingCalls(false)
+							.setMaxSegmentsBatchBytes(maxSegmentsBatchBytes)
+							.build();
+					store.registerHashTrees(localHTree);
+					HTreeComponents remoteHTreeComp = createHashTree(
+							DEFAULT_SEG_DATA_BLOCKS_COUNT, false,
+							remoteStores[j]);
+
+					for (int i = 0; i < 60; i++) {
+						store.put(generateBytesFrom(i), randomBytes());
+						if (i % 2 == 0)
+							remoteHTreeComp.store.put(generateBytesFrom(i),
+									randomBytes());
+						remoteHTreeComp.store.put(generateBytesFrom(60 + i),
+								randomBytes());
+					}
+
+					localHTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID,
+							false);
+					remoteHTreeComp.hTree.rebuildHashTree(
+							SimpleTreeIdProvider.TREE_ID, false);
+					SyncDiffResult synchDiff = localHTree.synch(1,
+							remoteHTreeComp.hTree);
+					Assert.assertEquals(120, synchDiff.totKeyDifferences);
+					Assert.assertEquals(store, remoteHTreeComp.store);
+				}
+			} finally {
+				HashTreesImplTestUtils.closeStores(stores);
+				HashTreesImplTestUtils.closeStores(remoteStores);
+			}
+		}
+	}
+
+	@Test
+	public void testSynchWithSegmentPages() throws IOException {
+		for (int segmentPageSize : new int[] { 1, 7, 1 << 10 }) {
+			HashTreesStore[] stores = generateInMemoryAndPersistentStores();
+			HashTreesStore[] remoteStores = generateInMemoryAndPersistentStores();
+
+			try {
+				for (int j = 0; j <= 1; j++) {
+					SimpleMemStore store = new SimpleMemStore();
+					HashTreesImpl localHTree = new HashTreesImpl.Builder(store,
+							TREE_ID_PROVIDER, stores[j]).setNoOfSegments(2)
+							.setEnabledNonBlockingCalls(false)
+							.setMaxSegmentsBatchBytes(1)
+							.setSegmentPageSize(segmentPageSize).build();
+					store.registerHashTrees(localHTree);
+					SimpleMemStore remoteStore = new SimpleMemStore();
+					HashTreesImpl remoteHTree = new HashTreesImpl.Builder(
+							remoteStore, TREE_ID_PROVIDER, remoteStores[j])
+							.setNoOfSegments(2)
+							.setEnabledNonBlockingCalls(false).build();
+					remoteStore.registerHashTrees(remoteHTree);
+
+					for (int i = 0; i < 60; i++) {
+						store.put(generateBytesFrom(i), randomBytes());
+						if (i % 2 == 0)
+							remoteStore.put(generateBytesFrom(i),
+									randomBytes());
+						remoteStore.put(generateBytesFrom(60 + i),
+								randomBytes());
+					}
+
+					localHTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID,
+							false);
+					remoteHTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID,
+							false);
+					SyncDiffResult synchDiff = localHTree.synch(1,
+							remoteHTree);
+					Assert.assertEquals(120, synchDiff.totKeyDifferences);
+					Assert.assertEquals(store, remoteStore);
+				}
+			} finally {
+				HashTreesImplTestUtils.closeStores(stores);
+				HashTreesImplTestUtils.closeStores(remoteStores);
+			}
+		}
+	}
+
+	/**
+	 * Hides the optional operations of the store, like a store which only
+	 * implements {@link HashTreesStore}.
+	 */
+	private static HashTreesStore basicStore(final HashTreesStore htStore) {
+		return (HashTreesStore) Proxy.newProxyInstance(
+				HashTreesStore.class.getClassLoader(),
+				new Class<?>[] { HashTreesStore.class },
+				new InvocationHandler() {
+
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						try {
+							return method.invoke(htStore, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+
+	@Test
+	public void testBasicHashTreesStore() throws IOException {
+		SimpleMemStore store = new SimpleMemStore();
+		HashTreesImpl expectedTree = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, generateInMemoryStore())
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setEnabledNonBlockingCalls(false)
+				.setDigestFormat(DigestFormat.V2).setCachedTopLevels(2)
+				.build();
+		HashTreesImpl testTree = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, basicStore(generateInMemoryStore()))
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setEnabledNonBlockingCalls(false)
+				.setDigestFormat(DigestFormat.V2).setCachedTopLevels(2)
+				.build();
+		List<KeyValue> keyValuePairs = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			byte[] key = generateBytesFrom(i);
+			byte[] value = randomBytes();
+			store.put(key, value);
+			keyValuePairs.add(new KeyValue(ByteBuffer.wrap(key), ByteBuffer
+					.wrap(value)));
+		}
+		for (HashTreesImpl hTree : Arrays.asList(expectedTree, testTree)) {
+			hTree.hPutAll(keyValuePairs);
+			hTree.rebuildHashTree(DEFAULT_TREE_ID, false);
+		}
+
+		Assert.assertEquals(
+				expectedTree.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE),
+				testTree.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE));
+		List<SegmentData> segment = expectedTree.getSegment(DEFAULT_TREE_ID,
+				3);
+		Assert.assertTrue(segment.size() > 2);
+		Assert.assertEquals(segment.subList(1, 3), testTree.getSegmentPage(
+				DEFAULT_TREE_ID, 3, ByteBuffer.wrap(segment.get(1).getKey()),
+				2));
+	}
+
+	@Test
+	public void testSegmentHashesInAnyOrder() throws IOException {
+		HashTreesStore shuffledHTStore = new HashTreesMemStore() {
+
+			@Override
+			public List<SegmentHash> getSegmentHashes(long treeId,
+					Collection<Integer> nodeIds) {
+				List<SegmentHash> result = new ArrayList<>(
+						super.getSegmentHashes(treeId, nodeIds));
+				Collections.shuffle(result);
+				return result;
+			}
+		};
+		SimpleMemStore store = new SimpleMemStore();
+		for (int i = 0; i < 100; i++)
+			store.put(randomBytes(), randomBytes());
+		HashTreesImpl testTree = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, shuffledHTStore)
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setEnabledNonBlockingCalls(false).setCachedTopLevels(2)
+				.build();
+		HashTreesImpl expectedTree = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, generateInMemoryStore())
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setEnabledNonBlockingCalls(false).build();
+		testTree.rebuildHashTree(DEFAULT_TREE_ID, true);
+		expectedTree.rebuildHashTree(DEFAULT_TREE_ID, true);
+
+		Assert.assertEquals(
+				expectedTree.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE),
+				testTree.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE));
+		Assert.assertFalse(testTree.synch(DEFAULT_TREE_ID, expectedTree)
+				.isAnyUpdatesMade());
+		Assert.assertFalse(expectedTree.synch(DEFAULT_TREE_ID, testTree)
+				.isAnyUpdatesMade());
+	}
+
+	@Test
+	public void testGetSegmentPage() throws IOException {
+		HashTreesStore[] stores = generateInMemoryAndPersistentStores();
+
+		try {
+			for (HashTreesStore store : stores) {
+				HTreeComponents hTreeComp = createHashTree(
+						DEFAULT_SEG_DATA_BLOCKS_COUNT, false, store);
+				for (int i = 0; i < 100; i++)
+					hTreeComp.store.put(generateBytesFrom(i), randomBytes());
+
+				List<SegmentData> expected = hTreeComp.hTree.getSegment(
+						DEFAULT_TREE_ID, 3);
+				Assert.assertTrue(expected.size() > 2);
+				Assert.assertEquals(expected, Lists
+						.newArrayList(hTreeComp.hTree.getSegmentIterator(
+								DEFAULT_TREE_ID, 3)));
+
+				List<SegmentData> actual = new ArrayList<>();
+				ByteBuffer fromKey = ByteBuffer.wrap(new byte[0]);
+				List<SegmentData> page;
+				do {
+					page = hTreeComp.hTree.getSegmentPage(DEFAULT_TREE_ID, 3,
+							fromKey, 2);
+					Assert.assertTrue(page.size() <= 2);
+					actual.addAll(page);
+					if (!page.isEmpty()) {
+						byte[] lastKey = page.get(page.size() - 1).getKey();
+						fromKey = ByteBuffer.wrap(Arrays.copyOf(lastKey,
+								lastKey.length + 1));
+					}
+				} while (page.size() == 2);
+				Assert.assertEquals(expected, actual);
+
+				// fromKey is inclusive.
+				page = hTreeComp.hTree.getSegmentPage(DEFAULT_TREE_ID, 3,
+						ByteBuffer.wrap(expected.get(1).getKey()), 1);
+				Assert.assertEquals(expected.subList(1, 2), page);
+			}
+		} finally {
+			HashTreesImplTestUtils.closeStores(stores);
+		}
+	}
+
+	@Test
+	public void testGetSegments() throws IOException {
+		HashTreesStore store = generateInMemoryStore();
+
+		try {
+			HTreeComponents hTreeComp = createHashTree(
+					DEFAULT_SEG_DATA_BLOCKS_COUNT, false, store);
+			for (int i = 0; i < 100; i++)
+				hTreeComp.store.put(randomBytes(), randomBytes());
+
+			List<SegmentData> expected = new ArrayList<>();
+			expected.addAll(hTreeComp.hTree.getSegment(DEFAULT_TREE_ID, 3));
+			expected.addAll(hTreeComp.hTree.getSegment(DEFAULT_TREE_ID, 1));
+			Assert.assertFalse(expected.isEmpty());
+			Assert.assertEquals(expected, hTreeComp.hTree.getSegments(
+					DEFAULT_TREE_ID, Arrays.asList(3, 1)));
+		} finally {
+			HashTreesImplTestUtils.closeStores(store);
+		}
+	}
+
+	@Test
+	public void testGetSegmentsWithCappedResponse() throws IOException {
+		HashTreesStore store = generateInMemoryStore();
+
+		try {
+			SimpleMemStore kvStore = new SimpleMemStore();
+			HashTreesImpl hTree = new HashTreesImpl.Builder(kvStore,
+					TREE_ID_PROVIDER, store)
+					.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+					.setEnabledNonBlockingCalls(false)
+					.setMaxSegmentsBatchBytes(1).build();
+			kvStore.registerHashTrees(hTree);
+			for (int i = 0; i < 100; i++)
+				kvStore.put(randomBytes(), randomBytes());
+
+			List<SegmentData> segment = hTree.getSegment(DEFAULT_TREE_ID, 3);
+			Assert.assertFalse(segment.isEmpty());
+			Assert.assertEquals(segment.subList(0, 1),
+					hTree.getSegments(DEFAULT_TREE_ID, Arrays.asList(3, 1)));
+		} finally {
+			HashTreesImplTestUtils.closeStores(store);
+		}
+	}
+
+	@Test
+	public void testSynchWithCappedRemoteSegments() throws IOException {
+		for (int maxSegmentsBatchBytes : new int[] { 1, 512 }) {
+			HashTreesStore[] stores = generateInMemoryAndPersistentStores();
+			HashTreesStore[] remoteStores = generateInMemoryAndPersistentStores();
+
+			try {
+				for (int j = 0; j <= 1; j++) {
+					SimpleMemStore store = new SimpleMemStore();
+					HashTreesImpl localHTree = new HashTreesImpl.Builder(store,
+							TREE_ID_PROVIDER, stores[j])
+							.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+							.setEnabledNonBlockingCalls(false)
+							.setSegmentPageSize(7).build();
+					store.registerHashTrees(localHTree);
+					SimpleMemStore remoteStore = new SimpleMemStore();
+					HashTreesImpl remoteHTree = new HashTreesImpl.Builder(
+							remoteStore, TREE_ID_PROVIDER, remoteStores[j])
+							.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+							.setEnabledNonBlockingCalls(false)
+							.setMaxSegmentsBatchBytes(maxSegmentsBatchBytes)
+							.build();
+					remoteStore.registerHashTrees(remoteHTree);
+
+					// Local segments are small, the remote ones are not.
+					for (int i = 0; i < 10; i++)
+						store.put(generateBytesFrom(i), randomBytes());
+					for (int i = 0; i < 200; i++)
+						remoteStore.put(generateBytesFrom(i), randomBytes());
+
+					localHTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID,
+							false);
+					remoteHTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID,
+							false);
+					localHTree.synch(1, remoteHTree);
+					Assert.assertEquals(store, remoteStore);
+				}
+			} finally {
+				HashTreesImplTestUtils.closeStores(stores);
+				HashTreesImplTestUtils.closeStores(remoteStores);
+			}
+		}
+	}
+
+	@Test
+	public void testGetSubtreeHashes() throws IOException {
+		HashTreesStore store = generateInMemoryStore();
+
+		try {
+			HTreeComponents hTreeComp = createHashTree(
+					DEFAULT_SEG_DATA_BLOCKS_COUNT, false, store);
+			for (int i = 0; i < 100; i++)
+				hTreeComp.store.put(randomBytes(), randomBytes());
+			hTreeComp.hTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID,
+					false);
+
+			List<SegmentHash> segHashes = hTreeComp.hTree.getSubtreeHashes(
+					DEFAULT_TREE_ID, Arrays.asList(ROOT_NODE), 2);
+			Assert.assertEquals(hTreeComp.hTree.getSegmentHashes(
+					DEFAULT_TREE_ID, Arrays.asList(0, 1, 2, 3, 4, 5, 6)),
+					segHashes);
+
+			segHashes = hTreeComp.hTree.getSubtreeHashes(DEFAULT_TREE_ID,
+					Arrays.asList(1, 2), 0);
+			Assert.assertEquals(hTreeComp.hTree.getSegmentHashes(
+					DEFAULT_TREE_ID, Arrays.asList(1, 2)), segHashes);
+
+			// Leaf nodes are not descended further.
+			int segId = 0;
+			while (hTreeComp.hTree.getSegment(DEFAULT_TREE_ID, segId).isEmpty())
+				segId++;
+			int leafNodeId = DEFAULT_SEG_DATA_BLOCKS_COUNT - 1 + segId;
+			segHashes = hTreeComp.hTree.getSubtreeHashes(DEFAULT_TREE_ID,
+					Arrays.asList(leafNodeId), 3);
+			Assert.assertEquals(1, segHashes.size());
+			Assert.assertEquals(leafNodeId, segHashes.get(0).getNodeId());
+		} finally {
+			HashTreesImplTestUtils.closeStores(store);
+		}
+	}
+
+	@Test
+	public void testCompareSegmentHashes() throws IOException {
+		HashTreesStore store = generateInMemoryStore();
+
+		try {
+			HTreeComponents hTreeComp = createHashTree(
+					DEFAULT_SEG_DATA_BLOCKS_COUNT, false, store);
+			for (int i = 0; i < 100; i++)
+				hTreeComp.store.put(randomBytes(), randomBytes());
+			hTreeComp.hTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID,
+					false);
+
+			List<SegmentHash> segHashes = hTreeComp.hTree.getSegmentHashes(
+					DEFAULT_TREE_ID, Arrays.asList(ROOT_NODE, 1, 2));
+			Assert.assertEquals(3, segHashes.size());
+			Assert.assertTrue(hTreeComp.hTree.compareSegmentHashes(
+					DEFAULT_TREE_ID, segHashes).isEmpty());
+
+			List<SegmentHash> pushedHashes = new ArrayList<>();
+			pushedHashes.add(new SegmentHash(ROOT_NODE, randomByteBuffer()));
+			pushedHashes.add(segHashes.get(1));
+			pushedHashes.add(new SegmentHash(2, ByteBuffer.wrap(new byte[0])));
+			// Node ids which are not present on the tree.
+			pushedHashes.add(new SegmentHash(1000, randomByteBuffer()));
+			pushedHashes.add(new SegmentHash(1001, ByteBuffer.wrap(new byte[0])));
+			Assert.assertEquals(Arrays.asList(ROOT_NODE, 2, 1000),
+					hTreeComp.hTree.compareSegmentHashes(DEFAULT_TREE_ID,
+							pushedHashes));
+		} finally {
+			HashTreesImplTestUtils.closeStores(store);
+		}
+	}
+
 	@Test
 	public void testSynchWithEmptyTree() throws IOException {
 		HashTreesStore[] stores = generateInMemoryAndPersistentStores();
@@ -447,6 +1335,28 @@ public class HashTreesImplTest {
 				Assert.assertEquals(localHTreeComp.store, remoteHTreeComp.store);
 			}
 
+			remoteHTreeComp.hTree.rebuildHashTree(SimpleTreeIdProvider.TREE_ID,
+					false);
+			List<SegmentHash> rootHash = localHTreeComp.hTree
+					.getSegmentHashes(DEFAULT_TREE_ID,
+							Arrays.asList(ROOT_NODE));
+			Assert.assertTrue(thriftClient.compareSegmentHashes(
+					DEFAULT_TREE_ID, rootHash).isEmpty());
+			Assert.assertEquals(localHTreeComp.hTree.getSubtreeHashes(
+					DEFAULT_TREE_ID, Arrays.asList(ROOT_NODE), 3),
+					thriftClient.getSubtreeHashes(DEFAULT_TREE_ID,
+							Arrays.asList(ROOT_NODE), 3));
+			Assert.assertEquals(remoteHTreeComp.hTree.getSegments(
+					DEFAULT_TREE_ID, Arrays.asList(0, 1, 2)),
+					thriftClient.getSegments(DEFAULT_TREE_ID,
+							Arrays.asList(0, 1, 2)));
+			Assert.assertEquals(remoteHTreeComp.hTree.getSegmentPage(
+					DEFAULT_TREE_ID, 1, ByteBuffer.wrap(new byte[0]), 5),
+					thriftClient.getSegmentPage(DEFAULT_TREE_ID, 1,
+							ByteBuffer.wrap(new byte[0]), 5));
+			Assert.assertEquals(remoteHTreeComp.hTree.getSettings(),
+					thriftClient.getSettings());
+
 			hTreeManager.stop();
 		} finally {
 			HashTreesImplTestUtils.closeStores(store);
@@ -482,38 +1392,735 @@ public class HashTreesImplTest {
 			}
 		};
 
+		SimpleMemStore store = new SimpleMemStore();
+		for (NonBlockingQueueType queueType : NonBlockingQueueType.values()) {
+			HashTreesImpl hTrees = new HashTreesImpl.Builder(store,
+					TREE_ID_PROVIDER, htStore)
+					.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+					.setSegmentIdProvider(SEG_ID_PROVIDER)
+					.setNonBlockingQueueSize(maxQueueSize)
+					.setNonBlockingQueueType(queueType).build();
+			hTrees.start();
+
+			boolean exceptionOccurred = false;
+			for (int i = 0; i <= 2 * maxQueueSize; i++) {
+				try {
+					hTrees.hPut(randomByteBuffer(), randomByteBuffer());
+				} catch (QueueReachedMaxCapacityException e) {
+					exceptionOccurred = true;
+				}
+			}
+			Assert.assertTrue(exceptionOccurred);
+
+			hTrees = new HashTreesImpl.Builder(store, TREE_ID_PROVIDER,
+					htStore).setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+					.setSegmentIdProvider(SEG_ID_PROVIDER)
+					.setNonBlockingQueueSize(maxQueueSize)
+					.setNonBlockingQueueType(queueType).build();
+			hTrees.start();
+			exceptionOccurred = false;
+			for (int i = 0; i <= 2 * maxQueueSize; i++) {
+				try {
+					hTrees.hRemove(randomByteBuffer());
+				} catch (QueueReachedMaxCapacityException e) {
+					exceptionOccurred = true;
+				}
+			}
+			Assert.assertTrue(exceptionOccurred);
+		}
+	}
+
+	@Test
+	public void testNonBlockingCallsWithRingBuffer() throws IOException {
+		HashTreesStore htStore = generateInMemoryStore();
 		SimpleMemStore store = new SimpleMemStore();
 		HashTreesImpl hTrees = new HashTreesImpl.Builder(store,
 				TREE_ID_PROVIDER, htStore)
 				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
 				.setSegmentIdProvider(SEG_ID_PROVIDER)
-				.setNonBlockingQueueSize(maxQueueSize).build();
+				.setNonBlockingQueueSize(1 << 10)
+				.setNonBlockingQueueType(NonBlockingQueueType.RING_BUFFER)
+				.build();
 		hTrees.start();
 
-		boolean exceptionOccurred = false;
-		for (int i = 0; i <= 2 * maxQueueSize; i++) {
-			try {
-				hTrees.hPut(randomByteBuffer(), randomByteBuffer());
-			} catch (QueueReachedMaxCapacityException e) {
-				exceptionOccurred = true;
+		List<ByteBuffer> keys = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			ByteBuffer key = ByteBuffer.wrap(randomBytes());
+			keys.add(key);
+			hTrees.hPut(key, randomByteBuffer());
+		}
+		for (int i = 0; i < 100; i++)
+			hTrees.hRemove(keys.get(i));
+		// Stop waits for the queued operations to be applied.
+		hTrees.stop();
+
+		for (int i = 0; i < keys.size(); i++) {
+			ByteBuffer key = keys.get(i);
+			SegmentData sd = htStore.getSegmentData(DEFAULT_TREE_ID,
+					SEG_ID_PROVIDER.getSegmentId(key.array()), key);
+			if (i < 100)
+				Assert.assertNull(sd);
+			else
+				Assert.assertNotNull(sd);
+		}
+	}
+
+	@Test
+	public void testNonBlockingCallsWithWorkers() throws IOException,
+			InterruptedException {
+		int noOfWorkers = 4;
+		for (NonBlockingQueueType queueType : NonBlockingQueueType.values()) {
+			final CountDownLatch putLatch = new CountDownLatch(1);
+			HashTreesStore htStore = new HashTreesMemStore() {
+
+				@Override
+				public void putSegmentData(long treeId, int segId,
+						ByteBuffer key, ByteBuffer digest) {
+					try {
+						putLatch.await();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+					super.putSegmentData(treeId, segId, key, digest);
+				}
+			};
+			SimpleMemStore store = new SimpleMemStore();
+			HashTreesImpl hTrees = new HashTreesImpl.Builder(store,
+					TREE_ID_PROVIDER, htStore)
+					.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+					.setNonBlockingQueueSize(1 << 10)
+					.setNonBlockingQueueType(queueType)
+					.setNoOfNonBlockingWorkers(noOfWorkers).build();
+			Assert.assertEquals(0, hTrees.getNonBlockingQueueDepths().length);
+			hTrees.start();
+
+			List<ByteBuffer> keys = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				ByteBuffer key = ByteBuffer.wrap(randomBytes());
+				keys.add(key);
+				hTrees.hPut(key, randomByteBuffer());
 			}
+			for (int i = 0; i < 100; i++)
+				hTrees.hRemove(keys.get(i));
+
+			// Each worker is blocked on at most one put.
+			int[] queueDepths = hTrees.getNonBlockingQueueDepths();
+			Assert.assertEquals(noOfWorkers, queueDepths.length);
+			int totalQueueDepth = 0;
+			for (int queueDepth : queueDepths)
+				totalQueueDepth += queueDepth;
+			Assert.assertTrue(totalQueueDepth >= 300 - noOfWorkers);
+
+			putLatch.countDown();
+			hTrees.stop();
+			Set<ByteBuffer> actualKeys = new HashSet<>();
+			for (int segId = 0; segId < DEFAULT_SEG_DATA_BLOCKS_COUNT; segId++)
+				for (SegmentData sd : hTrees.getSegment(DEFAULT_TREE_ID, segId))
+					actualKeys.add(sd.bufferForKey());
+			Assert.assertEquals(new HashSet<>(keys.subList(100, 200)),
+					actualKeys);
 		}
-		Assert.assertTrue(exceptionOccurred);
+	}
 
-		hTrees = new HashTreesImpl.Builder(store, TREE_ID_PROVIDER, htStore)
+	@Test
+	public void testNonBlockingCallsWithDigestAtEnqueue() throws IOException {
+		final CountDownLatch putLatch = new CountDownLatch(1);
+		final List<ByteBuffer> putKeys = Collections
+				.synchronizedList(new ArrayList<ByteBuffer>());
+		HashTreesStore htStore = new HashTreesMemStore() {
+
+			@Override
+			public void putSegmentData(long treeId, int segId,
+					ByteBuffer key, ByteBuffer digest) {
+				try {
+					putLatch.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				putKeys.add(key);
+				super.putSegmentData(treeId, segId, key, digest);
+			}
+		};
+		SimpleMemStore store = new SimpleMemStore();
+		HashTreesImpl hTrees = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, htStore)
 				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
 				.setSegmentIdProvider(SEG_ID_PROVIDER)
-				.setNonBlockingQueueSize(maxQueueSize).build();
+				.setDigestAtEnqueue(true).build();
 		hTrees.start();
-		exceptionOccurred = false;
-		for (int i = 0; i <= 2 * maxQueueSize; i++) {
+
+		ByteBuffer blockingKey = ByteBuffer.wrap(randomBytes());
+		ByteBuffer hotKey = ByteBuffer.wrap(randomBytes());
+		ByteBuffer removedKey = ByteBuffer.wrap(randomBytes());
+		hTrees.hPut(blockingKey, randomByteBuffer());
+		byte[] lastValue = null;
+		for (int i = 0; i < 100; i++) {
+			lastValue = randomBytes();
+			hTrees.hPut(hotKey, ByteBuffer.wrap(lastValue));
+			hTrees.hPut(removedKey, randomByteBuffer());
+			hTrees.hRemove(removedKey);
+		}
+		putLatch.countDown();
+		hTrees.stop();
+
+		// The puts are collapsed into one store write for each key.
+		Assert.assertEquals(2, putKeys.size());
+		SegmentData sd = htStore.getSegmentData(DEFAULT_TREE_ID,
+				SEG_ID_PROVIDER.getSegmentId(hotKey.array()), hotKey);
+		Assert.assertArrayEquals(DigestAlgorithms.SHA1.newDigester()
+				.digest(lastValue), sd.getDigest());
+		Assert.assertNull(htStore.getSegmentData(DEFAULT_TREE_ID,
+				SEG_ID_PROVIDER.getSegmentId(removedKey.array()), removedKey));
+	}
+
+	@Test
+	public void testQueueOverflowPolicies() throws Exception {
+		for (QueueOverflowPolicy policy : QueueOverflowPolicy.values()) {
+			final ByteBuffer blockingKey = ByteBuffer.wrap(randomBytes());
+			final CountDownLatch blockedLatch = new CountDownLatch(1);
+			final CountDownLatch releaseLatch = new CountDownLatch(1);
+			HashTreesStore htStore = new HashTreesMemStore() {
+
+				@Override
+				public void putSegmentData(long treeId, int segId,
+						ByteBuffer key, ByteBuffer digest) {
+					if (key.equals(blockingKey)) {
+						blockedLatch.countDown();
+						try {
+							releaseLatch.await();
+						} catch (InterruptedException e) {
+							throw new RuntimeException(e);
+						}
+					}
+					super.putSegmentData(treeId, segId, key, digest);
+				}
+			};
+			SimpleMemStore store = new SimpleMemStore();
+			HashTreesImpl hTrees = new HashTreesImpl.Builder(store,
+					TREE_ID_PROVIDER, htStore)
+					.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+					.setSegmentIdProvider(SEG_ID_PROVIDER)
+					.setNonBlockingQueueSize(1)
+					.setQueueOverflowPolicy(policy)
+					.setQueueOverflowBlockTimeoutMs(10)
+					.setOverflowLogDir(HashTreesImplTestUtils.randomDirName())
+					.build();
+			hTrees.start();
+
+			ByteBuffer queuedKey = ByteBuffer.wrap(randomBytes());
+			ByteBuffer overflowedKey = ByteBuffer.wrap(randomBytes());
+			for (ByteBuffer key : Arrays.asList(blockingKey, queuedKey,
+					overflowedKey))
+				store.put(key.array(), randomBytes());
+			hTrees.hPut(blockingKey, ByteBuffer.wrap(store.get(blockingKey
+					.array())));
+			blockedLatch.await();
+			hTrees.hPut(queuedKey,
+					ByteBuffer.wrap(store.get(queuedKey.array())));
+			boolean rejected = false;
 			try {
-				hTrees.hRemove(randomByteBuffer());
+				hTrees.hPut(overflowedKey, ByteBuffer.wrap(store
+						.get(overflowedKey.array())));
 			} catch (QueueReachedMaxCapacityException e) {
-				exceptionOccurred = true;
+				rejected = true;
+			}
+			boolean expectRejection = (policy == QueueOverflowPolicy.FAIL || policy == QueueOverflowPolicy.BLOCK);
+			Assert.assertEquals(expectRejection, rejected);
+			for (QueueOverflowPolicy countedPolicy : QueueOverflowPolicy
+					.values()) {
+				boolean counted = expectRejection ? countedPolicy == QueueOverflowPolicy.FAIL
+						: countedPolicy == policy;
+				Assert.assertEquals(counted ? 1 : 0,
+						hTrees.getQueueOverflowCount(countedPolicy));
+			}
+			if (policy == QueueOverflowPolicy.SPILL_TO_DISK)
+				Assert.assertEquals(2, hTrees.getNonBlockingQueueDepths()[0]);
+			int segId = SEG_ID_PROVIDER.getSegmentId(overflowedKey.array());
+			Assert.assertEquals(policy == QueueOverflowPolicy.CALLER_RUNS,
+					htStore.getSegmentData(DEFAULT_TREE_ID, segId,
+							overflowedKey) != null);
+
+			releaseLatch.countDown();
+			hTrees.stop();
+			Assert.assertNotNull(htStore.getSegmentData(DEFAULT_TREE_ID,
+					SEG_ID_PROVIDER.getSegmentId(queuedKey.array()), queuedKey));
+			boolean applied = htStore.getSegmentData(DEFAULT_TREE_ID, segId,
+					overflowedKey) != null;
+			Assert.assertEquals(!expectRejection
+					&& policy != QueueOverflowPolicy.MARK_SEGMENT_DIRTY,
+					applied);
+
+			if (policy == QueueOverflowPolicy.MARK_SEGMENT_DIRTY) {
+				// The dropped key is caught by the next rebuild, which
+				// recovers the dirty segments from the store.
+				Assert.assertTrue(htStore.getDirtySegments(DEFAULT_TREE_ID)
+						.contains(segId));
+				HashTreesImpl blockingTrees = new HashTreesImpl.Builder(
+						store, TREE_ID_PROVIDER, htStore)
+						.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+						.setSegmentIdProvider(SEG_ID_PROVIDER)
+						.setEnabledNonBlockingCalls(false).build();
+				blockingTrees.rebuildHashTree(DEFAULT_TREE_ID, false);
+				Assert.assertNotNull(htStore.getSegmentData(DEFAULT_TREE_ID,
+						segId, overflowedKey));
 			}
 		}
-		Assert.assertTrue(exceptionOccurred);
+	}
+
+	@Test
+	public void testRecoverUnappliedUpdatesAfterCrash() throws Exception {
+		recoverUnappliedUpdatesAfterCrash(new SimpleMemStore());
+	}
+
+	@Test
+	public void testRecoverUnappliedUpdatesWithSegmentOrderedStore()
+			throws Exception {
+		SegmentOrderedMemStore store = new SegmentOrderedMemStore();
+		recoverUnappliedUpdatesAfterCrash(store);
+		Assert.assertEquals(0, store.containsCalls.get());
+	}
+
+	private static void recoverUnappliedUpdatesAfterCrash(
+			SimpleMemStore store) throws Exception {
+		// The updates applied by the non blocking workers are lost, as if the
+		// process died before the workers applied them.
+		final Thread testThread = Thread.currentThread();
+		HashTreesStore htStore = new HashTreesMemStore() {
+
+			@Override
+			public void putSegmentData(long treeId, int segId,
+					ByteBuffer key, ByteBuffer digest) {
+				if (Thread.currentThread() == testThread)
+					super.putSegmentData(treeId, segId, key, digest);
+			}
+
+			@Override
+			public void deleteSegmentData(long treeId, int segId,
+					ByteBuffer key) {
+				if (Thread.currentThread() == testThread)
+					super.deleteSegmentData(treeId, segId, key);
+			}
+
+			@Override
+			public boolean setDirtySegment(long treeId, int segId)
+					throws IOException {
+				if (Thread.currentThread() == testThread)
+					return super.setDirtySegment(treeId, segId);
+				return true;
+			}
+		};
+		ByteBuffer removedKey = ByteBuffer
+				.wrap(randomKey(DEFAULT_SEG_DATA_BLOCKS_COUNT));
+		int removedSegId = SEG_ID_PROVIDER.getSegmentId(removedKey.array());
+		htStore.putSegmentData(DEFAULT_TREE_ID, removedSegId, removedKey,
+				ByteBuffer.wrap(randomBytes()));
+
+		HashTreesImpl crashedTrees = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, htStore)
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setSegmentIdProvider(SEG_ID_PROVIDER).build();
+		crashedTrees.start();
+		store.registerHashTrees(crashedTrees);
+		List<ByteBuffer> keys = new ArrayList<>();
+		Set<Integer> expectedDirtySegments = new HashSet<>();
+		for (int i = 0; i < 10; i++) {
+			ByteBuffer key = ByteBuffer
+					.wrap(randomKey(DEFAULT_SEG_DATA_BLOCKS_COUNT));
+			// Keeps the segment of the removed key from getting empty, as an
+			// emptied segment keeps the hash of an empty segment.
+			if (i == 0)
+				key.putInt(0, removedSegId);
+			keys.add(key);
+			expectedDirtySegments.add(SEG_ID_PROVIDER.getSegmentId(key
+					.array()));
+			store.put(key.array(), randomBytes());
+		}
+		crashedTrees.hRemove(removedKey);
+		expectedDirtySegments.add(removedSegId);
+		Assert.assertEquals(expectedDirtySegments, new HashSet<>(
+				htStore.getDirtySegments(DEFAULT_TREE_ID)));
+
+		store.registerHashTrees(null);
+		HashTreesImpl recoveredTrees = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, htStore)
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setSegmentIdProvider(SEG_ID_PROVIDER)
+				.setEnabledNonBlockingCalls(false).build();
+		recoveredTrees.rebuildHashTree(DEFAULT_TREE_ID, false);
+		for (ByteBuffer key : keys)
+			Assert.assertNotNull(htStore.getSegmentData(DEFAULT_TREE_ID,
+					SEG_ID_PROVIDER.getSegmentId(key.array()), key));
+		Assert.assertNull(htStore.getSegmentData(DEFAULT_TREE_ID,
+				removedSegId, removedKey));
+		Assert.assertTrue(htStore.getDirtySegments(DEFAULT_TREE_ID).isEmpty());
+
+		HashTreesStore expectedHTStore = generateInMemoryStore();
+		HashTreesImpl expectedTrees = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, expectedHTStore)
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setSegmentIdProvider(SEG_ID_PROVIDER)
+				.setEnabledNonBlockingCalls(false).build();
+		expectedTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+		Assert.assertEquals(
+				expectedTrees.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE),
+				recoveredTrees.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE));
+		crashedTrees.stop();
+	}
+
+	@Test
+	public void testParallelRebuild() throws IOException {
+		int noOfSegments = 1 << 12;
+		SimpleMemStore store = new SimpleMemStore();
+		for (int i = 0; i < 2 * noOfSegments; i++)
+			store.put(randomBytes(), randomBytes());
+		HashTreesStore serialHTStore = generateInMemoryStore();
+		HashTreesStore parallelHTStore = generateInMemoryStore();
+		HashTreesImpl serialTrees = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, serialHTStore).setNoOfSegments(noOfSegments)
+				.setEnabledNonBlockingCalls(false).build();
+		HashTreesImpl parallelTrees = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, parallelHTStore)
+				.setNoOfSegments(noOfSegments)
+				.setEnabledNonBlockingCalls(false).setRebuildParallelism(4)
+				.build();
+		try {
+			Assert.assertEquals(
+					serialTrees.rebuildHashTree(DEFAULT_TREE_ID, true),
+					parallelTrees.rebuildHashTree(DEFAULT_TREE_ID, true));
+			Assert.assertTrue(parallelHTStore.getDirtySegments(
+					DEFAULT_TREE_ID).isEmpty());
+			Assert.assertTrue(parallelHTStore.getMarkedSegments(
+					DEFAULT_TREE_ID).isEmpty());
+			Assert.assertEquals(
+					serialTrees.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE),
+					parallelTrees.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE));
+			for (int nodeId = 0; nodeId < 2 * noOfSegments - 1; nodeId++)
+				Assert.assertEquals(
+						serialTrees.getSegmentHash(DEFAULT_TREE_ID, nodeId),
+						parallelTrees.getSegmentHash(DEFAULT_TREE_ID, nodeId));
+		} finally {
+			parallelTrees.stop();
+		}
+	}
+
+	@Test
+	public void testCachedTopLevels() throws IOException {
+		int noOfSegments = 1 << 8;
+		List<Integer> allNodeIds = new ArrayList<>();
+		for (int nodeId = 0; nodeId < 2 * noOfSegments - 1; nodeId++)
+			allNodeIds.add(nodeId);
+		SimpleMemStore store = new SimpleMemStore();
+		for (int i = 0; i < 4 * noOfSegments; i++)
+			store.put(randomBytes(), randomBytes());
+		HashTreesPersistentStore expectedHTStore = generatePersistentStore();
+		HashTreesPersistentStore htStore = generatePersistentStore();
+		try {
+			HashTreesImpl expectedTrees = new HashTreesImpl.Builder(store,
+					TREE_ID_PROVIDER, expectedHTStore)
+					.setNoOfSegments(noOfSegments)
+					.setEnabledNonBlockingCalls(false).build();
+			HashTreesImpl cachedTrees = new HashTreesImpl.Builder(store,
+					TREE_ID_PROVIDER, htStore).setNoOfSegments(noOfSegments)
+					.setEnabledNonBlockingCalls(false).setCachedTopLevels(3)
+					.build();
+			Assert.assertEquals(3, cachedTrees.getCachedTopLevels());
+			expectedTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+			cachedTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+			Assert.assertEquals(
+					expectedTrees.getSegmentHashes(DEFAULT_TREE_ID, allNodeIds),
+					cachedTrees.getSegmentHashes(DEFAULT_TREE_ID, allNodeIds));
+
+			for (int i = 0; i < 10; i++) {
+				ByteBuffer key = randomByteBuffer();
+				ByteBuffer value = randomByteBuffer();
+				expectedTrees.hPut(key, value);
+				cachedTrees.hPut(key, value);
+			}
+			expectedTrees.rebuildHashTree(DEFAULT_TREE_ID, false);
+			cachedTrees.rebuildHashTree(DEFAULT_TREE_ID, false);
+			for (int nodeId : allNodeIds)
+				Assert.assertEquals(
+						expectedTrees.getSegmentHash(DEFAULT_TREE_ID, nodeId),
+						cachedTrees.getSegmentHash(DEFAULT_TREE_ID, nodeId));
+
+			// The cached hashes are written to the store by the rebuilds.
+			Assert.assertEquals(
+					expectedTrees.getSegmentHashes(DEFAULT_TREE_ID, allNodeIds),
+					htStore.getSegmentHashes(DEFAULT_TREE_ID, allNodeIds));
+		} finally {
+			expectedHTStore.delete();
+			htStore.delete();
+		}
+	}
+
+	@Test
+	public void testSameHashesOnMemAndPersistentStores() throws IOException {
+		int noOfSegments = 1 << 4;
+		List<Integer> allNodeIds = new ArrayList<>();
+		for (int nodeId = 0; nodeId < 2 * noOfSegments - 1; nodeId++)
+			allNodeIds.add(nodeId);
+		SimpleMemStore store = new SimpleMemStore();
+		for (int i = 0; i < 64 * noOfSegments; i++)
+			store.put(randomBytes(), randomBytes());
+		HashTreesPersistentStore persistentStore = generatePersistentStore();
+		try {
+			HashTreesImpl expectedTrees = new HashTreesImpl.Builder(store,
+					TREE_ID_PROVIDER, persistentStore)
+					.setNoOfSegments(noOfSegments)
+					.setEnabledNonBlockingCalls(false).build();
+			expectedTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+			List<SegmentHash> expectedHashes = expectedTrees.getSegmentHashes(
+					DEFAULT_TREE_ID, allNodeIds);
+			for (HashTreesStore htStore : Arrays.<HashTreesStore> asList(
+					new HashTreesMemStore(), new HashTreesOffHeapMemStore())) {
+				HashTreesImpl hTrees = new HashTreesImpl.Builder(store,
+						TREE_ID_PROVIDER, htStore)
+						.setNoOfSegments(noOfSegments)
+						.setEnabledNonBlockingCalls(false).build();
+				hTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+				Assert.assertEquals(expectedHashes,
+						hTrees.getSegmentHashes(DEFAULT_TREE_ID, allNodeIds));
+			}
+		} finally {
+			persistentStore.delete();
+		}
+	}
+
+	@Test
+	public void testFullRebuildWritesOnlyChangedKeys() throws IOException {
+		final AtomicInteger segDataWrites = new AtomicInteger();
+		HashTreesStore htStore = new HashTreesMemStore() {
+
+			@Override
+			public void putSegmentData(long treeId, int segId,
+					ByteBuffer key, ByteBuffer digest) {
+				segDataWrites.incrementAndGet();
+				super.putSegmentData(treeId, segId, key, digest);
+			}
+		};
+		SimpleMemStore store = new SimpleMemStore();
+		List<byte[]> keys = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			keys.add(randomBytes());
+			store.put(keys.get(i), randomBytes());
+		}
+		HashTreesImpl hTrees = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, htStore)
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setSegmentIdProvider(SEG_ID_PROVIDER)
+				.setEnabledNonBlockingCalls(false).build();
+		hTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+		Assert.assertEquals(100, segDataWrites.get());
+		Assert.assertEquals(100, hTrees.getFullRebuildScannedKeys());
+		Assert.assertEquals(100, hTrees.getFullRebuildChangedKeys());
+		SegmentHash expectedRoot = hTrees.getSegmentHash(DEFAULT_TREE_ID,
+				ROOT_NODE);
+
+		Assert.assertEquals(0, hTrees.rebuildHashTree(DEFAULT_TREE_ID, true));
+		Assert.assertEquals(100, segDataWrites.get());
+		Assert.assertEquals(200, hTrees.getFullRebuildScannedKeys());
+		Assert.assertEquals(100, hTrees.getFullRebuildChangedKeys());
+		Assert.assertEquals(0, hTrees.getFullRebuildRemovedKeys());
+		Assert.assertEquals(expectedRoot,
+				hTrees.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE));
+
+		store.put(keys.get(0), randomBytes());
+		store.delete(keys.get(1));
+		Assert.assertTrue(hTrees.rebuildHashTree(DEFAULT_TREE_ID, true) > 0);
+		Assert.assertEquals(101, segDataWrites.get());
+		Assert.assertEquals(299, hTrees.getFullRebuildScannedKeys());
+		Assert.assertEquals(101, hTrees.getFullRebuildChangedKeys());
+		Assert.assertEquals(1, hTrees.getFullRebuildRemovedKeys());
+		Assert.assertNull(htStore.getSegmentData(DEFAULT_TREE_ID,
+				SEG_ID_PROVIDER.getSegmentId(keys.get(1)),
+				ByteBuffer.wrap(keys.get(1))));
+	}
+
+	/**
+	 * Iterates the pairs in the order of their segments, and then of their
+	 * keys.
+	 */
+	private static class SegmentOrderedMemStore extends SimpleMemStore
+			implements SegmentOrderedStore {
+
+		private final AtomicInteger containsCalls = new AtomicInteger();
+
+		@Override
+		public boolean contains(byte[] key) {
+			containsCalls.incrementAndGet();
+			return super.contains(key);
+		}
+
+		@Override
+		public Iterator<Map.Entry<byte[], byte[]>> iterator(long treeId,
+				int fromSegId, int toSegId) {
+			List<Map.Entry<byte[], byte[]>> pairs = new ArrayList<>();
+			Iterator<Map.Entry<byte[], byte[]>> itr = iterator(treeId);
+			while (itr.hasNext()) {
+				Map.Entry<byte[], byte[]> pair = itr.next();
+				int segId = SEG_ID_PROVIDER.getSegmentId(pair.getKey());
+				if (segId >= fromSegId && segId <= toSegId)
+					pairs.add(pair);
+			}
+			Collections.sort(pairs, new Comparator<Map.Entry<byte[], byte[]>>() {
+
+				@Override
+				public int compare(Map.Entry<byte[], byte[]> left,
+						Map.Entry<byte[], byte[]> right) {
+					int compRes = Integer.compare(
+							SEG_ID_PROVIDER.getSegmentId(left.getKey()),
+							SEG_ID_PROVIDER.getSegmentId(right.getKey()));
+					return (compRes != 0) ? compRes : ByteUtils.compareTo(
+							left.getKey(), right.getKey());
+				}
+			});
+			return pairs.iterator();
+		}
+	}
+
+	@Test
+	public void testFullRebuildWithSegmentOrderedStore() throws IOException {
+		SegmentOrderedMemStore orderedStore = new SegmentOrderedMemStore();
+		SimpleMemStore store = new SimpleMemStore();
+		List<byte[]> keys = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			keys.add(randomKey(DEFAULT_SEG_DATA_BLOCKS_COUNT));
+			byte[] value = randomBytes();
+			orderedStore.put(keys.get(i), value);
+			store.put(keys.get(i), value);
+		}
+		HashTreesStore htStore = generateInMemoryStore();
+		HashTreesImpl hTrees = new HashTreesImpl.Builder(orderedStore,
+				TREE_ID_PROVIDER, htStore)
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setSegmentIdProvider(SEG_ID_PROVIDER)
+				.setEnabledNonBlockingCalls(false).build();
+		HashTreesImpl expectedTrees = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, generateInMemoryStore())
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setSegmentIdProvider(SEG_ID_PROVIDER)
+				.setEnabledNonBlockingCalls(false).build();
+		hTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+		expectedTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+		Assert.assertEquals(100, hTrees.getFullRebuildChangedKeys());
+		Assert.assertEquals(
+				expectedTrees.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE),
+				hTrees.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE));
+
+		Assert.assertEquals(0, hTrees.rebuildHashTree(DEFAULT_TREE_ID, true));
+		Assert.assertEquals(200, hTrees.getFullRebuildScannedKeys());
+		Assert.assertEquals(100, hTrees.getFullRebuildChangedKeys());
+
+		byte[] value = randomBytes();
+		orderedStore.put(keys.get(0), value);
+		store.put(keys.get(0), value);
+		orderedStore.delete(keys.get(1));
+		store.delete(keys.get(1));
+		byte[] addedKey = randomKey(DEFAULT_SEG_DATA_BLOCKS_COUNT);
+		orderedStore.put(addedKey, value);
+		store.put(addedKey, value);
+		hTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+		expectedTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+		Assert.assertEquals(300, hTrees.getFullRebuildScannedKeys());
+		Assert.assertEquals(102, hTrees.getFullRebuildChangedKeys());
+		Assert.assertEquals(1, hTrees.getFullRebuildRemovedKeys());
+		Assert.assertEquals(
+				expectedTrees.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE),
+				hTrees.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE));
+		Assert.assertEquals(0, orderedStore.containsCalls.get());
+	}
+
+	/**
+	 * Splits the pairs in a round robin way.
+	 */
+	private static class SplittableMemStore extends SimpleMemStore implements
+			SplittableStore {
+
+		@Override
+		public List<Iterator<Map.Entry<byte[], byte[]>>> splitIterators(
+				long treeId, int maxNoOfSplits) {
+			List<List<Map.Entry<byte[], byte[]>>> splits = new ArrayList<>();
+			for (int i = 0; i < maxNoOfSplits; i++)
+				splits.add(new ArrayList<Map.Entry<byte[], byte[]>>());
+			Iterator<Map.Entry<byte[], byte[]>> itr = iterator(treeId);
+			for (int i = 0; itr.hasNext(); i++)
+				splits.get(i % maxNoOfSplits).add(itr.next());
+			List<Iterator<Map.Entry<byte[], byte[]>>> splitItrs;
+			splitItrs = new ArrayList<>();
+			for (List<Map.Entry<byte[], byte[]>> split : splits)
+				splitItrs.add(split.iterator());
+			return splitItrs;
+		}
+	}
+
+	@Test
+	public void testPartitionedFullRebuild() throws IOException {
+		SplittableMemStore splittableStore = new SplittableMemStore();
+		SegmentOrderedMemStore orderedStore = new SegmentOrderedMemStore();
+		SimpleMemStore store = new SimpleMemStore();
+		List<byte[]> keys = new ArrayList<>();
+		for (int i = 0; i < 3000; i++) {
+			keys.add(randomKey(DEFAULT_SEG_DATA_BLOCKS_COUNT));
+			byte[] value = randomBytes();
+			splittableStore.put(keys.get(i), value);
+			orderedStore.put(keys.get(i), value);
+			store.put(keys.get(i), value);
+		}
+		HashTreesImpl splitTrees = new HashTreesImpl.Builder(splittableStore,
+				TREE_ID_PROVIDER, generateInMemoryStore())
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setSegmentIdProvider(SEG_ID_PROVIDER)
+				.setEnabledNonBlockingCalls(false).setRebuildParallelism(4)
+				.build();
+		HashTreesImpl orderedTrees = new HashTreesImpl.Builder(orderedStore,
+				TREE_ID_PROVIDER, generateInMemoryStore())
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setSegmentIdProvider(SEG_ID_PROVIDER)
+				.setEnabledNonBlockingCalls(false).setRebuildParallelism(4)
+				.build();
+		HashTreesImpl expectedTrees = new HashTreesImpl.Builder(store,
+				TREE_ID_PROVIDER, generateInMemoryStore())
+				.setNoOfSegments(DEFAULT_SEG_DATA_BLOCKS_COUNT)
+				.setSegmentIdProvider(SEG_ID_PROVIDER)
+				.setEnabledNonBlockingCalls(false).build();
+		try {
+			splitTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+			orderedTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+			expectedTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+			Assert.assertEquals(3000, splitTrees.getFullRebuildScannedKeys());
+			Assert.assertEquals(3000, splitTrees.getFullRebuildChangedKeys());
+			Assert.assertEquals(3000, orderedTrees.getFullRebuildChangedKeys());
+			SegmentHash expectedRoot = expectedTrees.getSegmentHash(
+					DEFAULT_TREE_ID, ROOT_NODE);
+			Assert.assertEquals(expectedRoot,
+					splitTrees.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE));
+			Assert.assertEquals(expectedRoot,
+					orderedTrees.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE));
+
+			byte[] value = randomBytes();
+			for (Store aStore : Arrays.<Store> asList(splittableStore,
+					orderedStore, store)) {
+				aStore.put(keys.get(0), value);
+				for (int i = 1; i < 1500; i++)
+					aStore.delete(keys.get(i));
+			}
+			splitTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+			orderedTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+			expectedTrees.rebuildHashTree(DEFAULT_TREE_ID, true);
+			Assert.assertEquals(4501, splitTrees.getFullRebuildScannedKeys());
+			Assert.assertEquals(3001, splitTrees.getFullRebuildChangedKeys());
+			Assert.assertEquals(1499, splitTrees.getFullRebuildRemovedKeys());
+			Assert.assertEquals(1499, orderedTrees.getFullRebuildRemovedKeys());
+			expectedRoot = expectedTrees.getSegmentHash(DEFAULT_TREE_ID,
+					ROOT_NODE);
+			Assert.assertEquals(expectedRoot,
+					splitTrees.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE));
+			Assert.assertEquals(expectedRoot,
+					orderedTrees.getSegmentHash(DEFAULT_TREE_ID, ROOT_NODE));
+		} finally {
+			splitTrees.stop();
+			orderedTrees.stop();
+		}
 	}
 
 	@Test
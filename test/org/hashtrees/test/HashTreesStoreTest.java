@@ -21,14 +21,20 @@ package org.hashtrees.test;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.hashtrees.store.ExtendedHashTreesStore;
 import org.hashtrees.store.HashTreesMemStore;
+import org.hashtrees.store.HashTreesOffHeapMemStore;
 import org.hashtrees.store.HashTreesPersistentStore;
 import org.hashtrees.store.HashTreesStore;
+import org.hashtrees.store.PersistentStoreOptions;
 import org.hashtrees.test.utils.HashTreesImplTestUtils;
 import org.hashtrees.thrift.generated.SegmentData;
 import org.hashtrees.thrift.generated.SegmentHash;
@@ -43,10 +49,10 @@ public class HashTreesStoreTest {
 
 	private static interface HTStoreHelper {
 
-		HashTreesStore getInstance() throws IOException;
+		ExtendedHashTreesStore getInstance() throws IOException;
 
-		HashTreesStore restartInstance(HashTreesStore htStore)
-				throws IOException;
+		ExtendedHashTreesStore restartInstance(
+				ExtendedHashTreesStore htStore) throws IOException;
 
 		void cleanup(HashTreesStore htStore) throws IOException;
 	}
@@ -54,7 +60,7 @@ public class HashTreesStoreTest {
 	private static class HTPersistentStoreHelper implements HTStoreHelper {
 
 		@Override
-		public HashTreesStore getInstance() throws IOException {
+		public ExtendedHashTreesStore getInstance() throws IOException {
 			return new HashTreesPersistentStore(
 					HashTreesImplTestUtils.randomDirName());
 		}
@@ -65,18 +71,42 @@ public class HashTreesStoreTest {
 		}
 
 		@Override
-		public HashTreesStore restartInstance(HashTreesStore htStore)
-				throws IOException {
+		public ExtendedHashTreesStore restartInstance(
+				ExtendedHashTreesStore htStore) throws IOException {
 			((HashTreesPersistentStore) htStore).stop();
 			return new HashTreesPersistentStore(
 					((HashTreesPersistentStore) htStore).getDbDir());
 		}
 	}
 
+	private static class HTBatchedPersistentStoreHelper extends
+			HTPersistentStoreHelper {
+
+		private static PersistentStoreOptions newOptions() {
+			return new PersistentStoreOptions().setWriteBatchSize(3)
+					.setSyncMarkerWrites(true);
+		}
+
+		@Override
+		public ExtendedHashTreesStore getInstance() throws IOException {
+			return new HashTreesPersistentStore(
+					HashTreesImplTestUtils.randomDirName(), newOptions());
+		}
+
+		@Override
+		public ExtendedHashTreesStore restartInstance(
+				ExtendedHashTreesStore htStore) throws IOException {
+			((HashTreesPersistentStore) htStore).stop();
+			return new HashTreesPersistentStore(
+					((HashTreesPersistentStore) htStore).getDbDir(),
+					newOptions());
+		}
+	}
+
 	private static class HTMemStoreHelper implements HTStoreHelper {
 
 		@Override
-		public HashTreesStore getInstance() throws IOException {
+		public ExtendedHashTreesStore getInstance() throws IOException {
 			return new HashTreesMemStore();
 		}
 
@@ -86,24 +116,34 @@ public class HashTreesStoreTest {
 		}
 
 		@Override
-		public HashTreesStore restartInstance(HashTreesStore htStore)
-				throws IOException {
+		public ExtendedHashTreesStore restartInstance(
+				ExtendedHashTreesStore htStore) throws IOException {
 			return htStore;
 		}
 
 	}
 
+	private static class HTOffHeapMemStoreHelper extends HTMemStoreHelper {
+
+		@Override
+		public ExtendedHashTreesStore getInstance() throws IOException {
+			return new HashTreesOffHeapMemStore();
+		}
+	}
+
 	private static final Set<HTStoreHelper> helpers = new HashSet<>();
 
 	static {
 		helpers.add(new HTPersistentStoreHelper());
+		helpers.add(new HTBatchedPersistentStoreHelper());
 		helpers.add(new HTMemStoreHelper());
+		helpers.add(new HTOffHeapMemStoreHelper());
 	}
 
 	@Test
 	public void testSegmentData() throws IOException {
 		for (HTStoreHelper helper : helpers) {
-			HashTreesStore htStore = helper.getInstance();
+			ExtendedHashTreesStore htStore = helper.getInstance();
 			try {
 				ByteBuffer key = ByteBuffer.wrap("key1".getBytes());
 				ByteBuffer digest = ByteBuffer.wrap(ByteUtils.sha1("digest1"
@@ -128,7 +168,7 @@ public class HashTreesStoreTest {
 	@Test
 	public void testSegment() throws IOException {
 		for (HTStoreHelper helper : helpers) {
-			HashTreesStore htStore = helper.getInstance();
+			ExtendedHashTreesStore htStore = helper.getInstance();
 			try {
 				List<SegmentData> list = new ArrayList<SegmentData>();
 				SegmentData sd;
@@ -152,10 +192,126 @@ public class HashTreesStoreTest {
 		}
 	}
 
+	@Test
+	public void testApplyBatch() throws IOException {
+		for (HTStoreHelper helper : helpers) {
+			ExtendedHashTreesStore htStore = helper.getInstance();
+			try {
+				List<SegmentData> toPut = new ArrayList<SegmentData>();
+				for (int segId = 0; segId < 3; segId++)
+					for (int i = 0; i < 5; i++)
+						toPut.add(new SegmentData(segId, ByteBuffer
+								.wrap(("test" + i).getBytes()), ByteBuffer
+								.wrap(("value" + i).getBytes())));
+				htStore.applyBatch(DEF_TREE_ID, toPut,
+						Collections.<SegmentData> emptyList());
+				for (int segId = 0; segId < 3; segId++)
+					Assert.assertEquals(toPut.subList(segId * 5, segId * 5 + 5),
+							htStore.getSegment(DEF_TREE_ID, segId));
+
+				List<SegmentData> toDelete = new ArrayList<SegmentData>();
+				for (int i = 0; i < 5; i++)
+					toDelete.add(new SegmentData(1, ByteBuffer.wrap(("test" + i)
+							.getBytes()), null));
+				htStore.applyBatch(DEF_TREE_ID,
+						Collections.<SegmentData> emptyList(), toDelete);
+				Assert.assertTrue(htStore.getSegment(DEF_TREE_ID, 1).isEmpty());
+				Assert.assertEquals(5, htStore.getSegment(DEF_TREE_ID, 2)
+						.size());
+
+				htStore = helper.restartInstance(htStore);
+				Assert.assertEquals(Arrays.asList(0, 1, 2),
+						htStore.getDirtySegments(DEF_TREE_ID));
+			} finally {
+				helper.cleanup(htStore);
+			}
+		}
+	}
+
+	@Test
+	public void testPackedSegmentData() throws IOException {
+		for (HashTreesMemStore htStore : Arrays.asList(
+				new HashTreesMemStore(), new HashTreesOffHeapMemStore())) {
+			Assert.assertEquals(0, htStore.getMemoryUsed());
+			List<ByteBuffer> keys = new ArrayList<>();
+			for (int i = 0; i < 5000; i++) {
+				ByteBuffer key = HashTreesImplTestUtils.randomByteBuffer();
+				keys.add(key);
+				htStore.putSegmentData(DEF_TREE_ID, DEF_SEG_ID, key,
+						ByteBuffer.wrap(ByteUtils.sha1(key.array())));
+			}
+			for (int i = 0; i < 2500; i++)
+				htStore.putSegmentData(DEF_TREE_ID, DEF_SEG_ID, keys.get(i),
+						ByteBuffer.wrap(digest(i)));
+			for (int i = 2500; i < 3000; i++)
+				htStore.deleteSegmentData(DEF_TREE_ID, DEF_SEG_ID,
+						keys.get(i));
+			Assert.assertTrue(htStore.getMemoryUsed() > 0);
+			Assert.assertEquals(
+					ByteBuffer.wrap(digest(0)),
+					htStore.getSegmentData(DEF_TREE_ID, DEF_SEG_ID,
+							keys.get(0)).bufferForDigest());
+			Assert.assertNull(htStore.getSegmentData(DEF_TREE_ID,
+					DEF_SEG_ID, keys.get(2500)));
+
+			List<SegmentData> segment = htStore.getSegment(DEF_TREE_ID,
+					DEF_SEG_ID);
+			Assert.assertEquals(4500, segment.size());
+			for (int i = 1; i < segment.size(); i++)
+				Assert.assertTrue(ByteUtils.compareTo(segment.get(i - 1)
+						.getKey(), segment.get(i).getKey()) < 0);
+			Iterator<SegmentData> itr = htStore.getSegmentIterator(
+					DEF_TREE_ID, DEF_SEG_ID, segment.get(1000).bufferForKey());
+			for (int i = 1000; i < segment.size(); i++)
+				Assert.assertEquals(segment.get(i), itr.next());
+			Assert.assertFalse(itr.hasNext());
+
+			for (ByteBuffer key : keys)
+				htStore.deleteSegmentData(DEF_TREE_ID, DEF_SEG_ID, key);
+			Assert.assertEquals(0, htStore.getMemoryUsed());
+		}
+	}
+
+	@Test
+	public void testPackedSegmentDataChurn() throws IOException {
+		for (HashTreesMemStore htStore : Arrays.asList(
+				new HashTreesMemStore(), new HashTreesOffHeapMemStore())) {
+			List<ByteBuffer> keys = new ArrayList<>();
+			for (int i = 0; i < 1000; i++)
+				keys.add(HashTreesImplTestUtils.randomByteBuffer());
+			long memoryUsed = 0;
+			for (int round = 0; round < 20; round++) {
+				for (ByteBuffer key : keys)
+					htStore.putSegmentData(DEF_TREE_ID, DEF_SEG_ID, key,
+							ByteBuffer.wrap(ByteUtils.sha1(digest(round))));
+				for (int i = 0; i < 100; i++)
+					htStore.deleteSegmentData(DEF_TREE_ID, DEF_SEG_ID,
+							keys.get(i));
+				if (round == 2)
+					memoryUsed = htStore.getMemoryUsed();
+			}
+			Assert.assertEquals(memoryUsed, htStore.getMemoryUsed());
+			Assert.assertNull(htStore.getSegmentData(DEF_TREE_ID,
+					DEF_SEG_ID, keys.get(0)));
+			htStore.putSegmentData(DEF_TREE_ID, DEF_SEG_ID, keys.get(0),
+					ByteBuffer.wrap(digest(0)));
+			Assert.assertEquals(
+					ByteBuffer.wrap(digest(0)),
+					htStore.getSegmentData(DEF_TREE_ID, DEF_SEG_ID,
+							keys.get(0)).bufferForDigest());
+			Assert.assertEquals(901,
+					htStore.getSegment(DEF_TREE_ID, DEF_SEG_ID).size());
+		}
+	}
+
+	private static byte[] digest(int i) {
+		return ("value" + i).getBytes();
+	}
+
 	@Test
 	public void testPutSegmentHash() throws IOException {
 		for (HTStoreHelper helper : helpers) {
-			HashTreesStore htStore = helper.getInstance();
+			ExtendedHashTreesStore htStore = helper.getInstance();
 			try {
 				ByteBuffer digest = ByteBuffer.wrap("digest1".getBytes());
 				htStore.putSegmentHash(DEF_TREE_ID, DEF_SEG_ID, digest);
@@ -181,10 +337,141 @@ public class HashTreesStoreTest {
 		}
 	}
 
+	@Test
+	public void testPutSegmentHashes() throws IOException {
+		for (HTStoreHelper helper : helpers) {
+			ExtendedHashTreesStore htStore = helper.getInstance();
+			try {
+				List<Integer> nodeIds = new ArrayList<>();
+				List<ByteBuffer> digests = new ArrayList<>();
+				for (int i = 0; i < 10; i++) {
+					nodeIds.add(i * 2);
+					digests.add(ByteBuffer.wrap(("digest" + i).getBytes()));
+				}
+				htStore.putSegmentHashes(DEF_TREE_ID, nodeIds, digests);
+
+				List<SegmentHash> actual = htStore.getSegmentHashes(
+						DEF_TREE_ID, nodeIds);
+				Assert.assertEquals(10, actual.size());
+				for (int i = 0; i < 10; i++) {
+					Assert.assertEquals(i * 2, actual.get(i).getNodeId());
+					Assert.assertEquals(digests.get(i), actual.get(i).hash);
+				}
+				Assert.assertNull(htStore.getSegmentHash(DEF_TREE_ID, 1));
+			} finally {
+				helper.cleanup(htStore);
+			}
+		}
+	}
+
+	@Test
+	public void testGetSegmentHashesInOrder() throws IOException {
+		for (HTStoreHelper helper : helpers) {
+			ExtendedHashTreesStore htStore = helper.getInstance();
+			try {
+				for (int nodeId : Arrays.asList(1, 2, 3, 5, 8))
+					htStore.putSegmentHash(DEF_TREE_ID, nodeId,
+							ByteBuffer.wrap(("digest" + nodeId).getBytes()));
+				htStore.putSegmentHash(DEF_TREE_ID + 1, 4,
+						ByteBuffer.wrap("digest4".getBytes()));
+
+				List<SegmentHash> actual = htStore.getSegmentHashes(
+						DEF_TREE_ID, Arrays.asList(1, 2, 3, 4, 5, 6, 8, 3, 0, 9));
+				List<Integer> actualNodeIds = new ArrayList<>();
+				for (SegmentHash sh : actual) {
+					actualNodeIds.add(sh.getNodeId());
+					Assert.assertEquals(
+							ByteBuffer.wrap(("digest" + sh.getNodeId())
+									.getBytes()), sh.hash.duplicate());
+				}
+				Assert.assertEquals(Arrays.asList(1, 2, 3, 5, 8, 3),
+						actualNodeIds);
+			} finally {
+				helper.cleanup(htStore);
+			}
+		}
+	}
+
+	@Test
+	public void testFlatSegmentHashes() throws Exception {
+		final int noOfNodes = 100, digestLength = 20;
+		final HashTreesStore htStore = new HashTreesMemStore(noOfNodes,
+				digestLength);
+		Assert.assertNull(htStore.getSegmentHash(DEF_TREE_ID, DEF_SEG_ID));
+
+		ByteBuffer digest = ByteBuffer.wrap(ByteUtils.sha1("digest1"
+				.getBytes()));
+		htStore.putSegmentHash(DEF_TREE_ID, noOfNodes - 1, digest);
+		SegmentHash sh = htStore.getSegmentHash(DEF_TREE_ID, noOfNodes - 1);
+		Assert.assertNotNull(sh);
+		Assert.assertEquals(digest, sh.hash.duplicate());
+
+		List<Integer> nodeIds = new ArrayList<Integer>();
+		nodeIds.add(DEF_SEG_ID);
+		nodeIds.add(noOfNodes - 1);
+		List<SegmentHash> actual = htStore.getSegmentHashes(DEF_TREE_ID,
+				nodeIds);
+		Assert.assertEquals(Collections.singletonList(sh), actual);
+
+		boolean exceptionOccurred = false;
+		try {
+			htStore.putSegmentHash(DEF_TREE_ID, noOfNodes, digest);
+		} catch (IllegalArgumentException e) {
+			exceptionOccurred = true;
+		}
+		Assert.assertTrue(exceptionOccurred);
+
+		exceptionOccurred = false;
+		try {
+			htStore.putSegmentHash(DEF_TREE_ID, DEF_SEG_ID,
+					ByteBuffer.wrap("digest1".getBytes()));
+		} catch (IllegalArgumentException e) {
+			exceptionOccurred = true;
+		}
+		Assert.assertTrue(exceptionOccurred);
+
+		// Readers should never see a hash which is partially written.
+		for (int i = 0; i < noOfNodes; i++)
+			htStore.putSegmentHash(DEF_TREE_ID, i,
+					ByteBuffer.wrap(new byte[digestLength]));
+		final AtomicBoolean torn = new AtomicBoolean(false);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final boolean writer = (t % 2 == 0);
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					byte[] hash = new byte[digestLength];
+					for (int i = 0; i < 10000; i++) {
+						try {
+							if (writer) {
+								Arrays.fill(hash, (byte) i);
+								htStore.putSegmentHash(DEF_TREE_ID, i
+										% noOfNodes, ByteBuffer.wrap(hash));
+							} else {
+								byte[] actual = htStore.getSegmentHash(
+										DEF_TREE_ID, i % noOfNodes).getHash();
+								for (byte b : actual)
+									if (b != actual[0])
+										torn.set(true);
+							}
+						} catch (IOException e) {
+							torn.set(true);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		Assert.assertFalse(torn.get());
+	}
+
 	@Test
 	public void testDeleteTree() throws IOException {
 		for (HTStoreHelper helper : helpers) {
-			HashTreesStore htStore = helper.getInstance();
+			ExtendedHashTreesStore htStore = helper.getInstance();
 			try {
 				ByteBuffer key = ByteBuffer.wrap("key1".getBytes());
 				ByteBuffer digest = ByteBuffer.wrap("digest1".getBytes());
@@ -201,10 +488,44 @@ public class HashTreesStoreTest {
 		}
 	}
 
+	@Test
+	public void testDeleteTreeInBatches() throws IOException {
+		for (HTStoreHelper helper : helpers) {
+			ExtendedHashTreesStore htStore = helper.getInstance();
+			try {
+				ByteBuffer digest = ByteBuffer.wrap("digest1".getBytes());
+				List<Integer> segIds = new ArrayList<>();
+				for (int i = 0; i < 10; i++) {
+					ByteBuffer key = ByteBuffer.wrap(("key" + i).getBytes());
+					htStore.putSegmentData(DEF_TREE_ID, i, key, digest);
+					htStore.putSegmentData(DEF_TREE_ID + 1, i, key, digest);
+					htStore.putSegmentHash(DEF_TREE_ID, i, digest);
+					segIds.add(i);
+				}
+				htStore.markSegments(DEF_TREE_ID, segIds);
+				htStore.deleteTree(DEF_TREE_ID);
+
+				Assert.assertFalse(htStore.getSegmentDataIterator(DEF_TREE_ID)
+						.hasNext());
+				Assert.assertNull(htStore.getSegmentHash(DEF_TREE_ID, 0));
+				Assert.assertTrue(htStore.getMarkedSegments(DEF_TREE_ID)
+						.isEmpty());
+				Iterator<SegmentData> itr = htStore
+						.getSegmentDataIterator(DEF_TREE_ID + 1);
+				int count = 0;
+				for (; itr.hasNext(); itr.next())
+					count++;
+				Assert.assertEquals(10, count);
+			} finally {
+				helper.cleanup(htStore);
+			}
+		}
+	}
+
 	@Test
 	public void testSetLastFullyTreeBuiltTimestamp() throws IOException {
 		for (HTStoreHelper helper : helpers) {
-			HashTreesStore htStore = helper.getInstance();
+			ExtendedHashTreesStore htStore = helper.getInstance();
 			try {
 				long exTs = System.currentTimeMillis();
 				htStore.setCompleteRebuiltTimestamp(DEF_TREE_ID, exTs);
@@ -216,10 +537,27 @@ public class HashTreesStoreTest {
 		}
 	}
 
+	@Test
+	public void testMetaData() throws IOException {
+		for (HTStoreHelper helper : helpers) {
+			ExtendedHashTreesStore htStore = helper.getInstance();
+			try {
+				Assert.assertNull(htStore.getMetaData("name"));
+				byte[] value = "value".getBytes();
+				htStore.putMetaData("name", value);
+				htStore.deleteTree(DEF_TREE_ID);
+				htStore = helper.restartInstance(htStore);
+				Assert.assertArrayEquals(value, htStore.getMetaData("name"));
+			} finally {
+				helper.cleanup(htStore);
+			}
+		}
+	}
+
 	@Test
 	public void testSegmentRebuildMarkers() throws IOException {
 		for (HTStoreHelper helper : helpers) {
-			HashTreesStore htStore = helper.getInstance();
+			ExtendedHashTreesStore htStore = helper.getInstance();
 			try {
 				List<Integer> expectedSegs = new ArrayList<>();
 				for (int i = 0; i < 10; i++)
@@ -232,6 +570,12 @@ public class HashTreesStoreTest {
 				Collections.sort(actualMarkedSegs);
 				Assert.assertEquals(expectedSegs, actualMarkedSegs);
 
+				htStore.unmarkSegments(DEF_TREE_ID, expectedSegs.subList(0, 5));
+				actualMarkedSegs = htStore.getMarkedSegments(DEF_TREE_ID);
+				Collections.sort(actualMarkedSegs);
+				Assert.assertEquals(expectedSegs.subList(5, 10),
+						actualMarkedSegs);
+
 				htStore.unmarkSegments(DEF_TREE_ID, expectedSegs);
 				actualMarkedSegs = htStore.getMarkedSegments(DEF_TREE_ID);
 				Assert.assertNotNull(actualMarkedSegs);
@@ -245,7 +589,7 @@ public class HashTreesStoreTest {
 	@Test
 	public void testDirtySegments() throws IOException {
 		for (HTStoreHelper helper : helpers) {
-			HashTreesStore htStore = helper.getInstance();
+			ExtendedHashTreesStore htStore = helper.getInstance();
 
 			try {
 				htStore.setDirtySegment(DEF_TREE_ID, DEF_SEG_ID);
@@ -268,7 +612,7 @@ public class HashTreesStoreTest {
 	public void testDirtySegmentsPersistenceBetweenRestarts()
 			throws IOException {
 		for (HTStoreHelper helper : helpers) {
-			HashTreesStore htStore = helper.getInstance();
+			ExtendedHashTreesStore htStore = helper.getInstance();
 
 			try {
 				htStore.setDirtySegment(DEF_TREE_ID, DEF_SEG_ID);
@@ -84,6 +84,16 @@ public class HashTreesImplTestUtils {
 		return emptyBuffer;
 	}
 
+	/**
+	 * Returns a random key, whose segment id given by {@link #SEG_ID_PROVIDER}
+	 * is less than noOfSegments.
+	 */
+	public static byte[] randomKey(int noOfSegments) {
+		byte[] key = randomBytes();
+		ByteBuffer.wrap(key).putInt(RANDOM.nextInt(noOfSegments));
+		return key;
+	}
+
 	public static ByteBuffer randomByteBuffer() {
 		byte[] random = new byte[8];
 		RANDOM.nextBytes(random);
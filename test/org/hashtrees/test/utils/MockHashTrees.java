@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.hashtrees.HashTrees;
 import org.hashtrees.HashTreesObserver;
@@ -49,6 +50,35 @@ public class MockHashTrees implements HashTrees {
 		return Collections.emptyList();
 	}
 
+	@Override
+	public List<Integer> compareSegmentHashes(long treeId,
+			List<SegmentHash> segmentHashes) throws IOException {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public List<SegmentHash> getSubtreeHashes(long treeId,
+			List<Integer> nodeIds, int depth) throws IOException {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public List<SegmentData> getSegments(long treeId, List<Integer> segIds)
+			throws IOException {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public List<SegmentData> getSegmentPage(long treeId, int segId,
+			ByteBuffer fromKey, int maxEntries) throws IOException {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Map<String, String> getSettings() throws IOException {
+		return Collections.emptyMap();
+	}
+
 	@Override
 	public SegmentHash getSegmentHash(long treeId, int nodeId)
 			throws IOException {
@@ -77,6 +107,16 @@ public class MockHashTrees implements HashTrees {
 
 	}
 
+	@Override
+	public void hPutAll(List<KeyValue> keyValuePairs) throws IOException {
+
+	}
+
+	@Override
+	public void hRemoveAll(List<ByteBuffer> keys) throws IOException {
+
+	}
+
 	@Override
 	public SyncDiffResult synch(long treeId, HashTrees remoteTree,
 			SyncType syncType) throws IOException {
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.utils.test;
+
+import java.util.Random;
+
+import org.hashtrees.util.ByteUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteUtilsTest {
+
+	@Test
+	public void testAddWithCarry() {
+		byte[] sum = new byte[] { 0, (byte) 0xFF, (byte) 0xFF };
+		ByteUtils.add(sum, new byte[] { 0, 0, 1 });
+		Assert.assertArrayEquals(new byte[] { 1, 0, 0 }, sum);
+
+		sum = new byte[] { (byte) 0xFF, (byte) 0xFF };
+		ByteUtils.add(sum, new byte[] { 0, 2 });
+		Assert.assertArrayEquals(new byte[] { 0, 1 }, sum);
+	}
+
+	@Test
+	public void testSubtractReversesAdd() {
+		Random random = new Random(1);
+		byte[] expected = new byte[20];
+		random.nextBytes(expected);
+		byte[] sum = expected.clone();
+		byte[][] values = new byte[10][20];
+		for (byte[] value : values) {
+			random.nextBytes(value);
+			ByteUtils.add(sum, value);
+		}
+		for (int i = values.length - 1; i >= 0; i -= 2)
+			ByteUtils.subtract(sum, values[i]);
+		for (int i = 0; i < values.length; i += 2)
+			ByteUtils.subtract(sum, values[i]);
+		Assert.assertArrayEquals(expected, sum);
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.utils.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.hashtrees.util.DenseAtomicBitSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DenseAtomicBitSetTest {
+
+	@Test
+	public void testSetAndClearBits() {
+		DenseAtomicBitSet obj = new DenseAtomicBitSet(1000);
+		Assert.assertEquals(-1, obj.nextSetBit(0));
+		Assert.assertFalse(obj.set(0));
+		Assert.assertTrue(obj.set(0));
+		Assert.assertFalse(obj.set(63));
+		Assert.assertFalse(obj.set(64));
+		Assert.assertFalse(obj.set(999));
+		Assert.assertEquals(4, obj.cardinality());
+		Assert.assertTrue(obj.get(63));
+		Assert.assertFalse(obj.get(62));
+		Assert.assertEquals(Arrays.asList(0, 63, 64, 999), obj.getAllSetBits());
+		Assert.assertEquals(63, obj.nextSetBit(1));
+		Assert.assertEquals(999, obj.nextSetBit(65));
+
+		Assert.assertTrue(obj.clear(63));
+		Assert.assertFalse(obj.clear(63));
+		obj.clearBits(Arrays.asList(0, 1));
+		Assert.assertEquals(2, obj.cardinality());
+		Assert.assertEquals(64, obj.nextSetBit(0));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testOutOfRangeBit() {
+		new DenseAtomicBitSet(64).set(64);
+	}
+
+	@Test
+	public void testDrain() {
+		DenseAtomicBitSet obj = new DenseAtomicBitSet(1 << 12);
+		Assert.assertEquals(0, obj.drain().length);
+		obj.set(5);
+		obj.set(4095);
+		obj.set(128);
+		Assert.assertArrayEquals(new int[] { 5, 128, 4095 },
+				obj.getAllSetBitsArray());
+		Assert.assertArrayEquals(new int[] { 5, 128, 4095 }, obj.drain());
+		Assert.assertEquals(0, obj.cardinality());
+		Assert.assertEquals(-1, obj.nextSetBit(0));
+		Assert.assertEquals(0, obj.getAllSetBitsArray().length);
+	}
+
+	@Test
+	public void testSparseBitsOfLargeSet() {
+		DenseAtomicBitSet obj = new DenseAtomicBitSet(1 << 24);
+		Assert.assertTrue(obj.isEmpty());
+		Assert.assertEquals(-1, obj.nextSetBit(0));
+		List<Integer> expected = Arrays.asList(3, 70000, 4096 * 64 + 1,
+				(1 << 24) - 1);
+		for (int bitIndex : expected)
+			obj.set(bitIndex);
+		Assert.assertEquals(expected, obj.getAllSetBits());
+		Assert.assertEquals(70000, obj.nextSetBit(4));
+		Assert.assertEquals((1 << 24) - 1, obj.nextSetBit(4096 * 64 + 2));
+
+		obj.clear(70000);
+		obj.clear(3);
+		Assert.assertEquals(4096 * 64 + 1, obj.nextSetBit(0));
+		Assert.assertEquals(Arrays.asList(4096 * 64 + 1, (1 << 24) - 1),
+				obj.getAllSetBits());
+		Assert.assertArrayEquals(new int[] { 4096 * 64 + 1, (1 << 24) - 1 },
+				obj.drain());
+		Assert.assertTrue(obj.isEmpty());
+		Assert.assertEquals(-1, obj.nextSetBit(0));
+	}
+
+	@Test
+	public void testConcurrentSetsAndClears() throws InterruptedException {
+		final int noOfThreads = 4;
+		final int noOfBits = 1 << 16;
+		final DenseAtomicBitSet obj = new DenseAtomicBitSet(noOfBits);
+		final CountDownLatch latch = new CountDownLatch(noOfThreads);
+		for (int i = 0; i < noOfThreads; i++) {
+			final int threadNo = i;
+			new Thread() {
+
+				@Override
+				public void run() {
+					for (int round = 0; round < 10; round++) {
+						for (int bit = threadNo; bit < noOfBits; bit += noOfThreads)
+							obj.set(bit);
+						for (int bit = threadNo; bit < noOfBits; bit += noOfThreads)
+							obj.clear(bit);
+					}
+					// Leaves one of its own bits in every 1024 bits.
+					obj.set((threadNo << 10) + threadNo);
+					latch.countDown();
+				}
+			}.start();
+		}
+		latch.await();
+		List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < noOfThreads; i++)
+			expected.add((i << 10) + i);
+		Assert.assertEquals(expected, obj.getAllSetBits());
+		Assert.assertEquals(noOfThreads, obj.cardinality());
+	}
+
+	@Test
+	public void testConcurrentSetsAndDrains() throws InterruptedException {
+		final int noOfThreads = 4;
+		final int noOfBits = 1 << 14;
+		final DenseAtomicBitSet obj = new DenseAtomicBitSet(noOfBits);
+		final CountDownLatch latch = new CountDownLatch(noOfThreads);
+		for (int i = 0; i < noOfThreads; i++) {
+			final int threadNo = i;
+			new Thread() {
+
+				@Override
+				public void run() {
+					for (int bit = threadNo; bit < noOfBits; bit += noOfThreads)
+						obj.set(bit);
+					latch.countDown();
+				}
+			}.start();
+		}
+		int drainedBits = 0;
+		while (latch.getCount() > 0)
+			drainedBits += obj.drain().length;
+		latch.await();
+		drainedBits += obj.drain().length;
+		Assert.assertEquals(noOfBits, drainedBits);
+		Assert.assertEquals(0, obj.cardinality());
+	}
+}
@@ -19,6 +19,7 @@
 package org.hashtrees.utils.test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -73,4 +74,41 @@ public class NonBlockingQueuingTaskTest {
 		stopLatch.await(10000, TimeUnit.MILLISECONDS);
 		nbqTask.enque(10);
 	}
+
+	@Test
+	public void testStopAfterConsumerDied() throws InterruptedException {
+		Integer marker = new Integer(0);
+		final List<Integer> queuedElements = new ArrayList<>();
+		NonBlockingQueuingTask<Integer> nbqTask = new NonBlockingQueuingTask<Integer>(
+				marker, 100) {
+
+			@Override
+			protected void handleElement(Integer element) {
+				if (element == 1)
+					throw new RuntimeException("Failed on " + element);
+				queuedElements.add(element);
+			}
+		};
+
+		Thread consumer = new Thread(nbqTask);
+		consumer.setUncaughtExceptionHandler(IGNORING_HANDLER);
+		consumer.start();
+		nbqTask.enque(1);
+		consumer.join(10000);
+		Assert.assertFalse(consumer.isAlive());
+		nbqTask.enque(2);
+		nbqTask.enque(3);
+
+		CountDownLatch stopLatch = new CountDownLatch(1);
+		nbqTask.stopAsync(stopLatch);
+		Assert.assertTrue(stopLatch.await(10000, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(Arrays.asList(2, 3), queuedElements);
+	}
+
+	static final Thread.UncaughtExceptionHandler IGNORING_HANDLER = new Thread.UncaughtExceptionHandler() {
+
+		@Override
+		public void uncaughtException(Thread t, Throwable e) {
+		}
+	};
 }
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.utils.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import junit.framework.Assert;
+
+import org.hashtrees.test.utils.HashTreesImplTestUtils;
+import org.hashtrees.util.OverflowLog;
+import org.junit.Test;
+
+public class OverflowLogTest {
+
+	private static File newLogFile() {
+		File dir = new File(HashTreesImplTestUtils.randomDirName());
+		dir.mkdirs();
+		return new File(dir, "overflow.log");
+	}
+
+	private static ByteBuffer bytes(String value) {
+		return ByteBuffer.wrap(value.getBytes());
+	}
+
+	@Test
+	public void testAppendAndRemove() throws IOException {
+		File file = newLogFile();
+		OverflowLog log = new OverflowLog(file);
+		try {
+			Assert.assertNull(log.peek());
+			for (int i = 0; i < 10; i++)
+				log.append((byte) i, bytes("key" + i),
+						(i % 2 == 0) ? bytes("value" + i) : null);
+			Assert.assertEquals(10, log.size());
+
+			for (int i = 0; i < 10; i++) {
+				OverflowLog.Entry entry = log.peek();
+				Assert.assertNotNull(entry);
+				Assert.assertSame(entry, log.peek());
+				Assert.assertEquals(i, entry.getType());
+				Assert.assertEquals(bytes("key" + i), entry.getKey());
+				Assert.assertEquals((i % 2 == 0) ? bytes("value" + i) : null,
+						entry.getValue());
+				log.remove();
+			}
+			Assert.assertTrue(log.isEmpty());
+			Assert.assertNull(log.peek());
+			// The file is truncated once all the elements are removed.
+			Assert.assertEquals(0, file.length());
+
+			log.append((byte) 1, bytes("key"), null);
+			Assert.assertEquals(bytes("key"), log.peek().getKey());
+		} finally {
+			log.close();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testReopenWithPartialElement() throws IOException {
+		File file = newLogFile();
+		OverflowLog log = new OverflowLog(file);
+		log.append((byte) 1, bytes("key1"), bytes("value1"));
+		log.append((byte) 2, bytes("key2"), bytes("value2"));
+		log.close();
+
+		// Drops the last byte, as if the process crashed while appending.
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 1);
+		raf.close();
+
+		log = new OverflowLog(file);
+		try {
+			Assert.assertEquals(1, log.size());
+			Assert.assertEquals(bytes("key1"), log.peek().getKey());
+			Assert.assertEquals(bytes("value1"), log.peek().getValue());
+			log.remove();
+			Assert.assertNull(log.peek());
+
+			log.append((byte) 3, bytes("key3"), null);
+			Assert.assertEquals(bytes("key3"), log.peek().getKey());
+		} finally {
+			log.close();
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.utils.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.hashtrees.util.NonBlockingQueuingTask.QueueReachedMaxCapacityException;
+import org.hashtrees.util.NonBlockingQueuingTask.QueuingTaskIsStoppedException;
+import org.hashtrees.util.RingBufferQueuingTask;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+public class RingBufferQueuingTaskTest {
+
+	private static class Slot {
+		int producer;
+		int value;
+	}
+
+	private static final Supplier<Slot> SLOT_FACTORY = new Supplier<Slot>() {
+
+		@Override
+		public Slot get() {
+			return new Slot();
+		}
+	};
+
+	private static void enque(RingBufferQueuingTask<Slot> task, int producer,
+			int value) {
+		long sequence = task.claim();
+		Slot slot = task.getSlot(sequence);
+		slot.producer = producer;
+		slot.value = value;
+		task.publish(sequence);
+	}
+
+	@Test
+	public void testEnqueOperations() throws InterruptedException {
+		final int noOfProducers = 4;
+		final int noOfElements = 10000;
+		final List<List<Integer>> queuedElements = new ArrayList<>();
+		for (int i = 0; i < noOfProducers; i++)
+			queuedElements.add(new ArrayList<Integer>());
+		final CountDownLatch handledLatch = new CountDownLatch(noOfProducers
+				* noOfElements);
+		final RingBufferQueuingTask<Slot> task = new RingBufferQueuingTask<Slot>(
+				64, 8, SLOT_FACTORY) {
+
+			@Override
+			protected void handleElement(Slot slot) {
+				queuedElements.get(slot.producer).add(slot.value);
+				handledLatch.countDown();
+			}
+		};
+		new Thread(task).start();
+
+		List<Thread> producers = new ArrayList<>();
+		for (int i = 0; i < noOfProducers; i++) {
+			final int producer = i;
+			Thread thread = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					for (int j = 0; j < noOfElements; j++) {
+						for (;;) {
+							try {
+								enque(task, producer, j);
+								break;
+							} catch (QueueReachedMaxCapacityException e) {
+								Thread.yield();
+							}
+						}
+					}
+				}
+			});
+			thread.start();
+			producers.add(thread);
+		}
+		for (Thread thread : producers)
+			thread.join();
+		Assert.assertTrue(handledLatch.await(10000, TimeUnit.MILLISECONDS));
+
+		CountDownLatch stopLatch = new CountDownLatch(1);
+		task.stopAsync(stopLatch);
+		Assert.assertTrue(stopLatch.await(10000, TimeUnit.MILLISECONDS));
+		for (List<Integer> elements : queuedElements) {
+			Assert.assertEquals(noOfElements, elements.size());
+			for (int j = 0; j < noOfElements; j++)
+				Assert.assertEquals(j, elements.get(j).intValue());
+		}
+	}
+
+	@Test
+	public void testQueueReachedMaxCapacity() {
+		RingBufferQueuingTask<Slot> task = new RingBufferQueuingTask<Slot>(4,
+				4, SLOT_FACTORY) {
+
+			@Override
+			protected void handleElement(Slot slot) {
+			}
+		};
+		for (int i = 0; i < 4; i++)
+			enque(task, 0, i);
+		Assert.assertEquals(4, task.size());
+		try {
+			enque(task, 0, 4);
+			Assert.fail();
+		} catch (QueueReachedMaxCapacityException e) {
+			// Expected, as the consumer is not running.
+		}
+	}
+
+	@Test(expected = QueuingTaskIsStoppedException.class)
+	public void testEnqueOperationsOnStop() throws InterruptedException {
+		RingBufferQueuingTask<Slot> task = new RingBufferQueuingTask<Slot>(4,
+				4, SLOT_FACTORY) {
+
+			@Override
+			protected void handleElement(Slot slot) {
+			}
+		};
+
+		new Thread(task).start();
+
+		CountDownLatch stopLatch = new CountDownLatch(1);
+		task.stopAsync(stopLatch);
+		stopLatch.await(10000, TimeUnit.MILLISECONDS);
+		enque(task, 0, 10);
+	}
+
+	@Test
+	public void testStopAfterConsumerDied() throws InterruptedException {
+		final List<Integer> queuedElements = new ArrayList<>();
+		RingBufferQueuingTask<Slot> task = new RingBufferQueuingTask<Slot>(64,
+				8, SLOT_FACTORY) {
+
+			@Override
+			protected void handleElement(Slot slot) {
+				if (slot.value == 1)
+					throw new RuntimeException("Failed on " + slot.value);
+				queuedElements.add(slot.value);
+			}
+		};
+
+		Thread consumer = new Thread(task);
+		consumer.setUncaughtExceptionHandler(
+				NonBlockingQueuingTaskTest.IGNORING_HANDLER);
+		consumer.start();
+		enque(task, 0, 1);
+		consumer.join(10000);
+		Assert.assertFalse(consumer.isAlive());
+		enque(task, 0, 2);
+		enque(task, 0, 3);
+
+		CountDownLatch stopLatch = new CountDownLatch(1);
+		task.stopAsync(stopLatch);
+		Assert.assertTrue(stopLatch.await(10000, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(Arrays.asList(2, 3), queuedElements);
+	}
+}
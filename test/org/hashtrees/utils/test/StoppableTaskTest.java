@@ -34,8 +34,8 @@ public class StoppableTaskTest {
 
 		@Override
 		public void runImpl() {
-			taskStartedLatch.countDown();
 			ran = true;
+			taskStartedLatch.countDown();
 		}
 
 	}
@@ -144,4 +144,26 @@ public class StoppableTaskTest {
 		latch.countDown();
 		Assert.assertTrue(listenerLatch.await(20000, TimeUnit.MILLISECONDS));
 	}
+
+	@Test
+	public void testStoppableTaskWithPendingWork() throws InterruptedException {
+		final CountDownLatch workDoneLatch = new CountDownLatch(1);
+		final StoppableTaskTestImpl task = new StoppableTaskTestImpl() {
+
+			@Override
+			protected void completePendingWork() {
+				workDoneLatch.countDown();
+			}
+		};
+
+		// Stop is requested before the task starts running, so the stopping
+		// thread completes the work.
+		CountDownLatch listenerLatch = new CountDownLatch(1);
+		task.stopAsync(listenerLatch);
+		Assert.assertEquals(0, listenerLatch.getCount());
+		Assert.assertEquals(0, workDoneLatch.getCount());
+
+		task.run();
+		Assert.assertFalse(task.ran);
+	}
 }
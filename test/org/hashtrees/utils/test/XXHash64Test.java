@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.hashtrees.utils.test;
+
+import java.util.Random;
+
+import org.hashtrees.util.XXHash64;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class XXHash64Test {
+
+	private static long hash(byte[] input) {
+		XXHash64 xxHash = new XXHash64(0);
+		xxHash.update(input, 0, input.length);
+		return xxHash.getValue();
+	}
+
+	@Test
+	public void testKnownValues() {
+		Assert.assertEquals(0xEF46DB3751D8E999L, hash(new byte[0]));
+		Assert.assertEquals(0xD24EC4F1A98C6E5BL, hash("a".getBytes()));
+		Assert.assertEquals(0x44BC2CF5AD770999L, hash("abc".getBytes()));
+	}
+
+	@Test
+	public void testStreamingUpdates() {
+		Random random = new Random(1);
+		for (int length : new int[] { 0, 7, 31, 32, 33, 100, 1000 }) {
+			byte[] input = new byte[length];
+			random.nextBytes(input);
+			long expected = hash(input);
+
+			XXHash64 xxHash = new XXHash64(0);
+			int offset = 0;
+			while (offset < length) {
+				int chunk = Math.min(length - offset, random.nextInt(40) + 1);
+				xxHash.update(input, offset, chunk);
+				offset += chunk;
+			}
+			Assert.assertEquals(expected, xxHash.getValue());
+			xxHash.reset();
+			xxHash.update(input, 0, length);
+			Assert.assertEquals(expected, xxHash.getValue());
+		}
+	}
+}